@@ -527,6 +527,19 @@ public class AsyncHttpClient implements Closeable {
         return executeRequest(request, new AsyncCompletionHandlerBase());
     }
 
+    /**
+     * Open connections to the host of the URL ahead of time, including the TLS handshake, so the requests
+     * to the host don't pay for the connection setup.
+     *
+     * @param url         the host's base URL
+     * @param connections the number of idle connections to have ready
+     * @return a {@link Future} of the number of connections warmed up
+     * @see AsyncHttpClientConfig.Builder#setMinIdleConnectionsPerHost(int)
+     */
+    public Future<Integer> prewarm(String url, int connections) {
+        return httpProvider.prewarm(new RequestBuilder("GET").setUrl(url).build(), connections);
+    }
+
     /**
      * Configure and execute the associated {@link RequestFilter}. This class may decorate the {@link Request} and {@link AsyncHandler}
      *
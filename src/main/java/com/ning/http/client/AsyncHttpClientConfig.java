@@ -85,6 +85,11 @@ public class AsyncHttpClientConfig {
 
     protected int maxRequestHeaders;
 
+    protected int minIdleConnectionsPerHost;
+    protected List<String> prewarmedHosts;
+
+    protected long maxResponseBodySize;
+
     protected AsyncHttpClientConfig() {
     }
 
@@ -121,7 +126,10 @@ public class AsyncHttpClientConfig {
             Integer sslSessionCacheSize,//
             Integer sslSessionTimeout,//
             AsyncHttpProviderConfig<?, ?> providerConfig,//
-            int maxRequestHeaders) {
+            int maxRequestHeaders,//
+            int minIdleConnectionsPerHost,//
+            List<String> prewarmedHosts,//
+            long maxResponseBodySize) {
 
         this.connectTimeout = connectTimeout;
         this.maxConnections = maxConnections;
@@ -157,6 +165,9 @@ public class AsyncHttpClientConfig {
         this.sslSessionTimeout = sslSessionTimeout;
         this.providerConfig = providerConfig;
         this.maxRequestHeaders = maxRequestHeaders;
+        this.minIdleConnectionsPerHost = minIdleConnectionsPerHost;
+        this.prewarmedHosts = prewarmedHosts;
+        this.maxResponseBodySize = maxResponseBodySize;
     }
 
     /**
@@ -489,6 +500,38 @@ public class AsyncHttpClientConfig {
         return maxRequestHeaders;
     }
 
+    /**
+     * Return the minimum number of idle connections an {@link com.ning.http.client.AsyncHttpClient} keeps open
+     * to each of the {@link #getPrewarmedHosts() prewarmed hosts}.
+     *
+     * @return the minimum number of idle connections per prewarmed host, 0 disables prewarming.
+     */
+    public int getMinIdleConnectionsPerHost() {
+        return minIdleConnectionsPerHost;
+    }
+
+    /**
+     * Return the base URLs of the hosts, which connections are opened to (including the TLS handshake)
+     * before they're requested.
+     *
+     * @return Unmodifiable list of the prewarmed hosts' URLs
+     */
+    public List<String> getPrewarmedHosts() {
+        return prewarmedHosts != null
+                ? Collections.unmodifiableList(prewarmedHosts)
+                : Collections.<String>emptyList();
+    }
+
+    /**
+     * Return the maximum size, in bytes, of a response body an {@link AsyncCompletionHandler} may accumulate.
+     *
+     * @return the maximum size of an accumulated response body, or -1 if the size is not limited.
+     * @see Request#getMaxResponseBodySize()
+     */
+    public long getMaxResponseBodySize() {
+        return maxResponseBodySize;
+    }
+
     /**
      * Builder for an {@link AsyncHttpClient}
      */
@@ -529,6 +572,9 @@ public class AsyncHttpClientConfig {
         private Integer sslSessionTimeout = defaultSslSessionTimeout();
         private AsyncHttpProviderConfig<?, ?> providerConfig;
         private int maxRequestHeaders = defaultMaxRequestHeaders();
+        private int minIdleConnectionsPerHost = defaultMinIdleConnectionsPerHost();
+        private final List<String> prewarmedHosts = new LinkedList<>();
+        private long maxResponseBodySize = defaultMaxResponseBodySize();
 
         public Builder() {
         }
@@ -955,6 +1001,58 @@ public class AsyncHttpClientConfig {
             return this;
         }
 
+        /**
+         * Set the minimum number of idle connections an {@link com.ning.http.client.AsyncHttpClient} keeps open
+         * to each of the prewarmed hosts. The connections are opened when the client is created and re-opened
+         * once they're used or expire, so the requests to the hosts don't pay for the TCP and TLS setup.
+         *
+         * @param minIdleConnectionsPerHost the minimum number of idle connections per prewarmed host
+         * @return a {@link Builder}
+         * @see #addPrewarmedHost(String)
+         */
+        public Builder setMinIdleConnectionsPerHost(int minIdleConnectionsPerHost) {
+            this.minIdleConnectionsPerHost = minIdleConnectionsPerHost;
+            return this;
+        }
+
+        /**
+         * Add a host, which connections have to be opened to ahead of time.
+         *
+         * @param url the host's base URL, like <tt>https://example.com:8443</tt>
+         * @return a {@link Builder}
+         * @see #setMinIdleConnectionsPerHost(int)
+         */
+        public Builder addPrewarmedHost(String url) {
+            prewarmedHosts.add(url);
+            return this;
+        }
+
+        /**
+         * Remove a prewarmed host.
+         *
+         * @param url the host's base URL
+         * @return a {@link Builder}
+         */
+        public Builder removePrewarmedHost(String url) {
+            prewarmedHosts.remove(url);
+            return this;
+        }
+
+        /**
+         * Set the maximum size, in bytes, of a response body an {@link AsyncCompletionHandler} may accumulate.
+         * A response, which <tt>Content-Length</tt> or received body exceeds the size, is aborted with a
+         * {@link ResponseBodyTooLargeException} as soon as it's detected, and its connection is closed.
+         * The handlers, which don't accumulate the body, aren't limited.
+         *
+         * @param maxResponseBodySize the maximum size of an accumulated response body, -1 doesn't limit the size
+         * @return a {@link Builder}
+         * @see RequestBuilderBase#setMaxResponseBodySize(long)
+         */
+        public Builder setMaxResponseBodySize(long maxResponseBodySize) {
+            this.maxResponseBodySize = maxResponseBodySize;
+            return this;
+        }
+
         /**
          * Create a config builder with values taken from the given prototype configuration.
          *
@@ -999,6 +1097,10 @@ public class AsyncHttpClientConfig {
             sslSessionTimeout = prototype.sslSessionTimeout;
             acceptAnyCertificate = prototype.acceptAnyCertificate;
             maxRequestHeaders = prototype.maxRequestHeaders;
+            minIdleConnectionsPerHost = prototype.getMinIdleConnectionsPerHost();
+            prewarmedHosts.clear();
+            prewarmedHosts.addAll(prototype.getPrewarmedHosts());
+            maxResponseBodySize = prototype.getMaxResponseBodySize();
         }
 
         /**
@@ -1062,7 +1164,10 @@ public class AsyncHttpClientConfig {
                     sslSessionCacheSize, //
                     sslSessionTimeout, //
                     providerConfig, //
-                    maxRequestHeaders);
+                    maxRequestHeaders, //
+                    minIdleConnectionsPerHost, //
+                    prewarmedHosts, //
+                    maxResponseBodySize);
         }
     }
 }
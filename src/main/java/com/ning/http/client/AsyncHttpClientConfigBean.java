@@ -42,6 +42,7 @@ public class AsyncHttpClientConfigBean extends AsyncHttpClientConfig {
         requestFilters = new LinkedList<>();
         responseFilters = new LinkedList<>();
         ioExceptionFilters = new LinkedList<>();
+        prewarmedHosts = new LinkedList<>();
     }
 
     void configureDefaults() {
@@ -68,6 +69,8 @@ public class AsyncHttpClientConfigBean extends AsyncHttpClientConfig {
         sslSessionCacheSize = defaultSslSessionCacheSize();
         sslSessionTimeout = defaultSslSessionTimeout();
         maxRequestHeaders = defaultMaxRequestHeaders();
+        minIdleConnectionsPerHost = defaultMinIdleConnectionsPerHost();
+        maxResponseBodySize = defaultMaxResponseBodySize();
 
         if (defaultUseProxySelector()) {
             proxyServerSelector = ProxyUtils.getJdkDefaultProxyServerSelector();
@@ -243,4 +246,19 @@ public class AsyncHttpClientConfigBean extends AsyncHttpClientConfig {
         this.maxRequestHeaders = maxRequestHeaders;
         return this;
     }
+
+    public AsyncHttpClientConfigBean setMinIdleConnectionsPerHost(int minIdleConnectionsPerHost) {
+        this.minIdleConnectionsPerHost = minIdleConnectionsPerHost;
+        return this;
+    }
+
+    public AsyncHttpClientConfigBean addPrewarmedHost(String url) {
+        prewarmedHosts.add(url);
+        return this;
+    }
+
+    public AsyncHttpClientConfigBean setMaxResponseBodySize(long maxResponseBodySize) {
+        this.maxResponseBodySize = maxResponseBodySize;
+        return this;
+    }
 }
@@ -125,4 +125,12 @@ public final class AsyncHttpClientConfigDefaults {
     public static int defaultMaxRequestHeaders() {
         return MAX_NUM_HEADERS_DEFAULT;
     }
+
+    public static int defaultMinIdleConnectionsPerHost() {
+        return Integer.getInteger(ASYNC_CLIENT + "minIdleConnectionsPerHost", 0);
+    }
+
+    public static long defaultMaxResponseBodySize() {
+        return Long.getLong(ASYNC_CLIENT + "maxResponseBodySize", -1L);
+    }
 }
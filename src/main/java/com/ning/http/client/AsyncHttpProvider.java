@@ -15,6 +15,9 @@
  */
 package com.ning.http.client;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
 /**
  * Interface to be used when implementing custom asynchronous I/O HTTP client.
  * By default, the {@link com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProvider} is used.
@@ -29,6 +32,19 @@ public interface AsyncHttpProvider {
      */
     <T> ListenableFuture<T> execute(Request request, AsyncHandler<T> handler);
 
+    /**
+     * Open connections to the {@link Request}'s host ahead of time, including the TLS handshake, and keep them
+     * idle in the pool, so at least the given number of connections are ready for the requests to come.
+     *
+     * @param request     the request to the host
+     * @param connections the number of idle connections to have ready
+     * @return a {@link Future} of the number of connections opened, providers which don't pool connections
+     *         open none
+     */
+    default Future<Integer> prewarm(Request request, int connections) {
+        return CompletableFuture.completedFuture(0);
+    }
+
     /**
      * Close the current underlying TCP/HTTP connection.
      */
@@ -18,6 +18,7 @@ package com.ning.http.client;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * A callback class used when an HTTP response body is received.
@@ -81,9 +82,61 @@ public abstract class HttpResponseBodyPart {
 
     /**
      * Return a {@link ByteBuffer} that wraps the actual bytes read from the response's chunk. The {@link ByteBuffer}
-     * capacity is equal to the number of bytes available.
+     * capacity is equal to the number of bytes available. Modifying the buffer doesn't change the bytes held by the
+     * provider, {@link #getReadOnlyBodyByteBuffer()} accesses them without copying.
      *
      * @return {@link ByteBuffer}
      */
     public abstract ByteBuffer getBodyByteBuffer();
+
+    /**
+     * Return a read-only {@link ByteBuffer} view of the bytes read from the response's chunk. Providers return
+     * the view of the bytes they received without copying them, so the view may be direct.
+     *
+     * @return read-only {@link ByteBuffer}
+     */
+    public ByteBuffer getReadOnlyBodyByteBuffer() {
+        return getBodyByteBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Write the available bytes to the blocking {@link WritableByteChannel}.
+     *
+     * @param channel
+     * @return The number of bytes written
+     * @throws IOException
+     */
+    public int writeTo(WritableByteChannel channel) throws IOException {
+        final ByteBuffer buffer = getReadOnlyBodyByteBuffer();
+        final int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return length;
+    }
+
+    /**
+     * Lease this part, so its bytes stay valid until {@link #release()} is invoked. A part is handed to the
+     * {@link AsyncHandler} with one lease, which the handler may {@link #release()} once it's done with the
+     * part. Providers don't reuse the bytes of a part which isn't released, so a handler may keep it past the
+     * {@link AsyncHandler#onBodyPartReceived(HttpResponseBodyPart)} callback without copying it. A part must not
+     * be released, if it's accumulated into the {@link Response}.
+     *
+     * @return this part
+     * @throws IllegalStateException if the part is already released
+     */
+    public HttpResponseBodyPart lease() {
+        return this;
+    }
+
+    /**
+     * Release a lease of this part. Once all the leases are released, the provider may recycle the memory
+     * holding the bytes and the part may no longer be accessed.
+     *
+     * @return true if the last lease has been released
+     * @throws IllegalStateException if the part is already released
+     */
+    public boolean release() {
+        return false;
+    }
 }
@@ -15,6 +15,8 @@
  */
 package com.ning.http.client;
 
+import java.util.List;
+
 /**
  * A class that represent the HTTP headers.
  */
@@ -37,6 +39,37 @@ public abstract class HttpResponseHeaders {
      */
     abstract public FluentCaseInsensitiveStringsMap getHeaders();
 
+    /**
+     * Return the first value of the HTTP header. The implementations may
+     * look the header up without building the whole {@link #getHeaders()} map.
+     *
+     * @param name the case-insensitive name of the header
+     * @return the first value of the header, or <tt>null</tt> if there's no such header
+     */
+    public String getFirstValue(String name) {
+        return getHeaders().getFirstValue(name);
+    }
+
+    /**
+     * Return the values of the HTTP header. The implementations may
+     * look the header up without building the whole {@link #getHeaders()} map.
+     *
+     * @param name the case-insensitive name of the header
+     * @return the values of the header, or an empty list if there's no such header
+     */
+    public List<String> getValues(String name) {
+        return getHeaders().get(name);
+    }
+
+    /**
+     * Return true if there's no HTTP header.
+     *
+     * @return true if there's no HTTP header.
+     */
+    public boolean isEmpty() {
+        return getHeaders().isEmpty();
+    }
+
     /**
      * Return true is headers has been received after the response body.
      *
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client;
+
+/**
+ * Pauses and resumes reading the response from the connection, so a slow
+ * {@link ReadControlledAsyncHandler} throttles the server instead of
+ * buffering the response body.
+ */
+public interface ReadControl {
+
+    /**
+     * Stop reading the response once the current body part has been handled.
+     * The call only takes effect in {@link AsyncHandler#onBodyPartReceived(HttpResponseBodyPart)},
+     * the body parts already read from the connection may still be delivered.
+     * The read timeout keeps counting while the reading is paused.
+     */
+    void pause();
+
+    /**
+     * Resume reading the response. May be called from any thread.
+     */
+    void resume();
+}
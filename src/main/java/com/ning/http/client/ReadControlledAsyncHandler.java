@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client;
+
+/**
+ * An {@link AsyncHandler}, which controls when the response body is read
+ * from the connection.
+ *
+ * @param <T> Type of the value that will be returned by the associated {@link java.util.concurrent.Future}
+ */
+public interface ReadControlledAsyncHandler<T> extends AsyncHandler<T> {
+
+    /**
+     * Invoked before the first body part of the response is delivered.
+     *
+     * @param readControl the {@link ReadControl} of the response
+     */
+    void onReadControl(ReadControl readControl);
+}
@@ -57,6 +57,7 @@ public class Realm {
     private final boolean targetProxy;
 
     private final String ntlmDomain;
+    private volatile String credentialsHash;
 
     public enum AuthScheme {
         DIGEST,
@@ -205,6 +206,37 @@ public class Realm {
         return targetProxy;
     }
 
+    /**
+     * Return the SHA-256 hash of the credentials, so connections authenticated
+     * with different credentials could be told apart without keeping the
+     * credentials in clear text. The hash is computed once per {@link Realm}.
+     *
+     * @return the hex encoded SHA-256 hash of the credentials
+     */
+    public String getCredentialsHash() {
+        String hash = credentialsHash;
+        if (hash == null) {
+            // No salt is added, since the hash is used as a cache key
+            final String credentials = new StringBuilder()
+                    .append(principal)
+                    .append(principal)
+                    .append(password)
+                    .append(ntlmDomain)
+                    .append(ntlmHost)
+                    .toString();
+            try {
+                final MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                sha256.update(credentials.getBytes(UTF_8));
+                hash = StringUtils.toHexString(sha256.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+            credentialsHash = hash;
+        }
+
+        return hash;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
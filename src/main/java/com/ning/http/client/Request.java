@@ -23,6 +23,7 @@ import com.ning.http.client.uri.Uri;
 import java.io.File;
 import java.io.InputStream;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
 
@@ -83,6 +84,14 @@ public interface Request {
      * @return the current request's body as a composite of byte arrays
      */
     List<byte[]> getCompositeByteData();
+
+    /**
+     * @return the current request's body as a sequence of {@link ByteBuffer}s,
+     *          the buffers' remaining bytes are sent, or null if the body isn't set this way
+     */
+    default List<ByteBuffer> getByteBufferData() {
+        return null;
+    }
     
     /**
      * Return the current request's body as a string
@@ -175,6 +184,16 @@ public interface Request {
      */
     int getRequestTimeout();
 
+    /**
+     * Overrides the config default value
+     * @return the maximum size of a response body an {@link AsyncCompletionHandler} may accumulate,
+     * 0 if not set, or -1 if the size is not limited.
+     * @see AsyncHttpClientConfig#getMaxResponseBodySize()
+     */
+    default long getMaxResponseBodySize() {
+        return 0;
+    }
+
     /**
      * Return the HTTP Range header value, or
      *
@@ -29,7 +29,9 @@ import com.ning.http.util.UriEncoder;
 import java.io.File;
 import java.io.InputStream;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -54,6 +56,7 @@ public abstract class RequestBuilderBase<T extends RequestBuilderBase<T>> {
         private ArrayList<Cookie> cookies;
         private byte[] byteData;
         private List<byte[]> compositeByteData;
+        private List<ByteBuffer> byteBufferData;
         private String stringData;
         private InputStream streamData;
         private BodyGenerator bodyGenerator;
@@ -66,6 +69,7 @@ public abstract class RequestBuilderBase<T extends RequestBuilderBase<T>> {
         private File file;
         private Boolean followRedirects;
         private int requestTimeout;
+        private long maxResponseBodySize;
         private long rangeOffset;
         public String charset;
         private ConnectionPoolPartitioning connectionPoolPartitioning = ConnectionPoolPartitioning.PerHostConnectionPoolPartitioning.INSTANCE;
@@ -85,6 +89,7 @@ public abstract class RequestBuilderBase<T extends RequestBuilderBase<T>> {
                 this.cookies = new ArrayList<>(prototype.getCookies());
                 this.byteData = prototype.getByteData();
                 this.compositeByteData = prototype.getCompositeByteData();
+                this.byteBufferData = prototype.getByteBufferData();
                 this.stringData = prototype.getStringData();
                 this.streamData = prototype.getStreamData();
                 this.bodyGenerator = prototype.getBodyGenerator();
@@ -97,6 +102,7 @@ public abstract class RequestBuilderBase<T extends RequestBuilderBase<T>> {
                 this.file = prototype.getFile();
                 this.followRedirects = prototype.getFollowRedirect();
                 this.requestTimeout = prototype.getRequestTimeout();
+                this.maxResponseBodySize = prototype.getMaxResponseBodySize();
                 this.rangeOffset = prototype.getRangeOffset();
                 this.charset = prototype.getBodyEncoding();
                 this.connectionPoolPartitioning = prototype.getConnectionPoolPartitioning();
@@ -149,6 +155,11 @@ public abstract class RequestBuilderBase<T extends RequestBuilderBase<T>> {
             return compositeByteData;
         }
 
+        @Override
+        public List<ByteBuffer> getByteBufferData() {
+            return byteBufferData;
+        }
+
         @Override
         public String getStringData() {
             return stringData;
@@ -209,6 +220,11 @@ public abstract class RequestBuilderBase<T extends RequestBuilderBase<T>> {
             return requestTimeout;
         }
 
+        @Override
+        public long getMaxResponseBodySize() {
+            return maxResponseBodySize;
+        }
+
         @Override
         public long getRangeOffset() {
             return rangeOffset;
@@ -427,6 +443,7 @@ public abstract class RequestBuilderBase<T extends RequestBuilderBase<T>> {
     public void resetNonMultipartData() {
         request.byteData = null;
         request.compositeByteData = null;
+        request.byteBufferData = null;
         request.stringData = null;
         request.streamData = null;
         request.bodyGenerator = null;
@@ -457,6 +474,27 @@ public abstract class RequestBuilderBase<T extends RequestBuilderBase<T>> {
         request.compositeByteData = data;
         return derived.cast(this);
     }
+
+    /**
+     * Sets the buffer's remaining bytes as the body. The buffer is sent as
+     * is, direct and read-only buffers are not copied to the heap, so it
+     * must not be modified until the request is completed.
+     */
+    public T setBody(ByteBuffer data) {
+        return setBody(new ByteBuffer[] { data });
+    }
+
+    /**
+     * Sets the buffers' remaining bytes as the body, the buffers are sent
+     * one after another, as with {@link #setBody(ByteBuffer)}.
+     */
+    public T setBody(ByteBuffer[] data) {
+        resetFormParams();
+        resetNonMultipartData();
+        resetMultipartData();
+        request.byteBufferData = Arrays.asList(data.clone());
+        return derived.cast(this);
+    }
     
     public T setBody(String data) {
         resetFormParams();
@@ -567,6 +605,11 @@ public abstract class RequestBuilderBase<T extends RequestBuilderBase<T>> {
         return derived.cast(this);
     }
 
+    public T setMaxResponseBodySize(long maxResponseBodySize) {
+        request.maxResponseBodySize = maxResponseBodySize;
+        return derived.cast(this);
+    }
+
     public T setRangeOffset(long rangeOffset) {
         request.rangeOffset = rangeOffset;
         return derived.cast(this);
@@ -70,12 +70,12 @@ public abstract class ResponseBase implements Response {
 
     @Override
     public final String getHeader(String name) {
-        return headers != null ? getHeaders().getFirstValue(name) : null;
+        return headers != null ? headers.getFirstValue(name) : null;
     }
 
     @Override
     public final List<String> getHeaders(String name) {
-        return headers != null ? getHeaders().get(name) : Collections.<String> emptyList();
+        return headers != null ? headers.getValues(name) : Collections.<String> emptyList();
     }
 
     @Override
@@ -112,7 +112,7 @@ public abstract class ResponseBase implements Response {
 
     @Override
     public boolean hasResponseHeaders() {
-        return headers != null && isNonEmpty(headers.getHeaders());
+        return headers != null && !headers.isEmpty();
     }
 
     @Override
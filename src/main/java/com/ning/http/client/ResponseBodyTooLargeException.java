@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client;
+
+/**
+ * Thrown when a response body exceeds the {@link AsyncHttpClientConfig#getMaxResponseBodySize()}
+ * or the {@link Request#getMaxResponseBodySize()}.
+ */
+public class ResponseBodyTooLargeException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final long maxResponseBodySize;
+
+    public ResponseBodyTooLargeException(long maxResponseBodySize) {
+        super("Response body exceeds " + maxResponseBodySize + " bytes", null, true, false);
+        this.maxResponseBodySize = maxResponseBodySize;
+    }
+
+    /**
+     * @return the exceeded maximum size of the response body
+     */
+    public long getMaxResponseBodySize() {
+        return maxResponseBodySize;
+    }
+}
@@ -801,7 +801,7 @@ public class SimpleAsyncHttpClient implements AutoCloseable {
         }
 
         private void calculateTotal(HttpResponseHeaders headers) {
-            String length = headers.getHeaders().getFirstValue("Content-Length");
+            String length = headers.getFirstValue("Content-Length");
 
             try {
                 total = Integer.valueOf(length);
@@ -823,7 +823,7 @@ public class SimpleAsyncHttpClient implements AutoCloseable {
         }
 
         private void fireReceived(HttpResponseBodyPart content) {
-            int remaining = content.getBodyByteBuffer().remaining();
+            int remaining = content.length();
 
             amount += remaining;
 
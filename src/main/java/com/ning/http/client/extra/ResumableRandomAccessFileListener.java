@@ -40,7 +40,7 @@ public class ResumableRandomAccessFileListener implements ResumableListener {
     @Override
     public void onBytesReceived(ByteBuffer buffer) throws IOException {
         file.seek(file.length());
-        file.write(buffer.array());
+        file.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
     }
 
     @Override
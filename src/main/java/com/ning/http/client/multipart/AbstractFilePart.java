@@ -16,6 +16,7 @@ import static java.nio.charset.StandardCharsets.*;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 
 /**
@@ -76,6 +77,21 @@ public abstract class AbstractFilePart extends PartBase {
 
     protected byte[] generateFileStart(byte[] boundary) throws IOException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFileStart(out, boundary);
+        return out.toByteArray();
+    }
+
+    protected byte[] generateFileEnd() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFileEnd(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the boundary and the headers of this part, everything that
+     * precedes the data.
+     */
+    protected void writeFileStart(OutputStream out, byte[] boundary) throws IOException {
         OutputStreamPartVisitor visitor = new OutputStreamPartVisitor(out);
         visitStart(visitor, boundary);
         visitDispositionHeader(visitor);
@@ -84,15 +100,13 @@ public abstract class AbstractFilePart extends PartBase {
         visitContentIdHeader(visitor);
         visitCustomHeaders(visitor);
         visitEndOfHeaders(visitor);
-
-        return out.toByteArray();
     }
 
-    protected byte[] generateFileEnd() throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        OutputStreamPartVisitor visitor = new OutputStreamPartVisitor(out);
-        visitEnd(visitor);
-        return out.toByteArray();
+    /**
+     * Writes everything that follows the data of this part.
+     */
+    protected void writeFileEnd(OutputStream out) throws IOException {
+        visitEnd(new OutputStreamPartVisitor(out));
     }
 
     public void setStalledTime(long ms) {
@@ -12,22 +12,24 @@
  */
 package com.ning.http.client.multipart;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import com.ning.http.client.RandomAccessBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class MultipartBody implements RandomAccessBody {
 
-    private final static Logger LOGGER = LoggerFactory.getLogger(MultipartBody.class);
+    // the contents of the smaller byte array parts are copied along with
+    // the headers, instead of being sent as separate segments
+    private static final int MIN_BYTES_SEGMENT_LENGTH = 4096;
 
     private final byte[] boundary;
     private final long contentLength;
@@ -37,16 +39,12 @@ public class MultipartBody implements RandomAccessBody {
 
     private boolean transfertDone = false;
 
-    private int currentPart = 0;
-    private byte[] currentBytes;
-    private int currentBytesPosition = -1;
-    private boolean doneWritingParts = false;
-    private FileLocation fileLocation = FileLocation.NONE;
+    // the body split into the segments once, the reads walk through them
+    private List<Segment> segments;
+    private int currentSegment;
+    private int currentBytesPosition;
     private FileChannel currentFileChannel;
-
-    enum FileLocation {
-        NONE, START, MIDDLE, END
-    }
+    private long currentFilePosition;
 
     public MultipartBody(List<Part> parts, String contentType, long contentLength, byte[] boundary) {
         this.boundary = boundary;
@@ -93,159 +91,171 @@ public class MultipartBody implements RandomAccessBody {
         return overallLength;
     }
 
+    /**
+     * Splits the body into the {@link Segment}s to be sent in order: the
+     * contents of the {@link FilePart}s are referenced as the files, the
+     * contents of the big {@link ByteArrayPart}s are referenced as their
+     * byte arrays, all the other bytes (boundaries, headers, string parts
+     * and the other parts) are merged into byte arrays. Lets a provider
+     * send the files and the byte arrays without copying them through
+     * memory. The segments are computed once, the following calls return
+     * the same list.
+     *
+     * @return the unmodifiable list of the segments
+     */
+    public List<Segment> getSegments() throws IOException {
+        if (segments == null) {
+            segments = Collections.unmodifiableList(createSegments());
+        }
+        return segments;
+    }
+
     // Regular Body API
     public long read(ByteBuffer buffer) throws IOException {
-        try {
-            int overallLength = 0;
-
-            int maxLength = buffer.remaining();
+        final List<Segment> segments = getSegments();
+        if (currentSegment == segments.size()) {
+            transfertDone = true;
+            return -1;
+        }
 
-            if (currentPart == parts.size() && transfertDone) {
-                return -1;
+        int overallLength = 0;
+        while (buffer.hasRemaining() && currentSegment < segments.size()) {
+            final Segment segment = segments.get(currentSegment);
+            if (segment.file != null) {
+                overallLength += readCurrentFile(segment, buffer);
+            } else {
+                overallLength += readCurrentBytes(segment, buffer);
             }
+        }
 
-            boolean full = false;
-
-            while (!full && !doneWritingParts) {
-                Part part = null;
-
-                if (currentPart < parts.size()) {
-                    part = parts.get(currentPart);
-                }
-                if (currentFileChannel != null) {
-                    overallLength += writeCurrentFile(buffer);
-                    full = overallLength == maxLength;
-
-                } else if (currentBytesPosition > -1) {
-                    overallLength += writeCurrentBytes(buffer, maxLength - overallLength);
-                    full = overallLength == maxLength;
-
-                    if (currentPart == parts.size() && currentBytesFullyRead()) {
-                        doneWritingParts = true;
-                    }
-
-                } else if (part instanceof StringPart) {
-                    StringPart stringPart = (StringPart) part;
-                    // set new bytes, not full, so will loop to writeCurrentBytes above
-                    initializeCurrentBytes(stringPart.getBytes(boundary));
-                    currentPart++;
-
-                } else if (part instanceof AbstractFilePart) {
-
-                    AbstractFilePart filePart = (AbstractFilePart) part;
-
-                    switch (fileLocation) {
-                    case NONE:
-                        // set new bytes, not full, so will loop to writeCurrentBytes above
-                        initializeCurrentBytes(filePart.generateFileStart(boundary));
-                        fileLocation = FileLocation.START;
-                        break;
-                    case START:
-                        // set current file channel so code above executes first
-                        initializeFileBody(filePart);
-                        fileLocation = FileLocation.MIDDLE;
-                        break;
-                    case MIDDLE:
-                        initializeCurrentBytes(filePart.generateFileEnd());
-                        fileLocation = FileLocation.END;
-                        break;
-                    case END:
-                        currentPart++;
-                        fileLocation = FileLocation.NONE;
-                        if (currentPart == parts.size()) {
-                            doneWritingParts = true;
-                        }
-                    }
-                }
-            }
+        return overallLength;
+    }
 
-            if (doneWritingParts) {
-                if (currentBytesPosition == -1) {
-                    initializeCurrentBytes(MultipartUtils.getMessageEnd(boundary));
-                }
+    private List<Segment> createSegments() throws IOException {
+        final List<Segment> segments = new ArrayList<>();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
 
-                if (currentBytesPosition > -1) {
-                    overallLength += writeCurrentBytes(buffer, maxLength - overallLength);
+        for (Part part : parts) {
+            if (part instanceof FilePart) {
+                final FilePart filePart = (FilePart) part;
+                filePart.writeFileStart(bytes, boundary);
+                addBytesSegment(segments, bytes);
+                segments.add(new Segment(null, filePart.getFile(), filePart.getFile().length()));
+                filePart.writeFileEnd(bytes);
+
+            } else if (part instanceof ByteArrayPart
+                    && ((ByteArrayPart) part).getBytes().length >= MIN_BYTES_SEGMENT_LENGTH) {
+                final ByteArrayPart byteArrayPart = (ByteArrayPart) part;
+                final byte[] content = byteArrayPart.getBytes();
+                byteArrayPart.writeFileStart(bytes, boundary);
+                addBytesSegment(segments, bytes);
+                segments.add(new Segment(content, null, content.length));
+                byteArrayPart.writeFileEnd(bytes);
 
-                    if (currentBytesFullyRead()) {
-                        currentBytes = null;
-                        currentBytesPosition = -1;
-                        transfertDone = true;
-                    }
-                }
+            } else {
+                part.write(bytes, boundary);
             }
-            return overallLength;
-
-        } catch (Exception e) {
-            LOGGER.error("Read exception", e);
-            return 0;
         }
-    }
 
-    private boolean currentBytesFullyRead() {
-        return currentBytes == null || currentBytesPosition == -1;
+        bytes.write(MultipartUtils.getMessageEnd(boundary));
+        addBytesSegment(segments, bytes);
+
+        return segments;
     }
 
-    private void initializeFileBody(AbstractFilePart part) throws IOException {
+    private static void addBytesSegment(List<Segment> segments, ByteArrayOutputStream bytes) {
+        if (bytes.size() > 0) {
+            segments.add(new Segment(bytes.toByteArray(), null, bytes.size()));
+            bytes.reset();
+        }
+    }
 
-        if (part instanceof FilePart) {
-            RandomAccessFile raf = new RandomAccessFile(FilePart.class.cast(part).getFile(), "r");
+    private int readCurrentFile(Segment segment, ByteBuffer buffer) throws IOException {
+        if (currentFileChannel == null) {
+            RandomAccessFile raf = new RandomAccessFile(segment.file, "r");
             pendingOpenFiles.add(raf);
             currentFileChannel = raf.getChannel();
-
-        } else if (part instanceof ByteArrayPart) {
-            initializeCurrentBytes(ByteArrayPart.class.cast(part).getBytes());
-
-        } else {
-            throw new IllegalArgumentException("Unknow AbstractFilePart type");
+            currentFilePosition = 0;
         }
-    }
 
-    private void initializeCurrentBytes(byte[] bytes) throws IOException {
-        currentBytes = bytes;
-        currentBytesPosition = 0;
-    }
-
-    private int writeCurrentFile(ByteBuffer buffer) throws IOException {
+        // don't read past the length the content-length was computed with
+        final long remaining = segment.length - currentFilePosition;
+        final int limit = buffer.limit();
+        if (buffer.remaining() > remaining) {
+            buffer.limit(buffer.position() + (int) remaining);
+        }
 
-        int read = currentFileChannel.read(buffer);
+        final int read;
+        try {
+            read = remaining > 0 ? currentFileChannel.read(buffer) : 0;
+        } finally {
+            buffer.limit(limit);
+        }
 
-        if (currentFileChannel.position() == currentFileChannel.size()) {
+        if (read == -1) {
+            throw new IOException("File " + segment.file + " is shorter than the expected " + segment.length + " bytes");
+        }
 
-            currentFileChannel.close();
+        currentFilePosition += read;
+        if (currentFilePosition == segment.length) {
             currentFileChannel = null;
-
             int currentFile = pendingOpenFiles.size() - 1;
-            pendingOpenFiles.get(currentFile).close();
-            pendingOpenFiles.remove(currentFile);
+            pendingOpenFiles.remove(currentFile).close();
+            currentSegment++;
         }
 
         return read;
     }
 
-    private int writeCurrentBytes(ByteBuffer buffer, int length) throws IOException {
+    private int readCurrentBytes(Segment segment, ByteBuffer buffer) {
+        final int length = Math.min(buffer.remaining(), segment.bytes.length - currentBytesPosition);
+        buffer.put(segment.bytes, currentBytesPosition, length);
+        currentBytesPosition += length;
 
-        if (currentBytes.length == 0) {
-            currentBytesPosition = -1;
-            currentBytes = null;
-            return 0;
+        if (currentBytesPosition == segment.bytes.length) {
+            currentBytesPosition = 0;
+            currentSegment++;
         }
 
-        int available = currentBytes.length - currentBytesPosition;
+        return length;
+    }
 
-        int writeLength = Math.min(available, length);
+    /**
+     * A part of the body, either the bytes, or the whole contents of a file.
+     */
+    public static final class Segment {
+        private final byte[] bytes;
+        private final File file;
+        private final long length;
+
+        private Segment(byte[] bytes, File file, long length) {
+            this.bytes = bytes;
+            this.file = file;
+            this.length = length;
+        }
 
-        if (writeLength > 0) {
-            buffer.put(currentBytes, currentBytesPosition, writeLength);
+        /**
+         * @return the bytes, or <tt>null</tt> if this is a file segment.
+         *         The array may be the content of a {@link ByteArrayPart},
+         *         so it must not be modified
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
 
-            if (available <= length) {
-                currentBytesPosition = -1;
-                currentBytes = null;
-            } else {
-                currentBytesPosition += writeLength;
-            }
+        /**
+         * @return the file, or <tt>null</tt> if this is a bytes segment
+         */
+        public File getFile() {
+            return file;
         }
 
-        return writeLength;
+        /**
+         * @return the length of the segment, for a file the length it had
+         *         when the segments were computed
+         */
+        public long getLength() {
+            return length;
+        }
     }
 }
@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.glassfish.grizzly.CloseListener;
+import org.glassfish.grizzly.CloseType;
+import org.glassfish.grizzly.Closeable;
+import org.glassfish.grizzly.CompletionHandler;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.GrizzlyFuture;
+import org.glassfish.grizzly.attributes.Attribute;
+import org.glassfish.grizzly.connectionpool.Endpoint;
+
+/**
+ * AHC connection pool, an alternative to Grizzly's
+ * {@link org.glassfish.grizzly.connectionpool.MultiEndpointPool}.
+ *
+ * Idle connections are kept in a lock-free deque per connection partition
+ * and reused in LIFO order, so the most recently used connections (and
+ * their TLS sessions) stay warm, while the rarely used ones expire.
+ * Each idle connection has its expiration scheduled on the provider's
+ * {@link TimeoutWheel}, which also enforces the connect timeout, so the idle
+ * connections are never scanned.
+ * The pool maintains per-partition counters, see {@link ConnectionPoolStatistics}.
+ *
+ * @author Grizzly team
+ */
+final class AhcConnectionPool {
+    private static final Attribute<PooledConnection> POOLED_CONNECTION_ATTR =
+            Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(
+                    AhcConnectionPool.class.getName() + ".pooled-connection");
+
+    private static final int BUSY = 0;
+    private static final int IDLE = 1;
+    private static final int CLOSED = 2;
+
+    private final ConcurrentHashMap<Object, Partition> partitions =
+            new ConcurrentHashMap<Object, Partition>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+
+    private final int maxConnectionsTotal;
+    private final int maxConnectionsPerPartition;
+    private final long connectTimeoutMillis;
+    private final long keepAliveTimeoutMillis;
+    private final long connectionTTLMillis;
+
+    private final TimeoutWheel timer;
+    private volatile boolean isClosed;
+
+    // ------------------------------------------------------------ Constructors
+
+    /**
+     * @param maxConnectionsTotal the max number of connections, <tt>-1</tt> means no limit
+     * @param maxConnectionsPerPartition the max number of connections per partition,
+     *        <tt>-1</tt> means no limit
+     * @param connectTimeoutMillis the connect timeout, <tt>-1</tt> means no timeout
+     * @param keepAliveTimeoutMillis the max time a connection could stay idle
+     *        in the pool, <tt>-1</tt> means no limit, <tt>0</tt> disables pooling
+     * @param connectionTTLMillis the max connection lifetime, <tt>-1</tt> means no limit
+     * @param timer the timer to schedule the connect and idle timeouts with
+     */
+    AhcConnectionPool(final int maxConnectionsTotal,
+            final int maxConnectionsPerPartition,
+            final long connectTimeoutMillis,
+            final long keepAliveTimeoutMillis,
+            final long connectionTTLMillis,
+            final TimeoutWheel timer) {
+        this.maxConnectionsTotal = maxConnectionsTotal;
+        this.maxConnectionsPerPartition = maxConnectionsPerPartition;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.keepAliveTimeoutMillis = keepAliveTimeoutMillis;
+        this.connectionTTLMillis = connectionTTLMillis;
+
+        this.timer = timer;
+    }
+
+    // ---------------------------------------------------------- Public Methods
+
+    /**
+     * Obtains a {@link Connection} to the {@link Endpoint}: either the most
+     * recently released idle one, or a new one. The {@link CompletionHandler}
+     * might be notified in the caller thread.
+     *
+     * @param keepAlive <tt>false</tt>, if the connection must not be returned
+     *        to the pool once released
+     */
+    void take(final Endpoint<SocketAddress> endpoint, final boolean keepAlive,
+            final CompletionHandler<Connection> completionHandler) {
+        if (isClosed) {
+            completionHandler.failed(new IOException("Connection pool is closed"));
+            return;
+        }
+
+        final Partition partition = getPartition(endpoint.getId());
+
+        PooledConnection pooled;
+        while ((pooled = partition.idleConnections.pollFirst()) != null) {
+            if (!pooled.state.compareAndSet(IDLE, BUSY)) {
+                continue; // stale entry, the connection has been closed
+            }
+
+            partition.idleCount.decrementAndGet();
+            partition.busyCount.incrementAndGet();
+            pooled.cancelIdleTimeout();
+
+            if (pooled.connection.isOpen()
+                    && !pooled.isExpired(System.currentTimeMillis())) {
+                completionHandler.completed(pooled.connection);
+                return;
+            }
+
+            close(pooled);
+        }
+
+        open(endpoint, partition, keepAlive, completionHandler);
+    }
+
+    /**
+     * Opens a new {@link Connection} to the {@link Endpoint}, the idle
+     * connections are not reused. The connection is busy, until released.
+     *
+     * @param keepAlive <tt>false</tt>, if the connection must not be returned
+     *        to the pool once released
+     */
+    void open(final Endpoint<SocketAddress> endpoint, final boolean keepAlive,
+            final CompletionHandler<Connection> completionHandler) {
+        if (isClosed) {
+            completionHandler.failed(new IOException("Connection pool is closed"));
+            return;
+        }
+
+        open(endpoint, getPartition(endpoint.getId()), keepAlive,
+                completionHandler);
+    }
+
+    /**
+     * Returns the {@link Connection} to the pool, or closes it if it can't be reused.
+     *
+     * @return <tt>true</tt>, if the connection belongs to the pool, or
+     *          <tt>false</tt> otherwise
+     */
+    boolean release(final Connection connection) {
+        final PooledConnection pooled = POOLED_CONNECTION_ATTR.get(connection);
+        if (pooled == null) {
+            return false;
+        }
+
+        final long now = System.currentTimeMillis();
+        if (!pooled.keepAlive || isClosed || !connection.isOpen()
+                || pooled.isExpired(now)) {
+            close(pooled);
+            return true;
+        }
+
+        if (!pooled.state.compareAndSet(BUSY, IDLE)) {
+            return false;
+        }
+
+        final Partition partition = pooled.partition;
+        partition.busyCount.decrementAndGet();
+        partition.idleCount.incrementAndGet();
+
+        // the timeouts scheduled for the previous idle periods are stale
+        final int generation = pooled.generation.incrementAndGet();
+        partition.idleConnections.offerFirst(pooled);
+        pooled.scheduleIdleTimeout(now, generation);
+
+        return true;
+    }
+
+    /**
+     * @return <tt>true</tt>, if the {@link Connection} is idle in the pool
+     */
+    boolean isReady(final Connection connection) {
+        final PooledConnection pooled = POOLED_CONNECTION_ATTR.get(connection);
+        return pooled != null && pooled.state.get() == IDLE;
+    }
+
+    Map<Object, ConnectionPoolStatistics> getStatistics() {
+        final Map<Object, ConnectionPoolStatistics> statistics =
+                new HashMap<Object, ConnectionPoolStatistics>(partitions.size());
+        for (Partition partition : partitions.values()) {
+            statistics.put(partition.id, partition.getStatistics());
+        }
+
+        return statistics;
+    }
+
+    int size() {
+        return totalConnections.get();
+    }
+
+    /**
+     * @return the number of idle connections in the partition
+     */
+    int getIdleCount(final Object partitionId) {
+        final Partition partition = partitions.get(partitionId);
+        return partition != null ? partition.idleCount.get() : 0;
+    }
+
+    void close() {
+        isClosed = true;
+
+        for (Partition partition : partitions.values()) {
+            PooledConnection pooled;
+            while ((pooled = partition.idleConnections.pollFirst()) != null) {
+                close(pooled);
+            }
+        }
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    private Partition getPartition(final Object partitionId) {
+        Partition partition = partitions.get(partitionId);
+        if (partition == null) {
+            final Partition newPartition = new Partition(partitionId);
+            partition = partitions.putIfAbsent(partitionId, newPartition);
+            if (partition == null) {
+                partition = newPartition;
+            }
+        }
+
+        return partition;
+    }
+
+    /**
+     * Reserves a slot for a new connection, if the pool limits allow.
+     */
+    private boolean reserve(final Partition partition) {
+        if (!increment(partition.openCount, maxConnectionsPerPartition)) {
+            return false;
+        }
+
+        if (!increment(totalConnections, maxConnectionsTotal)) {
+            partition.openCount.decrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    private void unreserve(final Partition partition) {
+        partition.openCount.decrementAndGet();
+        totalConnections.decrementAndGet();
+    }
+
+    private static boolean increment(final AtomicInteger counter, final int max) {
+        if (max < 0) {
+            counter.incrementAndGet();
+            return true;
+        }
+
+        for (;;) {
+            final int current = counter.get();
+            if (current >= max) {
+                return false;
+            }
+
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void open(final Endpoint<SocketAddress> endpoint,
+            final Partition partition, final boolean keepAlive,
+            final CompletionHandler<Connection> completionHandler) {
+        if (!reserve(partition)) {
+            completionHandler.failed(new IOException("Max connections exceeded"));
+            return;
+        }
+
+        connect(endpoint, partition, keepAlive, completionHandler);
+    }
+
+    private void connect(final Endpoint<SocketAddress> endpoint,
+            final Partition partition, final boolean keepAlive,
+            final CompletionHandler<Connection> completionHandler) {
+
+        partition.pendingCount.incrementAndGet();
+
+        // connect, timeout and the pool close race for the outcome
+        final AtomicBoolean isDone = new AtomicBoolean();
+
+        final GrizzlyFuture<Connection> future;
+        try {
+            future = endpoint.connect();
+        } catch (Exception e) {
+            onConnectFailed(partition, isDone, completionHandler, e);
+            return;
+        }
+
+        final TimeoutWheel.Timeout timeoutTask = connectTimeoutMillis > 0
+                ? scheduleConnectTimeout(future, partition, isDone, completionHandler)
+                : null;
+
+        future.addCompletionHandler(new CompletionHandler<Connection>() {
+            @Override
+            public void completed(final Connection connection) {
+                if (timeoutTask != null) {
+                    timeoutTask.cancel();
+                }
+
+                if (!isDone.compareAndSet(false, true)) {
+                    // timed out, the reserved slot has been released already
+                    connection.closeSilently();
+                    return;
+                }
+
+                partition.pendingCount.decrementAndGet();
+
+                final PooledConnection pooled =
+                        new PooledConnection(partition, connection, keepAlive);
+                POOLED_CONNECTION_ATTR.set(connection, pooled);
+                partition.busyCount.incrementAndGet();
+                connection.addCloseListener(pooled);
+
+                if (isClosed || !connection.isOpen()) {
+                    close(pooled);
+                    completionHandler.failed(new IOException(isClosed
+                            ? "Connection pool is closed"
+                            : "Connection is closed"));
+                    return;
+                }
+
+                completionHandler.completed(connection);
+            }
+
+            @Override
+            public void failed(final Throwable throwable) {
+                if (timeoutTask != null) {
+                    timeoutTask.cancel();
+                }
+
+                onConnectFailed(partition, isDone, completionHandler, throwable);
+            }
+
+            @Override
+            public void cancelled() {
+                failed(new IOException("Connect cancelled"));
+            }
+
+            @Override
+            public void updated(final Connection result) {
+            }
+        });
+    }
+
+    private TimeoutWheel.Timeout scheduleConnectTimeout(
+            final GrizzlyFuture<Connection> future,
+            final Partition partition, final AtomicBoolean isDone,
+            final CompletionHandler<Connection> completionHandler) {
+        try {
+            return timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (onConnectFailed(partition, isDone, completionHandler,
+                            new ConnectException("Connection timed out"))) {
+                        future.cancel(false);
+                    }
+                }
+            }, connectTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // the pool is closed
+            return null;
+        }
+    }
+
+    private boolean onConnectFailed(final Partition partition,
+            final AtomicBoolean isDone,
+            final CompletionHandler<Connection> completionHandler,
+            final Throwable throwable) {
+        if (!isDone.compareAndSet(false, true)) {
+            return false;
+        }
+
+        partition.pendingCount.decrementAndGet();
+        partition.connectFailures.incrementAndGet();
+        unreserve(partition);
+
+        completionHandler.failed(throwable);
+        return true;
+    }
+
+    private void close(final PooledConnection pooled) {
+        final int prevState = pooled.state.getAndSet(CLOSED);
+        if (prevState == CLOSED) {
+            return;
+        }
+
+        final Partition partition = pooled.partition;
+        if (prevState == IDLE) {
+            partition.idleCount.decrementAndGet();
+        } else {
+            partition.busyCount.decrementAndGet();
+        }
+
+        unreserve(partition);
+        pooled.connection.closeSilently();
+    }
+
+    private void expireIdle(final PooledConnection pooled, final int generation) {
+        final Partition partition = pooled.partition;
+        // the connection might have been taken meanwhile
+        if (!partition.idleConnections.removeLastOccurrence(pooled)) {
+            return;
+        }
+
+        // nobody else can take or release the connection now, so its
+        // generation is stable
+        if (pooled.generation.get() == generation) {
+            close(pooled);
+            return;
+        }
+
+        // the connection has been taken and released again after the timeout
+        // was scheduled, its newer idle timeout is pending
+        partition.idleConnections.offerLast(pooled);
+        if (isClosed) {
+            close(pooled);
+        }
+    }
+
+    // ----------------------------------------------------------- Inner Classes
+
+    private static final class Partition {
+        private final Object id;
+        private final ConcurrentLinkedDeque<PooledConnection> idleConnections =
+                new ConcurrentLinkedDeque<PooledConnection>();
+
+        // all the connections, including the ones being connected
+        private final AtomicInteger openCount = new AtomicInteger();
+        private final AtomicInteger idleCount = new AtomicInteger();
+        private final AtomicInteger busyCount = new AtomicInteger();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicLong connectFailures = new AtomicLong();
+
+        private Partition(final Object id) {
+            this.id = id;
+        }
+
+        private ConnectionPoolStatistics getStatistics() {
+            return new ConnectionPoolStatistics(id, idleCount.get(),
+                    busyCount.get(), pendingCount.get(), connectFailures.get());
+        }
+    } // END Partition
+
+    private final class PooledConnection
+            implements CloseListener<Closeable, CloseType> {
+        private final Partition partition;
+        private final Connection connection;
+        private final boolean keepAlive;
+        private final long createdAt = System.currentTimeMillis();
+        private final AtomicInteger state = new AtomicInteger(BUSY);
+        // incremented on every release, so an idle timeout can tell whether
+        // it's been scheduled for the current idle period
+        private final AtomicInteger generation = new AtomicInteger();
+        private volatile TimeoutWheel.Timeout idleTimeout;
+
+        private PooledConnection(final Partition partition,
+                final Connection connection, final boolean keepAlive) {
+            this.partition = partition;
+            this.connection = connection;
+            this.keepAlive = keepAlive;
+        }
+
+        private boolean isExpired(final long now) {
+            return connectionTTLMillis > 0 && now - createdAt >= connectionTTLMillis;
+        }
+
+        /**
+         * Schedules the connection close, once it's been idle for the
+         * keep-alive timeout, or once its TTL expires.
+         */
+        private void scheduleIdleTimeout(final long now, final int generation) {
+            long delay = keepAliveTimeoutMillis > 0 ? keepAliveTimeoutMillis : -1;
+            if (connectionTTLMillis > 0) {
+                final long ttlLeft = createdAt + connectionTTLMillis - now;
+                delay = delay < 0 ? ttlLeft : Math.min(delay, ttlLeft);
+            }
+
+            if (delay < 0) {
+                return;
+            }
+
+            try {
+                idleTimeout = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        expireIdle(PooledConnection.this, generation);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (IllegalStateException e) {
+                // the provider is closed
+            }
+        }
+
+        private void cancelIdleTimeout() {
+            final TimeoutWheel.Timeout timeout = idleTimeout;
+            if (timeout != null) {
+                idleTimeout = null;
+                timeout.cancel();
+            }
+        }
+
+        @Override
+        public void onClosed(final Closeable closeable, final CloseType type)
+                throws IOException {
+            close(this);
+        }
+    } // END PooledConnection
+}
@@ -26,10 +26,12 @@ import com.ning.http.client.AsyncHandler;
 import com.ning.http.client.FluentCaseInsensitiveStringsMap;
 import com.ning.http.client.MaxRedirectException;
 import com.ning.http.client.ProxyServer;
+import com.ning.http.client.ReadControlledAsyncHandler;
 import com.ning.http.client.Realm;
 import com.ning.http.client.Realm.AuthScheme;
 import com.ning.http.client.Request;
 import com.ning.http.client.RequestBuilder;
+import com.ning.http.client.ResponseBodyTooLargeException;
 import com.ning.http.client.cookie.CookieDecoder;
 import com.ning.http.client.filter.FilterContext;
 import com.ning.http.client.filter.ResponseFilter;
@@ -44,7 +46,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 import org.glassfish.grizzly.Buffer;
 import org.glassfish.grizzly.Connection;
@@ -59,7 +60,6 @@ import org.glassfish.grizzly.http.HttpResponsePacket;
 import org.glassfish.grizzly.http.util.Header;
 import org.glassfish.grizzly.http.util.HttpStatus;
 import org.glassfish.grizzly.utils.Exceptions;
-import org.glassfish.grizzly.utils.IdleTimeoutFilter;
 import org.glassfish.grizzly.websockets.WebSocketHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -138,9 +138,29 @@ final class AhcEventFilter extends HttpClientFilter {
                 HttpTransactionContext.currentTransaction(content.getHttpHeader());
         final AsyncHandler handler = context.getAsyncHandler();
         if (handler != null && context.currentState != AsyncHandler.STATE.ABORT) {
+            if (context.isResponseBodySizeLimited()) {
+                context.totalBodyReceived += content.getContent().remaining();
+                if (context.totalBodyReceived > context.maxResponseBodySize) {
+                    // don't let the handler accumulate the rest of the body,
+                    // the connection is closed
+                    abortTooLargeResponse(content.getHttpHeader(), context);
+                    return;
+                }
+            }
             try {
+                if (handler instanceof ReadControlledAsyncHandler
+                        && context.readControl == null) {
+                    context.readControl = new GrizzlyReadControl(
+                            ctx.getConnection(), provider);
+                    ((ReadControlledAsyncHandler) handler).onReadControl(
+                            context.readControl);
+                }
                 context.currentState = handler.onBodyPartReceived(
                         new GrizzlyResponseBodyPart(content, ctx.getConnection()));
+                if (context.readControl != null && !content.isLast()
+                        && context.currentState != AsyncHandler.STATE.ABORT) {
+                    context.readControl.pauseIfRequested(ctx);
+                }
             } catch (Exception e) {
                 handler.onThrowable(e);
             }
@@ -236,6 +256,7 @@ final class AhcEventFilter extends HttpClientFilter {
         
         context.responsePacket = responsePacket;
         context.responseStatus = responseStatus;
+        context.totalBodyReceived = 0;
         if (context.statusHandler != null) {
             return;
         }
@@ -324,24 +345,8 @@ final class AhcEventFilter extends HttpClientFilter {
                 
                 final Request newRequest = fc.getRequest();
                 final AsyncHandler newHandler = fc.getAsyncHandler();
-                try {
-                    final GrizzlyResponseFuture responseFuture = context.future;
-                    final ConnectionManager m = context.provider.getConnectionManager();
-                    final Connection c = m.openSync(newRequest);
-
-                    final HttpTransactionContext newContext =
-                            context.cloneAndStartTransactionFor(c, newRequest);
-                    responseFuture.setAsyncHandler(newHandler);
-                    responseFuture.setHttpTransactionCtx(newContext);
-                    
-                    try {
-                        provider.execute(newContext);
-                    } catch (IOException ioe) {
-                        newContext.abort(ioe);
-                    }
-                } catch (Exception e) {
-                    context.abort(e);
-                }
+                executeOnNewConnection(context, newRequest,
+                        context.invocationStatus, newHandler);
                 return false;
             }
         }
@@ -369,10 +374,6 @@ final class AhcEventFilter extends HttpClientFilter {
                     ws.onConnect();
                     WebSocketHolder.set(ctx.getConnection(), context.protocolHandler, ws);
                     ((WebSocketUpgradeHandler) context.getAsyncHandler()).onSuccess(context.webSocket);
-                    final int wsTimeout = provider.getClientConfig().getWebSocketTimeout();
-                    IdleTimeoutFilter.setCustomTimeout(ctx.getConnection(),
-                            (wsTimeout <= 0) ? IdleTimeoutFilter.FOREVER : wsTimeout,
-                            TimeUnit.MILLISECONDS);
                     context.done(handler.onCompleted());
                 } else {
                     httpHeader.setSkipRemainder(true);
@@ -386,6 +387,13 @@ final class AhcEventFilter extends HttpClientFilter {
                 context.abort(e);
             }
         } else {
+            if (context.currentState != AsyncHandler.STATE.ABORT
+                    && context.isResponseBodySizeLimited()
+                    && responsePacket.getContentLength() > context.maxResponseBodySize) {
+                // the body would exceed the limit, don't wait for it
+                abortTooLargeResponse(httpHeader, context);
+                return false;
+            }
             if (context.currentState != AsyncHandler.STATE.ABORT) {
                 try {
                     context.currentState = handler.onHeadersReceived(responseHeaders);
@@ -407,13 +415,18 @@ final class AhcEventFilter extends HttpClientFilter {
         
         final boolean result = super.onHttpPacketParsed(httpHeader, ctx);
         
+        final HttpTransactionContext context =
+                HttpTransactionContext.currentTransaction(httpHeader);
+        if (context != null && context.readControl != null) {
+            // the connection may be reused, so it has to be read again
+            context.readControl.resume();
+        }
+
         if (httpHeader.isSkipRemainder()) {
             cleanup(httpHeader.getProcessingState().getHttpContext());
             return result;
         }
         
-        final HttpTransactionContext context =
-                HttpTransactionContext.currentTransaction(httpHeader);
         if (context.establishingTunnel && HttpStatus.OK_200.statusMatches(
                 ((HttpResponsePacket) httpHeader).getStatus())) {
             context.establishingTunnel = false;
@@ -465,10 +478,11 @@ final class AhcEventFilter extends HttpClientFilter {
             public void completed(HttpTransactionContext context) {
                 if (!context.isReuseConnection()) {
                     final Connection c = (Connection) httpContext.getCloseable();
+                    final ConnectionManager cm = context.provider.getConnectionManager();
                     if (!httpContext.getRequest().getProcessingState().isStayAlive()) {
                         context.keepAliveDisabled();
+                        cm.disablePipelining(c);
                     } else {
-                        final ConnectionManager cm = context.provider.getConnectionManager();
                         cm.returnConnection(c);
                     }
                 }
@@ -476,10 +490,72 @@ final class AhcEventFilter extends HttpClientFilter {
         });
     }
 
+    /**
+     * Executes the next request of the transaction (redirect, authentication)
+     * on the connection the current transaction is bound to.
+     */
+    private static void executeOnSameConnection(
+            final HttpTransactionContext httpTransactionContext,
+            final Connection c, final Request nextRequest,
+            final StatusHandler.InvocationStatus invocationStatus) {
+        final HttpTransactionContext newContext =
+                httpTransactionContext.cloneAndStartTransactionFor(
+                        c, nextRequest);
+        newContext.invocationStatus = invocationStatus;
+        
+        try {
+            newContext.provider.execute(newContext);
+        } catch (IOException ioe) {
+            newContext.abort(ioe);
+        }
+    }
+    
+    /**
+     * Executes the next request of the transaction (redirect, authentication,
+     * filter replay) on a new connection. The connection is obtained
+     * asynchronously, so a slow target doesn't block the selector thread
+     * and other connections served by it.
+     * 
+     * @param newHandler the {@link AsyncHandler} to be used by the
+     *        next request, or <tt>null</tt> to keep the current one
+     */
+    private static void executeOnNewConnection(
+            final HttpTransactionContext httpTransactionContext,
+            final Request nextRequest,
+            final StatusHandler.InvocationStatus invocationStatus,
+            final AsyncHandler newHandler) {
+        httpTransactionContext.cloneAndStartTransactionAsync(nextRequest,
+                new EmptyCompletionHandler<HttpTransactionContext>() {
+            @Override
+            public void completed(final HttpTransactionContext newContext) {
+                newContext.invocationStatus = invocationStatus;
+                if (newHandler != null) {
+                    newContext.future.setAsyncHandler(newHandler);
+                }
+                
+                try {
+                    newContext.provider.execute(newContext);
+                } catch (IOException ioe) {
+                    newContext.abort(ioe);
+                } catch (RuntimeException re) {
+                    newContext.abort(re);
+                }
+            }
+        });
+    }
+    
     private static boolean redirectCountExceeded(final HttpTransactionContext context) {
         return context.redirectCount > context.maxRedirectCount;
     }
 
+    private static void abortTooLargeResponse(final HttpHeader httpHeader,
+            final HttpTransactionContext context) {
+        httpHeader.setSkipRemainder(true);
+        context.currentState = AsyncHandler.STATE.ABORT;
+        context.abort(new ResponseBodyTooLargeException(
+                context.maxResponseBodySize));
+    }
+
     private static boolean isRedirect(final int status) {
         return HttpStatus.MOVED_PERMANENTLY_301.statusMatches(status)
                 || HttpStatus.FOUND_302.statusMatches(status)
@@ -524,8 +600,6 @@ final class AhcEventFilter extends HttpClientFilter {
                 return true;
             }
             
-            final GrizzlyAsyncHttpProvider provider =
-                    httpTransactionContext.provider;
             final Request req = httpTransactionContext.getAhcRequest();
 
             try {
@@ -565,35 +639,27 @@ final class AhcEventFilter extends HttpClientFilter {
 
                 responsePacket.setSkipRemainder(true); // ignore the remainder of the response
                 
-                final Connection c;
+                final Request nextRequest = new RequestBuilder(req)
+                        .setRealm(newRealm)
+                        .build();
+                httpTransactionContext.skipCleanup = true;
+                
+                final InvocationStatus nextInvocationStatus = isContinueAuth
+                        ? httpTransactionContext.invocationStatus
+                        : InvocationStatus.STOP;
                 
                 // @TODO we may want to ditch the keep-alive connection if the response payload is too large
                 if (responsePacket.getProcessingState().isKeepAlive()) {
                     // if it's HTTP keep-alive connection - reuse the
                     // same Grizzly Connection
-                    c = ctx.getConnection();
                     httpTransactionContext.reuseConnection();
+                    executeOnSameConnection(httpTransactionContext,
+                            ctx.getConnection(), nextRequest,
+                            nextInvocationStatus);
                 } else {
                     // if it's not keep-alive - take new Connection from the pool
-                    final ConnectionManager m = provider.getConnectionManager();
-                    c = m.openSync(req);
-                }
-                
-                final Request nextRequest = new RequestBuilder(req)
-                        .setRealm(newRealm)
-                        .build();
-                httpTransactionContext.skipCleanup = true;
-                final HttpTransactionContext newContext
-                        = httpTransactionContext.cloneAndStartTransactionFor(
-                                c, nextRequest);
-                if (!isContinueAuth) {
-                    newContext.invocationStatus = InvocationStatus.STOP;
-                }
-                
-                try {
-                    provider.execute(newContext);
-                } catch (IOException ioe) {
-                    newContext.abort(ioe);
+                    executeOnNewConnection(httpTransactionContext,
+                            nextRequest, nextInvocationStatus, null);
                 }
             } catch (Exception e) {
                 httpTransactionContext.abort(e);
@@ -639,9 +705,6 @@ final class AhcEventFilter extends HttpClientFilter {
                 return true;
             }
             
-            final GrizzlyAsyncHttpProvider provider =
-                    httpTransactionContext.provider;
-                        
             final Request req = httpTransactionContext.getAhcRequest();
 
             try {
@@ -674,33 +737,22 @@ final class AhcEventFilter extends HttpClientFilter {
 
                 responsePacket.setSkipRemainder(true); // ignore the remainder of the response
                 
-                final Connection c;
+                final Request nextRequest = new RequestBuilder(req)
+                        .setRealm(newRealm)
+                        .build();
                 
                 // @TODO we may want to ditch the keep-alive connection if the response payload is too large
                 if (responsePacket.getProcessingState().isKeepAlive()) {
                     // if it's HTTP keep-alive connection - reuse the
                     // same Grizzly Connection
-                    c = ctx.getConnection();
                     httpTransactionContext.reuseConnection();
+                    executeOnSameConnection(httpTransactionContext,
+                            ctx.getConnection(), nextRequest,
+                            InvocationStatus.STOP);
                 } else {
                     // if it's not keep-alive - take new Connection from the pool
-                    final ConnectionManager m = provider.getConnectionManager();
-                    c = m.openSync(req);
-                }
-                
-                final Request nextRequest = new RequestBuilder(req)
-                        .setRealm(newRealm)
-                        .build();
-                
-                final HttpTransactionContext newContext
-                        = httpTransactionContext.cloneAndStartTransactionFor(
-                                c, nextRequest);
-                newContext.invocationStatus = InvocationStatus.STOP;
-                
-                try {
-                    provider.execute(newContext);
-                } catch (IOException ioe) {
-                    newContext.abort(ioe);
+                    executeOnNewConnection(httpTransactionContext,
+                            nextRequest, InvocationStatus.STOP, null);
                 }
             } catch (Exception e) {
                 httpTransactionContext.abort(e);
@@ -731,7 +783,6 @@ final class AhcEventFilter extends HttpClientFilter {
             }
                         
             final Request req = httpTransactionContext.getAhcRequest();
-            final GrizzlyAsyncHttpProvider provider = httpTransactionContext.provider;
             
             final Uri origUri = httpTransactionContext.lastRedirectUri == null
                     ? req.getUri()
@@ -748,32 +799,21 @@ final class AhcEventFilter extends HttpClientFilter {
             try {
                 responsePacket.setSkipRemainder(true); // ignore the remainder of the response
                 
-                final Connection c;
+                httpTransactionContext.skipCleanup = true;
 
                 // @TODO we may want to ditch the keep-alive connection if the response payload is too large
                 if (responsePacket.getProcessingState().isKeepAlive() &&
                         isSameHostAndProtocol(origUri, redirectUri)) {
                     // if it's HTTP keep-alive connection - reuse the
                     // same Grizzly Connection
-                    c = ctx.getConnection();
                     httpTransactionContext.reuseConnection();
+                    executeOnSameConnection(httpTransactionContext,
+                            ctx.getConnection(), nextRequest,
+                            InvocationStatus.CONTINUE);
                 } else {
                     // if it's not keep-alive - take new Connection from the pool
-                    final ConnectionManager m = provider.getConnectionManager();
-                    c = m.openSync(nextRequest);
-                }
-
-                httpTransactionContext.skipCleanup = true;
-
-                final HttpTransactionContext newContext =
-                        httpTransactionContext.cloneAndStartTransactionFor(
-                                c, nextRequest);
-                
-                newContext.invocationStatus = InvocationStatus.CONTINUE;
-                try {
-                    provider.execute(newContext);
-                } catch (IOException ioe) {
-                    newContext.abort(ioe);
+                    executeOnNewConnection(httpTransactionContext,
+                            nextRequest, InvocationStatus.CONTINUE, null);
                 }
                 
                 return false;
@@ -74,12 +74,22 @@ final class AsyncHttpClientFilter extends BaseFilter {
     
     private static final HeaderValue KEEP_ALIVE_VALUE = HeaderValue.newHeaderValue("keep-alive");
     private static final HeaderValue CLOSE_VALUE = HeaderValue.newHeaderValue("close");
+    private static final HeaderValue ACCEPT_ALL_VALUE = HeaderValue.newHeaderValue("*/*");
+    private static final HeaderValue GZIP_VALUE = HeaderValue.newHeaderValue("gzip");
 
     private final AsyncHttpClientConfig config;
+    private final HeaderValue userAgentValue;
+    private final RequestCompressionEncoding requestCompression;
+    private final HeaderValue acceptEncodingValue;
 
     // -------------------------------------------------------- Constructors
     AsyncHttpClientFilter(final GrizzlyAsyncHttpProvider provider) {
         this.config = provider.getClientConfig();
+        userAgentValue = config.getUserAgent() != null
+                ? HeaderValue.newHeaderValue(config.getUserAgent())
+                : null;
+        requestCompression = provider.getRequestCompression();
+        acceptEncodingValue = acceptEncodingValue(provider.getContentDecoders());
     }
 
     // --------------------------------------------- Methods from BaseFilter
@@ -125,7 +135,15 @@ final class AsyncHttpClientFilter extends BaseFilter {
             convertToUpgradeRequest(httpTxCtx);
         }
         final Request req = httpTxCtx.getAhcRequest();
-        final Method method = Method.valueOf(ahcRequest.getMethod());
+        // the prepared requests come with the request line and headers
+        // encoded in advance
+        final PreparedRequest prepared =
+                ahcRequest instanceof PreparedRequest && !httpTxCtx.isWSRequest
+                ? (PreparedRequest) ahcRequest
+                : null;
+        final Method method = prepared != null
+                ? prepared.getGrizzlyMethod()
+                : Method.valueOf(ahcRequest.getMethod());
         final Uri uri = req.getUri();
         boolean secure = "https".equals(uri.getScheme());
         final ProxyServer proxy = httpTxCtx.getProxyServer();
@@ -143,10 +161,12 @@ final class AsyncHttpClientFilter extends BaseFilter {
                 .protocol(Protocol.HTTP_1_1)
                 .method(method);
 
-        if (useProxy && !((secure || httpTxCtx.isWSRequest) &&
-                config.isUseRelativeURIsWithConnectProxies())) {
+        final boolean isAbsoluteUri = useProxy &&
+                !((secure || httpTxCtx.isWSRequest) &&
+                config.isUseRelativeURIsWithConnectProxies());
+        if (isAbsoluteUri) {
             builder.uri(uri.toUrl());
-        } else {
+        } else if (prepared == null) {
             builder.uri(AsyncHttpProviderUtils.getNonEmptyPath(uri))
                    .query(uri.getQuery());
         }
@@ -177,14 +197,24 @@ final class AsyncHttpClientFilter extends BaseFilter {
             }
         } else {
             requestPacket = builder.build();
+            if (prepared != null && !isAbsoluteUri) {
+                prepared.setRequestUri(requestPacket);
+            }
         }
         requestPacket.getHeaders().setMaxNumHeaders(config.getMaxRequestHeaders());
         requestPacket.setSecure(secure);
         setupKeepAlive(requestPacket, connection);
         
-        copyHeaders(ahcRequest, requestPacket);
-        addCookies(ahcRequest, requestPacket);
-        addHostHeaderIfNeeded(ahcRequest, uri, requestPacket);
+        if (prepared != null) {
+            prepared.addHeaders(requestPacket);
+            if (!prepared.hasStaticCookies()) {
+                addCookies(ahcRequest, requestPacket);
+            }
+        } else {
+            copyHeaders(ahcRequest, requestPacket);
+            addCookies(ahcRequest, requestPacket);
+            addHostHeaderIfNeeded(ahcRequest, uri, requestPacket);
+        }
         addServiceHeaders(requestPacket);
         addAcceptHeaders(requestPacket);
         
@@ -197,6 +227,13 @@ final class AsyncHttpClientFilter extends BaseFilter {
                     isUsedConnection, false);
         }
 
+        // decided before the body is generated, so the body isn't sent
+        // bypassing the codec, which compresses it
+        httpTxCtx.requestCompressor = payloadGenerator != null && requestCompression != null
+                ? requestCompression.newCompressor(requestPacket,
+                        payloadGenerator.getContentLength(ahcRequest))
+                : null;
+
         ctx.notifyDownstream(new SSLSwitchingEvent(connection, secure,
                 uri.getHost(), uri.getPort()));
 
@@ -428,8 +465,8 @@ final class AsyncHttpClientFilter extends BaseFilter {
     private void addServiceHeaders(final HttpRequestPacket requestPacket) {
         final MimeHeaders headers = requestPacket.getHeaders();
 
-        if (!headers.contains(Header.UserAgent)) {
-            headers.addValue(Header.UserAgent).setString(config.getUserAgent());
+        if (!headers.contains(Header.UserAgent) && userAgentValue != null) {
+            headers.addValue(Header.UserAgent).setBytes(userAgentValue.getByteArray());
         }
         
         setKeepAliveForHeader(Header.Connection, requestPacket);
@@ -466,11 +503,32 @@ final class AsyncHttpClientFilter extends BaseFilter {
     private void addAcceptHeaders(final HttpRequestPacket requestPacket) {
         final MimeHeaders headers = requestPacket.getHeaders();
         if (config.isCompressionEnforced() && !headers.contains(Header.AcceptEncoding)) {
-            headers.addValue(Header.AcceptEncoding).setString("gzip");
+            headers.addValue(Header.AcceptEncoding).setBytes(acceptEncodingValue.getByteArray());
         }
         if (!headers.contains(Header.Accept)) {
-            headers.addValue(Header.Accept).setString("*/*");
+            headers.addValue(Header.Accept).setBytes(ACCEPT_ALL_VALUE.getByteArray());
+        }
+    }
+
+    /**
+     * @return the <tt>Accept-Encoding</tt> value advertising the decoders
+     *          the responses are decompressed with, or <tt>gzip</tt>, if
+     *          the decompression is delegated to the user
+     */
+    private static HeaderValue acceptEncodingValue(
+            final List<ContentDecoder> decoders) {
+        if (decoders.isEmpty()) {
+            return GZIP_VALUE;
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        for (ContentDecoder decoder : decoders) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(decoder.getName());
         }
+        return HeaderValue.newHeaderValue(sb.toString());
     }
 
     private void addCookies(final Request request, final HttpRequestPacket requestPacket) {
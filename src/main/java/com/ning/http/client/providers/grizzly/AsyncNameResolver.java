@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+import com.ning.http.client.NameResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.CompletionHandler;
+import org.glassfish.grizzly.utils.Exceptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves host names using the {@link NameResolver} associated with a
+ * {@link com.ning.http.client.Request}, without blocking the caller.
+ *
+ * Lookups are executed on a small dedicated thread pool, so the Grizzly
+ * selector threads never wait for DNS. Results are kept in a size-bounded
+ * cache: successful lookups for {@link #getTtl()} millis, failed lookups
+ * (negative caching) for {@link #getNegativeTtl()} millis. Concurrent lookups
+ * of the same name are coalesced into a single call to the {@link NameResolver}.
+ *
+ * For the {@link NameResolver.JdkNameResolver} all the addresses of the host
+ * are looked up, so the connect could fall back to the next address, if
+ * the first one is unreachable. Custom resolvers return a single address.
+ *
+ * @author Grizzly team
+ */
+final class AsyncNameResolver {
+    private final static Logger LOGGER = LoggerFactory.getLogger(AsyncNameResolver.class);
+
+    private final ConcurrentHashMap<Key, Entry> cache =
+            new ConcurrentHashMap<Key, Entry>();
+
+    private final long ttl;
+    private final long negativeTtl;
+    private final int maxSize;
+    private final ThreadPoolExecutor executor;
+
+    // ------------------------------------------------------------ Constructors
+
+    AsyncNameResolver(final long ttl, final long negativeTtl,
+            final int maxSize, final int threadsCount) {
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.maxSize = maxSize;
+
+        executor = new ThreadPoolExecutor(threadsCount, threadsCount,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread t = new Thread(r,
+                                "grizzly-ahc-resolver(" + counter.incrementAndGet() + ")");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        // don't keep idle threads around, if the client rarely resolves names
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    // ---------------------------------------------------------- Public Methods
+
+    /**
+     * @return the number of millis a successfully resolved address is cached
+     */
+    long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * @return the number of millis a failed resolution is cached
+     */
+    long getNegativeTtl() {
+        return negativeTtl;
+    }
+
+    /**
+     * Returns all the cached addresses of the host, if any.
+     *
+     * @return the cached {@link InetAddress}es, or <tt>null</tt> if the host
+     *          has to be resolved
+     */
+    InetAddress[] getAllIfCached(final NameResolver resolver, final String host) {
+        final Entry entry = cache.get(new Key(resolver, host));
+        return entry != null
+                ? entry.getAddresses(System.currentTimeMillis())
+                : null;
+    }
+
+    /**
+     * Resolves the host asynchronously. The {@link CompletionHandler} might
+     * be notified in the caller thread, if the result is already cached.
+     */
+    void resolve(final NameResolver resolver, final String host,
+            final CompletionHandler<InetAddress> completionHandler) {
+        resolveAll(resolver, host, new FirstAddressHandler(completionHandler));
+    }
+
+    /**
+     * Resolves all the addresses of the host asynchronously.
+     * The {@link CompletionHandler} might be notified in the caller thread,
+     * if the result is already cached.
+     */
+    void resolveAll(final NameResolver resolver, final String host,
+            final CompletionHandler<InetAddress[]> completionHandler) {
+
+        if (isIpLiteral(host)) {
+            // nothing to look up, the resolver just parses the address
+            try {
+                completionHandler.completed(
+                        new InetAddress[] {resolver.resolve(host)});
+            } catch (UnknownHostException e) {
+                completionHandler.failed(e);
+            }
+            return;
+        }
+
+        final Key key = new Key(resolver, host);
+
+        for (;;) {
+            final Entry entry = cache.get(key);
+            if (entry != null) {
+                if (entry.addWaiter(completionHandler,
+                        System.currentTimeMillis())) {
+                    return;
+                }
+
+                // the entry is expired
+                cache.remove(key, entry);
+                continue;
+            }
+
+            final Entry newEntry = new Entry();
+            if (cache.putIfAbsent(key, newEntry) != null) {
+                // someone is resolving the same name already, join it
+                continue;
+            }
+
+            newEntry.addWaiter(completionHandler, System.currentTimeMillis());
+            trimIfNeeded(newEntry);
+
+            try {
+                executor.execute(new LookupTask(key, newEntry));
+            } catch (RejectedExecutionException e) {
+                cache.remove(key, newEntry);
+                newEntry.complete(null,
+                        Exceptions.makeIOException(e), 0);
+            }
+
+            return;
+        }
+    }
+
+    void destroy() {
+        executor.shutdownNow();
+        cache.clear();
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    private void trimIfNeeded(final Entry keep) {
+        if (cache.size() <= maxSize) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+
+        // drop expired entries first
+        for (Iterator<Map.Entry<Key, Entry>> it = cache.entrySet().iterator(); it.hasNext();) {
+            if (it.next().getValue().isExpired(now)) {
+                it.remove();
+            }
+        }
+
+        // still too big - drop whatever comes first; pending lookups will
+        // still notify their waiters, they just won't be cached
+        for (Iterator<Map.Entry<Key, Entry>> it = cache.entrySet().iterator();
+                cache.size() > maxSize && it.hasNext();) {
+            if (it.next().getValue() != keep) {
+                it.remove();
+            }
+        }
+    }
+
+    private static InetAddress[] lookup(final NameResolver resolver,
+            final String host) throws UnknownHostException {
+        if (resolver == NameResolver.JdkNameResolver.INSTANCE) {
+            return InetAddress.getAllByName(host);
+        }
+
+        final InetAddress address = resolver.resolve(host);
+        return address != null ? new InetAddress[] {address} : null;
+    }
+
+    static boolean isIpLiteral(final String host) {
+        if (host.indexOf(':') != -1) {
+            return true; // IPv6
+        }
+
+        for (int i = 0; i < host.length(); i++) {
+            final char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+
+        return !host.isEmpty();
+    }
+
+    // ----------------------------------------------------------- Inner Classes
+
+    private final class LookupTask implements Runnable {
+        private final Key key;
+        private final Entry entry;
+
+        private LookupTask(final Key key, final Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        @Override
+        public void run() {
+            InetAddress[] addresses = null;
+            Throwable failure = null;
+            long expiresIn;
+
+            try {
+                addresses = lookup(key.resolver, key.host);
+                expiresIn = ttl;
+            } catch (UnknownHostException e) {
+                failure = e;
+                expiresIn = negativeTtl;
+            } catch (Throwable t) {
+                // unexpected resolver error, don't cache it
+                failure = t;
+                expiresIn = 0;
+            }
+
+            if ((addresses == null || addresses.length == 0) && failure == null) {
+                addresses = null;
+                failure = new UnknownHostException(key.host);
+                expiresIn = negativeTtl;
+            }
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Resolved {} to {}", key.host,
+                        addresses != null ? Arrays.toString(addresses) : failure);
+            }
+
+            if (expiresIn <= 0) {
+                cache.remove(key, entry);
+            }
+
+            entry.complete(addresses, failure, expiresIn);
+        }
+    } // END LookupTask
+
+    /**
+     * Adapts the all-addresses lookup to the callers interested in the
+     * first address only.
+     */
+    private static final class FirstAddressHandler
+            implements CompletionHandler<InetAddress[]> {
+        private final CompletionHandler<InetAddress> delegate;
+
+        private FirstAddressHandler(final CompletionHandler<InetAddress> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void completed(final InetAddress[] result) {
+            delegate.completed(result[0]);
+        }
+
+        @Override
+        public void failed(final Throwable throwable) {
+            delegate.failed(throwable);
+        }
+
+        @Override
+        public void cancelled() {
+            delegate.cancelled();
+        }
+
+        @Override
+        public void updated(final InetAddress[] result) {
+        }
+    } // END FirstAddressHandler
+
+    private static final class Key {
+        private final NameResolver resolver;
+        private final String host;
+        private final int hashCode;
+
+        private Key(final NameResolver resolver, final String host) {
+            this.resolver = resolver;
+            this.host = host;
+            this.hashCode = 31 * System.identityHashCode(resolver) + host.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key other = (Key) o;
+            return resolver == other.resolver && host.equals(other.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    } // END Key
+
+    private static final class Entry {
+        // guarded by this
+        private List<CompletionHandler<InetAddress[]>> waiters =
+                new ArrayList<CompletionHandler<InetAddress[]>>(2);
+
+        private volatile boolean isDone;
+        private volatile InetAddress[] addresses;
+        private volatile Throwable failure;
+        private volatile long expiresAt;
+
+        /**
+         * @return the resolved addresses, if the entry is done, successful and
+         *          not expired, or <tt>null</tt> otherwise
+         */
+        InetAddress[] getAddresses(final long now) {
+            return isDone && now < expiresAt ? addresses : null;
+        }
+
+        boolean isExpired(final long now) {
+            return isDone && now >= expiresAt;
+        }
+
+        /**
+         * Registers the {@link CompletionHandler} to be notified once the
+         * lookup is done. Notifies the handler right away, if the result is
+         * already known.
+         *
+         * @return <tt>false</tt>, if the entry is expired and can't be used
+         */
+        boolean addWaiter(final CompletionHandler<InetAddress[]> completionHandler,
+                final long now) {
+            if (!isDone) {
+                synchronized (this) {
+                    if (!isDone) {
+                        waiters.add(completionHandler);
+                        return true;
+                    }
+                }
+            }
+
+            if (now >= expiresAt) {
+                return false;
+            }
+
+            notify(completionHandler, addresses, failure);
+            return true;
+        }
+
+        void complete(final InetAddress[] addresses, final Throwable failure,
+                final long expiresIn) {
+            final List<CompletionHandler<InetAddress[]>> waitersLocal;
+            synchronized (this) {
+                this.addresses = addresses;
+                this.failure = failure;
+                this.expiresAt = System.currentTimeMillis() + expiresIn;
+                isDone = true;
+
+                waitersLocal = waiters;
+                waiters = null;
+            }
+
+            for (CompletionHandler<InetAddress[]> waiter : waitersLocal) {
+                notify(waiter, addresses, failure);
+            }
+        }
+
+        private static void notify(final CompletionHandler<InetAddress[]> completionHandler,
+                final InetAddress[] addresses, final Throwable failure) {
+            try {
+                if (failure == null) {
+                    completionHandler.completed(addresses);
+                } else {
+                    completionHandler.failed(failure);
+                }
+            } catch (Throwable t) {
+                LOGGER.warn("Unexpected error notifying name resolution listener", t);
+            }
+        }
+    } // END Entry
+}
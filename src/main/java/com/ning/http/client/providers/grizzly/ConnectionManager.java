@@ -13,30 +13,41 @@
 package com.ning.http.client.providers.grizzly;
 
 import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.NameResolver;
 import com.ning.http.client.ProxyServer;
-import com.ning.http.client.Realm;
 import com.ning.http.client.Request;
+import com.ning.http.client.RequestBuilder;
 import com.ning.http.client.uri.Uri;
 import com.ning.http.util.ProxyUtils;
-import com.ning.http.util.StringUtils;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.nio.charset.Charset;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.net.ssl.SSLEngine;
+
+import org.glassfish.grizzly.CloseListener;
+import org.glassfish.grizzly.CloseType;
+import org.glassfish.grizzly.Closeable;
 import org.glassfish.grizzly.CompletionHandler;
 import org.glassfish.grizzly.Connection;
 import org.glassfish.grizzly.ConnectorHandler;
+import org.glassfish.grizzly.EmptyCompletionHandler;
 import org.glassfish.grizzly.Grizzly;
 import org.glassfish.grizzly.GrizzlyFuture;
 import org.glassfish.grizzly.attributes.Attribute;
@@ -44,9 +55,20 @@ import org.glassfish.grizzly.connectionpool.ConnectionInfo;
 import org.glassfish.grizzly.connectionpool.Endpoint;
 import org.glassfish.grizzly.connectionpool.MultiEndpointPool;
 import org.glassfish.grizzly.connectionpool.SingleEndpointPool;
+import org.glassfish.grizzly.impl.FutureImpl;
 import org.glassfish.grizzly.nio.transport.TCPNIOConnectorHandler;
 import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
-import org.glassfish.grizzly.utils.Exceptions;
+import org.glassfish.grizzly.ssl.SSLUtils;
+import org.glassfish.grizzly.utils.Futures;
+
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.AHC_CONNECTION_POOL;
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.CONNECT_ATTEMPT_DELAY;
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.CONNECT_FAILURE_COOLDOWN;
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.DNS_CACHE_MAX_SIZE;
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.DNS_CACHE_TTL;
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.DNS_NEGATIVE_CACHE_TTL;
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.DNS_RESOLVER_THREADS;
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.MAX_PIPELINED_REQUESTS;
 
 /**
  * Connection manager.
@@ -57,16 +79,33 @@ class ConnectionManager {
     private static final Attribute<Boolean> IS_NOT_KEEP_ALIVE =
             Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(
                     ConnectionManager.class.getName() + ".is-not-keepalive");
+    private static final Attribute<Pipeline> PIPELINE_ATTR =
+            Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(
+                    ConnectionManager.class.getName() + ".pipeline");
 
     private final boolean poolingEnabled;
     private final MultiEndpointPool<SocketAddress> pool;
+    private final AhcConnectionPool ahcPool;
 
     private final TCPNIOTransport transport;
     private final TCPNIOConnectorHandler defaultConnectionHandler;
     private final AsyncHttpClientConfig config;
     private final boolean poolingSSLConnections;
-    private final Map<String, Endpoint> endpointMap =
-            new ConcurrentHashMap<String,Endpoint>();
+    private final Map<PartitionKey, Endpoint<SocketAddress>> endpointMap =
+            new ConcurrentHashMap<PartitionKey, Endpoint<SocketAddress>>();
+    private final AsyncNameResolver nameResolver;
+    private final HappyEyeballsConnector multiAddressConnector;
+    
+    private final SwitchingSSLFilter sslFilter;
+    private ScheduledExecutorService prewarmingExecutor;
+    // the connections to the prewarmed endpoints, so the idle ones could be
+    // counted, if the Grizzly MultiEndpointPool is used
+    private final ConcurrentHashMap<Object, Set<Connection>> prewarmedConnections =
+            new ConcurrentHashMap<Object, Set<Connection>>();
+
+    private final int maxPipelinedRequests;
+    private final ConcurrentHashMap<PartitionKey, Queue<Pipeline>> pipelinesMap =
+            new ConcurrentHashMap<PartitionKey, Queue<Pipeline>>();
 
     // -------------------------------------------------------- Constructors
     ConnectionManager(final GrizzlyAsyncHttpProvider provider,
@@ -79,10 +118,39 @@ class ConnectionManager {
         this.poolingSSLConnections = config.isAllowPoolingSslConnections();
 
         defaultConnectionHandler = TCPNIOConnectorHandler.builder(transport).build();
+        sslFilter = provider.getSslFilter();
+
+        nameResolver = new AsyncNameResolver(
+                getIntProperty(providerConfig, DNS_CACHE_TTL),
+                getIntProperty(providerConfig, DNS_NEGATIVE_CACHE_TTL),
+                getIntProperty(providerConfig, DNS_CACHE_MAX_SIZE),
+                getIntProperty(providerConfig, DNS_RESOLVER_THREADS));
+        multiAddressConnector = new HappyEyeballsConnector(
+                defaultConnectionHandler, provider.getTimeoutWheel(),
+                getIntProperty(providerConfig, CONNECT_ATTEMPT_DELAY),
+                getIntProperty(providerConfig, CONNECT_FAILURE_COOLDOWN));
+
+        // pipelining makes sense only if connections are kept alive
+        maxPipelinedRequests = poolingEnabled
+                ? getIntProperty(providerConfig, MAX_PIPELINED_REQUESTS)
+                : 0;
 
         if (providerConfig != null && providerConfig.getConnectionPool() != null) {
             pool = providerConfig.getConnectionPool();
+            ahcPool = null;
+        } else if (providerConfig != null
+                && (Boolean) providerConfig.getProperty(AHC_CONNECTION_POOL)) {
+            pool = null;
+            ahcPool = new AhcConnectionPool(
+                    config.getMaxConnections(),
+                    config.getMaxConnectionsPerHost(),
+                    config.getConnectTimeout(),
+                    poolingEnabled ? config.getPooledConnectionIdleTimeout() : 0,
+                    config.getConnectionTTL(),
+                    provider.getTimeoutWheel());
         } else {
+            ahcPool = null;
+
             if (poolingEnabled) {
                 final MultiEndpointPool.Builder<SocketAddress> builder
                         = MultiEndpointPool.builder(SocketAddress.class)
@@ -121,41 +189,214 @@ class ConnectionManager {
             throws IOException {
 
         final ProxyServer proxy = ProxyUtils.getProxyServer(config, request);
+        final PartitionKey partitionKey = PartitionKey.of(request, proxy);
+        final Endpoint<SocketAddress> endpoint =
+                getEndpoint(request, proxy, partitionKey);
 
-        final String scheme;
-        final String host;
-        final int port;
-        if (proxy != null) {
-            scheme = proxy.getProtocol().getProtocol();
-            host = proxy.getHost();
-            port = getPort(scheme, proxy.getPort());
-        } else {
-            final Uri uri = request.getUri();
-            scheme = uri.getScheme();
-            host = uri.getHost();
-            port = getPort(scheme, uri.getPort());
+        if (maxPipelinedRequests > 1 && proxy == null
+                && isPipelinable(request)) {
+            final Pipeline pipeline = pollPipeline(partitionKey);
+            if (pipeline != null) {
+                // write the request right after the ones in flight
+                completionHandler.completed(pipeline.connection);
+            } else {
+                take(endpoint,
+                        new PipelineStarter(partitionKey, completionHandler));
+            }
+            
+            return;
+        }
+        
+        take(endpoint, completionHandler);
+    }
+
+    /**
+     * Opens connections to the {@link Request}'s endpoint ahead of time,
+     * including the TLS handshake, and returns them to the pool, so at least
+     * the given number of idle connections are ready for the requests to come.
+     * Only the missing connections are opened, the pooled ones are never
+     * taken, so the requests in progress are not affected.
+     * The {@link CompletionHandler} is notified with the number of
+     * connections, which have been warmed up.
+     */
+    void prewarm(final Request request, final int connections,
+            final CompletionHandler<Integer> completionHandler) {
+        final ProxyServer proxy = ProxyUtils.getProxyServer(config, request);
+        final Uri uri = request.getUri();
+        // the TLS handshake through a proxy requires the CONNECT tunnel,
+        // which is established per request
+        final boolean isSecure = proxy == null && Utils.isSecure(uri);
+
+        if (connections <= 0 || !poolingEnabled
+                || (isSecure && !poolingSSLConnections)) {
+            completionHandler.completed(0);
+            return;
         }
 
-        String partitionId = getPartitionId(request.getInetAddress(), request, proxy);
+        final Endpoint<SocketAddress> endpoint;
+        try {
+            endpoint = getEndpoint(request, proxy,
+                    PartitionKey.of(request, proxy));
+        } catch (Exception e) {
+            completionHandler.failed(e);
+            return;
+        }
 
-        Endpoint endpoint = endpointMap.get(partitionId);
-        if (endpoint == null) {
-            final boolean isSecure = Utils.isSecure(scheme);
-            // Note that a different endpoint POJO is not needed for the authenticated endpoints, since
-            // the "real" identifier used (in its hashcode impl.) is the partitionId.
-            endpoint = new AhcEndpoint(partitionId,
-                                       isSecure, request.getInetAddress(), host, port, request.getLocalAddress(),
-                                       defaultConnectionHandler);
-            endpointMap.put(partitionId, endpoint);
+        final int missing = getMissingCount(endpoint, connections);
+        if (missing <= 0) {
+            completionHandler.completed(0);
+            return;
         }
 
-        pool.take(endpoint, completionHandler);
+        final Prewarmer prewarmer = new Prewarmer(endpoint, missing,
+                isSecure ? uri : null, completionHandler);
+        for (int i = 0; i < missing; i++) {
+            open(endpoint, prewarmer);
+        }
     }
 
-    Connection openSync(final Request request)
-            throws IOException {
+    /**
+     * Starts keeping the configured minimum of idle connections to
+     * the prewarmed hosts, see
+     * {@link AsyncHttpClientConfig#getMinIdleConnectionsPerHost()}.
+     */
+    void startPrewarming() {
+        final int minIdleConnections = config.getMinIdleConnectionsPerHost();
+        final List<String> hosts = config.getPrewarmedHosts();
+        if (minIdleConnections <= 0 || hosts.isEmpty() || !poolingEnabled) {
+            return;
+        }
 
-        final ProxyServer proxy = ProxyUtils.getProxyServer(config, request);
+        prewarmingExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "grizzly-ahc-prewarmer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        for (String host : hosts) {
+            final Request request = new RequestBuilder("GET").setUrl(host).build();
+            final AtomicBoolean isInProgress = new AtomicBoolean();
+
+            // idle connections might be closed or used at any time,
+            // so check the minimum regularly, like the pool checks keep-alive
+            prewarmingExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isInProgress.compareAndSet(false, true)) {
+                        return;
+                    }
+
+                    prewarm(request, minIdleConnections,
+                            new EmptyCompletionHandler<Integer>() {
+                        @Override
+                        public void completed(final Integer result) {
+                            isInProgress.set(false);
+                        }
+
+                        @Override
+                        public void failed(final Throwable throwable) {
+                            isInProgress.set(false);
+                        }
+                    });
+                }
+            }, 0, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    boolean returnConnection(final Connection c) {
+        final Pipeline pipeline = PIPELINE_ATTR.get(c);
+        if (pipeline != null && !pipeline.onResponseReceived()) {
+            // there are pipelined requests waiting for responses
+            return true;
+        }
+        
+        return ahcPool != null ? ahcPool.release(c) : pool.release(c);
+    }
+
+    /**
+     * Makes sure no more requests are pipelined on the {@link Connection},
+     * because the peer is going to close it.
+     */
+    void disablePipelining(final Connection c) {
+        final Pipeline pipeline = PIPELINE_ATTR.get(c);
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    /**
+     * @return <tt>true</tt>, if requests might be pipelined on the
+     *          {@link Connection}, or <tt>false</tt> otherwise
+     */
+    static boolean isPipelined(final Connection c) {
+        return PIPELINE_ATTR.isSet(c);
+    }
+
+    /**
+     * Only idempotent requests without a body are pipelined, so they can
+     * be safely replayed, if the connection is closed before the response
+     * is received.
+     */
+    static boolean isPipelinable(final Request request) {
+        final String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)
+                || request.getStreamData() != null
+                || request.getBodyGenerator() != null) {
+            return false;
+        }
+        
+        final String scheme = request.getUri().getScheme();
+        return "http".equalsIgnoreCase(scheme)
+                || "https".equalsIgnoreCase(scheme);
+    }
+
+    void destroy() {
+        if (prewarmingExecutor != null) {
+            prewarmingExecutor.shutdownNow();
+        }
+        if (ahcPool != null) {
+            ahcPool.close();
+        } else {
+            pool.close();
+        }
+        nameResolver.destroy();
+        multiAddressConnector.close();
+    }
+
+    boolean isReadyInPool(final Connection c) {
+        if (ahcPool != null) {
+            return ahcPool.isReady(c);
+        }
+
+        final ConnectionInfo<SocketAddress> ci = pool.getConnectionInfo(c);
+        return ci != null && ci.isReady();
+    }
+
+    /**
+     * @return the per-partition statistics, if the {@link AhcConnectionPool}
+     *          is used, or an empty {@link Map} otherwise
+     */
+    Map<Object, ConnectionPoolStatistics> getConnectionPoolStatistics() {
+        return ahcPool != null
+                ? ahcPool.getStatistics()
+                : Collections.<Object, ConnectionPoolStatistics>emptyMap();
+    }
+
+    static boolean isKeepAlive(final Connection connection) {
+        return !IS_NOT_KEEP_ALIVE.isSet(connection);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Endpoint<SocketAddress> getEndpoint(final Request request,
+            final ProxyServer proxy, final PartitionKey partitionKey) {
+        Endpoint<SocketAddress> endpoint = endpointMap.get(partitionKey);
+        if (endpoint != null) {
+            return endpoint;
+        }
 
         final String scheme;
         final String host;
@@ -172,97 +413,183 @@ class ConnectionManager {
         }
 
         final boolean isSecure = Utils.isSecure(scheme);
+        // Note that a different endpoint POJO is not needed for the authenticated endpoints, since
+        // the "real" identifier used (in its hashcode impl.) is the partitionKey.
+        endpoint = new AhcEndpoint(partitionKey,
+                                   isSecure, request.getInetAddress(), host, port, request.getLocalAddress(),
+                                   request.getNameResolver(), defaultConnectionHandler);
+        endpointMap.put(partitionKey, endpoint);
 
-        final String partitionId = getPartitionId(request.getInetAddress(), request, proxy);
-        Endpoint endpoint = endpointMap.get(partitionId);
-        if (endpoint == null) {
-            endpoint = new AhcEndpoint(partitionId,
-                    isSecure, request.getInetAddress(), host, port, request.getLocalAddress(),
-                    defaultConnectionHandler);
+        return endpoint;
+    }
 
-            endpointMap.put(partitionId, endpoint);
+    private void take(final Endpoint<SocketAddress> endpoint,
+            final CompletionHandler<Connection> completionHandler) {
+        if (ahcPool == null) {
+            final Set<Connection> tracked =
+                    prewarmedConnections.get(endpoint.getId());
+            pool.take(endpoint, tracked != null
+                    ? new TrackingHandler(tracked, completionHandler)
+                    : completionHandler);
+            return;
         }
 
-        Connection c = pool.poll(endpoint);
+        final boolean keepAlive = isKeepAlive(endpoint);
+        ahcPool.take(endpoint, keepAlive, keepAlive
+                ? completionHandler
+                : new NotKeepAliveHandler(completionHandler));
+    }
 
-        if (c == null) {
-            final Future<Connection> future =
-                    defaultConnectionHandler.connect(
-                    new InetSocketAddress(host, port),
-                    request.getLocalAddress() != null
-                            ? new InetSocketAddress(request.getLocalAddress(), 0)
-                            : null);
+    /**
+     * Opens a new {@link Connection} to the {@link Endpoint}, bypassing
+     * the idle connections in the pool.
+     */
+    private void open(final Endpoint<SocketAddress> endpoint,
+            final CompletionHandler<Connection> completionHandler) {
+        if (ahcPool == null) {
+            // attached to the pool, once warmed up
+            endpoint.connect().addCompletionHandler(completionHandler);
+            return;
+        }
 
-            final int cTimeout = config.getConnectTimeout();
-            try {
-                c = cTimeout > 0
-                        ? future.get(cTimeout, TimeUnit.MILLISECONDS)
-                        : future.get();
-            } catch (ExecutionException ee) {
-                throw Exceptions.makeIOException(ee.getCause());
-            } catch (Exception e) {
-                throw Exceptions.makeIOException(e);
-            } finally {
-                future.cancel(false);
+        final boolean keepAlive = isKeepAlive(endpoint);
+        ahcPool.open(endpoint, keepAlive, keepAlive
+                ? completionHandler
+                : new NotKeepAliveHandler(completionHandler));
+    }
+
+    /**
+     * Returns the new {@link Connection}, opened by {@link #open}, to the pool.
+     */
+    private void release(final Endpoint<SocketAddress> endpoint,
+            final Connection connection) {
+        if (ahcPool != null) {
+            ahcPool.release(connection);
+            return;
+        }
+
+        try {
+            if (pool.attach(endpoint, connection) && pool.release(connection)) {
+                track(getTrackedConnections(endpoint), connection);
+                return;
             }
+        } catch (IOException e) {
+            // the pool is closed
         }
 
-        assert c != null; // either connection is not null or exception thrown
-        return c;
+        connection.closeSilently();
     }
 
-    boolean returnConnection(final Connection c) {
-        return pool.release(c);
+    private boolean isKeepAlive(final Endpoint<SocketAddress> endpoint) {
+        return poolingEnabled
+                && config.getPooledConnectionIdleTimeout() != 0
+                && (poolingSSLConnections || !((AhcEndpoint) endpoint).isSecure());
     }
 
-    void destroy() {
-        pool.close();
-    }
+    /**
+     * @return the number of connections to open, so the given number of
+     *          idle connections to the {@link Endpoint} are in the pool
+     */
+    private int getMissingCount(final Endpoint<SocketAddress> endpoint,
+            final int connections) {
+        if (ahcPool != null) {
+            // the pool itself refuses to open more connections than allowed
+            return connections - ahcPool.getIdleCount(endpoint.getId());
+        }
 
-    boolean isReadyInPool(final Connection c) {
-        final ConnectionInfo<SocketAddress> ci = pool.getConnectionInfo(c);
-        return ci != null && ci.isReady();
+        final Set<Connection> tracked = getTrackedConnections(endpoint);
+        int idle = 0;
+        for (Connection connection : tracked) {
+            if (isReadyInPool(connection)) {
+                idle++;
+            }
+        }
+
+        final int maxConnections = config.getMaxConnectionsPerHost();
+        return maxConnections > 0
+                ? Math.min(connections - idle, maxConnections - tracked.size())
+                : connections - idle;
     }
 
-    static boolean isKeepAlive(final Connection connection) {
-        return !IS_NOT_KEEP_ALIVE.isSet(connection);
+    /**
+     * @return the connections to the {@link Endpoint}, which are tracked
+     *          from now on
+     */
+    private Set<Connection> getTrackedConnections(
+            final Endpoint<SocketAddress> endpoint) {
+        Set<Connection> connections = prewarmedConnections.get(endpoint.getId());
+        if (connections == null) {
+            final Set<Connection> newConnections = Collections.newSetFromMap(
+                    new ConcurrentHashMap<Connection, Boolean>());
+            connections = prewarmedConnections.putIfAbsent(endpoint.getId(),
+                    newConnections);
+            if (connections == null) {
+                connections = newConnections;
+            }
+        }
+
+        return connections;
     }
 
-    private static String getPartitionId(InetAddress overrideAddress, Request request,
-            ProxyServer proxyServer) {
-        String partitionId = (overrideAddress != null ? overrideAddress.toString() + "_" : "") +
-                   request.getConnectionPoolPartitioning()
-                           .getPartitionKey(request.getUri(), proxyServer).toString();
-
-        // In the NTLM case, add the authentication credentials in the partition id, since one
-        // connection per target-credentials pair should be used.
-        if (request.getRealm() != null &&
-            request.getRealm().getScheme().equals(Realm.AuthScheme.NTLM)) {
-            Realm requestRealm = request.getRealm();
-            String partitionIdCredentialsTail = requestRealm.getPrincipal()
-                    .concat(requestRealm.getPrincipal())
-                    .concat(requestRealm.getPassword())
-                    .concat(requestRealm.getNtlmDomain())
-                    .concat(requestRealm.getNtlmHost());
+    private static void track(final Set<Connection> connections,
+            final Connection connection) {
+        if (connections.add(connection)) {
+            connection.addCloseListener(new CloseListener<Closeable, CloseType>() {
+                @Override
+                public void onClosed(final Closeable closeable,
+                        final CloseType type) throws IOException {
+                    connections.remove(connection);
+                }
+            });
+        }
+    }
 
-            try {
-                // Use a SHA-256 hash to encrypt the NTLM credentials use as connection storage key
-                // No salt should be added since that storage is used as cache, so the key should
-                // allow connection retrieval
-                MessageDigest sha256Digester = MessageDigest.getInstance("SHA-256");
-                sha256Digester.update(partitionIdCredentialsTail.getBytes(Charset.forName("UTF-8")));
-                partitionIdCredentialsTail = StringUtils.toHexString(sha256Digester.digest());
-                partitionId = partitionId.concat(partitionIdCredentialsTail);
+    private Pipeline pollPipeline(final PartitionKey partitionKey) {
+        final Queue<Pipeline> pipelines = pipelinesMap.get(partitionKey);
+        if (pipelines == null) {
+            return null;
+        }
+        
+        for (Pipeline pipeline : pipelines) {
+            if (pipeline.tryAdd(maxPipelinedRequests)) {
+                return pipeline;
             }
-            catch (NoSuchAlgorithmException e) {
-                e.printStackTrace();
+        }
+        
+        return null;
+    }
+
+    private void addPipeline(final Pipeline pipeline) {
+        Queue<Pipeline> pipelines = pipelinesMap.get(pipeline.partitionKey);
+        if (pipelines == null) {
+            final Queue<Pipeline> newPipelines =
+                    new ConcurrentLinkedQueue<Pipeline>();
+            pipelines = pipelinesMap.putIfAbsent(pipeline.partitionKey,
+                    newPipelines);
+            if (pipelines == null) {
+                pipelines = newPipelines;
             }
         }
+        
+        pipelines.add(pipeline);
+    }
+    
+    private void removePipeline(final Pipeline pipeline) {
+        final Queue<Pipeline> pipelines = pipelinesMap.get(pipeline.partitionKey);
+        if (pipelines != null) {
+            pipelines.remove(pipeline);
+        }
+    }
 
-        return partitionId;
+    private static int getIntProperty(
+            final GrizzlyAsyncHttpProviderConfig providerConfig,
+            final GrizzlyAsyncHttpProviderConfig.Property property) {
+        return (Integer) (providerConfig != null
+                ? providerConfig.getProperty(property)
+                : property.defaultValue);
     }
 
-    private static int getPort(final String scheme, final int p) {
+    static int getPort(final String scheme, final int p) {
         int port = p;
         if (port == -1) {
             final String protocol = scheme.toLowerCase(Locale.ENGLISH);
@@ -279,26 +606,29 @@ class ConnectionManager {
 
     private class AhcEndpoint extends Endpoint<SocketAddress> {
 
-        private final String partitionId;
+        private final PartitionKey partitionKey;
         private final boolean isSecure;
         private final InetAddress remoteOverrideAddress;
         private final String host;
         private final int port;
         private final InetAddress localAddress;
+        private final NameResolver hostResolver;
         private final ConnectorHandler<SocketAddress> connectorHandler;
 
-        private AhcEndpoint(final String partitionId,
+        private AhcEndpoint(final PartitionKey partitionKey,
                 final boolean isSecure,
                 final InetAddress remoteOverrideAddress, final String host, final int port,
                 final InetAddress localAddress,
+                final NameResolver hostResolver,
                 final ConnectorHandler<SocketAddress> connectorHandler) {
 
-            this.partitionId = partitionId;
+            this.partitionKey = partitionKey;
             this.isSecure = isSecure;
             this.remoteOverrideAddress = remoteOverrideAddress;
             this.host = host;
             this.port = port;
             this.localAddress = localAddress;
+            this.hostResolver = hostResolver;
             this.connectorHandler = connectorHandler;
         }
 
@@ -308,23 +638,78 @@ class ConnectionManager {
 
         @Override
         public Object getId() {
-            return partitionId;
+            return partitionKey;
         }
 
         @Override
         public GrizzlyFuture<Connection> connect() {
-            return (GrizzlyFuture<Connection>) connectorHandler.connect(
-                    buildRemoteSocketAddress(),
-                    localAddress != null
-                            ? new InetSocketAddress(localAddress, 0)
-                            : null);
+            final InetAddress[] addresses = getResolvedAddresses();
+            if (addresses != null && addresses.length == 1) {
+                return (GrizzlyFuture<Connection>) connectorHandler.connect(
+                        new InetSocketAddress(addresses[0], port),
+                        buildLocalSocketAddress());
+            }
+
+            final FutureImpl<Connection> future = Futures.createSafeFuture();
+            final ResolvedAddressHandler handler = new ResolvedAddressHandler(future) {
+
+                @Override
+                protected void connect(final InetAddress[] addresses) {
+                    connectAny(addresses, future, null);
+                }
+            };
+
+            if (addresses != null) {
+                handler.completed(addresses);
+            } else {
+                nameResolver.resolveAll(hostResolver, host, handler);
+            }
+
+            return future;
         }
 
-        private InetSocketAddress buildRemoteSocketAddress()
-        {
-            return remoteOverrideAddress != null
-                    ? new InetSocketAddress(remoteOverrideAddress, port)
-                    : new InetSocketAddress(host, port);
+        /**
+         * @return the remote addresses, if known without a DNS lookup,
+         *          or <tt>null</tt> otherwise
+         */
+        private InetAddress[] getResolvedAddresses() {
+            if (remoteOverrideAddress != null) {
+                return new InetAddress[] {remoteOverrideAddress};
+            }
+
+            return nameResolver.getAllIfCached(hostResolver, host);
+        }
+
+        /**
+         * Connects to the single address directly, or races the connects
+         * across the addresses otherwise. Once the future is cancelled,
+         * the race is stopped.
+         */
+        private void connectAny(final InetAddress[] addresses,
+                final FutureImpl<Connection> future,
+                final CompletionHandler<Connection> completionHandler) {
+            final ConnectFutureHandler connectHandler =
+                    new ConnectFutureHandler(future, completionHandler);
+            if (addresses.length == 1) {
+                connectorHandler.connect(new InetSocketAddress(addresses[0], port),
+                        buildLocalSocketAddress(), connectHandler);
+            } else {
+                final HappyEyeballsConnector.ConnectAttempt attempt =
+                        multiAddressConnector.connect(addresses, port,
+                                buildLocalSocketAddress(), connectHandler);
+                future.addCompletionHandler(new EmptyCompletionHandler<Connection>() {
+                    @Override
+                    public void cancelled() {
+                        attempt.cancel();
+                    }
+                });
+            }
+        }
+
+        private InetSocketAddress buildLocalSocketAddress() {
+            return localAddress != null
+                    ? new InetSocketAddress(localAddress, 0)
+                    : null;
         }
 
         @Override
@@ -335,16 +720,390 @@ class ConnectionManager {
             }
         }
 
-		@Override
-		public GrizzlyFuture<Connection> connect(CompletionHandler<Connection> completionHandler) {
-            return (GrizzlyFuture<Connection>) connectorHandler.connect(
-                    buildRemoteSocketAddress(),
-                    localAddress != null
-                            ? new InetSocketAddress(localAddress, 0)
-                            : null, completionHandler, true, true);
-		}
+        @Override
+        public GrizzlyFuture<Connection> connect(
+                final CompletionHandler<Connection> completionHandler) {
+            final InetAddress[] addresses = getResolvedAddresses();
+            if (addresses != null && addresses.length == 1) {
+                return (GrizzlyFuture<Connection>) connectorHandler.connect(
+                        new InetSocketAddress(addresses[0], port),
+                        buildLocalSocketAddress(),
+                        completionHandler, true, true);
+            }
+
+            final FutureImpl<Connection> future = Futures.createSafeFuture();
+            final ResolvedAddressHandler handler =
+                    new ResolvedAddressHandler(future, completionHandler) {
+
+                @Override
+                protected void connect(final InetAddress[] addresses) {
+                    connectAny(addresses, future, completionHandler);
+                }
+            };
+
+            if (addresses != null) {
+                handler.completed(addresses);
+            } else {
+                nameResolver.resolveAll(hostResolver, host, handler);
+            }
+
+            return future;
+        }
+
+        /**
+         * Initiates the connect, once the remote host name is resolved,
+         * or fails the connect future otherwise.
+         */
+        private abstract class ResolvedAddressHandler
+                implements CompletionHandler<InetAddress[]> {
+            private final FutureImpl<Connection> future;
+            private final CompletionHandler<Connection> completionHandler;
+
+            private ResolvedAddressHandler(final FutureImpl<Connection> future) {
+                this(future, null);
+            }
+
+            private ResolvedAddressHandler(final FutureImpl<Connection> future,
+                    final CompletionHandler<Connection> completionHandler) {
+                this.future = future;
+                this.completionHandler = completionHandler;
+            }
+
+            protected abstract void connect(InetAddress[] addresses);
+
+            @Override
+            public void completed(final InetAddress[] addresses) {
+                if (future.isDone()) {
+                    return; // cancelled meanwhile
+                }
+
+                try {
+                    connect(addresses);
+                } catch (Throwable t) {
+                    failed(t);
+                }
+            }
+
+            @Override
+            public void failed(final Throwable throwable) {
+                Futures.notifyFailure(future, completionHandler, throwable);
+            }
+
+            @Override
+            public void cancelled() {
+                Futures.notifyCancel(future, completionHandler);
+            }
+
+            @Override
+            public void updated(final InetAddress[] result) {
+            }
+        } // END ResolvedAddressHandler
     }
 
+    /**
+     * Tracks the number of requests in flight on a pipelined {@link Connection}.
+     * Once all the responses are received, the connection is returned to
+     * the pool and can be used for any kind of request again.
+     */
+    private final class Pipeline implements CloseListener<Closeable, CloseType> {
+        private static final int CLOSED = Integer.MIN_VALUE;
+        
+        private final PartitionKey partitionKey;
+        private final Connection connection;
+        private final AtomicInteger inFlight = new AtomicInteger(1);
+
+        private Pipeline(final PartitionKey partitionKey, final Connection connection) {
+            this.partitionKey = partitionKey;
+            this.connection = connection;
+        }
+
+        private boolean tryAdd(final int max) {
+            for (;;) {
+                final int current = inFlight.get();
+                if (current <= 0 || current >= max) {
+                    // either the pipeline is full, or the connection is
+                    // about to return to the pool, or is closed
+                    return false;
+                }
+                
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+        
+        /**
+         * @return <tt>true</tt> if no more responses are expected and
+         *          the {@link Connection} can be returned to the pool
+         */
+        private boolean onResponseReceived() {
+            for (;;) {
+                final int current = inFlight.get();
+                if (current == CLOSED) {
+                    return true;
+                }
+                
+                if (inFlight.compareAndSet(current, current - 1)) {
+                    if (current - 1 > 0) {
+                        return false;
+                    }
+                    
+                    detach();
+                    return true;
+                }
+            }
+        }
+        
+        private void close() {
+            inFlight.set(CLOSED);
+            detach();
+        }
+
+        private void detach() {
+            removePipeline(this);
+            if (PIPELINE_ATTR.get(connection) == this) {
+                PIPELINE_ATTR.remove(connection);
+            }
+            connection.removeCloseListener(this);
+        }
+        
+        @Override
+        public void onClosed(final Closeable closeable, final CloseType type)
+                throws IOException {
+            close();
+        }
+    } // END Pipeline
+    
+    /**
+     * Registers a {@link Connection} taken from the pool as a {@link Pipeline},
+     * so the following requests to the same partition could be written
+     * on it without waiting for the response.
+     */
+    private final class PipelineStarter implements CompletionHandler<Connection> {
+        private final PartitionKey partitionKey;
+        private final CompletionHandler<Connection> delegate;
+
+        private PipelineStarter(final PartitionKey partitionKey,
+                final CompletionHandler<Connection> delegate) {
+            this.partitionKey = partitionKey;
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public void completed(final Connection connection) {
+            final Pipeline pipeline = new Pipeline(partitionKey, connection);
+            PIPELINE_ATTR.set(connection, pipeline);
+            connection.addCloseListener(pipeline);
+            addPipeline(pipeline);
+            
+            delegate.completed(connection);
+        }
+
+        @Override
+        public void cancelled() {
+            delegate.cancelled();
+        }
+
+        @Override
+        public void failed(final Throwable throwable) {
+            delegate.failed(throwable);
+        }
+
+        @Override
+        public void updated(final Connection result) {
+            delegate.updated(result);
+        }
+    } // END PipelineStarter
+    
+    /**
+     * Marks a {@link Connection}, which is not going to be returned to
+     * the {@link AhcConnectionPool}, as not keep-alive.
+     */
+    private static final class NotKeepAliveHandler
+            implements CompletionHandler<Connection> {
+        private final CompletionHandler<Connection> delegate;
+
+        private NotKeepAliveHandler(final CompletionHandler<Connection> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void completed(final Connection connection) {
+            IS_NOT_KEEP_ALIVE.set(connection, Boolean.TRUE);
+            delegate.completed(connection);
+        }
+
+        @Override
+        public void cancelled() {
+            delegate.cancelled();
+        }
+
+        @Override
+        public void failed(final Throwable throwable) {
+            delegate.failed(throwable);
+        }
+
+        @Override
+        public void updated(final Connection result) {
+            delegate.updated(result);
+        }
+    } // END NotKeepAliveHandler
+
+    /**
+     * Tracks the {@link Connection}s taken from the pool for a prewarmed
+     * {@link Endpoint}, so they are counted once idle.
+     */
+    private static final class TrackingHandler
+            implements CompletionHandler<Connection> {
+        private final Set<Connection> connections;
+        private final CompletionHandler<Connection> delegate;
+
+        private TrackingHandler(final Set<Connection> connections,
+                final CompletionHandler<Connection> delegate) {
+            this.connections = connections;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void completed(final Connection connection) {
+            track(connections, connection);
+            delegate.completed(connection);
+        }
+
+        @Override
+        public void cancelled() {
+            delegate.cancelled();
+        }
+
+        @Override
+        public void failed(final Throwable throwable) {
+            delegate.failed(throwable);
+        }
+
+        @Override
+        public void updated(final Connection result) {
+            delegate.updated(result);
+        }
+    } // END TrackingHandler
+
+    /**
+     * Completes the connect future. The {@link Connection}, which is
+     * established after the future is done, e.g. cancelled by the pool on
+     * connect timeout, is closed, as nobody is going to use it.
+     */
+    private static final class ConnectFutureHandler
+            implements CompletionHandler<Connection> {
+        private final FutureImpl<Connection> future;
+        private final CompletionHandler<Connection> completionHandler;
+
+        private ConnectFutureHandler(final FutureImpl<Connection> future,
+                final CompletionHandler<Connection> completionHandler) {
+            this.future = future;
+            this.completionHandler = completionHandler;
+        }
+
+        @Override
+        public void completed(final Connection connection) {
+            future.result(connection);
+            if (future.getResult() != connection) {
+                connection.closeSilently();
+                return;
+            }
+
+            if (completionHandler != null) {
+                completionHandler.completed(connection);
+            }
+        }
+
+        @Override
+        public void cancelled() {
+            Futures.notifyCancel(future, completionHandler);
+        }
+
+        @Override
+        public void failed(final Throwable throwable) {
+            Futures.notifyFailure(future, completionHandler, throwable);
+        }
+
+        @Override
+        public void updated(final Connection result) {
+        }
+    } // END ConnectFutureHandler
+
+    /**
+     * Completes the TLS handshake on the connections taken from the pool,
+     * if needed, and returns them back to the pool.
+     */
+    private final class Prewarmer implements CompletionHandler<Connection> {
+        private final Endpoint<SocketAddress> endpoint;
+        private final AtomicInteger remaining;
+        private final AtomicInteger warmedUp = new AtomicInteger();
+        private final Uri secureUri;
+        private final CompletionHandler<Integer> completionHandler;
+
+        private Prewarmer(final Endpoint<SocketAddress> endpoint,
+                final int connections, final Uri secureUri,
+                final CompletionHandler<Integer> completionHandler) {
+            this.endpoint = endpoint;
+            remaining = new AtomicInteger(connections);
+            this.secureUri = secureUri;
+            this.completionHandler = completionHandler;
+        }
+
+        @Override
+        public void completed(final Connection connection) {
+            if (secureUri == null || SSLUtils.getSSLEngine(connection) != null) {
+                onWarmedUp(connection);
+                return;
+            }
+
+            try {
+                sslFilter.handshake(connection, secureUri.getHost(),
+                        secureUri.getPort(), new EmptyCompletionHandler<SSLEngine>() {
+                    @Override
+                    public void completed(final SSLEngine result) {
+                        onWarmedUp(connection);
+                    }
+
+                    @Override
+                    public void failed(final Throwable throwable) {
+                        connection.closeSilently();
+                        onDone();
+                    }
+                });
+            } catch (Exception e) {
+                connection.closeSilently();
+                onDone();
+            }
+        }
+
+        @Override
+        public void failed(final Throwable throwable) {
+            onDone();
+        }
+
+        @Override
+        public void cancelled() {
+            onDone();
+        }
+
+        @Override
+        public void updated(final Connection result) {
+        }
+
+        private void onWarmedUp(final Connection connection) {
+            warmedUp.incrementAndGet();
+            release(endpoint, connection);
+            onDone();
+        }
+
+        private void onDone() {
+            if (remaining.decrementAndGet() == 0) {
+                completionHandler.completed(warmedUp.get());
+            }
+        }
+    } // END Prewarmer
+
     private class NoSSLPoolCustomizer
             implements MultiEndpointPool.EndpointPoolCustomizer<SocketAddress> {
 
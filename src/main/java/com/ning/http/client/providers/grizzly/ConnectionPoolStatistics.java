@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+/**
+ * A snapshot of the connection pool state for a single connection partition
+ * (usually a scheme/host/port triple).
+ *
+ * @see GrizzlyAsyncHttpProvider#getConnectionPoolStatistics()
+ *
+ * @author Grizzly team
+ */
+public final class ConnectionPoolStatistics {
+    private final Object partitionId;
+    private final int idleConnections;
+    private final int busyConnections;
+    private final int pendingConnects;
+    private final long connectFailures;
+
+    ConnectionPoolStatistics(final Object partitionId,
+            final int idleConnections, final int busyConnections,
+            final int pendingConnects, final long connectFailures) {
+        this.partitionId = partitionId;
+        this.idleConnections = idleConnections;
+        this.busyConnections = busyConnections;
+        this.pendingConnects = pendingConnects;
+        this.connectFailures = connectFailures;
+    }
+
+    /**
+     * @return the connection partition id
+     */
+    public Object getPartitionId() {
+        return partitionId;
+    }
+
+    /**
+     * @return the number of connections kept alive in the pool, ready to
+     *          be reused
+     */
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    /**
+     * @return the number of connections currently used by requests
+     */
+    public int getBusyConnections() {
+        return busyConnections;
+    }
+
+    /**
+     * @return the number of requests waiting for a new connection to be
+     *          established
+     */
+    public int getPendingConnects() {
+        return pendingConnects;
+    }
+
+    /**
+     * @return the total number of failed connect attempts
+     */
+    public long getConnectFailures() {
+        return connectFailures;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolStatistics{"
+                + "partitionId=" + partitionId
+                + ", idle=" + idleConnections
+                + ", busy=" + busyConnections
+                + ", pending=" + pendingConnects
+                + ", connectFailures=" + connectFailures
+                + '}';
+    }
+}
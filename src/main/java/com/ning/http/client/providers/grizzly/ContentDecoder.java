@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import java.io.IOException;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.memory.MemoryManager;
+
+/**
+ * Decodes the response bodies compressed with a content-coding, like
+ * <tt>br</tt> or <tt>zstd</tt>, the provider doesn't support out of the box.
+ * The decoders are registered using
+ * {@link GrizzlyAsyncHttpProviderConfig#addContentDecoder(ContentDecoder)},
+ * their names are advertised in the <tt>Accept-Encoding</tt> header.
+ *
+ * @author Grizzly team
+ */
+public interface ContentDecoder {
+
+    /**
+     * @return the content-coding, as it appears in the
+     *          <tt>Content-Encoding</tt> and <tt>Accept-Encoding</tt> headers
+     */
+    String getName();
+
+    /**
+     * @return the other names of the content-coding, which are accepted
+     *          in the <tt>Content-Encoding</tt> header
+     */
+    String[] getAliases();
+
+    /**
+     * @return the {@link Decompressor} for the body of a single response
+     */
+    Decompressor newDecompressor();
+
+    /**
+     * Decodes the body of a single response, chunk by chunk, as it's
+     * received.
+     */
+    interface Decompressor {
+
+        /**
+         * Decodes the next chunk of the body. The decoded data has to be
+         * returned as soon as it's available, as the empty last chunk of the
+         * body is not passed to the decompressor.
+         *
+         * @param memoryManager the {@link MemoryManager} to allocate
+         *  the decoded data with
+         * @param input the chunk of the body, which is disposed once
+         *  the method returns
+         * @return the decoded data, which may be empty
+         * @throws IOException if the body is malformed
+         */
+        Buffer decompress(final MemoryManager memoryManager,
+                final Buffer input) throws IOException;
+
+        /**
+         * Releases the resources held by the decompressor. The method is
+         * called when the response is complete or aborted and may be called
+         * more than once.
+         */
+        void close();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.attributes.Attribute;
+import org.glassfish.grizzly.http.ContentEncoding;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpHeader;
+import org.glassfish.grizzly.http.ParsingResult;
+
+/**
+ * {@link ContentEncoding}, which decodes the response bodies using
+ * the {@link ContentDecoder}. The Grizzly HTTP codec matches the
+ * <tt>Content-Encoding</tt> header against the decoder's name and aliases.
+ *
+ * @author Grizzly team
+ */
+final class ContentDecoderEncoding implements ContentEncoding {
+    // the attributes are registered globally, so they're shared
+    // by the providers
+    private static final ConcurrentMap<String, Attribute<ContentDecoder.Decompressor>>
+            DECOMPRESSOR_ATTRS = new ConcurrentHashMap<>();
+
+    private final ContentDecoder decoder;
+    private final String[] aliases;
+    // the decompressor of the response body
+    private final Attribute<ContentDecoder.Decompressor> decompressorAttr;
+
+    // ------------------------------------------------------------ Constructors
+
+    ContentDecoderEncoding(final ContentDecoder decoder) {
+        this.decoder = decoder;
+        // the codec looks the encodings up by the aliases only
+        final String[] decoderAliases = decoder.getAliases();
+        this.aliases = new String[decoderAliases.length + 1];
+        aliases[0] = decoder.getName();
+        System.arraycopy(decoderAliases, 0, aliases, 1, decoderAliases.length);
+        this.decompressorAttr = decompressorAttr(decoder.getName());
+    }
+
+    // ----------------------------------------- Methods from ContentEncoding
+
+    @Override
+    public String getName() {
+        return decoder.getName();
+    }
+
+    @Override
+    public String[] getAliases() {
+        return aliases;
+    }
+
+    @Override
+    public boolean wantDecode(final HttpHeader httpHeader) {
+        return !httpHeader.isRequest();
+    }
+
+    @Override
+    public boolean wantEncode(final HttpHeader httpHeader) {
+        return false;
+    }
+
+    @Override
+    public ParsingResult decode(final Connection connection,
+            final HttpContent httpContent) {
+        final HttpHeader httpHeader = httpContent.getHttpHeader();
+        ContentDecoder.Decompressor decompressor = decompressorAttr.get(httpHeader);
+        if (decompressor == null) {
+            decompressor = decoder.newDecompressor();
+            decompressorAttr.set(httpHeader, decompressor);
+
+            // released by the transaction, if the response is not complete
+            final HttpTransactionContext context =
+                    HttpTransactionContext.currentTransaction(httpHeader);
+            if (context != null) {
+                context.addResponseDecompressor(decompressor);
+            }
+        }
+
+        final Buffer input = httpContent.getContent();
+        final Buffer output;
+        try {
+            output = decompressor.decompress(connection.getMemoryManager(), input);
+        } catch (IOException e) {
+            decompressor.close();
+            throw new IllegalStateException(
+                    decoder.getName() + " decode error: " + e.getMessage(), e);
+        } finally {
+            input.tryDispose();
+        }
+
+        final boolean isLast = httpContent.isLast();
+        if (isLast) {
+            decompressor.close();
+        } else if (!output.hasRemaining()) {
+            return ParsingResult.create(null, null);
+        }
+
+        return ParsingResult.create(httpHeader.httpContentBuilder()
+                .content(output)
+                .last(isLast)
+                .build(), null);
+    }
+
+    @Override
+    public HttpContent encode(final Connection connection,
+            final HttpContent httpContent) {
+        // requests are never encoded, see wantEncode()
+        return httpContent;
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    private static Attribute<ContentDecoder.Decompressor> decompressorAttr(
+            final String name) {
+        Attribute<ContentDecoder.Decompressor> attr = DECOMPRESSOR_ATTRS.get(name);
+        if (attr == null) {
+            final Attribute<ContentDecoder.Decompressor> newAttr =
+                    Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(
+                            ContentDecoderEncoding.class.getName() + '.' + name);
+            attr = DECOMPRESSOR_ATTRS.putIfAbsent(name, newAttr);
+            if (attr == null) {
+                attr = newAttr;
+            }
+        }
+        return attr;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+import static com.ning.http.util.UTF8UrlEncoder.FORM_URL_ENCODED_SAFE_CHARS;
+
+import com.ning.http.client.Param;
+import java.nio.charset.Charset;
+import java.util.List;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.memory.MemoryManager;
+import org.glassfish.grizzly.utils.Charsets;
+
+/**
+ * Encodes the form params as <tt>application/x-www-form-urlencoded</tt>
+ * content straight into {@link Buffer}s, so a form is never held in memory
+ * as a {@link String} or a <tt>byte[]</tt>. The encoder keeps its position
+ * between the calls to {@link #encode(MemoryManager, int)}, so a big form
+ * may be encoded one chunk after another as the connection is able to
+ * write it.
+ *
+ * The non-ASCII characters are encoded using the given charset, like
+ * {@link java.net.URLEncoder} does.
+ *
+ * @author Grizzly team
+ */
+final class FormUrlEncoder {
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(Charsets.ASCII_CHARSET);
+
+    private static final int SEPARATOR = 0;
+    private static final int NAME = 1;
+    private static final int EQUALS = 2;
+    private static final int VALUE = 3;
+
+    private final List<Param> params;
+    private final Charset charset;
+    private final boolean isUtf8;
+
+    // the encoder position: the param, the part of the param and the char
+    private int paramIdx;
+    private int state;
+    private int charIdx;
+
+    // ------------------------------------------------------------ Constructors
+
+    FormUrlEncoder(final List<Param> params, final Charset charset) {
+        this.params = params;
+        this.charset = charset;
+        this.isUtf8 = Charsets.UTF8_CHARSET.equals(charset);
+    }
+
+    // ---------------------------------------------------------- Public Methods
+
+    /**
+     * @return the length of the encoded form, counted without encoding it
+     */
+    public long getContentLength() {
+        long length = 0;
+        for (int i = 0; i < params.size(); i++) {
+            final Param param = params.get(i);
+            if (i > 0) {
+                length++; // '&'
+            }
+            length += encodedLength(param.getName());
+            if (param.getValue() != null) {
+                length += 1 + encodedLength(param.getValue()); // '=' value
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * @return <tt>true</tt>, if there is a part of the form not encoded yet
+     */
+    public boolean hasRemaining() {
+        return paramIdx < params.size();
+    }
+
+    /**
+     * Encodes the next part of the form into a new {@link Buffer} of
+     * at most <tt>maxSize</tt> bytes. The <tt>maxSize</tt> has to fit
+     * the longest encoded char (12 bytes), unless it's the length of the
+     * whole form.
+     */
+    public Buffer encode(final MemoryManager mm, final int maxSize) {
+        final Buffer buffer = mm.allocate(maxSize);
+        buffer.allowBufferDispose(true);
+
+        while (hasRemaining()) {
+            final Param param = params.get(paramIdx);
+            switch (state) {
+                case SEPARATOR:
+                    if (paramIdx > 0) {
+                        if (!buffer.hasRemaining()) {
+                            return complete(buffer);
+                        }
+                        buffer.put((byte) '&');
+                    }
+                    state = NAME;
+                    break;
+                case NAME:
+                    if (!encode(param.getName(), buffer)) {
+                        return complete(buffer);
+                    }
+                    state = param.getValue() != null ? EQUALS : SEPARATOR;
+                    if (state == SEPARATOR) {
+                        paramIdx++;
+                    }
+                    break;
+                case EQUALS:
+                    if (!buffer.hasRemaining()) {
+                        return complete(buffer);
+                    }
+                    buffer.put((byte) '=');
+                    state = VALUE;
+                    break;
+                case VALUE:
+                    if (!encode(param.getValue(), buffer)) {
+                        return complete(buffer);
+                    }
+                    state = SEPARATOR;
+                    paramIdx++;
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected state " + state);
+            }
+        }
+
+        return complete(buffer);
+    }
+
+    /**
+     * Rewinds the encoder to the beginning of the form.
+     */
+    public void reset() {
+        paramIdx = 0;
+        state = SEPARATOR;
+        charIdx = 0;
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    /**
+     * Encodes the chars of the <tt>s</tt> starting at {@link #charIdx}.
+     *
+     * @return <tt>true</tt>, if all the chars are encoded, or <tt>false</tt>,
+     *          if the buffer is full
+     */
+    private boolean encode(final String s, final Buffer buffer) {
+        int c;
+        for (int i = charIdx; i < s.length(); i += Character.charCount(c)) {
+            c = s.codePointAt(i);
+            if (c <= 127) {
+                final boolean isSafe = FORM_URL_ENCODED_SAFE_CHARS.get(c) || c == ' ';
+                if (buffer.remaining() < (isSafe ? 1 : 3)) {
+                    charIdx = i;
+                    return false;
+                }
+                if (FORM_URL_ENCODED_SAFE_CHARS.get(c)) {
+                    buffer.put((byte) c);
+                } else if (c == ' ') {
+                    buffer.put((byte) '+');
+                } else {
+                    putEncoded(buffer, c);
+                }
+            } else if (isUtf8) {
+                if (buffer.remaining() < 3 * utf8Length(c)) {
+                    charIdx = i;
+                    return false;
+                }
+                putUtf8Encoded(buffer, c);
+            } else {
+                final byte[] bytes = charsetBytes(c);
+                if (buffer.remaining() < 3 * bytes.length) {
+                    charIdx = i;
+                    return false;
+                }
+                for (byte b : bytes) {
+                    putEncoded(buffer, b & 0xFF);
+                }
+            }
+        }
+
+        charIdx = 0;
+        return true;
+    }
+
+    private long encodedLength(final String s) {
+        long length = 0;
+        int c;
+        for (int i = 0; i < s.length(); i += Character.charCount(c)) {
+            c = s.codePointAt(i);
+            if (c <= 127) {
+                length += FORM_URL_ENCODED_SAFE_CHARS.get(c) || c == ' ' ? 1 : 3;
+            } else if (isUtf8) {
+                length += 3 * utf8Length(c);
+            } else {
+                length += 3 * charsetBytes(c).length;
+            }
+        }
+
+        return length;
+    }
+
+    private byte[] charsetBytes(final int c) {
+        return new String(Character.toChars(c)).getBytes(charset);
+    }
+
+    private static Buffer complete(final Buffer buffer) {
+        buffer.trim();
+        return buffer;
+    }
+
+    private static int utf8Length(final int c) {
+        return c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+    }
+
+    private static void putUtf8Encoded(final Buffer buffer, final int c) {
+        if (c < 0x800) {
+            putEncoded(buffer, 0xc0 | (c >> 6));
+            putEncoded(buffer, 0x80 | (c & 0x3f));
+        } else if (c < 0x10000) {
+            putEncoded(buffer, 0xe0 | (c >> 12));
+            putEncoded(buffer, 0x80 | ((c >> 6) & 0x3f));
+            putEncoded(buffer, 0x80 | (c & 0x3f));
+        } else {
+            putEncoded(buffer, 0xf0 | (c >> 18));
+            putEncoded(buffer, 0x80 | ((c >> 12) & 0x3f));
+            putEncoded(buffer, 0x80 | ((c >> 6) & 0x3f));
+            putEncoded(buffer, 0x80 | (c & 0x3f));
+        }
+    }
+
+    private static void putEncoded(final Buffer buffer, final int b) {
+        buffer.put((byte) '%');
+        buffer.put(HEX[b >> 4]);
+        buffer.put(HEX[b & 0xF]);
+    }
+}
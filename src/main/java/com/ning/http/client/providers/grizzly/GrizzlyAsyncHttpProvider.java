@@ -22,12 +22,7 @@ import org.glassfish.grizzly.filterchain.FilterChainBuilder;
 import org.glassfish.grizzly.filterchain.FilterChainContext;
 import org.glassfish.grizzly.filterchain.TransportFilter;
 import org.glassfish.grizzly.http.ContentEncoding;
-import org.glassfish.grizzly.http.EncodingFilter;
-import org.glassfish.grizzly.http.GZipContentEncoding;
-import org.glassfish.grizzly.http.HttpHeader;
-import org.glassfish.grizzly.http.HttpResponsePacket;
-import org.glassfish.grizzly.http.util.DataChunk;
-import org.glassfish.grizzly.http.util.Header;
+import org.glassfish.grizzly.impl.FutureImpl;
 import org.glassfish.grizzly.nio.RoundRobinConnectionDistributor;
 import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
 import org.glassfish.grizzly.nio.transport.TCPNIOTransportBuilder;
@@ -35,8 +30,7 @@ import org.glassfish.grizzly.ssl.SSLEngineConfigurator;
 import org.glassfish.grizzly.strategies.SameThreadIOStrategy;
 import org.glassfish.grizzly.strategies.WorkerThreadIOStrategy;
 import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
-import org.glassfish.grizzly.utils.DelayedExecutor;
-import org.glassfish.grizzly.utils.IdleTimeoutFilter;
+import org.glassfish.grizzly.utils.Futures;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,10 +47,17 @@ import javax.net.ssl.SSLContext;
 
 import java.io.IOException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import org.glassfish.grizzly.websockets.WebSocketClientFilter;
 
 import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.*;
@@ -76,8 +77,16 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
     private final GrizzlyAsyncHttpProviderConfig providerConfig;
     private final ConnectionManager connectionManager;
 
-    DelayedExecutor.Resolver<IdleTimeoutFilter.IdleTimeoutContext> resolver;
-    private DelayedExecutor timeoutExecutor;
+    private final TimeoutWheel timeoutWheel;
+    private TimeoutFilter timeoutFilter;
+    private SwitchingSSLFilter sslFilter;
+
+    private final boolean isSendFileEnabled;
+    private final RequestCompressionEncoding requestCompression;
+    private final List<ContentDecoder> contentDecoders;
+
+    private final AtomicLong retriedRequests = new AtomicLong();
+    private final AtomicLong exhaustedRetries = new AtomicLong();
 
     
 
@@ -91,6 +100,20 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
                 clientConfig.getAsyncHttpProviderConfig() instanceof GrizzlyAsyncHttpProviderConfig ?
                 (GrizzlyAsyncHttpProviderConfig) clientConfig.getAsyncHttpProviderConfig()
                 : new GrizzlyAsyncHttpProviderConfig();
+        timeoutWheel = new TimeoutWheel(
+                (Integer) providerConfig.getProperty(TIMEOUT_TICK_DURATION),
+                (Integer) providerConfig.getProperty(TIMEOUT_WHEEL_SIZE),
+                "grizzly-ahc-timer");
+        isSendFileEnabled = (Boolean) providerConfig.getProperty(SEND_FILE_SUPPORT);
+        final String compression = (String) providerConfig.getProperty(REQUEST_COMPRESSION);
+        requestCompression = compression != null
+                ? new RequestCompressionEncoding(compression,
+                        (Integer) providerConfig.getProperty(REQUEST_COMPRESSION_THRESHOLD),
+                        (Integer) providerConfig.getProperty(REQUEST_COMPRESSION_LEVEL))
+                : null;
+        contentDecoders = (Boolean) providerConfig.getProperty(DECOMPRESS_RESPONSE)
+                ? createContentDecoders(providerConfig)
+                : Collections.<ContentDecoder>emptyList();
         final TCPNIOTransportBuilder builder = TCPNIOTransportBuilder.newInstance();
         clientTransport = builder.build();
         initializeTransport(clientConfig);
@@ -100,6 +123,7 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
         } catch (IOException ioe) {
             throw new RuntimeException(ioe);
         }
+        connectionManager.startPrewarming();
 
     }
 
@@ -110,6 +134,70 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
     ConnectionManager getConnectionManager() {
         return connectionManager;
     }
+
+    SwitchingSSLFilter getSslFilter() {
+        return sslFilter;
+    }
+
+    TimeoutWheel getTimeoutWheel() {
+        return timeoutWheel;
+    }
+
+    boolean isSendFileEnabled() {
+        return isSendFileEnabled;
+    }
+
+    /**
+     * @return the {@link RequestCompressionEncoding}, or <tt>null</tt>, if
+     *          the request bodies are not compressed
+     */
+    RequestCompressionEncoding getRequestCompression() {
+        return requestCompression;
+    }
+
+    /**
+     * @return the {@link ContentDecoder}s the response bodies are decoded
+     *          with, empty if the responses are not decompressed
+     */
+    List<ContentDecoder> getContentDecoders() {
+        return contentDecoders;
+    }
+
+    @Override
+    public Future<Integer> prewarm(final Request request, final int connections) {
+        final FutureImpl<Integer> future = Futures.createSafeFuture();
+        connectionManager.prewarm(request, connections,
+                Futures.toCompletionHandler(future));
+        return future;
+    }
+
+    /**
+     * Returns the connection pool statistics per connection partition.
+     * The statistics are collected only if the
+     * {@link GrizzlyAsyncHttpProviderConfig.Property#AHC_CONNECTION_POOL}
+     * is enabled, otherwise the returned {@link Map} is empty.
+     */
+    public Map<Object, ConnectionPoolStatistics> getConnectionPoolStatistics() {
+        return connectionManager.getConnectionPoolStatistics();
+    }
+
+    /**
+     * Returns the number of times the requests have been replayed on a new
+     * connection after I/O failures, either transparently, or because an
+     * {@link com.ning.http.client.filter.IOExceptionFilter} asked for it.
+     */
+    public long getRetriedRequestCount() {
+        return retriedRequests.get();
+    }
+
+    /**
+     * Returns the number of requests, which have failed, because they
+     * could have been replayed, but the
+     * {@link AsyncHttpClientConfig#getMaxRequestRetry()} has been reached.
+     */
+    public long getExhaustedRetryCount() {
+        return exhaustedRetries.get();
+    }
         
     // ------------------------------------------ Methods from AsyncHttpProvider
 
@@ -206,10 +294,7 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
             if (service != null) {
                 service.shutdown();
             }
-            if (timeoutExecutor != null) {
-                timeoutExecutor.stop();
-                timeoutExecutor.getThreadPool().shutdownNow();
-            }
+            timeoutWheel.stop();
         } catch (IOException ignored) { }
 
     }
@@ -222,8 +307,18 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
     throws IOException {
 
         try {
-            transactionCtx.getConnection().write(transactionCtx,
-                    createWriteCompletionHandler(transactionCtx.future));
+            final Connection connection = transactionCtx.getConnection();
+            if (ConnectionManager.isPipelined(connection)) {
+                // pipelined requests have to be written in the order
+                // the responses are expected
+                synchronized (connection) {
+                    connection.write(transactionCtx,
+                            createWriteCompletionHandler(transactionCtx));
+                }
+            } else {
+                connection.write(transactionCtx,
+                        createWriteCompletionHandler(transactionCtx));
+            }
         } catch (Exception e) {
             if (e instanceof RuntimeException) {
                 throw (RuntimeException) e;
@@ -242,48 +337,10 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
         final FilterChainBuilder fcb = FilterChainBuilder.stateless();
         fcb.add(new TransportFilter());
 
-        final int timeout = clientConfig.getRequestTimeout();
-        if (timeout > 0) {
-            int delay = 500;
-            if (timeout < delay) {
-                delay = timeout - 10;
-            }
-            timeoutExecutor = IdleTimeoutFilter.createDefaultIdleDelayedExecutor(delay, TimeUnit.MILLISECONDS);
-            timeoutExecutor.start();
-            final IdleTimeoutFilter.TimeoutResolver timeoutResolver =
-                    new IdleTimeoutFilter.TimeoutResolver() {
-                        @Override
-                        public long getTimeout(final FilterChainContext ctx) {
-                            final Connection connection = ctx.getConnection();
-                            
-                            if (connectionManager.isReadyInPool(connection)) {
-                                // if the connection is in pool - let ConnectionManager take care of its life cycle
-                                return IdleTimeoutFilter.FOREVER;
-                            }
-                            
-                            final HttpTransactionContext context
-                                    = HttpTransactionContext.currentTransaction(connection);
-                            if (context != null) {
-                                if (context.isWSRequest) {
-                                    return clientConfig.getWebSocketTimeout();
-                                }
-                                final long timeout = context.getAhcRequest().getRequestTimeout();
-                                if (timeout > 0) {
-                                    return timeout;
-                                }
-                            }
-                            return timeout;
-                        }
-                    };
-            final IdleTimeoutFilter timeoutFilter = new IdleTimeoutFilter(timeoutExecutor,
-                    timeoutResolver,
-                    new IdleTimeoutFilter.TimeoutHandler() {
-                        public void onTimeout(Connection connection) {
-                            timeout(connection);
-                        }
-                    });
+        if (clientConfig.getRequestTimeout() > 0
+                || clientConfig.getReadTimeout() > 0) {
+            timeoutFilter = new TimeoutFilter(this, timeoutWheel);
             fcb.add(timeoutFilter);
-            resolver = timeoutFilter.getResolver();
         }
 
         final boolean defaultSecState = (clientConfig.getSSLContext() != null);
@@ -293,8 +350,7 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
                                 ? providerConfig.getSslEngineFactory()
                                 : new SSLEngineFactory.DefaultSSLEngineFactory(clientConfig));
         
-        final SwitchingSSLFilter sslFilter =
-                new SwitchingSSLFilter(configurator, defaultSecState);
+        sslFilter = new SwitchingSSLFilter(configurator, defaultSecState);
         fcb.add(sslFilter);
         
         final AhcEventFilter eventFilter = new
@@ -308,11 +364,11 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
             }
         }
         
-        if ((Boolean) providerConfig.getProperty(DECOMPRESS_RESPONSE)) {
-            eventFilter.addContentEncoding(
-                    new GZipContentEncoding(512,
-                            512,
-                            new ClientEncodingFilter()));
+        for (ContentDecoder decoder : contentDecoders) {
+            eventFilter.addContentEncoding(new ContentDecoderEncoding(decoder));
+        }
+        if (requestCompression != null) {
+            eventFilter.addContentEncoding(requestCompression);
         }
         
         fcb.add(eventFilter);
@@ -356,16 +412,8 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
 
     void touchConnection(final Connection c, final Request request) {
 
-        final long timeOut = request.getRequestTimeout() > 0
-                ? request.getRequestTimeout()
-                : clientConfig.getRequestTimeout();
-        
-        
-        if (timeOut > 0) {
-            if (resolver != null) {
-                resolver.setTimeoutMillis(new IdleTimeoutFilter.IdleTimeoutContext(c),
-                        System.currentTimeMillis() + timeOut);
-            }
+        if (timeoutFilter != null) {
+            timeoutFilter.touch(c);
         }
     }
 
@@ -373,28 +421,27 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
     // --------------------------------------------------------- Private Methods
 
 
-    private static boolean configSendFileSupport() {
-
-        return !((System.getProperty("os.name").equalsIgnoreCase("linux")
-                && !linuxSendFileSupported())
-                || System.getProperty("os.name").equalsIgnoreCase("HP-UX"));
-    }
-
-
-    private static boolean linuxSendFileSupported() {
-        final String version = System.getProperty("java.version");
-        if (version.startsWith("1.6")) {
-            int idx = version.indexOf('_');
-            if (idx == -1) {
-                return false;
-            }
-            final int patchRev = Integer.parseInt(version.substring(idx + 1));
-            return (patchRev >= 18);
-        } else {
-            return version.startsWith("1.7") || version.startsWith("1.8");
+    /**
+     * The built-in <tt>gzip</tt> and <tt>deflate</tt> decoders followed by
+     * the registered ones, which replace the built-in decoders with
+     * the same name.
+     */
+    private static List<ContentDecoder> createContentDecoders(
+            final GrizzlyAsyncHttpProviderConfig providerConfig) {
+        final int bufferSize = (Integer) providerConfig.getProperty(DECOMPRESS_BUFFER_SIZE);
+        final Map<String, ContentDecoder> decoders =
+                new LinkedHashMap<String, ContentDecoder>();
+        decoders.put(InflaterDecoder.GZIP,
+                new InflaterDecoder(InflaterDecoder.GZIP, bufferSize));
+        decoders.put(InflaterDecoder.DEFLATE,
+                new InflaterDecoder(InflaterDecoder.DEFLATE, bufferSize));
+        for (ContentDecoder decoder : providerConfig.getContentDecoders()) {
+            decoders.put(decoder.getName().toLowerCase(Locale.ENGLISH), decoder);
         }
+        return Collections.unmodifiableList(
+                new ArrayList<ContentDecoder>(decoders.values()));
     }
-    
+
     private void doDefaultTransportConfig() {
         final ExecutorService service = clientConfig.executorService();
         if (service != null) {
@@ -406,8 +453,9 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
     }
 
 
-    private <T> CompletionHandler<WriteResult> createWriteCompletionHandler(
-            final GrizzlyResponseFuture<T> future) {
+    private CompletionHandler<WriteResult> createWriteCompletionHandler(
+            final HttpTransactionContext transactionCtx) {
+        final GrizzlyResponseFuture future = transactionCtx.future;
         return new CompletionHandler<WriteResult>() {
 
             public void cancelled() {
@@ -415,7 +463,7 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
             }
 
             public void failed(Throwable throwable) {
-                future.abort(throwable);
+                transactionCtx.abortOrReplay(throwable);
             }
 
             public void completed(WriteResult result) {
@@ -429,9 +477,17 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
     }
 
 
-    void timeout(final Connection c) {
-        final HttpTransactionContext tx = HttpTransactionContext.currentTransaction(c);
-        final TimeoutException te = new TimeoutException("Timeout exceeded");
+    void onRequestRetried() {
+        retriedRequests.incrementAndGet();
+    }
+
+    void onRetriesExhausted() {
+        exhaustedRetries.incrementAndGet();
+    }
+
+    void timeout(final Connection c, final String message) {
+        final HttpTransactionContext tx = HttpTransactionContext.oldestTransaction(c);
+        final TimeoutException te = new TimeoutException(message);
         if (tx != null) {
             tx.abort(te);
         }
@@ -439,28 +495,6 @@ public class GrizzlyAsyncHttpProvider implements AsyncHttpProvider {
         c.closeWithReason(new IOException("Timeout exceeded", te));
     }
 
-    private static final class ClientEncodingFilter implements EncodingFilter {
-
-
-        // ----------------------------------------- Methods from EncodingFilter
-
-
-        public boolean applyEncoding(HttpHeader httpPacket) {
-            return false;
-        }
-
-
-        public boolean applyDecoding(HttpHeader httpPacket) {
-
-            final HttpResponsePacket httpResponse = (HttpResponsePacket) httpPacket;
-            final DataChunk bc = httpResponse.getHeaders().getValue(Header.ContentEncoding);
-            return bc != null && bc.indexOf("gzip", 0) != -1;
-
-        }
-
-
-    } // END ClientContentEncoding
-
     public static void main(String[] args) {
             SecureRandom secureRandom = new SecureRandom();
             SSLContext sslContext = null;
@@ -20,7 +20,11 @@ import java.net.SocketAddress;
 import org.glassfish.grizzly.http.HttpCodecFilter;
 import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import org.glassfish.grizzly.connectionpool.MultiEndpointPool;
@@ -76,8 +80,138 @@ public class GrizzlyAsyncHttpProviderConfig implements AsyncHttpProviderConfig<G
          * (if compressed by a server), or <tt>false</tt> if decompression
          * has to be delegated to a user.
          */
-        DECOMPRESS_RESPONSE(Boolean.class, true)
-        
+        DECOMPRESS_RESPONSE(Boolean.class, true),
+
+        /**
+         * The size, in bytes, of the buffers the compressed response bodies
+         * are decoded into, if {@link #DECOMPRESS_RESPONSE} is <tt>true</tt>.
+         * The default value is 8192.
+         */
+        DECOMPRESS_BUFFER_SIZE(Integer.class, 8192),
+
+        /**
+         * The number of milliseconds a resolved host address is cached
+         * before it's resolved again. The default value is 30000 (30 seconds),
+         * <tt>0</tt> disables caching, though concurrent lookups of the same
+         * host are still coalesced.
+         */
+        DNS_CACHE_TTL(Integer.class, 30000),
+
+        /**
+         * The number of milliseconds a failed host resolution is cached.
+         * The default value is 10000 (10 seconds), <tt>0</tt> disables
+         * negative caching.
+         */
+        DNS_NEGATIVE_CACHE_TTL(Integer.class, 10000),
+
+        /**
+         * The maximum number of host names kept in the resolution cache.
+         * The default value is 1024.
+         */
+        DNS_CACHE_MAX_SIZE(Integer.class, 1024),
+
+        /**
+         * The maximum number of threads used to resolve host names, so the
+         * Grizzly worker and selector threads are never blocked by DNS
+         * lookups. The default value is 4.
+         */
+        DNS_RESOLVER_THREADS(Integer.class, 4),
+
+        /**
+         * The maximum number of GET and HEAD requests to the same host,
+         * which could be written back to back on a single connection
+         * without waiting for the responses (HTTP/1.1 pipelining).
+         * Responses are matched to requests in FIFO order, if the connection
+         * gets closed before all the responses are received, the requests
+         * waiting for response are replayed on a new connection.
+         * Pipelining has to be supported by the server.
+         * The default value is 0, which, like 1, disables pipelining.
+         */
+        MAX_PIPELINED_REQUESTS(Integer.class, 0),
+
+        /**
+         * <tt>true</tt>, if the provider has to use its own connection pool,
+         * which reuses the most recently released connection first (LIFO),
+         * keeps the idle connections in lock-free per-host deques,
+         * evicts them using a single shared timer and exposes per-host
+         * statistics via {@link GrizzlyAsyncHttpProvider#getConnectionPoolStatistics()}.
+         * The default value is <tt>false</tt>, which means Grizzly's
+         * {@link MultiEndpointPool} is used.
+         * The property is ignored if a custom pool is set using
+         * {@link #setConnectionPool(MultiEndpointPool)}.
+         */
+        AHC_CONNECTION_POOL(Boolean.class, false),
+
+        /**
+         * The number of milliseconds to wait for the connect to one of the
+         * host addresses before the connect to the next address is started
+         * in parallel, if the host name resolves to several addresses
+         * (RFC 8305 "Connection Attempt Delay"). The first established
+         * connection is used, the others are closed.
+         * The default value is 250, <tt>0</tt> means the next address is
+         * tried only once the connect to the previous one fails.
+         */
+        CONNECT_ATTEMPT_DELAY(Integer.class, 250),
+
+        /**
+         * The number of milliseconds an address, the connect to has failed,
+         * is tried only after the other addresses of the host.
+         * The default value is 10000 (10 seconds), <tt>0</tt> disables
+         * remembering the failed addresses.
+         */
+        CONNECT_FAILURE_COOLDOWN(Integer.class, 10000),
+
+        /**
+         * The resolution, in milliseconds, of the timer, which enforces the
+         * connect, request, read and pooled connection idle timeouts.
+         * Timeouts fire no earlier than configured and at most one tick late.
+         * The default value is 10.
+         */
+        TIMEOUT_TICK_DURATION(Integer.class, 10),
+
+        /**
+         * The number of buckets of the timeout timer wheel, rounded up to
+         * a power of two. Timeouts longer than the tick duration times the
+         * wheel size are kept for several wheel rounds.
+         * The default value is 512.
+         */
+        TIMEOUT_WHEEL_SIZE(Integer.class, 512),
+
+        /**
+         * <tt>true</tt>, if the file request bodies and the file parts of
+         * the multipart request bodies have to be sent over the plain
+         * (non-TLS) connections using {@link java.nio.channels.FileChannel#transferTo},
+         * so the file contents are not copied through the heap.
+         * The TLS connections always read and encrypt the files.
+         * The default value is <tt>true</tt>.
+         */
+        SEND_FILE_SUPPORT(Boolean.class, true),
+
+        /**
+         * The content-coding, <tt>gzip</tt> or <tt>deflate</tt>, the request
+         * bodies have to be compressed with. The compressed bodies are sent
+         * using the chunked transfer-encoding. The bodies, which already have
+         * the <tt>Content-Encoding</tt> header set, are sent as is.
+         * The default value is <tt>null</tt>, which disables the request
+         * body compression.
+         */
+        REQUEST_COMPRESSION(String.class),
+
+        /**
+         * The minimum size, in bytes, of the request body to be compressed,
+         * if {@link #REQUEST_COMPRESSION} is set. The bodies of unknown
+         * length are always compressed. The default value is 1024.
+         */
+        REQUEST_COMPRESSION_THRESHOLD(Integer.class, 1024),
+
+        /**
+         * The compression level, from <tt>0</tt> to <tt>9</tt>, the request
+         * bodies are compressed with, if {@link #REQUEST_COMPRESSION} is set.
+         * The default value is <tt>-1</tt>, which means
+         * {@link java.util.zip.Deflater#DEFAULT_COMPRESSION}.
+         */
+        REQUEST_COMPRESSION_LEVEL(Integer.class, -1)
+
         ;
         
         
@@ -105,6 +239,9 @@ public class GrizzlyAsyncHttpProviderConfig implements AsyncHttpProviderConfig<G
     protected MultiEndpointPool<SocketAddress> connectionPool;
 
     private SSLEngineFactory sslEngineFactory;
+
+    private final Map<String, ContentDecoder> contentDecoders =
+            new LinkedHashMap<String, ContentDecoder>();
     
     // ------------------------------------ Methods from AsyncHttpProviderConfig
 
@@ -176,4 +313,24 @@ public class GrizzlyAsyncHttpProviderConfig implements AsyncHttpProviderConfig<G
     public void setSslEngineFactory(SSLEngineFactory sslEngineFactory) {
         this.sslEngineFactory = sslEngineFactory;
     }
+
+    /**
+     * Registers the {@link ContentDecoder} for the response bodies, if
+     * {@link Property#DECOMPRESS_RESPONSE} is <tt>true</tt>. The decoder
+     * replaces the registered or built-in, <tt>gzip</tt> and
+     * <tt>deflate</tt>, decoder with the same name.
+     */
+    public GrizzlyAsyncHttpProviderConfig addContentDecoder(
+            final ContentDecoder decoder) {
+        contentDecoders.put(decoder.getName().toLowerCase(Locale.ENGLISH), decoder);
+        return this;
+    }
+
+    /**
+     * @return the registered {@link ContentDecoder}s, in the order
+     *          of registration
+     */
+    public Collection<ContentDecoder> getContentDecoders() {
+        return Collections.unmodifiableCollection(contentDecoders.values());
+    }
 }
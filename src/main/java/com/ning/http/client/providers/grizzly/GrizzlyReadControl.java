@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import com.ning.http.client.ReadControl;
+import java.io.IOException;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.Context;
+import org.glassfish.grizzly.IOEvent;
+import org.glassfish.grizzly.IOEventLifeCycleListener;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ReadControl}, which pauses the response reading by disabling the
+ * {@link IOEvent#READ} interest of the {@link Connection}. The pause is
+ * requested by the handler during the body part callback and applied by the
+ * {@link AhcEventFilter} once the callback returns. The READ event processing
+ * is switched to the manual IOEvent control and the IOStrategy listeners are
+ * replaced, so Grizzly doesn't re-enable the interest when the processing
+ * completes. A resume, which comes while the
+ * READ event is still processed, is deferred until the processing completes,
+ * so the connection is never read by two threads.
+ *
+ * @author Grizzly team
+ */
+final class GrizzlyReadControl implements ReadControl {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GrizzlyReadControl.class);
+
+    private final Connection connection;
+    private final GrizzlyAsyncHttpProvider provider;
+
+    private final IOEventLifeCycleListener processingListener =
+            new IOEventLifeCycleListener.Adapter() {
+        @Override
+        public void onRerun(final Context context, final Context newContext) {
+            // the rest of the read bytes is processed in a new context
+            newContext.addLifeCycleListener(this);
+        }
+
+        @Override
+        public void onComplete(final Context context, final Object data) {
+            processingDone();
+        }
+
+        @Override
+        public void onLeave(final Context context) {
+            processingDone();
+        }
+
+        @Override
+        public void onTerminate(final Context context) {
+            processingDone();
+        }
+
+        @Override
+        public void onReregister(final Context context) {
+            processingDone();
+        }
+
+        @Override
+        public void onError(final Context context, final Object description) {
+            processingDone();
+        }
+
+        @Override
+        public void onNotRun(final Context context) {
+            processingDone();
+        }
+    };
+
+    private boolean pauseRequested;
+    private boolean paused;
+    // true, while the READ event, which has paused the reading, is processed
+    private boolean processing;
+
+    // ------------------------------------------------------------ Constructors
+
+    GrizzlyReadControl(final Connection connection,
+            final GrizzlyAsyncHttpProvider provider) {
+        this.connection = connection;
+        this.provider = provider;
+    }
+
+    // ------------------------------------------------ Methods from ReadControl
+
+    @Override
+    public synchronized void pause() {
+        pauseRequested = true;
+    }
+
+    @Override
+    public synchronized void resume() {
+        pauseRequested = false;
+        if (paused) {
+            paused = false;
+            // the idle time is counted from the resume
+            provider.touchConnection(connection, null);
+            if (!processing) {
+                enableRead();
+            }
+        }
+    }
+
+    // --------------------------------------------------- Package Private Methods
+
+    /**
+     * Pauses the reading, if the handler has requested it.
+     */
+    synchronized void pauseIfRequested(final FilterChainContext ctx) {
+        if (!pauseRequested) {
+            return;
+        }
+        pauseRequested = false;
+        if (paused) {
+            return;
+        }
+
+        paused = true;
+        if (!processing) {
+            processing = true;
+            final Context context = ctx.getInternalContext();
+            context.setManualIOEventControl();
+            // the IOStrategy listener would re-enable the READ interest once
+            // the processing completes, the interest is controlled here now
+            context.removeAllLifeCycleListeners();
+            context.addLifeCycleListener(processingListener);
+        }
+        try {
+            connection.disableIOEvent(IOEvent.READ);
+        } catch (IOException e) {
+            LOGGER.debug("Can't pause reading " + connection, e);
+        }
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    private synchronized void processingDone() {
+        processing = false;
+        if (!paused) {
+            enableRead();
+        }
+    }
+
+    private void enableRead() {
+        try {
+            connection.enableIOEvent(IOEvent.READ);
+        } catch (IOException e) {
+            LOGGER.debug("Can't resume reading " + connection, e);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.glassfish.grizzly.Buffer;
 import org.glassfish.grizzly.http.Cookies;
 import org.glassfish.grizzly.http.CookiesBuilder;
 import org.glassfish.grizzly.memory.Buffers;
+import org.glassfish.grizzly.memory.CompositeBuffer;
 import org.glassfish.grizzly.memory.MemoryManager;
 import org.glassfish.grizzly.utils.BufferInputStream;
 import org.glassfish.grizzly.utils.Charsets;
@@ -47,6 +48,10 @@ import org.glassfish.grizzly.http.HttpResponsePacket;
  */
 public class GrizzlyResponse extends ResponseBase {
 
+    // the buffers of the body parts, the body bytes are copied and decoded
+    // straight from them
+    private final Buffer[] bodyBuffers;
+    private final int bodyLength;
     private final Buffer responseBody;
     private final HttpResponsePacket httpResponsePacket;
 
@@ -61,24 +66,36 @@ public class GrizzlyResponse extends ResponseBase {
         super(status, headers, bodyParts);
 
         this.httpResponsePacket = httpResponsePacket;
-        
+
+        final List<Buffer> buffers = new ArrayList<Buffer>(
+                isNonEmpty(bodyParts) ? bodyParts.size() : 0);
+        int length = 0;
         if (isNonEmpty(bodyParts)) {
-            if (bodyParts.size() == 1) {
-                responseBody = ((GrizzlyResponseBodyPart) bodyParts.get(0)).getBodyBuffer();
-            } else {
-                final Buffer firstBuffer = ((GrizzlyResponseBodyPart) bodyParts.get(0)).getBodyBuffer();
-                final MemoryManager mm = httpResponsePacket.getRequest().getConnection().getMemoryManager();
-                Buffer constructedBodyBuffer = firstBuffer;
-                for (int i = 1, len = bodyParts.size(); i < len; i++) {
-                    constructedBodyBuffer =
-                            Buffers.appendBuffers(mm,
-                                    constructedBodyBuffer,
-                                    ((GrizzlyResponseBodyPart) bodyParts.get(i)).getBodyBuffer());
+            for (HttpResponseBodyPart bodyPart : bodyParts) {
+                final Buffer buffer =
+                        ((GrizzlyResponseBodyPart) bodyPart).getBodyBuffer();
+                if (buffer.hasRemaining()) {
+                    buffers.add(buffer);
+                    length += buffer.remaining();
                 }
-                responseBody = constructedBodyBuffer;
             }
-        } else {
+        }
+        bodyBuffers = buffers.toArray(new Buffer[buffers.size()]);
+        bodyLength = length;
+
+        if (bodyBuffers.length == 0) {
             responseBody = Buffers.EMPTY_BUFFER;
+        } else if (bodyBuffers.length == 1) {
+            responseBody = bodyBuffers[0];
+        } else {
+            // a single composite, which references the parts' buffers,
+            // instead of appending the buffers one by one, which may
+            // modify the parts' buffers
+            final MemoryManager mm = httpResponsePacket.getRequest().getConnection().getMemoryManager();
+            final CompositeBuffer composite =
+                    CompositeBuffer.newBuffer(mm, bodyBuffers.clone());
+            composite.allowInternalBuffersDispose(false);
+            responseBody = composite;
         }
 
     }
@@ -90,7 +107,10 @@ public class GrizzlyResponse extends ResponseBase {
     @Override
     public InputStream getResponseBodyAsStream() throws IOException {
 
-        return new BufferInputStream(responseBody);
+        // the stream doesn't move the body's position, so the body may be
+        // read again
+        return new BufferInputStream(responseBody,
+                responseBody.position(), responseBody.limit());
 
     }
 
@@ -98,9 +118,7 @@ public class GrizzlyResponse extends ResponseBase {
     @Override
     public String getResponseBodyExcerpt(int maxLength, String charset) throws IOException {
 
-        final int len = Math.min(responseBody.remaining(), maxLength);
-        final int pos = responseBody.position();
-        return responseBody.toStringContent(getCharset(charset), pos, len + pos);
+        return decode(Math.min(bodyLength, maxLength), getCharset(charset));
 
     }
 
@@ -108,7 +126,7 @@ public class GrizzlyResponse extends ResponseBase {
     @Override
     public String getResponseBody(String charset) throws IOException {
 
-        return responseBody.toStringContent(getCharset(charset));
+        return decode(bodyLength, getCharset(charset));
 
     }
 
@@ -132,11 +150,7 @@ public class GrizzlyResponse extends ResponseBase {
 
     @Override
     public byte[] getResponseBodyAsBytes() throws IOException {
-        final byte[] responseBodyBytes = new byte[responseBody.remaining()];
-        final int origPos = responseBody.position();
-        responseBody.get(responseBodyBytes);
-        responseBody.position(origPos);
-        return responseBodyBytes;
+        return copyBytes(bodyLength);
     }
 
     @Override
@@ -146,7 +160,7 @@ public class GrizzlyResponse extends ResponseBase {
 
     @Override
     protected List<Cookie> buildCookies() {
-        List<String> values = headers.getHeaders().get("set-cookie");
+        List<String> values = headers.getValues("set-cookie");
         if (isNonEmpty(values)) {
             CookiesBuilder.ServerCookiesBuilder builder =
                 new CookiesBuilder.ServerCookiesBuilder(false, true);
@@ -182,6 +196,49 @@ public class GrizzlyResponse extends ResponseBase {
     }
 
 
+    /**
+     * Decodes the first <tt>length</tt> bytes of the body, the bytes of
+     * a single heap buffer are decoded in place, otherwise they're copied
+     * once.
+     */
+    private String decode(final int length, final Charset charset) {
+
+        if (bodyBuffers.length == 1 && bodyBuffers[0].hasArray()) {
+            final Buffer buffer = bodyBuffers[0];
+            return new String(buffer.array(),
+                    buffer.arrayOffset() + buffer.position(), length, charset);
+        }
+        return new String(copyBytes(length), charset);
+
+    }
+
+
+    /**
+     * Copies the first <tt>length</tt> bytes of the body, the positions
+     * of the buffers are left intact.
+     */
+    private byte[] copyBytes(final int length) {
+
+        final byte[] bytes = new byte[length];
+        int offset = 0;
+        for (int i = 0; i < bodyBuffers.length && offset < length; i++) {
+            final Buffer buffer = bodyBuffers[i];
+            final int len = Math.min(buffer.remaining(), length - offset);
+            final int pos = buffer.position();
+            if (buffer.hasArray()) {
+                System.arraycopy(buffer.array(), buffer.arrayOffset() + pos,
+                        bytes, offset, len);
+            } else {
+                buffer.get(bytes, offset, len);
+                buffer.position(pos);
+            }
+            offset += len;
+        }
+        return bytes;
+
+    }
+
+
     private Charset getCharset(final String charset) {
 
         String charsetLocal = charset;
@@ -16,12 +16,16 @@ package com.ning.http.client.providers.grizzly;
 import org.glassfish.grizzly.Buffer;
 import org.glassfish.grizzly.Connection;
 import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.memory.ByteBufferArray;
 
 import com.ning.http.client.HttpResponseBodyPart;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 
@@ -38,6 +42,8 @@ public class GrizzlyResponseBodyPart extends HttpResponseBodyPart {
     private final Connection connection;
     private final AtomicReference<byte[]> contentBytes =
             new AtomicReference<byte[]>();
+    // the handler's lease plus the leases taken by lease()
+    private final AtomicInteger leases = new AtomicInteger(1);
 
 
     // ------------------------------------------------------------ Constructors
@@ -58,11 +64,12 @@ public class GrizzlyResponseBodyPart extends HttpResponseBodyPart {
     @Override
     public byte[] getBodyPartBytes() {
 
+        // fails, if the part is released, even if the bytes are copied already
+        final Buffer b = getBodyBuffer();
         byte[] bytes = contentBytes.get();
         if (bytes != null) {
             return bytes;
         }
-        final Buffer b = content.getContent();
         final int origPos = b.position();
         bytes = new byte[b.remaining()];
         b.get(bytes);
@@ -77,9 +84,48 @@ public class GrizzlyResponseBodyPart extends HttpResponseBodyPart {
     @Override
     public int writeTo(OutputStream outputStream) throws IOException {
 
-        final byte[] bytes = getBodyPartBytes();
-        outputStream.write(getBodyPartBytes());
-        return bytes.length;
+        final Buffer b = getBodyBuffer();
+        final int length = b.remaining();
+        if (b.hasArray()) {
+            outputStream.write(b.array(), b.arrayOffset() + b.position(), length);
+        } else {
+            outputStream.write(getBodyPartBytes());
+        }
+        return length;
+
+    }
+
+
+    @Override
+    public int writeTo(WritableByteChannel channel) throws IOException {
+
+        final Buffer b = getBodyBuffer();
+        final int length = b.remaining();
+        if (b.isComposite()) {
+            // write the buffers the composite is made of, not a copy
+            final ByteBufferArray array = b.toByteBufferArray();
+            try {
+                final ByteBuffer[] buffers = array.getArray();
+                final int size = array.size();
+                final ByteBuffer[] slices = new ByteBuffer[size];
+                for (int i = 0; i < size; i++) {
+                    slices[i] = buffers[i].slice();
+                }
+                if (channel instanceof GatheringByteChannel) {
+                    writeFully((GatheringByteChannel) channel, slices);
+                } else {
+                    for (int i = 0; i < size; i++) {
+                        writeFully(channel, slices[i]);
+                    }
+                }
+            } finally {
+                array.restore();
+                array.recycle();
+            }
+        } else {
+            writeFully(channel, getReadOnlyBodyByteBuffer());
+        }
+        return length;
 
     }
 
@@ -87,10 +133,57 @@ public class GrizzlyResponseBodyPart extends HttpResponseBodyPart {
     @Override
     public ByteBuffer getBodyByteBuffer() {
 
+        // a copy, so the handler can't modify the received content, which may
+        // be accumulated into the Response, see getReadOnlyBodyByteBuffer()
         return ByteBuffer.wrap(getBodyPartBytes());
 
     }
 
+
+    @Override
+    public ByteBuffer getReadOnlyBodyByteBuffer() {
+
+        return getBodyBuffer().toByteBuffer().slice().asReadOnlyBuffer();
+
+    }
+
+
+    @Override
+    public HttpResponseBodyPart lease() {
+
+        for (;;) {
+            final int current = leases.get();
+            if (current == 0) {
+                throw new IllegalStateException("The body part is released");
+            }
+            if (leases.compareAndSet(current, current + 1)) {
+                return this;
+            }
+        }
+
+    }
+
+
+    @Override
+    public boolean release() {
+
+        for (;;) {
+            final int current = leases.get();
+            if (current == 0) {
+                throw new IllegalStateException("The body part is released");
+            }
+            if (leases.compareAndSet(current, current - 1)) {
+                if (current == 1) {
+                    // the buffer is disposed only if its owner allows it
+                    content.getContent().tryDispose();
+                    return true;
+                }
+                return false;
+            }
+        }
+
+    }
+
     @Override
     public boolean isLast() {
         return content.isLast();
@@ -106,17 +199,51 @@ public class GrizzlyResponseBodyPart extends HttpResponseBodyPart {
         return content.getHttpHeader().getProcessingState().isStayAlive();
     }
 
-    // ----------------------------------------------- Package Protected Methods
+    @Override
+    public int length() {
+        return getBodyBuffer().remaining();
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
 
 
-    Buffer getBodyBuffer() {
+    /**
+     * @return the Grizzly {@link Buffer} holding the bytes of this part.
+     *         The buffer is shared with the {@link com.ning.http.client.Response},
+     *         if the part is accumulated, so it must not be modified, see
+     *         {@link Buffer#asReadOnlyBuffer()}
+     * @throws IllegalStateException if the part is released
+     */
+    public Buffer getBodyBuffer() {
 
+        if (leases.get() == 0) {
+            throw new IllegalStateException("The body part is released");
+        }
         return content.getContent();
 
     }
 
-    @Override
-    public int length() {
-        return content.getContent().remaining();
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private static void writeFully(final WritableByteChannel channel,
+            final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeFully(final GatheringByteChannel channel,
+            final ByteBuffer[] buffers) throws IOException {
+        int offset = 0;
+        while (offset < buffers.length) {
+            channel.write(buffers, offset, buffers.length - offset);
+            // skip the buffers written completely
+            while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+                offset++;
+            }
+        }
     }
 }
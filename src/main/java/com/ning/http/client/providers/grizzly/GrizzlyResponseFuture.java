@@ -20,6 +20,7 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.glassfish.grizzly.CompletionHandler;
 import org.glassfish.grizzly.impl.FutureImpl;
@@ -40,6 +41,8 @@ final class GrizzlyResponseFuture<V> extends AbstractListenableFuture<V>
 //    private Request request;
 //    private Connection connection;
     private AsyncHandler asyncHandler;
+    // the number of times the request has been replayed after I/O failures
+    private final AtomicInteger retryCount = new AtomicInteger();
     
     // transaction context. Not null if connection is established
     private volatile HttpTransactionContext transactionCtx;
@@ -68,7 +71,6 @@ final class GrizzlyResponseFuture<V> extends AbstractListenableFuture<V>
     }
 
     public void abort(Throwable t) {
-
         delegate.failure(t);
 
     }
@@ -188,6 +190,32 @@ final class GrizzlyResponseFuture<V> extends AbstractListenableFuture<V>
         this.asyncHandler = asyncHandler;
     }
 
+    /**
+     * @return the number of times the request has been replayed after
+     *          I/O failures
+     */
+    int getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * Counts the replay, unless the max number of retries is reached.
+     *
+     * @return <tt>true</tt> if the request may be replayed, or <tt>false</tt>
+     *          if the retries are exhausted
+     */
+    boolean incrementRetryCount(final int maxRetries) {
+        for (;;) {
+            final int count = retryCount.get();
+            if (count >= maxRetries) {
+                return false;
+            }
+            if (retryCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
     /**
      * @return {@link HttpTransactionContext}, or <tt>null</tt> if connection is
      *          not established
@@ -16,6 +16,10 @@ package com.ning.http.client.providers.grizzly;
 import com.ning.http.client.FluentCaseInsensitiveStringsMap;
 import com.ning.http.client.HttpResponseHeaders;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.glassfish.grizzly.http.HttpResponsePacket;
 import org.glassfish.grizzly.http.util.MimeHeaders;
 import org.glassfish.grizzly.utils.Charsets;
@@ -65,5 +69,70 @@ public class GrizzlyResponseHeaders extends HttpResponseHeaders {
     }
 
 
+    /**
+     * {@inheritDoc}
+     * The name is matched against the received header names' bytes,
+     * only the found value is converted to a {@link String}.
+     */
+    @Override
+    public String getFirstValue(final String name) {
+        if (initialized) {
+            return headers.getFirstValue(name);
+        }
+
+        if (name == null) {
+            return null;
+        }
+        final MimeHeaders headersLocal = response.getHeaders();
+        final int idx = headersLocal.indexOf(name, 0);
+        return idx != -1 ? valueAt(headersLocal, idx) : null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * The name is matched against the received header names' bytes,
+     * only the found values are converted to {@link String}s.
+     */
+    @Override
+    public List<String> getValues(final String name) {
+        if (initialized) {
+            return headers.get(name);
+        }
+
+        if (name == null) {
+            return Collections.emptyList();
+        }
+        final MimeHeaders headersLocal = response.getHeaders();
+        int idx = headersLocal.indexOf(name, 0);
+        if (idx == -1) {
+            return Collections.emptyList();
+        }
+
+        final List<String> values = new ArrayList<>(2);
+        do {
+            values.add(valueAt(headersLocal, idx));
+            idx = headersLocal.indexOf(name, idx + 1);
+        } while (idx != -1);
+        return values;
+    }
+
+
+    @Override
+    public boolean isEmpty() {
+        return initialized
+                ? headers.isEmpty()
+                : response.getHeaders().size() == 0;
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private static String valueAt(final MimeHeaders headers, final int idx) {
+        final String value = headers.getValue(idx).toString(Charsets.ASCII_CHARSET);
+        // same as the getHeaders() map
+        return value != null ? value : "";
+    }
 
 }
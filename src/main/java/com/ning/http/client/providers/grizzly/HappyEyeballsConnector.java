@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.CompletionHandler;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.ConnectorHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connects to a host, which resolves to several addresses, racing staggered
+ * connects across the addresses (RFC 8305 "Happy Eyeballs").
+ *
+ * The addresses are ordered alternating the address families, starting with
+ * the family of the first resolved address. The first connect is started
+ * right away, the next one either once the previous one fails, or once the
+ * connection attempt delay passes, whatever comes first. The first
+ * established connection wins, the others are closed.
+ *
+ * The addresses the connect to has failed are remembered for a cooldown
+ * period and tried only after the other addresses of the host.
+ *
+ * @author Grizzly team
+ */
+final class HappyEyeballsConnector {
+    private final static Logger LOGGER = LoggerFactory.getLogger(HappyEyeballsConnector.class);
+
+    private static final int MAX_FAILED_ADDRESSES = 1024;
+
+    private final ConnectorHandler<SocketAddress> connectorHandler;
+    private final TimeoutWheel timer;
+    private final long attemptDelayMillis;
+    private final long failureCooldownMillis;
+
+    private final ConcurrentHashMap<InetAddress, Long> failedAddresses =
+            new ConcurrentHashMap<InetAddress, Long>();
+
+    // ------------------------------------------------------------ Constructors
+
+    /**
+     * @param timer the timer to start the delayed connects with
+     * @param attemptDelayMillis the delay before the connect to the next
+     *        address is started, <tt>0</tt> means the next address is tried
+     *        only once the connect to the previous one fails
+     * @param failureCooldownMillis the time a failed address is tried after
+     *        the others, <tt>0</tt> means failures are not remembered
+     */
+    HappyEyeballsConnector(final ConnectorHandler<SocketAddress> connectorHandler,
+            final TimeoutWheel timer,
+            final long attemptDelayMillis, final long failureCooldownMillis) {
+        this.connectorHandler = connectorHandler;
+        this.timer = timer;
+        this.attemptDelayMillis = attemptDelayMillis;
+        this.failureCooldownMillis = failureCooldownMillis;
+    }
+
+    // ---------------------------------------------------------- Public Methods
+
+    /**
+     * Connects to one of the addresses. The {@link CompletionHandler} is
+     * notified about the first established connection, or about the last
+     * failure, if none of the addresses is reachable.
+     *
+     * @return the {@link ConnectAttempt}, which may be cancelled
+     */
+    ConnectAttempt connect(final InetAddress[] addresses, final int port,
+            final SocketAddress localAddress,
+            final CompletionHandler<Connection> completionHandler) {
+        final ConnectAttempt attempt = new ConnectAttempt(order(addresses),
+                port, localAddress, completionHandler);
+        attempt.startNext();
+        return attempt;
+    }
+
+    /**
+     * @return <tt>true</tt>, if the connect to the address has failed recently
+     */
+    boolean isCoolingDown(final InetAddress address) {
+        final Long until = failedAddresses.get(address);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    void close() {
+        failedAddresses.clear();
+    }
+
+    /**
+     * Interleaves the address families, the addresses, which are cooling
+     * down after a failure, go last.
+     */
+    InetAddress[] order(final InetAddress[] addresses) {
+        final List<InetAddress> healthy = new ArrayList<InetAddress>(addresses.length);
+        final List<InetAddress> failed = new ArrayList<InetAddress>(0);
+        for (InetAddress address : addresses) {
+            (isCoolingDown(address) ? failed : healthy).add(address);
+        }
+
+        final InetAddress[] ordered = new InetAddress[addresses.length];
+        final int count = interleave(healthy, ordered, 0);
+        interleave(failed, ordered, count);
+
+        return ordered;
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    private static int interleave(final List<InetAddress> addresses,
+            final InetAddress[] dst, int offset) {
+        if (addresses.isEmpty()) {
+            return offset;
+        }
+
+        final boolean firstIsV6 = addresses.get(0) instanceof Inet6Address;
+        final List<InetAddress> first = new ArrayList<InetAddress>(addresses.size());
+        final List<InetAddress> second = new ArrayList<InetAddress>(addresses.size());
+        for (InetAddress address : addresses) {
+            ((address instanceof Inet6Address) == firstIsV6 ? first : second).add(address);
+        }
+
+        for (int i = 0; i < first.size() || i < second.size(); i++) {
+            if (i < first.size()) {
+                dst[offset++] = first.get(i);
+            }
+            if (i < second.size()) {
+                dst[offset++] = second.get(i);
+            }
+        }
+
+        return offset;
+    }
+
+    private void onFailed(final InetAddress address) {
+        if (failureCooldownMillis <= 0) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        failedAddresses.put(address, now + failureCooldownMillis);
+
+        if (failedAddresses.size() > MAX_FAILED_ADDRESSES) {
+            for (Iterator<Map.Entry<InetAddress, Long>> it =
+                    failedAddresses.entrySet().iterator(); it.hasNext();) {
+                if (it.next().getValue() <= now) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void onConnected(final InetAddress address) {
+        if (!failedAddresses.isEmpty()) {
+            failedAddresses.remove(address);
+        }
+    }
+
+    // ----------------------------------------------------------- Inner Classes
+
+    /**
+     * The state of a single connect racing across the host addresses.
+     */
+    final class ConnectAttempt {
+        private final InetAddress[] addresses;
+        private final int port;
+        private final SocketAddress localAddress;
+        private final CompletionHandler<Connection> completionHandler;
+
+        private final AtomicInteger next = new AtomicInteger();
+        // the connects in progress, incremented before next is claimed
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean isDone = new AtomicBoolean();
+        private volatile TimeoutWheel.Timeout delayedStart;
+        private volatile Throwable lastFailure;
+
+        private ConnectAttempt(final InetAddress[] addresses, final int port,
+                final SocketAddress localAddress,
+                final CompletionHandler<Connection> completionHandler) {
+            this.addresses = addresses;
+            this.port = port;
+            this.localAddress = localAddress;
+            this.completionHandler = completionHandler;
+        }
+
+        /**
+         * Stops the connect. No more addresses are tried and the connections
+         * established later are closed. The {@link CompletionHandler} is not
+         * notified.
+         */
+        void cancel() {
+            if (isDone.compareAndSet(false, true)) {
+                cancelDelayedStart();
+            }
+        }
+
+        /**
+         * Starts the connect to the next address, if any.
+         */
+        private void startNext() {
+            inFlight.incrementAndGet();
+            final int idx = next.getAndIncrement();
+            if (idx >= addresses.length || isDone.get()) {
+                onAttemptDone();
+                return;
+            }
+
+            final InetAddress address = addresses[idx];
+            scheduleNext(idx);
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Connecting to {}:{} ({} of {})",
+                        address, port, idx + 1, addresses.length);
+            }
+
+            try {
+                connectorHandler.connect(new InetSocketAddress(address, port),
+                        localAddress, new AddressConnectHandler(address));
+            } catch (Throwable t) {
+                onFailed(address, t);
+            }
+        }
+
+        private void scheduleNext(final int idx) {
+            if (attemptDelayMillis <= 0 || idx + 1 >= addresses.length) {
+                return;
+            }
+
+            try {
+                delayedStart = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        // start only if no other connect has been started meanwhile
+                        if (next.get() == idx + 1) {
+                            startNext();
+                        }
+                    }
+                }, attemptDelayMillis, TimeUnit.MILLISECONDS);
+            } catch (IllegalStateException e) {
+                // the client is closing, the next address is tried on failure
+            }
+        }
+
+        private void onConnected(final InetAddress address,
+                final Connection connection) {
+            if (!isDone.compareAndSet(false, true)) {
+                // another address has won the race, or the connect is cancelled
+                connection.closeSilently();
+                return;
+            }
+
+            cancelDelayedStart();
+            HappyEyeballsConnector.this.onConnected(address);
+            completionHandler.completed(connection);
+        }
+
+        private void onFailed(final InetAddress address, final Throwable t) {
+            HappyEyeballsConnector.this.onFailed(address);
+            lastFailure = t;
+
+            if (!isDone.get()) {
+                startNext();
+            }
+
+            onAttemptDone();
+        }
+
+        private void onAttemptDone() {
+            if (inFlight.decrementAndGet() == 0
+                    && next.get() >= addresses.length
+                    && isDone.compareAndSet(false, true)) {
+                cancelDelayedStart();
+
+                final Throwable failure = lastFailure;
+                completionHandler.failed(failure != null
+                        ? failure
+                        : new ConnectException("No address to connect to"));
+            }
+        }
+
+        private void cancelDelayedStart() {
+            final TimeoutWheel.Timeout timeout = delayedStart;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        private final class AddressConnectHandler
+                implements CompletionHandler<Connection> {
+            private final InetAddress address;
+
+            private AddressConnectHandler(final InetAddress address) {
+                this.address = address;
+            }
+
+            @Override
+            public void completed(final Connection connection) {
+                onConnected(address, connection);
+            }
+
+            @Override
+            public void failed(final Throwable throwable) {
+                onFailed(address, throwable);
+            }
+
+            @Override
+            public void cancelled() {
+                onFailed(address, new ConnectException("Connect cancelled"));
+            }
+
+            @Override
+            public void updated(final Connection result) {
+            }
+        } // END AddressConnectHandler
+    } // END ConnectAttempt
+}
@@ -16,19 +16,31 @@ import static java.lang.Thread.currentThread;
 import static org.slf4j.MDC.getCopyOfContextMap;
 
 import com.ning.http.client.providers.grizzly.events.GracefulCloseEvent;
+import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpClientConfig;
 import com.ning.http.client.ProxyServer;
 import com.ning.http.client.Request;
+import com.ning.http.client.filter.FilterContext;
+import com.ning.http.client.filter.FilterException;
+import com.ning.http.client.filter.IOExceptionFilter;
 import com.ning.http.client.uri.Uri;
 import com.ning.http.client.ws.WebSocket;
 import com.ning.http.util.AsyncHttpProviderUtils;
+import com.ning.http.util.PreservingThreadContextCompletionHandler;
 import com.ning.http.util.ProxyUtils;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
 import org.glassfish.grizzly.CloseListener;
 import org.glassfish.grizzly.CloseType;
 import org.glassfish.grizzly.Closeable;
 import org.glassfish.grizzly.CompletionHandler;
 import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.EmptyCompletionHandler;
 import org.glassfish.grizzly.Grizzly;
 import org.glassfish.grizzly.attributes.Attribute;
 import org.glassfish.grizzly.attributes.AttributeStorage;
@@ -47,6 +59,10 @@ import org.slf4j.MDC;
 public final class HttpTransactionContext {
     private static final Attribute<HttpTransactionContext> REQUEST_STATE_ATTR =
             Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(HttpTransactionContext.class.getName());
+    // the pipelined transactions waiting for their responses, the oldest first
+    private static final Attribute<Queue<HttpTransactionContext>> IN_FLIGHT_ATTR =
+            Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(
+                    HttpTransactionContext.class.getName() + ".inFlight");
 
     public static final String MDC_ATTRIBUTE_KEY = "mdc";
     public static final String CLASS_LOADER_ATTRIBUTE_KEY = "classLoader";
@@ -54,6 +70,9 @@ public final class HttpTransactionContext {
     int redirectCount;
     final int maxRedirectCount;
     final boolean redirectsAllowed;
+    // the maximum size of the response body, which is accumulated by
+    // the AsyncCompletionHandler, or -1
+    final long maxResponseBodySize;
     final GrizzlyAsyncHttpProvider provider;
     final ProxyServer proxyServer;
         
@@ -63,6 +82,10 @@ public final class HttpTransactionContext {
     private final Connection connection;
     
     PayloadGenerator payloadGenerator;
+    // not null, if the request body is compressed
+    RequestCompressionEncoding.Compressor requestCompressor;
+    // the decompressors of the response bodies, released on cleanup
+    private List<ContentDecoder.Decompressor> responseDecompressors;
     
     StatusHandler statusHandler;
     // StatusHandler invocation status
@@ -76,7 +99,10 @@ public final class HttpTransactionContext {
     
     Uri lastRedirectUri;
     long totalBodyWritten;
+    long totalBodyReceived;
     AsyncHandler.STATE currentState;
+    // not null, if the handler controls the response reading
+    GrizzlyReadControl readControl;
     Uri wsRequestURI;
     boolean isWSRequest;
     HandShake handshake;
@@ -88,6 +114,10 @@ public final class HttpTransactionContext {
     // don't recycle the context, don't return associated connection to
     // the pool
     boolean isReuseConnection;
+    
+    // the request is pipelined, so it might be replayed if the connection
+    // is closed before the response is received
+    final boolean isPipelined;
 
     /**
      * <tt>true</tt> if the request is fully sent, or <tt>false</tt>otherwise.
@@ -98,7 +128,15 @@ public final class HttpTransactionContext {
     private final CloseListener listener = new CloseListener<Closeable, CloseType>() {
         @Override
         public void onClosed(Closeable closeable, CloseType type) throws IOException {
-            if (isGracefullyFinishResponseOnClose() || isKeepAliveDisabled()) {
+            if (isPipelined && responsePacket == null
+                    && !isClosedByTimeout(closeable)) {
+                // the connection was closed before the pipelined request
+                // was answered - the failure replays it on a new connection,
+                // unless the retries are exhausted
+                abortOrReplay(CloseType.REMOTELY.equals(type)
+                        ? AsyncHttpProviderUtils.REMOTELY_CLOSED_EXCEPTION
+                        : new IOException("Connection closed before the pipelined request was answered"));
+            } else if (isGracefullyFinishResponseOnClose() || isKeepAliveDisabled()) {
                 // Connection was closed.
                 // This event is fired only for responses, which don't have
                 // associated transfer-encoding or content-length.
@@ -107,13 +145,13 @@ public final class HttpTransactionContext {
                 fc.fireEventUpstream(connection,
                         new GracefulCloseEvent(HttpTransactionContext.this), null);
             } else if (CloseType.REMOTELY.equals(type)) {
-                abort(AsyncHttpProviderUtils.REMOTELY_CLOSED_EXCEPTION);
+                abortOrReplay(AsyncHttpProviderUtils.REMOTELY_CLOSED_EXCEPTION);
             } else {
                 try {
                     closeable.assertOpen();
                 } catch (IOException ioe) {
                     // unwrap the exception as it was wrapped by assertOpen.
-                    abort(ioe.getCause());
+                    abortOrReplay(ioe.getCause());
                 }
             }
         }
@@ -125,6 +163,9 @@ public final class HttpTransactionContext {
             final HttpTransactionContext httpTxContext) {
         httpCtx.getCloseable().addCloseListener(httpTxContext.listener);
         REQUEST_STATE_ATTR.set(httpCtx, httpTxContext);
+        if (httpTxContext.isPipelined) {
+            inFlight(httpTxContext.connection).add(httpTxContext);
+        }
     }
 
     static void cleanupTransaction(final HttpContext httpCtx,
@@ -148,6 +189,37 @@ public final class HttpTransactionContext {
     static HttpTransactionContext currentTransaction(final HttpContext httpCtx) {
         return ((AhcHttpContext) httpCtx).getHttpTransactionContext();
     }
+
+    /**
+     * Unlike {@link #currentTransaction(AttributeStorage)}, which returns the
+     * transaction bound to the {@link Connection} last, returns the oldest
+     * pipelined transaction still waiting for its response, so the timeouts
+     * are applied to the request the connection is waiting for.
+     *
+     * @return the transaction the next response on the {@link Connection}
+     *          belongs to, or <tt>null</tt>
+     */
+    static HttpTransactionContext oldestTransaction(final Connection connection) {
+        final Queue<HttpTransactionContext> inFlight = IN_FLIGHT_ATTR.get(connection);
+        final HttpTransactionContext oldest = inFlight != null ? inFlight.peek() : null;
+        return oldest != null ? oldest : currentTransaction(connection);
+    }
+
+    private static Queue<HttpTransactionContext> inFlight(final Connection connection) {
+        Queue<HttpTransactionContext> inFlight = IN_FLIGHT_ATTR.get(connection);
+        if (inFlight == null) {
+            // the requests and the responses are processed by different threads
+            synchronized (connection) {
+                inFlight = IN_FLIGHT_ATTR.get(connection);
+                if (inFlight == null) {
+                    inFlight = new ConcurrentLinkedQueue<HttpTransactionContext>();
+                    IN_FLIGHT_ATTR.set(connection, inFlight);
+                }
+            }
+        }
+
+        return inFlight;
+    }
     
     static HttpTransactionContext startTransaction(
             final Connection connection, final GrizzlyAsyncHttpProvider provider,
@@ -169,7 +241,11 @@ public final class HttpTransactionContext {
                 provider.getClientConfig(), ahcRequest);
         redirectsAllowed = provider.getClientConfig().isFollowRedirect();
         maxRedirectCount = provider.getClientConfig().getMaxRedirects();
+        maxResponseBodySize = AsyncHttpProviderUtils.maxResponseBodySize(
+                provider.getClientConfig(), ahcRequest);
         this.requestUri = ahcRequest.getUri();
+        this.isPipelined = ConnectionManager.isPipelined(connection)
+                && ConnectionManager.isPipelinable(ahcRequest);
         this.connection.getAttributes().setAttribute(MDC_ATTRIBUTE_KEY, getCopyOfContextMap());
         this.connection.getAttributes().setAttribute(CLASS_LOADER_ATTRIBUTE_KEY, currentThread().getContextClassLoader());
     }
@@ -202,17 +278,211 @@ public final class HttpTransactionContext {
             final Request request) {
         final HttpTransactionContext newContext = startTransaction(
                 connection, provider, request, future);
+        copyStateTo(newContext);
+        
+        // detach the future
+        future = null;
+        
+        return newContext;
+    }
+
+    /**
+     * Detaches the future from this transaction and starts a new transaction
+     * for the request, once a {@link Connection} is obtained from the
+     * {@link ConnectionManager}. Unlike {@link #cloneAndStartTransactionFor(Connection, Request)}
+     * the caller (usually a selector thread) is never blocked waiting for
+     * the new connection to be established.
+     * 
+     * The {@link CompletionHandler} is notified with the new transaction,
+     * which is ready to be executed. If the connection can't be obtained -
+     * the future is aborted.
+     */
+    void cloneAndStartTransactionAsync(final Request request,
+            final CompletionHandler<HttpTransactionContext> completionHandler) {
+        final GrizzlyResponseFuture responseFuture = future;
+        
+        // detach the future, so closing this transaction's connection
+        // doesn't affect it
+        future = null;
+        
+        if (responseFuture == null) {
+            return;
+        }
+        
+        final CompletionHandler<Connection> connectHandler =
+                new PreservingThreadContextCompletionHandler<Connection>(
+                        new CompletionHandler<Connection>() {
+            @Override
+            public void cancelled() {
+                responseFuture.cancel(true);
+            }
+
+            @Override
+            public void failed(final Throwable throwable) {
+                responseFuture.abort(throwable);
+            }
+
+            @Override
+            public void completed(final Connection c) {
+                final HttpTransactionContext newContext;
+                try {
+                    newContext = startTransaction(c, provider, request,
+                            responseFuture);
+                    copyStateTo(newContext);
+                } catch (Exception e) {
+                    c.closeSilently();
+                    failed(e);
+                    return;
+                }
+                
+                if (responseFuture.setHttpTransactionCtx(newContext)) {
+                    completionHandler.completed(newContext);
+                } else {
+                    // GrizzlyResponseFuture has been already completed (canceled?)
+                    newContext.closeConnection();
+                }
+            }
+
+            @Override
+            public void updated(final Connection c) {
+                // no-op
+            }
+        });
+        
+        try {
+            provider.getConnectionManager().openAsync(request, connectHandler);
+        } catch (Exception e) {
+            responseFuture.abort(e);
+        }
+    }
+
+    /**
+     * Replays the request on a new {@link Connection} after an I/O failure.
+     * The {@link IOExceptionFilter}s are asked first, if none of them
+     * requests the replay, an idempotent request with a replayable body,
+     * which hasn't got any response byte yet, is retried transparently:
+     * most likely it has been sent over a stale pooled connection, which
+     * the server has closed meanwhile. Either way the number of replays is
+     * bounded by {@link AsyncHttpClientConfig#getMaxRequestRetry()}.
+     *
+     * @return <tt>true</tt> if the request is being replayed, so the future
+     *          must not be failed, or <tt>false</tt> otherwise
+     * @throws FilterException if an {@link IOExceptionFilter} has failed
+     */
+    @SuppressWarnings("unchecked")
+    synchronized boolean replayOnFailure(final GrizzlyResponseFuture responseFuture,
+            final Throwable t) throws FilterException {
+        if (future != responseFuture || responseFuture.isDone()
+                || isWSRequest || !(t instanceof IOException)
+                || isCausedByTimeout(t)) {
+            return false;
+        }
+
+        final AsyncHttpClientConfig config = provider.getClientConfig();
+        
+        Request request = ahcRequest;
+        AsyncHandler handler = responseFuture.getAsyncHandler();
+        boolean replay = false;
+        
+        final List<IOExceptionFilter> filters = config.getIOExceptionFilters();
+        if (!filters.isEmpty()) {
+            FilterContext fc = new FilterContext.FilterContextBuilder()
+                    .asyncHandler(handler)
+                    .request(request)
+                    .ioException((IOException) t)
+                    .build();
+            for (IOExceptionFilter filter : filters) {
+                fc = filter.filter(fc);
+                if (fc == null) {
+                    throw new NullPointerException("FilterContext is null");
+                }
+            }
+            
+            if (fc.replayRequest()) {
+                replay = true;
+                request = fc.getRequest();
+                handler = fc.getAsyncHandler();
+            }
+        }
+        
+        if (!replay) {
+            replay = responsePacket == null && isRetriable(request);
+        }
+        
+        if (!replay) {
+            return false;
+        }
+        
+        if (!responseFuture.incrementRetryCount(config.getMaxRequestRetry())) {
+            provider.onRetriesExhausted();
+            return false;
+        }
+        
+        provider.onRequestRetried();
+        if (handler != null) {
+            responseFuture.setAsyncHandler(handler);
+        }
+        
+        replayOnNewConnection(request);
+        // the failed connection can't be reused
+        closeConnection();
+        return true;
+    }
+
+    private void replayOnNewConnection(final Request request) {
+        cloneAndStartTransactionAsync(request,
+                new EmptyCompletionHandler<HttpTransactionContext>() {
+            @Override
+            public void completed(final HttpTransactionContext newContext) {
+                try {
+                    provider.execute(newContext);
+                } catch (IOException ioe) {
+                    newContext.abort(ioe);
+                }
+            }
+        });
+    }
+
+    private static boolean isClosedByTimeout(final Closeable closeable) {
+        try {
+            closeable.assertOpen();
+        } catch (IOException ioe) {
+            return isCausedByTimeout(ioe);
+        }
+        
+        return false;
+    }
+
+    private static boolean isCausedByTimeout(final Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+
+    /**
+     * @return <tt>true</tt> if the request may be sent once again without
+     *          side effects and its body can be regenerated
+     */
+    private static boolean isRetriable(final Request request) {
+        final String method = request.getMethod();
+        return ("GET".equals(method) || "HEAD".equals(method)
+                || "OPTIONS".equals(method) || "TRACE".equals(method)
+                || "PUT".equals(method) || "DELETE".equals(method))
+                && request.getStreamData() == null
+                && request.getBodyGenerator() == null;
+    }
+
+    private void copyStateTo(final HttpTransactionContext newContext) {
         newContext.invocationStatus = invocationStatus;
         newContext.payloadGenerator = payloadGenerator;
         newContext.currentState = currentState;
         newContext.statusHandler = statusHandler;
         newContext.lastRedirectUri = lastRedirectUri;
         newContext.redirectCount = redirectCount;
-        
-        // detach the future
-        future = null;
-        
-        return newContext;
     }
 
     boolean isGracefullyFinishResponseOnClose() {
@@ -223,12 +493,44 @@ public final class HttpTransactionContext {
                 response.getContentLength() == -1;
     }
 
+    /**
+     * @return <tt>true</tt> if the response body is accumulated in memory
+     *          by the {@link AsyncCompletionHandler}, and its size is limited
+     */
+    boolean isResponseBodySizeLimited() {
+        return maxResponseBodySize > 0
+                && getAsyncHandler() instanceof AsyncCompletionHandler;
+    }
+
     void abort(final Throwable t) {
         if (future != null) {
             future.abort(t);
         }
     }
 
+    /**
+     * Fails the request because of the connection or write failure, unless
+     * it can be replayed on a new connection, see
+     * {@link #replayOnFailure(GrizzlyResponseFuture, Throwable)}.
+     */
+    void abortOrReplay(final Throwable t) {
+        final GrizzlyResponseFuture responseFuture = future;
+        if (responseFuture == null) {
+            return;
+        }
+
+        Throwable failure = t;
+        try {
+            if (replayOnFailure(responseFuture, t)) {
+                return;
+            }
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        responseFuture.abort(failure);
+    }
+
     void done() {
         done(null);
     }
@@ -264,6 +566,13 @@ public final class HttpTransactionContext {
         connection.closeSilently();
     }
 
+    void addResponseDecompressor(final ContentDecoder.Decompressor decompressor) {
+        if (responseDecompressors == null) {
+            responseDecompressors = new ArrayList<>(2);
+        }
+        responseDecompressors.add(decompressor);
+    }
+
     void keepAliveDisabled() {
         connection.getAttributes().setAttribute("keep-alive-disabled", Boolean.TRUE);
     }
@@ -288,9 +597,24 @@ public final class HttpTransactionContext {
     }
     
     private void cleanup(final HttpContext httpCtx) {
+        if (requestCompressor != null) {
+            requestCompressor.end();
+        }
+        if (responseDecompressors != null) {
+            for (ContentDecoder.Decompressor decompressor : responseDecompressors) {
+                decompressor.close();
+            }
+            responseDecompressors = null;
+        }
+        if (isPipelined) {
+            inFlight(connection).remove(this);
+        }
         if (!skipCleanup) {
             httpCtx.getCloseable().removeCloseListener(listener);
-            REQUEST_STATE_ATTR.remove(httpCtx);
+            // a pipelined request might have been bound already
+            if (REQUEST_STATE_ATTR.get(httpCtx) == this) {
+                REQUEST_STATE_ATTR.remove(httpCtx);
+            }
         }
     }
     
@@ -0,0 +1,468 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.memory.Buffers;
+import org.glassfish.grizzly.memory.MemoryManager;
+
+/**
+ * {@link ContentDecoder} for the <tt>gzip</tt> and <tt>deflate</tt>
+ * content-codings. The {@link Inflater}s are pooled, so a response doesn't
+ * allocate the native inflater state, and the decoded data is written into
+ * buffers of the configured size.
+ *
+ * @author Grizzly team
+ */
+final class InflaterDecoder implements ContentDecoder {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final int MAX_POOLED_INFLATERS = 64;
+    private static final int SCRATCH_SIZE = 8192;
+
+    private static final int FTEXT_HCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final boolean isGzip;
+    private final int bufferSize;
+    // the pool for the gzip and raw deflate streams
+    private final InflaterPool rawPool;
+    // the pool for the zlib wrapped deflate streams
+    private final InflaterPool zlibPool;
+
+    // ------------------------------------------------------------ Constructors
+
+    InflaterDecoder(final String name, final int bufferSize) {
+        if (!GZIP.equals(name) && !DEFLATE.equals(name)) {
+            throw new IllegalArgumentException(
+                    "Unsupported content-coding: " + name);
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid decode buffer size: " + bufferSize);
+        }
+
+        this.isGzip = GZIP.equals(name);
+        this.bufferSize = bufferSize;
+        this.rawPool = new InflaterPool(true);
+        this.zlibPool = isGzip ? null : new InflaterPool(false);
+    }
+
+    // ---------------------------------------- Methods from ContentDecoder
+
+    @Override
+    public String getName() {
+        return isGzip ? GZIP : DEFLATE;
+    }
+
+    @Override
+    public String[] getAliases() {
+        return isGzip ? new String[] {"x-gzip"} : new String[0];
+    }
+
+    @Override
+    public Decompressor newDecompressor() {
+        return isGzip ? new GzipDecompressor() : new DeflateDecompressor();
+    }
+
+    // ----------------------------------------------------------- Inner Classes
+
+    /**
+     * Inflates the input into buffers of the configured size.
+     */
+    private abstract class InflaterDecompressor implements Decompressor {
+        // the copies of the input and output, if they are not heap buffers
+        private byte[] inScratch;
+        private byte[] outScratch;
+
+        protected Inflater inflater;
+        protected boolean isClosed;
+        private InflaterPool pool;
+
+        private Buffer output;
+        private Buffer chunk;
+
+        protected final void acquire(final InflaterPool pool) {
+            this.pool = pool;
+            inflater = pool.poll();
+        }
+
+        /**
+         * Inflates the <tt>input</tt> until the stream is finished or
+         * the input is consumed, the input is left positioned right after
+         * the end of the deflate stream.
+         */
+        protected final void inflate(final MemoryManager mm,
+                final Buffer input) throws IOException {
+            while (input.hasRemaining() && !inflater.finished()) {
+                final int pos = input.position();
+                final int len;
+                if (input.hasArray()) {
+                    len = input.remaining();
+                    inflater.setInput(input.array(),
+                            input.arrayOffset() + pos, len);
+                } else {
+                    if (inScratch == null) {
+                        inScratch = new byte[SCRATCH_SIZE];
+                    }
+                    len = Math.min(inScratch.length, input.remaining());
+                    input.get(inScratch, 0, len);
+                    inflater.setInput(inScratch, 0, len);
+                }
+
+                inflateInput(mm);
+                input.position(pos + len - inflater.getRemaining());
+            }
+        }
+
+        /**
+         * @return the data inflated since the last call
+         */
+        protected final Buffer drainOutput(final MemoryManager mm) {
+            if (chunk != null) {
+                flushChunk(mm);
+            }
+            final Buffer result = output != null ? output : Buffers.EMPTY_BUFFER;
+            output = null;
+            return result;
+        }
+
+        protected abstract void onInflated(final byte[] b, final int off,
+                final int len);
+
+        protected final void release() {
+            if (inflater != null) {
+                pool.offer(inflater);
+                inflater = null;
+            }
+        }
+
+        // the response might be aborted by another thread
+        @Override
+        public synchronized void close() {
+            isClosed = true;
+            release();
+            if (chunk != null) {
+                chunk.tryDispose();
+                chunk = null;
+            }
+            if (output != null) {
+                output.tryDispose();
+                output = null;
+            }
+        }
+
+        private void inflateInput(final MemoryManager mm) throws IOException {
+            try {
+                while (true) {
+                    if (chunk == null) {
+                        chunk = mm.allocate(bufferSize);
+                    }
+
+                    final int len;
+                    if (chunk.hasArray()) {
+                        final int off = chunk.arrayOffset() + chunk.position();
+                        len = inflater.inflate(chunk.array(), off, chunk.remaining());
+                        onInflated(chunk.array(), off, len);
+                        chunk.position(chunk.position() + len);
+                    } else {
+                        if (outScratch == null) {
+                            outScratch = new byte[SCRATCH_SIZE];
+                        }
+                        len = inflater.inflate(outScratch, 0,
+                                Math.min(outScratch.length, chunk.remaining()));
+                        onInflated(outScratch, 0, len);
+                        chunk.put(outScratch, 0, len);
+                    }
+
+                    if (!chunk.hasRemaining()) {
+                        flushChunk(mm);
+                        continue;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new IOException("Preset dictionary is not supported");
+                    }
+                    if (len == 0 || inflater.finished()) {
+                        return;
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        private void flushChunk(final MemoryManager mm) {
+            chunk.trim();
+            if (chunk.hasRemaining()) {
+                chunk.allowBufferDispose(true);
+                output = output == null
+                        ? chunk
+                        : Buffers.appendBuffers(mm, output, chunk);
+            } else {
+                chunk.tryDispose();
+            }
+            chunk = null;
+        }
+    } // END InflaterDecompressor
+
+    /**
+     * Decodes the gzip members, see RFC 1952, the member header and
+     * trailer might be split between the body chunks.
+     */
+    private final class GzipDecompressor extends InflaterDecompressor {
+        private static final int HEADER = 0;
+        private static final int EXTRA_LENGTH = 1;
+        private static final int EXTRA = 2;
+        private static final int NAME = 3;
+        private static final int COMMENT = 4;
+        private static final int HEADER_CRC = 5;
+        private static final int DATA = 6;
+        private static final int TRAILER = 7;
+        private static final int SKIP = 8;
+
+        private final CRC32 crc = new CRC32();
+
+        private int state = HEADER;
+        private int flags;
+        // the number of bytes read in the current state
+        private int count;
+        private int extraLength;
+        private long trailer;
+        private boolean isFirstMember = true;
+
+        @Override
+        public synchronized Buffer decompress(final MemoryManager mm,
+                final Buffer input) throws IOException {
+            if (isClosed) {
+                input.position(input.limit());
+            }
+            while (input.hasRemaining()) {
+                switch (state) {
+                    case HEADER:
+                        readHeader(input);
+                        break;
+                    case EXTRA_LENGTH:
+                        extraLength |= (input.get() & 0xff) << (8 * count);
+                        if (++count == 2) {
+                            nextHeaderState(EXTRA);
+                        }
+                        break;
+                    case EXTRA:
+                        final int skip = Math.min(extraLength - count, input.remaining());
+                        input.position(input.position() + skip);
+                        count += skip;
+                        if (count == extraLength) {
+                            nextHeaderState(NAME);
+                        }
+                        break;
+                    case NAME:
+                    case COMMENT:
+                        if (input.get() == 0) {
+                            nextHeaderState(state + 1);
+                        }
+                        break;
+                    case HEADER_CRC:
+                        input.get();
+                        if (++count == 2) {
+                            nextHeaderState(DATA);
+                        }
+                        break;
+                    case DATA:
+                        inflate(mm, input);
+                        if (inflater.finished()) {
+                            state = TRAILER;
+                            count = 0;
+                            trailer = 0;
+                        }
+                        break;
+                    case TRAILER:
+                        trailer |= (input.get() & 0xffL) << (8 * count);
+                        if (++count == 8) {
+                            checkTrailer();
+                        }
+                        break;
+                    default:
+                        // the garbage after the last member is ignored,
+                        // like GZIPInputStream does
+                        input.position(input.limit());
+                }
+            }
+
+            return drainOutput(mm);
+        }
+
+        @Override
+        protected void onInflated(final byte[] b, final int off, final int len) {
+            crc.update(b, off, len);
+        }
+
+        private void readHeader(final Buffer input) throws IOException {
+            final int b = input.get() & 0xff;
+            switch (count++) {
+                case 0:
+                case 1:
+                    if (b != (count == 1 ? 0x1f : 0x8b)) {
+                        notGzip();
+                    }
+                    return;
+                case 2:
+                    if (b != 8) {
+                        notGzip();
+                    }
+                    return;
+                case 3:
+                    flags = b;
+                    return;
+                case 9:
+                    extraLength = 0;
+                    nextHeaderState(EXTRA_LENGTH);
+                    return;
+                default:
+            }
+        }
+
+        /**
+         * Moves to the <tt>next</tt> part of the member header, skipping
+         * the optional parts, which are not present.
+         */
+        private void nextHeaderState(int next) {
+            count = 0;
+            if (next == EXTRA_LENGTH && (flags & FEXTRA) == 0) {
+                next = NAME;
+            }
+            if (next == EXTRA && extraLength == 0) {
+                next = NAME;
+            }
+            if (next == NAME && (flags & FNAME) == 0) {
+                next = COMMENT;
+            }
+            if (next == COMMENT && (flags & FCOMMENT) == 0) {
+                next = HEADER_CRC;
+            }
+            if (next == HEADER_CRC && (flags & FTEXT_HCRC) == 0) {
+                next = DATA;
+            }
+            if (next == DATA) {
+                crc.reset();
+                acquire(rawPool);
+            }
+            state = next;
+        }
+
+        private void checkTrailer() throws IOException {
+            final long bytesWritten = inflater.getBytesWritten();
+            release();
+            if ((trailer & 0xffffffffL) != crc.getValue()
+                    || (trailer >>> 32) != (bytesWritten & 0xffffffffL)) {
+                throw new IOException("Corrupt GZIP trailer");
+            }
+
+            // the next member might follow
+            isFirstMember = false;
+            state = HEADER;
+            count = 0;
+        }
+
+        private void notGzip() throws IOException {
+            if (isFirstMember) {
+                throw new IOException("Not in GZIP format");
+            }
+            state = SKIP;
+        }
+    } // END GzipDecompressor
+
+    /**
+     * Decodes the zlib wrapped deflate stream, see RFC 1950, or the raw
+     * deflate stream, which is sent by some servers instead.
+     */
+    private final class DeflateDecompressor extends InflaterDecompressor {
+        private boolean isStarted;
+
+        @Override
+        public synchronized Buffer decompress(final MemoryManager mm,
+                final Buffer input) throws IOException {
+            if (!isStarted && !isClosed && input.hasRemaining()) {
+                isStarted = true;
+                acquire(isZlibHeader(input) ? zlibPool : rawPool);
+            }
+            if (inflater != null) {
+                inflate(mm, input);
+                if (inflater.finished()) {
+                    release();
+                }
+            }
+            // the data after the end of the stream is ignored
+            input.position(input.limit());
+
+            return drainOutput(mm);
+        }
+
+        @Override
+        protected void onInflated(final byte[] b, final int off, final int len) {
+        }
+
+        private boolean isZlibHeader(final Buffer input) {
+            final int pos = input.position();
+            final int cmf = input.get(pos) & 0xff;
+            if ((cmf & 0x0f) != 8 || (cmf >> 4) > 7) {
+                return false;
+            }
+            return input.remaining() < 2
+                    || ((cmf << 8) | (input.get(pos + 1) & 0xff)) % 31 == 0;
+        }
+    } // END DeflateDecompressor
+
+    /**
+     * The bounded pool of the {@link Inflater}s with the same <tt>nowrap</tt>
+     * setting.
+     */
+    private static final class InflaterPool {
+        private final boolean nowrap;
+        private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private InflaterPool(final boolean nowrap) {
+            this.nowrap = nowrap;
+        }
+
+        Inflater poll() {
+            final Inflater inflater = inflaters.poll();
+            if (inflater == null) {
+                return new Inflater(nowrap);
+            }
+            size.decrementAndGet();
+            return inflater;
+        }
+
+        void offer(final Inflater inflater) {
+            if (size.incrementAndGet() <= MAX_POOLED_INFLATERS) {
+                inflater.reset();
+                inflaters.offer(inflater);
+            } else {
+                size.decrementAndGet();
+                inflater.end();
+            }
+        }
+    } // END InflaterPool
+}
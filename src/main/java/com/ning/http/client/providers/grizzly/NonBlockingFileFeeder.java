@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.CloseListener;
+import org.glassfish.grizzly.CloseType;
+import org.glassfish.grizzly.Closeable;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.memory.MemoryManager;
+
+/**
+ * Feeds the {@link File} content to the {@link FeedableBodyGenerator} as
+ * the connection is able to write it. The file is read using positional
+ * {@link FileChannel} reads into the buffers of the connection's
+ * {@link MemoryManager}, so only the chunks the write queue is allowed to
+ * hold are in memory at any time, no matter the file size.
+ *
+ * @author Grizzly team
+ */
+final class NonBlockingFileFeeder extends FeedableBodyGenerator.NonBlockingFeeder {
+
+    private final File file;
+    private final long length;
+    private final Connection connection;
+    private final int chunkSize;
+
+    private FileChannel channel;
+    private CloseListener closeListener;
+    private long position;
+    private boolean isDone;
+
+    // ------------------------------------------------------------ Constructors
+
+    NonBlockingFileFeeder(final FeedableBodyGenerator feedableBodyGenerator,
+            final File file, final long length, final Connection connection,
+            final int chunkSize) {
+        super(feedableBodyGenerator);
+        this.file = file;
+        this.length = length;
+        this.connection = connection;
+        this.chunkSize = chunkSize;
+    }
+
+    // -------------------------------------------- Methods from NonBlockingFeeder
+
+    @Override
+    public void canFeed() throws IOException {
+        if (channel == null) {
+            open();
+        }
+
+        final Buffer buffer;
+        try {
+            buffer = readChunk(connection.getMemoryManager(), channel, file,
+                    position, (int) Math.min(chunkSize, length - position),
+                    length);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        position += buffer.remaining();
+        final boolean last = position >= length;
+        if (last) {
+            isDone = true;
+            close();
+        }
+
+        feed(buffer, last);
+    }
+
+    @Override
+    public boolean isDone() {
+        return isDone;
+    }
+
+    @Override
+    public boolean isReady() {
+        // the file is always readable, until it's done
+        return !isDone;
+    }
+
+    @Override
+    public void notifyReadyToFeed(final ReadyToFeedListener listener) {
+        if (isReady()) {
+            listener.ready();
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        close();
+        position = 0;
+        isDone = false;
+        super.reset();
+    }
+
+    // ------------------------------------------------- Package Private Methods
+
+    /**
+     * Reads the <tt>size</tt> bytes of the file starting at the
+     * <tt>position</tt> into a new disposable {@link Buffer}.
+     *
+     * @throws IOException if the file is shorter than the expected
+     *         <tt>length</tt>
+     */
+    static Buffer readChunk(final MemoryManager memoryManager,
+            final FileChannel channel, final File file, final long position,
+            final int size, final long length) throws IOException {
+        final Buffer buffer = memoryManager.allocate(size);
+        buffer.allowBufferDispose(true);
+
+        try {
+            long filePosition = position;
+            while (buffer.hasRemaining()) {
+                final int pos = buffer.position();
+                final ByteBuffer bb = buffer.toByteBuffer(pos, buffer.limit());
+                final int read = channel.read(bb, filePosition);
+                if (read == -1) {
+                    throw new IOException("File " + file
+                            + " is shorter than the expected " + length
+                            + " bytes");
+                }
+
+                buffer.position(pos + read);
+                filePosition += read;
+            }
+        } catch (IOException e) {
+            buffer.dispose();
+            throw e;
+        }
+
+        return buffer.flip();
+    }
+
+    /**
+     * Closes the file channel, once the connection is closed, so the file
+     * isn't leaked, if the connection is closed in the middle of the
+     * transfer.
+     *
+     * @return the registered {@link CloseListener}, to be passed to
+     *         {@link #closeChannel(Connection, CloseListener, FileChannel)}
+     */
+    static CloseListener closeWithConnection(final Connection connection,
+            final FileChannel channel) {
+        final CloseListener closeListener = new CloseListener<Closeable, CloseType>() {
+            @Override
+            public void onClosed(final Closeable closeable, final CloseType type) {
+                closeQuietly(channel);
+            }
+        };
+        connection.addCloseListener(closeListener);
+        return closeListener;
+    }
+
+    /**
+     * Closes the file channel, the transfer is done with, and unregisters
+     * its {@link CloseListener}.
+     */
+    @SuppressWarnings("unchecked")
+    static void closeChannel(final Connection connection,
+            final CloseListener closeListener, final FileChannel channel) {
+        if (closeListener != null) {
+            connection.removeCloseListener(closeListener);
+        }
+
+        closeQuietly(channel);
+    }
+
+    static void closeQuietly(final FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        closeListener = closeWithConnection(connection, channel);
+    }
+
+    private void close() {
+        closeChannel(connection, closeListener, channel);
+        closeListener = null;
+        channel = null;
+    }
+}
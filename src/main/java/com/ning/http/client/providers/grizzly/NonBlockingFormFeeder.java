@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+import java.io.IOException;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.Connection;
+
+/**
+ * Feeds the form, encoded by the {@link FormUrlEncoder}, to the
+ * {@link FeedableBodyGenerator} as the connection is able to write it,
+ * so only the chunks the write queue is allowed to hold are in memory
+ * at any time, no matter the form size.
+ *
+ * @author Grizzly team
+ */
+final class NonBlockingFormFeeder extends FeedableBodyGenerator.NonBlockingFeeder {
+
+    private final FormUrlEncoder encoder;
+    private final Connection connection;
+    private final int chunkSize;
+
+    private boolean isDone;
+
+    // ------------------------------------------------------------ Constructors
+
+    NonBlockingFormFeeder(final FeedableBodyGenerator feedableBodyGenerator,
+            final FormUrlEncoder encoder, final Connection connection,
+            final int chunkSize) {
+        super(feedableBodyGenerator);
+        this.encoder = encoder;
+        this.connection = connection;
+        this.chunkSize = chunkSize;
+    }
+
+    // -------------------------------------------- Methods from NonBlockingFeeder
+
+    @Override
+    public void canFeed() throws IOException {
+        final Buffer buffer = encoder.encode(connection.getMemoryManager(),
+                chunkSize);
+        final boolean last = !encoder.hasRemaining();
+        if (last) {
+            isDone = true;
+        }
+
+        feed(buffer, last);
+    }
+
+    @Override
+    public boolean isDone() {
+        return isDone;
+    }
+
+    @Override
+    public boolean isReady() {
+        // the form is always ready to be encoded, until it's done
+        return !isDone;
+    }
+
+    @Override
+    public void notifyReadyToFeed(final ReadyToFeedListener listener) {
+        if (isReady()) {
+            listener.ready();
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        encoder.reset();
+        isDone = false;
+        super.reset();
+    }
+}
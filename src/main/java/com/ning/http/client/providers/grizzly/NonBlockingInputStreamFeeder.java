@@ -45,21 +45,26 @@ public class NonBlockingInputStreamFeeder extends FeedableBodyGenerator.NonBlock
 
   @Override
   public void canFeed() throws IOException {
-    byte[] bytesIn = new byte[this.internalBufferSize];
-    final int read = content.read(bytesIn);
+    // the buffer is taken from the memory manager's pool and is disposed
+    // once written
+    final Buffer buffer = DEFAULT_MEMORY_MANAGER.allocate(this.internalBufferSize);
+    buffer.allowBufferDispose(true);
+    final int read = read(buffer);
     if (read == -1) {
+      buffer.dispose();
       isDone = true;
       feed(Buffers.EMPTY_BUFFER, true);
       return;
     }
 
     if (read == 0) {
+      buffer.dispose();
       feed(Buffers.EMPTY_BUFFER, false);
       return;
     }
 
-    final Buffer b = Buffers.wrap(DEFAULT_MEMORY_MANAGER, bytesIn, 0, read);
-    feed(b, false);
+    buffer.trim();
+    feed(buffer, false);
   }
 
   @Override
@@ -98,6 +103,24 @@ public class NonBlockingInputStreamFeeder extends FeedableBodyGenerator.NonBlock
     super.reset();
   }
 
+  private int read(final Buffer buffer) throws IOException {
+    if (buffer.hasArray()) {
+      final int read = content.read(buffer.array(),
+          buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      if (read > 0) {
+        buffer.position(buffer.position() + read);
+      }
+      return read;
+    }
+
+    final byte[] bytesIn = new byte[buffer.remaining()];
+    final int read = content.read(bytesIn);
+    if (read > 0) {
+      buffer.put(bytesIn, 0, read);
+    }
+    return read;
+  }
+
   @Override
   protected boolean onFullWriteQueue(Connection c) {
     // This is done to guarantee that the FilterChainContext is not closed
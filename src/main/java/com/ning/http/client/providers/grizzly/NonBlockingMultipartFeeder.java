@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import com.ning.http.client.multipart.MultipartBody;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.CloseListener;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.memory.Buffers;
+import org.glassfish.grizzly.memory.CompositeBuffer;
+import org.glassfish.grizzly.memory.MemoryManager;
+
+/**
+ * Feeds the {@link MultipartBody.Segment}s to the
+ * {@link FeedableBodyGenerator} as the connection is able to write them.
+ * The byte array segments (the precomputed boundaries and part headers,
+ * the string and byte array parts) are wrapped without copying and the
+ * consecutive ones are fed as one composite {@link Buffer}, so they're
+ * written with a single gathering write. The files are read in chunks,
+ * the same way {@link NonBlockingFileFeeder} reads them.
+ *
+ * @author Grizzly team
+ */
+final class NonBlockingMultipartFeeder extends FeedableBodyGenerator.NonBlockingFeeder {
+
+    private final List<MultipartBody.Segment> segments;
+    private final Connection connection;
+    private final int chunkSize;
+
+    private int currentSegment;
+    private FileChannel channel;
+    private CloseListener closeListener;
+    private long filePosition;
+    private boolean isDone;
+
+    // ------------------------------------------------------------ Constructors
+
+    NonBlockingMultipartFeeder(final FeedableBodyGenerator feedableBodyGenerator,
+            final List<MultipartBody.Segment> segments,
+            final Connection connection, final int chunkSize) {
+        super(feedableBodyGenerator);
+        this.segments = segments;
+        this.connection = connection;
+        this.chunkSize = chunkSize;
+    }
+
+    // -------------------------------------------- Methods from NonBlockingFeeder
+
+    @Override
+    public void canFeed() throws IOException {
+        final MemoryManager mm = connection.getMemoryManager();
+        MultipartBody.Segment segment = segments.get(currentSegment);
+        while (segment.getFile() != null && segment.getLength() == 0) {
+            // the body always ends with the closing boundary bytes
+            segment = segments.get(++currentSegment);
+        }
+
+        final Buffer buffer;
+        if (segment.getFile() != null) {
+            buffer = readFileChunk(mm, segment);
+        } else {
+            buffer = gatherBytes(mm);
+        }
+
+        final boolean last = currentSegment == segments.size();
+        if (last) {
+            isDone = true;
+        }
+
+        feed(buffer, last);
+    }
+
+    @Override
+    public boolean isDone() {
+        return isDone;
+    }
+
+    @Override
+    public boolean isReady() {
+        // the segments are always available, until they're done
+        return !isDone;
+    }
+
+    @Override
+    public void notifyReadyToFeed(final ReadyToFeedListener listener) {
+        if (isReady()) {
+            listener.ready();
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        close();
+        currentSegment = 0;
+        filePosition = 0;
+        isDone = false;
+        super.reset();
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    /**
+     * Wraps the current and the following byte array segments, up to the
+     * next file or the chunk size, into a single {@link Buffer}.
+     */
+    private Buffer gatherBytes(final MemoryManager mm) {
+        final CompositeBuffer gBuffer = CompositeBuffer.newBuffer(mm);
+        gBuffer.allowInternalBuffersDispose(false);
+        int gathered = 0;
+        do {
+            final byte[] bytes = segments.get(currentSegment++).getBytes();
+            gBuffer.append(Buffers.wrap(mm, bytes));
+            gathered += bytes.length;
+        } while (gathered < chunkSize
+                && currentSegment < segments.size()
+                && segments.get(currentSegment).getFile() == null);
+
+        return gBuffer;
+    }
+
+    private Buffer readFileChunk(final MemoryManager mm,
+            final MultipartBody.Segment segment) throws IOException {
+        final long length = segment.getLength();
+        if (channel == null) {
+            open(segment);
+        }
+
+        final Buffer buffer;
+        try {
+            buffer = NonBlockingFileFeeder.readChunk(mm, channel,
+                    segment.getFile(), filePosition,
+                    (int) Math.min(chunkSize, length - filePosition), length);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        filePosition += buffer.remaining();
+        if (filePosition >= length) {
+            close();
+            filePosition = 0;
+            currentSegment++;
+        }
+
+        return buffer;
+    }
+
+    private void open(final MultipartBody.Segment segment) throws IOException {
+        channel = FileChannel.open(segment.getFile().toPath(),
+                StandardOpenOption.READ);
+        closeListener = NonBlockingFileFeeder.closeWithConnection(connection,
+                channel);
+    }
+
+    private void close() {
+        NonBlockingFileFeeder.closeChannel(connection, closeListener, channel);
+        closeListener = null;
+        channel = null;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+import com.ning.http.client.ConnectionPoolPartitioning;
+import com.ning.http.client.ProxyServer;
+import com.ning.http.client.Realm;
+import com.ning.http.client.Request;
+import com.ning.http.client.uri.Uri;
+
+import java.net.InetAddress;
+
+/**
+ * The key of the connection partition, i.e. the set of interchangeable
+ * connections, the {@link Request} could be sent over.
+ *
+ * With the default {@link ConnectionPoolPartitioning} the key is made of
+ * the target scheme/host/port and the proxy URL, so no intermediate
+ * Strings are built per request. A custom partitioning's key is used as is.
+ * The hash code is computed once.
+ *
+ * @author Grizzly team
+ */
+final class PartitionKey {
+    private final String scheme;
+    private final String host;
+    private final int port;
+    private final String proxyUrl;
+    private final Object customKey;
+    private final InetAddress remoteOverrideAddress;
+    private final InetAddress localAddress;
+    private final String credentialsHash;
+
+    private final int hashCode;
+
+    // ------------------------------------------------------------ Constructors
+
+    private PartitionKey(final String scheme, final String host,
+            final int port, final String proxyUrl, final Object customKey,
+            final InetAddress remoteOverrideAddress,
+            final InetAddress localAddress, final String credentialsHash) {
+        this.scheme = scheme;
+        this.host = host;
+        this.port = port;
+        this.proxyUrl = proxyUrl;
+        this.customKey = customKey;
+        this.remoteOverrideAddress = remoteOverrideAddress;
+        this.localAddress = localAddress;
+        this.credentialsHash = credentialsHash;
+
+        int h = hash(0, scheme);
+        h = hash(h, host);
+        h = 31 * h + port;
+        h = hash(h, proxyUrl);
+        h = hash(h, customKey);
+        h = hash(h, remoteOverrideAddress);
+        h = hash(h, localAddress);
+        h = hash(h, credentialsHash);
+        hashCode = h;
+    }
+
+    // ---------------------------------------------------------- Public Methods
+
+    /**
+     * Returns the key of the connection partition for the {@link Request}.
+     *
+     * @param proxy the proxy the request is going to be sent through,
+     *              or <tt>null</tt>
+     */
+    static PartitionKey of(final Request request, final ProxyServer proxy) {
+        final ConnectionPoolPartitioning partitioning =
+                request.getConnectionPoolPartitioning();
+
+        // In the NTLM case one connection per target-credentials pair
+        // should be used.
+        final Realm realm = request.getRealm();
+        final String credentialsHash =
+                realm != null && realm.getScheme() == Realm.AuthScheme.NTLM
+                ? realm.getCredentialsHash()
+                : null;
+
+        if (partitioning != ConnectionPoolPartitioning.PerHostConnectionPoolPartitioning.INSTANCE) {
+            return new PartitionKey(null, null, -1, null,
+                    partitioning.getPartitionKey(request.getUri(), proxy),
+                    request.getInetAddress(), request.getLocalAddress(),
+                    credentialsHash);
+        }
+
+        final Uri uri = request.getUri();
+        final String scheme = uri.getScheme();
+        return new PartitionKey(scheme, uri.getHost(),
+                ConnectionManager.getPort(scheme, uri.getPort()),
+                proxy != null ? proxy.getUrl() : null, null,
+                request.getInetAddress(), request.getLocalAddress(),
+                credentialsHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof PartitionKey)) {
+            return false;
+        }
+
+        final PartitionKey other = (PartitionKey) o;
+        return hashCode == other.hashCode
+                && port == other.port
+                && eq(host, other.host)
+                && eq(scheme, other.scheme)
+                && eq(proxyUrl, other.proxyUrl)
+                && eq(customKey, other.customKey)
+                && eq(remoteOverrideAddress, other.remoteOverrideAddress)
+                && eq(localAddress, other.localAddress)
+                && eq(credentialsHash, other.credentialsHash);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(64);
+        if (remoteOverrideAddress != null) {
+            sb.append(remoteOverrideAddress).append('_');
+        }
+
+        if (customKey != null) {
+            sb.append(customKey);
+        } else {
+            if (proxyUrl != null) {
+                sb.append(proxyUrl).append("->");
+            }
+            sb.append(scheme).append("://").append(host).append(':').append(port);
+        }
+
+        if (localAddress != null) {
+            sb.append(" from ").append(localAddress);
+        }
+
+        return sb.toString();
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    private static int hash(final int h, final Object o) {
+        return 31 * h + (o != null ? o.hashCode() : 0);
+    }
+
+    private static boolean eq(final Object o1, final Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+}
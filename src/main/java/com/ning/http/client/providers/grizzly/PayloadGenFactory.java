@@ -17,28 +17,29 @@ import static com.ning.http.util.MiscUtils.isNonEmpty;
 import com.ning.http.client.AsyncHandler;
 import com.ning.http.client.Body;
 import com.ning.http.client.BodyGenerator;
-import com.ning.http.client.Param;
 import com.ning.http.client.Request;
 import com.ning.http.client.listener.TransferCompletionHandler;
 import com.ning.http.client.multipart.MultipartBody;
 import com.ning.http.client.multipart.MultipartUtils;
 import com.ning.http.client.multipart.Part;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Queue;
 import org.glassfish.grizzly.Buffer;
 import org.glassfish.grizzly.CompletionHandler;
-import org.glassfish.grizzly.EmptyCompletionHandler;
+import org.glassfish.grizzly.Connection;
 import org.glassfish.grizzly.FileTransfer;
 import org.glassfish.grizzly.WriteResult;
 import org.glassfish.grizzly.filterchain.FilterChainContext;
 import org.glassfish.grizzly.http.HttpContent;
 import org.glassfish.grizzly.http.HttpRequestPacket;
 import org.glassfish.grizzly.memory.Buffers;
+import org.glassfish.grizzly.memory.CompositeBuffer;
 import org.glassfish.grizzly.memory.MemoryManager;
 import org.glassfish.grizzly.utils.Charsets;
 
@@ -53,6 +54,8 @@ final class PayloadGenFactory {
             new PayloadGenerator[]{
                 new StringPayloadGenerator(), 
                 new ByteArrayPayloadGenerator(),
+                new CompositeByteArrayPayloadGenerator(),
+                new ByteBufferPayloadGenerator(),
                 new ParamsPayloadGenerator(),
                 new StreamDataPayloadGenerator(),
                 new PartsPayloadGenerator(), 
@@ -164,6 +167,126 @@ final class PayloadGenFactory {
     }
 
 
+    private static final class CompositeByteArrayPayloadGenerator
+            extends PayloadGenerator {
+
+
+        // -------------------------------------------- Methods from BodyGenerator
+
+        public boolean handlesPayloadType(final Request request) {
+            return (request.getCompositeByteData() != null);
+        }
+
+        @SuppressWarnings({"unchecked"})
+        public boolean generate(final FilterChainContext ctx,
+                             final Request request,
+                             final HttpRequestPacket requestPacket)
+        throws IOException {
+
+            // the arrays are wrapped, not copied, and the transport writes
+            // the composite buffer with a single gathering write
+            final MemoryManager mm = ctx.getMemoryManager();
+            final CompositeBuffer gBuffer = CompositeBuffer.newBuffer(mm);
+            gBuffer.allowInternalBuffersDispose(false);
+            long length = 0;
+            for (byte[] data : request.getCompositeByteData()) {
+                if (data.length > 0) {
+                    gBuffer.append(Buffers.wrap(mm, data));
+                    length += data.length;
+                }
+            }
+            if (requestPacket.getContentLength() == -1) {
+                requestPacket.setContentLengthLong(length);
+            }
+            final HttpContent content = requestPacket.httpContentBuilder()
+                    .content(gBuffer)
+                    .last(true)
+                    .build();
+            
+            ctx.write(content, ((!requestPacket.isCommitted())
+                    ? ctx.getTransportContext().getCompletionHandler()
+                    : null));
+            return true;
+        }
+        
+        @Override
+        protected long getContentLength(final Request request) {
+            if (request.getContentLength() >= 0) {
+                return request.getContentLength();
+            }
+            
+            long length = 0;
+            for (byte[] data : request.getCompositeByteData()) {
+                length += data.length;
+            }
+            return length;
+        }        
+    }
+
+
+    private static final class ByteBufferPayloadGenerator
+            extends PayloadGenerator {
+
+
+        // -------------------------------------------- Methods from BodyGenerator
+
+        public boolean handlesPayloadType(final Request request) {
+            return (request.getByteBufferData() != null);
+        }
+
+        @SuppressWarnings({"unchecked"})
+        public boolean generate(final FilterChainContext ctx,
+                             final Request request,
+                             final HttpRequestPacket requestPacket)
+        throws IOException {
+
+            // the request's buffers are wrapped as they are, direct buffers
+            // stay off the heap; the duplicates keep the request's buffer
+            // positions intact, so the request may be sent again
+            final MemoryManager mm = ctx.getMemoryManager();
+            final List<ByteBuffer> data = request.getByteBufferData();
+            final Buffer gBuffer;
+            if (data.size() == 1) {
+                gBuffer = Buffers.wrap(mm, data.get(0).duplicate());
+            } else {
+                final CompositeBuffer composite = CompositeBuffer.newBuffer(mm);
+                composite.allowInternalBuffersDispose(false);
+                for (ByteBuffer byteBuffer : data) {
+                    if (byteBuffer.hasRemaining()) {
+                        composite.append(Buffers.wrap(mm, byteBuffer.duplicate()));
+                    }
+                }
+                gBuffer = composite;
+            }
+            if (requestPacket.getContentLength() == -1) {
+                requestPacket.setContentLengthLong(gBuffer.remaining());
+            }
+            final HttpContent content = requestPacket.httpContentBuilder()
+                    .content(gBuffer)
+                    .last(true)
+                    .build();
+            
+            ctx.write(content, ((!requestPacket.isCommitted())
+                    ? ctx.getTransportContext().getCompletionHandler()
+                    : null));
+            return true;
+        }
+        
+        @Override
+        protected long getContentLength(final Request request) {
+            if (request.getContentLength() >= 0) {
+                return request.getContentLength();
+            }
+            
+            long length = 0;
+            for (ByteBuffer byteBuffer : request.getByteBufferData()) {
+                length += byteBuffer.remaining();
+            }
+            return length;
+        }        
+    }
+
+
     private static final class StringPayloadGenerator extends PayloadGenerator {
 
 
@@ -200,10 +323,55 @@ final class PayloadGenFactory {
             return true;
         }
 
+        @Override
+        protected long getContentLength(final Request request) {
+            if (request.getContentLength() >= 0) {
+                return request.getContentLength();
+            }
+
+            // counted without encoding the string for the common charsets
+            final String data = request.getStringData();
+            final String charset = request.getBodyEncoding();
+            if (charset == null
+                    || Charsets.ASCII_CHARSET.name().equalsIgnoreCase(charset)
+                    || "ISO-8859-1".equalsIgnoreCase(charset)) {
+                return data.length();
+            }
+            if (Charsets.UTF8_CHARSET.name().equalsIgnoreCase(charset)) {
+                return utf8Length(data);
+            }
+
+            return -1;
+        }
+
+        private static long utf8Length(final String data) {
+            long length = 0;
+            final int len = data.length();
+            for (int i = 0; i < len; i++) {
+                final char c = data.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < len
+                        && Character.isLowSurrogate(data.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    // unpaired surrogates are replaced with '?'
+                    length += Character.isSurrogate(c) ? 1 : 3;
+                }
+            }
+            return length;
+        }
+
     } // END StringPayloadGenerator
 
 
     private static final class ParamsPayloadGenerator extends PayloadGenerator {
+        // the forms up to the chunk size are encoded into one buffer, the
+        // bigger ones are encoded as the connection is able to write them
+        private static final int MAX_FORM_CHUNK_SIZE = 16 * 1024;
 
 
         // -------------------------------------------- Methods from PayloadGenerator
@@ -222,35 +390,49 @@ final class PayloadGenFactory {
             if (requestPacket.getContentType() == null) {
                 requestPacket.setContentType("application/x-www-form-urlencoded");
             }
-            String charset = request.getBodyEncoding();
-            if (charset == null) {
-                charset = Charsets.ASCII_CHARSET.name();
-            }
             
             if (isNonEmpty(request.getFormParams())) {
-                StringBuilder sb = new StringBuilder(128);
-                for (Param param : request.getFormParams()) {
-                    String name = URLEncoder.encode(param.getName(), charset);
-                    String value = URLEncoder.encode(param.getValue(), charset);
-                    sb.append(name).append('=').append(value).append('&');
+                final FormUrlEncoder encoder = newEncoder(request);
+                final long contentLength = encoder.getContentLength();
+                if (requestPacket.getContentLength() == -1) {
+                    requestPacket.setContentLengthLong(contentLength);
                 }
-                sb.setLength(sb.length() - 1);
-                final byte[] data = sb.toString().getBytes(charset);
-                final MemoryManager mm = ctx.getMemoryManager();
-                final Buffer gBuffer = Buffers.wrap(mm, data);
+                
+                if (contentLength > MAX_FORM_CHUNK_SIZE) {
+                    final FeedableBodyGenerator generator = new FeedableBodyGenerator();
+                    generator.setFeeder(new NonBlockingFormFeeder(generator,
+                            encoder, ctx.getConnection(), MAX_FORM_CHUNK_SIZE));
+                    generator.initializeAsynchronousTransfer(ctx, requestPacket);
+                    return false;
+                }
+                
+                final Buffer gBuffer = encoder.encode(ctx.getMemoryManager(),
+                        (int) contentLength);
                 final HttpContent content = requestPacket.httpContentBuilder()
                         .content(gBuffer)
                         .last(true)
                         .build();
-                if (requestPacket.getContentLength() == -1) {
-                    requestPacket.setContentLengthLong(data.length);
-                }
                 ctx.write(content, ((!requestPacket.isCommitted()) ? ctx.getTransportContext().getCompletionHandler() : null));
             }
             
             return true;
         }
 
+        @Override
+        protected long getContentLength(final Request request) {
+            return request.getContentLength() >= 0
+                    ? request.getContentLength()
+                    : newEncoder(request).getContentLength();
+        }
+
+        private static FormUrlEncoder newEncoder(final Request request) {
+            final String charset = request.getBodyEncoding();
+            return new FormUrlEncoder(request.getFormParams(),
+                    charset != null
+                            ? Charset.forName(charset)
+                            : Charsets.ASCII_CHARSET);
+        }
+
     } // END ParamsPayloadGenerator
 
     private static final class StreamDataPayloadGenerator extends PayloadGenerator {
@@ -268,10 +450,6 @@ final class PayloadGenFactory {
                              final HttpRequestPacket requestPacket)
         throws IOException {
 
-            final MemoryManager mm = ctx.getMemoryManager();
-            Buffer buffer = mm.allocate(512);
-            final byte[] b = new byte[512];
-            int read;
             final InputStream in = request.getStreamData();
             if (in.markSupported()) {
               try {
@@ -284,23 +462,22 @@ final class PayloadGenFactory {
               in.mark(0);
             }
 
-            while ((read = in.read(b)) != -1) {
-                if (read > buffer.remaining()) {
-                    buffer = mm.reallocate(buffer, buffer.capacity() + 512);
+            if (requestPacket.getContentLength() == -1) {
+                if (request.getContentLength() >= 0) {
+                    requestPacket.setContentLengthLong(request.getContentLength());
+                } else {
+                    requestPacket.setChunked(true);
                 }
-                buffer.put(b, 0, read);
-            }
-            buffer.trim();
-            if (buffer.hasRemaining()) {
-                final HttpContent content = requestPacket.httpContentBuilder()
-                        .content(buffer)
-                        .last(true)
-                        .build();
-                buffer.allowBufferDispose(false);
-                ctx.write(content, ((!requestPacket.isCommitted()) ? ctx.getTransportContext().getCompletionHandler() : null));
             }
-            
-            return true;
+
+            // stream the data as it's read, the feeder waits for the
+            // write queue to drain, so at most the connection's max pending
+            // bytes are held in memory
+            final FeedableBodyGenerator generator = new FeedableBodyGenerator();
+            generator.setFeeder(new NonBlockingInputStreamFeeder(
+                    generator, in, MAX_CHUNK_SIZE));
+            generator.initializeAsynchronousTransfer(ctx, requestPacket);
+            return false;
         }
 
     } // END StreamDataPayloadGenerator
@@ -330,47 +507,30 @@ final class PayloadGenFactory {
                 LOGGER.debug("REQUEST(modified): contentLength={}, contentType={}", new Object[]{requestPacket.getContentLength(), requestPacket.getContentType()});
             }
 
-            final FeedableBodyGenerator generator = new FeedableBodyGenerator() {
-                @Override
-                public Body createBody() throws IOException {
-                    return multipartBody;
-                }
-            };
-            generator.setFeeder(new FeedableBodyGenerator.BaseFeeder(generator) {
-                @Override
-                public void flush() throws IOException {
-                    final Body bodyLocal = feedableBodyGenerator.createBody();
-                    try {
-                        final MemoryManager mm = ctx.getMemoryManager();
-                        boolean last = false;
-                        while (!last) {
-                            Buffer buffer = mm.allocate(MAX_CHUNK_SIZE);
-                            buffer.allowBufferDispose(true);
-                            final long readBytes = bodyLocal.read(buffer.toByteBuffer());
-                            if (readBytes > 0) {
-                                buffer.position((int) readBytes);
-                                buffer.trim();
-                            } else {
-                                buffer.dispose();
-                                if (readBytes < 0) {
-                                    last = true;
-                                    buffer = Buffers.EMPTY_BUFFER;
-                                } else {
-                                    throw new IllegalStateException("MultipartBody unexpectedly returned 0 bytes available");
-                                }
-                            }
-                            feed(buffer, last);
-                        }
-                    } finally {
-                        if (bodyLocal != null) {
-                            try {
-                                bodyLocal.close();
-                            } catch (IOException ignore) {
-                            }
-                        }
+            // the boundaries and the part headers are generated once, the
+            // body is sent as these segments
+            final List<MultipartBody.Segment> segments = multipartBody.getSegments();
+            multipartBody.close();
+
+            if (isSendFileSupported(requestPacket)) {
+                final SendFileWriter writer = new SendFileWriter(ctx, requestPacket);
+                for (MultipartBody.Segment segment : segments) {
+                    if (segment.getFile() != null) {
+                        writer.addFile(segment.getFile(), segment.getLength());
+                    } else {
+                        writer.addBytes(segment.getBytes());
                     }
                 }
-            });
+
+                writer.start(ctx);
+                return false;
+            }
+
+            // the files are read as the connection is able to write them
+            final FeedableBodyGenerator generator = new FeedableBodyGenerator();
+            generator.setFeeder(new NonBlockingMultipartFeeder(generator,
+                    segments, ctx.getConnection(),
+                    FilePayloadGenerator.MAX_FILE_CHUNK_SIZE));
             generator.initializeAsynchronousTransfer(ctx, requestPacket);
             return false;
         }
@@ -379,10 +539,9 @@ final class PayloadGenFactory {
 
 
     private static final class FilePayloadGenerator extends PayloadGenerator {
-        private static final boolean SEND_FILE_SUPPORT;
-        static {
-            SEND_FILE_SUPPORT = /*configSendFileSupport()*/ false;
-        }
+        // the file is read in bigger chunks than the other bodies, the write
+        // queue limits how many of them are held in memory
+        private static final int MAX_FILE_CHUNK_SIZE = 64 * 1024;
 
         // -------------------------------------------- Methods from PayloadGenerator
 
@@ -398,62 +557,24 @@ final class PayloadGenFactory {
         throws IOException {
 
             final File f = request.getFile();
-            requestPacket.setContentLengthLong(f.length());
-            final HttpTransactionContext context =
-                    HttpTransactionContext.currentTransaction(requestPacket);
+            final long length = f.length();
+            requestPacket.setContentLengthLong(length);
             
-            if (!SEND_FILE_SUPPORT || requestPacket.isSecure()) {
-                
-                final FileInputStream fis = new FileInputStream(request.getFile());
-                final MemoryManager mm = ctx.getMemoryManager();
-                AtomicInteger written = new AtomicInteger();
-                boolean last = false;
-                try {
-                    for (byte[] buf = new byte[MAX_CHUNK_SIZE]; !last; ) {
-                        Buffer b = null;
-                        int read;
-                        if ((read = fis.read(buf)) < 0) {
-                            last = true;
-                            b = Buffers.EMPTY_BUFFER;
-                        }
-                        if (b != Buffers.EMPTY_BUFFER) {
-                            written.addAndGet(read);
-                            b = Buffers.wrap(mm, buf, 0, read);
-                        }
-
-                        final HttpContent content =
-                                requestPacket.httpContentBuilder().content(b).
-                                        last(last).build();
-                        ctx.write(content, ((!requestPacket.isCommitted()) ? ctx.getTransportContext().getCompletionHandler() : null));
-                    }
-                } finally {
-                    try {
-                        fis.close();
-                    } catch (IOException ignored) {
-                    }
-                }
-            } else {
-                // write the headers
-                ctx.write(requestPacket, ((!requestPacket.isCommitted()) ? ctx.getTransportContext().getCompletionHandler() : null));
-                ctx.write(new FileTransfer(f), new EmptyCompletionHandler<WriteResult>() {
-
-                    @Override
-                    public void updated(WriteResult result) {
-                        final AsyncHandler ah = context.getAsyncHandler();
-                        if (ah instanceof TransferCompletionHandler) {
-                            final long written = result.getWrittenSize();
-                            context.totalBodyWritten += written;
-                            final long total = context.totalBodyWritten;
-                            ((TransferCompletionHandler) ah).onContentWriteProgress(
-                                    written,
-                                    total,
-                                    requestPacket.getContentLength());
-                        }
-                    }
-                });
+            if (!isSendFileSupported(requestPacket)) {
+                // read the file as the connection is able to write it,
+                // instead of queueing the whole file at once
+                final FeedableBodyGenerator generator = new FeedableBodyGenerator();
+                generator.setFeeder(new NonBlockingFileFeeder(generator, f,
+                        requestPacket.getContentLength(), ctx.getConnection(),
+                        MAX_FILE_CHUNK_SIZE));
+                generator.initializeAsynchronousTransfer(ctx, requestPacket);
+                return false;
             }
 
-            return true;
+            final SendFileWriter writer = new SendFileWriter(ctx, requestPacket);
+            writer.addFile(f, length);
+            writer.start(ctx);
+            return false;
         }
 
         @Override
@@ -465,6 +586,231 @@ final class PayloadGenFactory {
     } // END FilePayloadGenerator
 
 
+    /**
+     * @return <tt>true</tt> if the request body could be written using
+     *          {@link SendFileWriter}: it's enabled, the connection isn't
+     *          secured, the content-length is known and the body isn't
+     *          compressed
+     */
+    private static boolean isSendFileSupported(final HttpRequestPacket requestPacket) {
+        final HttpTransactionContext context =
+                HttpTransactionContext.currentTransaction(requestPacket);
+        return context.provider.isSendFileEnabled()
+                && !requestPacket.isSecure()
+                && requestPacket.getContentLength() >= 0
+                && context.requestCompressor == null;
+    }
+
+
+    /**
+     * Writes the request body made of byte arrays and files, the files are
+     * written as {@link FileTransfer}s, so the transport sends them using
+     * {@link java.nio.channels.FileChannel#transferTo} without copying them
+     * through the heap. The body is written one slice after another, once
+     * the previous slice is flushed, so the write queue holds at most one
+     * slice and the write progress is reported to the
+     * {@link TransferCompletionHandler} as the slices are sent.
+     * The body bypasses the HTTP codec, so it has to have the
+     * content-length set. Exactly the file lengths the content-length has
+     * been computed with are written, even if the files change meanwhile.
+     */
+    private static final class SendFileWriter
+            implements CompletionHandler<WriteResult> {
+        private static final long MAX_FILE_SLICE_SIZE = 1024 * 1024;
+        
+        private final HttpRequestPacket requestPacket;
+        private final HttpTransactionContext context;
+        private final Connection connection;
+        // byte[] or FileSegment
+        private final Queue<Object> segments = new ArrayDeque<Object>();
+        
+        private File file;
+        private long fileLength;
+        private long filePosition;
+        private long writing;
+        // guarded by this, true while writeLoop() issues a write
+        private boolean inWrite;
+        // guarded by this, true if the write has completed before
+        // writeLoop() returned from it
+        private boolean completedInline;
+        
+        // ---------------------------------------------------- Constructors
+
+
+        private SendFileWriter(final FilterChainContext ctx,
+                final HttpRequestPacket requestPacket) {
+            this.requestPacket = requestPacket;
+            this.context = HttpTransactionContext.currentTransaction(requestPacket);
+            this.connection = ctx.getConnection();
+        }
+        
+        // ------------------------------------------------- Private Methods
+
+
+        private void addBytes(final byte[] bytes) {
+            if (bytes.length > 0) {
+                segments.add(bytes);
+            }
+        }
+        
+        private void addFile(final File file, final long length) {
+            if (length > 0) {
+                segments.add(new FileSegment(file, length));
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void start(final FilterChainContext ctx) {
+            if (!requestPacket.isCommitted()) {
+                // the codec writes just the headers, the body follows
+                ctx.write(requestPacket,
+                        ctx.getTransportContext().getCompletionHandler());
+            }
+            
+            writeLoop();
+        }
+
+        /**
+         * Writes the slices one after another, as long as the writes
+         * complete in this thread. A write, which completes later, continues
+         * the loop from {@link #completed(WriteResult)}, so the stack doesn't
+         * grow with the number of slices.
+         */
+        @SuppressWarnings("unchecked")
+        private void writeLoop() {
+            for (;;) {
+                final Object message = nextMessage();
+                if (message == null) {
+                    return;
+                }
+
+                synchronized (this) {
+                    inWrite = true;
+                    completedInline = false;
+                }
+
+                connection.write(message, this);
+
+                synchronized (this) {
+                    inWrite = false;
+                    if (!completedInline) {
+                        // completed() will continue, or the write has failed
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the next slice to write, or <tt>null</tt> if the body is
+         *         written or has failed
+         */
+        private Object nextMessage() {
+            for (;;) {
+                if (file != null) {
+                    writing = Math.min(MAX_FILE_SLICE_SIZE, fileLength - filePosition);
+                    if (file.length() < filePosition + writing) {
+                        // the part of the body, which has been sent already,
+                        // makes the connection unusable
+                        failed(new IOException("File " + file
+                                + " is shorter than the expected " + fileLength
+                                + " bytes"));
+                        connection.closeSilently();
+                        return null;
+                    }
+
+                    final Object message = new FileTransfer(file, filePosition, writing);
+                    filePosition += writing;
+                    if (filePosition >= fileLength) {
+                        file = null;
+                    }
+                    return message;
+                }
+
+                final Object segment = segments.poll();
+                if (segment == null) {
+                    context.onRequestFullySent();
+                    return null;
+                }
+
+                if (segment instanceof FileSegment) {
+                    file = ((FileSegment) segment).file;
+                    fileLength = ((FileSegment) segment).length;
+                    filePosition = 0;
+                    continue;
+                }
+
+                // the byte arrays up to the next file are written with
+                // a single gathering write
+                final MemoryManager mm = connection.getMemoryManager();
+                final CompositeBuffer gBuffer = CompositeBuffer.newBuffer(mm);
+                gBuffer.allowInternalBuffersDispose(false);
+                writing = 0;
+                Object next = segment;
+                do {
+                    final byte[] bytes = (byte[]) next;
+                    gBuffer.append(Buffers.wrap(mm, bytes));
+                    writing += bytes.length;
+                    next = segments.peek() instanceof byte[]
+                            ? segments.poll()
+                            : null;
+                } while (next != null);
+                return gBuffer;
+            }
+        }
+
+        // -------------------------------------- Methods from CompletionHandler
+
+
+        @Override
+        public void completed(final WriteResult result) {
+            final AsyncHandler ah = context.getAsyncHandler();
+            if (ah instanceof TransferCompletionHandler) {
+                context.totalBodyWritten += writing;
+                ((TransferCompletionHandler) ah).onContentWriteProgress(
+                        writing,
+                        context.totalBodyWritten,
+                        requestPacket.getContentLength());
+            }
+
+            synchronized (this) {
+                if (inWrite) {
+                    // the loop, which has issued the write, continues
+                    completedInline = true;
+                    return;
+                }
+            }
+
+            writeLoop();
+        }
+
+        @Override
+        public void failed(final Throwable throwable) {
+            context.abortOrReplay(throwable);
+        }
+
+        @Override
+        public void cancelled() {
+            failed(new IOException("Request body write cancelled"));
+        }
+
+        @Override
+        public void updated(final WriteResult result) {
+        }
+        
+        private static final class FileSegment {
+            private final File file;
+            private final long length;
+
+            private FileSegment(final File file, final long length) {
+                this.file = file;
+                this.length = length;
+            }
+        } // END FileSegment
+
+    } // END SendFileWriter
+
+
     private static class BodyGeneratorAdapter extends PayloadGenerator {
 
         // -------------------------------------------- Methods from PayloadGenerator
@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import com.ning.http.client.BodyGenerator;
+import com.ning.http.client.ConnectionPoolPartitioning;
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import com.ning.http.client.NameResolver;
+import com.ning.http.client.Param;
+import com.ning.http.client.ProxyServer;
+import com.ning.http.client.Realm;
+import com.ning.http.client.Request;
+import com.ning.http.client.RequestBuilder;
+import com.ning.http.client.cookie.Cookie;
+import com.ning.http.client.multipart.Part;
+import com.ning.http.client.uri.Uri;
+import com.ning.http.util.AsyncHttpProviderUtils;
+import com.ning.http.util.MiscUtils;
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.util.CookieSerializerUtils;
+import org.glassfish.grizzly.http.util.Header;
+import org.glassfish.grizzly.http.util.MimeHeaders;
+
+/**
+ * A {@link Request} compiled once into an immutable template, to be sent
+ * many times. The request line, the request headers, the cookies and the
+ * <tt>Host</tt> header are encoded into bytes when the request is prepared,
+ * so sending it only adds the headers, which depend on the connection
+ * (keep-alive, authorization, proxy), the per-call headers and the body.
+ *
+ * <pre>
+ * PreparedRequest poll = PreparedRequest.prepare(
+ *         new RequestBuilder("GET").setUrl(url).build());
+ * ...
+ * client.executeRequest(poll.withHeader("X-Request-Id", id));
+ * </pre>
+ *
+ * The prepared request is a snapshot, changes to the original request
+ * don't affect it. Redirects and authentication retries are sent as
+ * regular requests.
+ *
+ * @author Grizzly team
+ */
+public final class PreparedRequest implements Request {
+
+    private final Request request;
+    private final Template template;
+    private final FluentCaseInsensitiveStringsMap headers;
+    // the per-call headers, name and value pairs
+    private final List<String> callHeaders;
+    // the per-call body, or null if the request's body is sent
+    private final byte[] callBody;
+
+    // ------------------------------------------------------------ Constructors
+
+    private PreparedRequest(final Request request, final Template template,
+            final FluentCaseInsensitiveStringsMap headers,
+            final List<String> callHeaders, final byte[] callBody) {
+        this.request = request;
+        this.template = template;
+        this.headers = headers;
+        this.callHeaders = callHeaders;
+        this.callBody = callBody;
+    }
+
+    // ---------------------------------------------------------- Public Methods
+
+    /**
+     * Compiles the {@link Request} into a template.
+     */
+    public static PreparedRequest prepare(final Request request) {
+        if (request instanceof PreparedRequest) {
+            return (PreparedRequest) request;
+        }
+
+        final Request snapshot = new RequestBuilder(request).build();
+        final FluentCaseInsensitiveStringsMap headers = snapshot.getHeaders();
+        return new PreparedRequest(snapshot, new Template(snapshot, headers),
+                headers, Collections.<String>emptyList(), null);
+    }
+
+    /**
+     * @return the copy of this request, which is sent with the additional
+     *          header; the template is shared
+     */
+    public PreparedRequest withHeader(final String name, final String value) {
+        final List<String> newCallHeaders =
+                new ArrayList<String>(callHeaders.size() + 2);
+        newCallHeaders.addAll(callHeaders);
+        newCallHeaders.add(name);
+        newCallHeaders.add(value);
+
+        final FluentCaseInsensitiveStringsMap newHeaders =
+                new FluentCaseInsensitiveStringsMap(headers);
+        newHeaders.add(name, value);
+        return new PreparedRequest(request, template, newHeaders,
+                newCallHeaders, callBody);
+    }
+
+    /**
+     * @return the copy of this request, which is sent with the given body
+     *          instead of the prepared request's body; the template is shared
+     */
+    public PreparedRequest withBody(final byte[] body) {
+        return new PreparedRequest(request, template, headers, callHeaders,
+                body);
+    }
+
+    // ------------------------------------------------- Package Private Methods
+
+    Method getGrizzlyMethod() {
+        return template.method;
+    }
+
+    /**
+     * Sets the pre-encoded request URI and query.
+     */
+    void setRequestUri(final HttpRequestPacket requestPacket) {
+        requestPacket.getRequestURIRef().init(template.path, 0,
+                template.path.length);
+        if (template.query != null) {
+            requestPacket.getQueryStringDC().setBytes(template.query);
+        }
+    }
+
+    /**
+     * Adds the pre-encoded request headers, cookies and <tt>Host</tt>
+     * header, then the per-call headers.
+     */
+    void addHeaders(final HttpRequestPacket requestPacket) {
+        final MimeHeaders mimeHeaders = requestPacket.getHeaders();
+        final byte[][] names = template.headerNames;
+        final byte[][] values = template.headerValues;
+        for (int i = 0; i < names.length; i++) {
+            mimeHeaders.addValue(names[i], 0, names[i].length)
+                    .setBytes(values[i]);
+        }
+
+        // the headers the packet interprets have to be set as strings
+        final String[] specialHeaders = template.specialHeaders;
+        for (int i = 0; i < specialHeaders.length; i += 2) {
+            requestPacket.addHeader(specialHeaders[i], specialHeaders[i + 1]);
+        }
+
+        for (int i = 0; i < callHeaders.size(); i += 2) {
+            requestPacket.addHeader(callHeaders.get(i), callHeaders.get(i + 1));
+        }
+
+        if (template.cookies != null) {
+            mimeHeaders.addValue(Header.Cookie).setBytes(template.cookies);
+        }
+
+        if (template.host != null && !requestPacket.containsHeader(Header.Host)) {
+            mimeHeaders.addValue(Header.Host).setBytes(template.host);
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> if the cookies have been pre-encoded, otherwise
+     *          they may expire and have to be checked for every call
+     */
+    boolean hasStaticCookies() {
+        return template.staticCookies;
+    }
+
+    // ------------------------------------------------ Methods from Request
+
+    @Override
+    public String getMethod() {
+        return request.getMethod();
+    }
+
+    @Override
+    public Uri getUri() {
+        return request.getUri();
+    }
+
+    @Override
+    public String getUrl() {
+        return request.getUrl();
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return request.getInetAddress();
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return request.getLocalAddress();
+    }
+
+    @Override
+    public FluentCaseInsensitiveStringsMap getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public Collection<Cookie> getCookies() {
+        return request.getCookies();
+    }
+
+    @Override
+    public byte[] getByteData() {
+        return callBody != null ? callBody : request.getByteData();
+    }
+
+    @Override
+    public List<byte[]> getCompositeByteData() {
+        return callBody != null ? null : request.getCompositeByteData();
+    }
+
+    @Override
+    public List<ByteBuffer> getByteBufferData() {
+        return callBody != null ? null : request.getByteBufferData();
+    }
+
+    @Override
+    public String getStringData() {
+        return callBody != null ? null : request.getStringData();
+    }
+
+    @Override
+    public InputStream getStreamData() {
+        return callBody != null ? null : request.getStreamData();
+    }
+
+    @Override
+    public BodyGenerator getBodyGenerator() {
+        return callBody != null ? null : request.getBodyGenerator();
+    }
+
+    @Override
+    public long getContentLength() {
+        return callBody != null ? callBody.length : request.getContentLength();
+    }
+
+    @Override
+    public List<Param> getFormParams() {
+        return callBody != null
+                ? Collections.<Param>emptyList()
+                : request.getFormParams();
+    }
+
+    @Override
+    public List<Part> getParts() {
+        return callBody != null
+                ? Collections.<Part>emptyList()
+                : request.getParts();
+    }
+
+    @Override
+    public String getVirtualHost() {
+        return request.getVirtualHost();
+    }
+
+    @Override
+    public List<Param> getQueryParams() {
+        return request.getQueryParams();
+    }
+
+    @Override
+    public ProxyServer getProxyServer() {
+        return request.getProxyServer();
+    }
+
+    @Override
+    public Realm getRealm() {
+        return request.getRealm();
+    }
+
+    @Override
+    public File getFile() {
+        return callBody != null ? null : request.getFile();
+    }
+
+    @Override
+    public Boolean getFollowRedirect() {
+        return request.getFollowRedirect();
+    }
+
+    @Override
+    public int getRequestTimeout() {
+        return request.getRequestTimeout();
+    }
+
+    @Override
+    public long getMaxResponseBodySize() {
+        return request.getMaxResponseBodySize();
+    }
+
+    @Override
+    public long getRangeOffset() {
+        return request.getRangeOffset();
+    }
+
+    @Override
+    public String getBodyEncoding() {
+        return request.getBodyEncoding();
+    }
+
+    @Override
+    public ConnectionPoolPartitioning getConnectionPoolPartitioning() {
+        return request.getConnectionPoolPartitioning();
+    }
+
+    @Override
+    public NameResolver getNameResolver() {
+        return request.getNameResolver();
+    }
+
+    @Override
+    public String toString() {
+        return request.toString();
+    }
+
+    // ----------------------------------------------------------- Inner Classes
+
+    /**
+     * The encoded parts of the request, which are the same for every call.
+     */
+    private static final class Template {
+        private final Method method;
+        private final byte[] path;
+        private final byte[] query;
+        private final byte[][] headerNames;
+        private final byte[][] headerValues;
+        private final String[] specialHeaders;
+        private final byte[] cookies;
+        private final boolean staticCookies;
+        private final byte[] host;
+
+        private Template(final Request request,
+                final FluentCaseInsensitiveStringsMap headers) {
+            method = Method.valueOf(request.getMethod());
+
+            final Uri uri = request.getUri();
+            path = encode(AsyncHttpProviderUtils.getNonEmptyPath(uri));
+            query = uri.getQuery() != null ? encode(uri.getQuery()) : null;
+
+            final List<byte[]> names = new ArrayList<byte[]>();
+            final List<byte[]> values = new ArrayList<byte[]>();
+            final List<String> special = new ArrayList<String>();
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                final String name = entry.getKey();
+                if (!MiscUtils.isNonEmpty(entry.getValue())) {
+                    continue;
+                }
+
+                final boolean isSpecial = isSpecialHeader(name);
+                final byte[] encodedName = encode(name);
+                for (String value : entry.getValue()) {
+                    if (isSpecial) {
+                        special.add(name);
+                        special.add(value);
+                    } else {
+                        names.add(encodedName);
+                        values.add(encode(value));
+                    }
+                }
+            }
+            headerNames = names.toArray(new byte[names.size()][]);
+            headerValues = values.toArray(new byte[values.size()][]);
+            specialHeaders = special.toArray(new String[special.size()]);
+
+            boolean mayExpire = false;
+            final List<org.glassfish.grizzly.http.Cookie> gCookies =
+                    new ArrayList<org.glassfish.grizzly.http.Cookie>();
+            for (Cookie cookie : request.getCookies()) {
+                // the cookies with max-age may expire between the calls
+                if (cookie.getMaxAge() != Long.MIN_VALUE) {
+                    mayExpire = true;
+                    break;
+                }
+                gCookies.add(new org.glassfish.grizzly.http.Cookie(
+                        cookie.getName(), cookie.getValue()));
+            }
+            staticCookies = !mayExpire;
+            if (staticCookies && !gCookies.isEmpty()) {
+                final StringBuilder sb = new StringBuilder(128);
+                CookieSerializerUtils.serializeClientCookies(sb,
+                        gCookies.toArray(
+                                new org.glassfish.grizzly.http.Cookie[gCookies.size()]));
+                cookies = encode(sb.toString());
+            } else {
+                cookies = null;
+            }
+
+            if (headers.containsKey(Header.Host.toString())) {
+                host = null;
+            } else if (request.getVirtualHost() != null) {
+                host = encode(request.getVirtualHost());
+            } else if (uri.getPort() == -1) {
+                host = encode(uri.getHost());
+            } else {
+                host = encode(uri.getHost() + ':' + uri.getPort());
+            }
+        }
+
+        private static boolean isSpecialHeader(final String name) {
+            return Header.ContentLength.toString().equalsIgnoreCase(name)
+                    || Header.ContentType.toString().equalsIgnoreCase(name)
+                    || Header.TransferEncoding.toString().equalsIgnoreCase(name)
+                    || Header.Upgrade.toString().equalsIgnoreCase(name)
+                    || Header.Host.toString().equalsIgnoreCase(name)
+                    || Header.Expect.toString().equalsIgnoreCase(name)
+                    || Header.Connection.toString().equalsIgnoreCase(name);
+        }
+
+        private static byte[] encode(final String s) {
+            return s.getBytes(ISO_8859_1);
+        }
+    } // END Template
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.http.ContentEncoding;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpHeader;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.ParsingResult;
+import org.glassfish.grizzly.http.util.Header;
+import org.glassfish.grizzly.memory.Buffers;
+import org.glassfish.grizzly.memory.MemoryManager;
+
+/**
+ * {@link ContentEncoding}, which compresses the request bodies using
+ * <tt>gzip</tt> or <tt>deflate</tt> as they are serialized by the HTTP codec,
+ * so any body, no matter how it's generated, is compressed chunk by chunk
+ * without being buffered. Whether the body of a request is compressed is
+ * decided before the body is generated, see
+ * {@link #newCompressor(HttpRequestPacket, long)}, the compressed body
+ * is always sent using the chunked transfer-encoding.
+ *
+ * @author Grizzly team
+ */
+final class RequestCompressionEncoding implements ContentEncoding {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final int OUT_CHUNK_SIZE = 8192;
+
+    // the header written by java.util.zip.GZIPOutputStream
+    private static final byte[] GZIP_HEADER = {
+        (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final String name;
+    private final int threshold;
+    private final int level;
+
+    // ------------------------------------------------------------ Constructors
+
+    RequestCompressionEncoding(final String name, final int threshold,
+            final int level) {
+        if (!GZIP.equals(name) && !DEFLATE.equals(name)) {
+            throw new IllegalArgumentException(
+                    "Unsupported request compression: " + name);
+        }
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException(
+                    "Invalid request compression level: " + level);
+        }
+
+        this.name = name;
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    // ---------------------------------------------------------- Public Methods
+
+    /**
+     * @return the {@link Compressor} for the request body, or <tt>null</tt>,
+     *          if the body is smaller than the threshold or is encoded
+     *          already
+     */
+    Compressor newCompressor(final HttpRequestPacket requestPacket,
+            final long contentLength) {
+        if (contentLength >= 0 && contentLength < threshold) {
+            return null;
+        }
+        if (requestPacket.getHeaders().getValue(Header.ContentEncoding) != null) {
+            return null;
+        }
+
+        return new Compressor(GZIP.equals(name), level);
+    }
+
+    // ----------------------------------------- Methods from ContentEncoding
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String[] getAliases() {
+        return new String[] {name};
+    }
+
+    @Override
+    public boolean wantDecode(final HttpHeader httpHeader) {
+        return false;
+    }
+
+    @Override
+    public boolean wantEncode(final HttpHeader httpHeader) {
+        if (!httpHeader.isRequest()) {
+            return false;
+        }
+
+        final HttpTransactionContext context =
+                HttpTransactionContext.currentTransaction(httpHeader);
+        if (context == null || context.requestCompressor == null) {
+            return false;
+        }
+
+        // the compressed length is not known until the body is sent
+        httpHeader.setContentLengthLong(-1);
+        httpHeader.setChunked(true);
+        return true;
+    }
+
+    @Override
+    public ParsingResult decode(final Connection connection,
+            final HttpContent httpContent) {
+        // responses are never decoded, see wantDecode()
+        return ParsingResult.create(httpContent, null);
+    }
+
+    @Override
+    public HttpContent encode(final Connection connection,
+            final HttpContent httpContent) {
+        final HttpHeader httpHeader = httpContent.getHttpHeader();
+        final Buffer input = httpContent.getContent();
+        if (!httpContent.isLast() && !input.hasRemaining()) {
+            return httpContent;
+        }
+
+        final HttpTransactionContext context =
+                HttpTransactionContext.currentTransaction(httpHeader);
+        final Buffer output = context.requestCompressor.compress(
+                connection.getMemoryManager(), input, httpContent.isLast());
+        input.tryDispose();
+
+        return httpHeader.httpContentBuilder()
+                .content(output)
+                .last(httpContent.isLast())
+                .build();
+    }
+
+    // ----------------------------------------------------------- Inner Classes
+
+    /**
+     * Compresses the body of a single request.
+     */
+    static final class Compressor {
+        private final Deflater deflater;
+        private final CRC32 crc;
+        private final byte[] scratch = new byte[OUT_CHUNK_SIZE];
+
+        private boolean isHeaderWritten;
+        private boolean isFinishing;
+        private Buffer output;
+        private Buffer chunk;
+
+        private Compressor(final boolean isGzip, final int level) {
+            deflater = new Deflater(level, isGzip);
+            crc = isGzip ? new CRC32() : null;
+        }
+
+        /**
+         * Compresses the <tt>input</tt>, the heap buffers are deflated
+         * in place. The output is flushed, so the data is not held back
+         * until the next chunk.
+         */
+        synchronized Buffer compress(final MemoryManager mm,
+                final Buffer input, final boolean isLast) {
+            output = null;
+            chunk = mm.allocate(OUT_CHUNK_SIZE);
+
+            if (crc != null && !isHeaderWritten) {
+                chunk.put(GZIP_HEADER);
+            }
+            isHeaderWritten = true;
+
+            if (input.hasArray()) {
+                setInput(input.array(),
+                        input.arrayOffset() + input.position(),
+                        input.remaining());
+                deflate(mm, Deflater.NO_FLUSH);
+            } else {
+                while (input.hasRemaining()) {
+                    final int len = Math.min(scratch.length, input.remaining());
+                    input.get(scratch, 0, len);
+                    setInput(scratch, 0, len);
+                    deflate(mm, Deflater.NO_FLUSH);
+                }
+            }
+
+            if (isLast) {
+                isFinishing = true;
+                deflater.finish();
+                deflate(mm, Deflater.NO_FLUSH);
+                if (crc != null) {
+                    writeTrailer(mm);
+                }
+                end();
+            } else {
+                deflate(mm, Deflater.SYNC_FLUSH);
+            }
+
+            chunk.trim();
+            final Buffer result = append(mm, output, chunk);
+            output = null;
+            chunk = null;
+            return result;
+        }
+
+        /**
+         * Releases the native resources of the {@link Deflater}.
+         */
+        synchronized void end() {
+            deflater.end();
+        }
+
+        private void setInput(final byte[] b, final int off, final int len) {
+            deflater.setInput(b, off, len);
+            if (crc != null) {
+                crc.update(b, off, len);
+            }
+        }
+
+        /**
+         * Deflates until the stream is finished, if {@link Deflater#finish()}
+         * has been called, otherwise until the input is consumed or the
+         * output is flushed, depending on the <tt>flush</tt> mode.
+         */
+        private void deflate(final MemoryManager mm, final int flush) {
+            while (true) {
+                final int space = chunk.remaining();
+                final int len;
+                if (chunk.hasArray()) {
+                    len = deflater.deflate(chunk.array(),
+                            chunk.arrayOffset() + chunk.position(),
+                            space, flush);
+                    chunk.position(chunk.position() + len);
+                } else {
+                    len = deflater.deflate(scratch, 0,
+                            Math.min(space, scratch.length), flush);
+                    chunk.put(scratch, 0, len);
+                }
+
+                if (!chunk.hasRemaining()) {
+                    nextChunk(mm);
+                    continue;
+                }
+
+                final boolean isDone = isFinishing
+                        ? deflater.finished()
+                        : flush == Deflater.NO_FLUSH
+                                ? deflater.needsInput()
+                                : len < space;
+                if (isDone) {
+                    return;
+                }
+            }
+        }
+
+        private void writeTrailer(final MemoryManager mm) {
+            if (chunk.remaining() < 8) {
+                nextChunk(mm);
+            }
+            putIntLE(chunk, (int) crc.getValue());
+            putIntLE(chunk, (int) deflater.getBytesRead());
+        }
+
+        private void nextChunk(final MemoryManager mm) {
+            chunk.trim();
+            output = append(mm, output, chunk);
+            chunk = mm.allocate(OUT_CHUNK_SIZE);
+        }
+
+        private static Buffer append(final MemoryManager mm,
+                final Buffer output, final Buffer chunk) {
+            chunk.allowBufferDispose(true);
+            return output == null ? chunk : Buffers.appendBuffers(mm, output, chunk);
+        }
+
+        private static void putIntLE(final Buffer buffer, final int value) {
+            buffer.put((byte) value);
+            buffer.put((byte) (value >> 8));
+            buffer.put((byte) (value >> 16));
+            buffer.put((byte) (value >> 24));
+        }
+    } // END Compressor
+}
@@ -15,6 +15,7 @@ package com.ning.http.client.providers.grizzly;
 import com.ning.http.client.providers.grizzly.events.SSLSwitchingEvent;
 import java.io.IOException;
 import javax.net.ssl.SSLEngine;
+import org.glassfish.grizzly.CompletionHandler;
 import org.glassfish.grizzly.Connection;
 import org.glassfish.grizzly.Grizzly;
 import org.glassfish.grizzly.attributes.Attribute;
@@ -40,6 +41,25 @@ final class SwitchingSSLFilter extends SSLFilter {
         this.secureByDefault = secureByDefault;
     }
 
+    // ---------------------------------------------------- Public Methods
+
+    /**
+     * Switches the {@link Connection} to the secure mode and performs the
+     * TLS handshake right away, rather than along with the first request.
+     */
+    void handshake(final Connection connection, final String host,
+            final int port,
+            final CompletionHandler<SSLEngine> completionHandler)
+            throws IOException {
+        CONNECTION_IS_SECURE.set(connection, true);
+        if (SSLUtils.getSSLEngine(connection) == null) {
+            SSLUtils.setSSLEngine(connection, getClientSSLEngineConfigurator()
+                    .createSSLEngine(host, port == -1 ? 443 : port));
+        }
+
+        handshake(connection, completionHandler);
+    }
+
     // ---------------------------------------------- Methods from SSLFilter
     @Override
     public NextAction handleEvent(final FilterChainContext ctx,
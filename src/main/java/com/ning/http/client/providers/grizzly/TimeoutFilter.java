@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.attributes.Attribute;
+import org.glassfish.grizzly.filterchain.BaseFilter;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.filterchain.NextAction;
+import org.glassfish.grizzly.websockets.WebSocketHolder;
+
+/**
+ * Times out the connections, which stay idle longer than allowed, using the
+ * shared {@link TimeoutWheel} instead of polling all the connections.
+ *
+ * While a request is in progress the connection may stay idle for the
+ * request timeout, or for the {@link com.ning.http.client.AsyncHttpClientConfig#getReadTimeout()},
+ * whichever is shorter, a WebSocket connection for the WebSocket timeout.
+ * The connections idle in the pool are looked after by the pool.
+ *
+ * Each connection has at most one check scheduled. The I/O events only
+ * record the activity time, the check reschedules itself if the connection
+ * has been active meanwhile, so the timer is not touched for every read.
+ *
+ * @author Grizzly team
+ */
+final class TimeoutFilter extends BaseFilter {
+    private static final Attribute<ConnectionTimeout> TIMEOUT_ATTR =
+            Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(
+                    TimeoutFilter.class.getName() + ".timeout");
+
+    private static final long FOREVER = -1;
+
+    private final GrizzlyAsyncHttpProvider provider;
+    private final TimeoutWheel wheel;
+    private final long requestTimeout;
+    private final long readTimeout;
+    private final long webSocketTimeout;
+
+    // ------------------------------------------------------------ Constructors
+
+    TimeoutFilter(final GrizzlyAsyncHttpProvider provider,
+            final TimeoutWheel wheel) {
+        this.provider = provider;
+        this.wheel = wheel;
+        requestTimeout = provider.getClientConfig().getRequestTimeout();
+        readTimeout = provider.getClientConfig().getReadTimeout();
+        webSocketTimeout = provider.getClientConfig().getWebSocketTimeout();
+    }
+
+    // ------------------------------------------------- Methods from BaseFilter
+
+    @Override
+    public NextAction handleConnect(final FilterChainContext ctx)
+            throws IOException {
+        get(ctx.getConnection()).touch();
+        return ctx.getInvokeAction();
+    }
+
+    @Override
+    public NextAction handleRead(final FilterChainContext ctx)
+            throws IOException {
+        get(ctx.getConnection()).onEventStarted(ctx);
+        return ctx.getInvokeAction();
+    }
+
+    @Override
+    public NextAction handleWrite(final FilterChainContext ctx)
+            throws IOException {
+        // the request body writers may suspend the write context until the
+        // whole body is sent, so the writes only count as the activity
+        get(ctx.getConnection()).touch();
+        return ctx.getInvokeAction();
+    }
+
+    @Override
+    public NextAction handleClose(final FilterChainContext ctx)
+            throws IOException {
+        final ConnectionTimeout timeout = TIMEOUT_ATTR.get(ctx.getConnection());
+        if (timeout != null) {
+            timeout.cancel();
+        }
+
+        return ctx.getInvokeAction();
+    }
+
+    // ------------------------------------------------- Package Private Methods
+
+    /**
+     * Records the {@link Connection} activity, so the idle time is counted
+     * from now on.
+     */
+    void touch(final Connection connection) {
+        get(connection).touch();
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    private ConnectionTimeout get(final Connection connection) {
+        ConnectionTimeout timeout = TIMEOUT_ATTR.get(connection);
+        if (timeout == null) {
+            // reads and writes might be processed by different threads
+            synchronized (connection) {
+                timeout = TIMEOUT_ATTR.get(connection);
+                if (timeout == null) {
+                    timeout = new ConnectionTimeout(connection);
+                    TIMEOUT_ATTR.set(connection, timeout);
+                }
+            }
+        }
+
+        return timeout;
+    }
+
+    /**
+     * @return the max number of millis the {@link Connection} may stay idle,
+     *          or {@link #FOREVER}
+     */
+    private long getIdleTimeout(final Connection connection) {
+        if (provider.getConnectionManager().isReadyInPool(connection)) {
+            // the pool takes care of the idle connections
+            return FOREVER;
+        }
+
+        final HttpTransactionContext context =
+                HttpTransactionContext.oldestTransaction(connection);
+        if ((context != null && context.isWSRequest)
+                || WebSocketHolder.isWebSocketInProgress(connection)) {
+            return webSocketTimeout > 0 ? webSocketTimeout : FOREVER;
+        }
+
+        if (context == null) {
+            return requestTimeout > 0 ? requestTimeout : FOREVER;
+        }
+
+        final long timeout = getRequestTimeout(context);
+        if (isReadTimeoutShorter(timeout)) {
+            return readTimeout;
+        }
+
+        return timeout > 0 ? timeout : FOREVER;
+    }
+
+    private long getRequestTimeout(final HttpTransactionContext context) {
+        return context.getAhcRequest().getRequestTimeout() > 0
+                ? context.getAhcRequest().getRequestTimeout()
+                : requestTimeout;
+    }
+
+    private boolean isReadTimeoutShorter(final long requestTimeout) {
+        return readTimeout > 0
+                && (requestTimeout <= 0 || readTimeout < requestTimeout);
+    }
+
+    private String getTimeoutMessage(final Connection connection) {
+        final HttpTransactionContext context =
+                HttpTransactionContext.oldestTransaction(connection);
+        return context != null && !context.isWSRequest
+                && isReadTimeoutShorter(getRequestTimeout(context))
+                ? "Read timeout exceeded"
+                : "Timeout exceeded";
+    }
+
+    // ----------------------------------------------------------- Inner Classes
+
+    private final class ConnectionTimeout
+            implements Runnable, FilterChainContext.CompletionListener {
+        private final Connection connection;
+        // the I/O events being processed, the connection is not idle meanwhile
+        private final AtomicInteger activeEvents = new AtomicInteger();
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        // guarded by this
+        private TimeoutWheel.Timeout check;
+        private long checkDeadline;
+
+        private ConnectionTimeout(final Connection connection) {
+            this.connection = connection;
+        }
+
+        private void onEventStarted(final FilterChainContext ctx) {
+            activeEvents.incrementAndGet();
+            ctx.addCompletionListener(this);
+        }
+
+        @Override
+        public void onComplete(final FilterChainContext ctx) {
+            activeEvents.decrementAndGet();
+            touch();
+        }
+
+        private void touch() {
+            lastActivity = System.currentTimeMillis();
+
+            final long timeout = getIdleTimeout(connection);
+            if (timeout != FOREVER) {
+                schedule(lastActivity + timeout);
+            }
+        }
+
+        /**
+         * Makes sure the connection is checked no later than the deadline.
+         */
+        private synchronized void schedule(final long deadline) {
+            if (check != null) {
+                if (checkDeadline <= deadline) {
+                    return; // the check will reschedule itself
+                }
+
+                check.cancel();
+            }
+
+            try {
+                check = wheel.schedule(this,
+                        deadline - System.currentTimeMillis(),
+                        TimeUnit.MILLISECONDS);
+                checkDeadline = deadline;
+            } catch (IllegalStateException e) {
+                // the provider is closed
+                check = null;
+            }
+        }
+
+        private synchronized void cancel() {
+            if (check != null) {
+                check.cancel();
+                check = null;
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                check = null;
+            }
+
+            if (!connection.isOpen() || activeEvents.get() > 0) {
+                // the event completion reschedules the check
+                return;
+            }
+
+            final long timeout = getIdleTimeout(connection);
+            if (timeout == FOREVER) {
+                return;
+            }
+
+            final long deadline = lastActivity + timeout;
+            if (System.currentTimeMillis() < deadline) {
+                schedule(deadline);
+                return;
+            }
+
+            provider.timeout(connection, getTimeoutMessage(connection));
+        }
+    } // END ConnectionTimeout
+}
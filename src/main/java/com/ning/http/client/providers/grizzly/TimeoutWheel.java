@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.providers.grizzly;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed wheel timer shared by the provider's connect, request, read and
+ * pooled connection idle timeouts.
+ *
+ * Scheduling and cancelling a {@link Timeout} are O(1): new timeouts are
+ * queued and placed into the wheel buckets by the timer thread, cancelled
+ * ones are unlinked from their bucket the same way. Every tick the timer
+ * thread looks only at the timeouts of the current bucket, so the cost does
+ * not depend on the number of open connections. The timeouts fire with the
+ * tick resolution, never earlier than requested. The timer thread is
+ * started by the first scheduled timeout, so a client without any timeout
+ * configured doesn't run it.
+ *
+ * @author Grizzly team
+ */
+final class TimeoutWheel {
+    private final static Logger LOGGER = LoggerFactory.getLogger(TimeoutWheel.class);
+
+    private static final int INIT = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+    private final Thread workerThread;
+    // set once the worker thread is started
+    private volatile long startTime;
+    private volatile boolean isStarted;
+    private volatile boolean isStopped;
+
+    // ------------------------------------------------------------ Constructors
+
+    /**
+     * @param tickMillis the timer resolution
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     */
+    TimeoutWheel(final long tickMillis, final int wheelSize,
+            final String threadName) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("wheelSize must be in (0, 2^30]: " + wheelSize);
+        }
+
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+
+        workerThread = new Thread(new Worker(), threadName);
+        workerThread.setDaemon(true);
+    }
+
+    // ---------------------------------------------------------- Public Methods
+
+    /**
+     * Schedules the task to be executed by the timer thread once the delay
+     * passes. The task should be short, it delays the other timeouts.
+     */
+    Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        if (isStopped) {
+            throw new IllegalStateException("The timer is stopped");
+        }
+        if (!isStarted) {
+            start();
+        }
+
+        final Timeout timeout = new Timeout(task,
+                System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay)));
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    long getTickMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    synchronized void stop() {
+        isStopped = true;
+        workerThread.interrupt();
+    }
+
+    boolean isStarted() {
+        return isStarted;
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    private synchronized void start() {
+        if (isStarted || isStopped) {
+            return;
+        }
+
+        // the deadlines are relative to the start, so the worker doesn't
+        // have to catch up with the ticks passed before
+        startTime = System.nanoTime();
+        workerThread.start();
+        isStarted = true;
+    }
+
+    // ----------------------------------------------------------- Inner Classes
+
+    /**
+     * The handle of a scheduled task.
+     */
+    final class Timeout {
+        private final Runnable task;
+        // relative to the startTime
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+
+        // accessed by the timer thread only
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(final Runnable task, final long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task, if it hasn't been executed yet.
+         *
+         * @return <tt>true</tt>, if the task won't be executed
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) {
+                return state.get() == CANCELLED;
+            }
+
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(INIT, EXPIRED)) {
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOGGER.warn("Timeout task failed", t);
+            }
+        }
+    } // END Timeout
+
+    /**
+     * The doubly linked list of timeouts, accessed by the timer thread only.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(final Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private Timeout remove(final Timeout timeout) {
+            final Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+
+        private void expire(final long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                if (timeout.remainingRounds <= 0) {
+                    final Timeout next = remove(timeout);
+                    if (timeout.deadline <= deadline) {
+                        timeout.expire();
+                    }
+                    timeout = next;
+                } else {
+                    timeout.remainingRounds--;
+                    timeout = timeout.next;
+                }
+            }
+        }
+    } // END Bucket
+
+    private final class Worker implements Runnable {
+        private long tick;
+
+        @Override
+        public void run() {
+            while (!isStopped) {
+                final long deadline = waitForNextTick();
+                if (deadline < 0) {
+                    break;
+                }
+
+                removeCancelled();
+                transferPending();
+                wheel[(int) (tick & mask)].expire(deadline);
+                tick++;
+            }
+
+            pendingTimeouts.clear();
+            cancelledTimeouts.clear();
+        }
+
+        /**
+         * @return the deadline of the current tick, relative to the startTime,
+         *          or <tt>-1</tt>, if the timer has been stopped
+         */
+        private long waitForNextTick() {
+            final long deadline = tickNanos * (tick + 1);
+
+            for (;;) {
+                final long sleepNanos = deadline - (System.nanoTime() - startTime);
+                if (sleepNanos <= 0) {
+                    return deadline;
+                }
+
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (isStopped) {
+                        return -1;
+                    }
+                }
+            }
+        }
+
+        private void removeCancelled() {
+            Timeout timeout;
+            while ((timeout = cancelledTimeouts.poll()) != null) {
+                if (timeout.bucket != null) {
+                    timeout.bucket.remove(timeout);
+                }
+            }
+        }
+
+        private void transferPending() {
+            // bound the work per tick, if the timeouts are scheduled faster
+            // than they are transferred
+            for (int i = 0; i < 100000; i++) {
+                final Timeout timeout = pendingTimeouts.poll();
+                if (timeout == null) {
+                    break;
+                }
+
+                if (timeout.isCancelled()) {
+                    continue;
+                }
+
+                final long calculated = timeout.deadline / tickNanos;
+                timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+                // already expired timeouts go to the current bucket
+                final long ticks = Math.max(calculated, tick);
+                wheel[(int) (ticks & mask)].add(timeout);
+            }
+        }
+    } // END Worker
+}
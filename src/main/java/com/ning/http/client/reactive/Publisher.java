@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.reactive;
+
+/**
+ * A provider of a potentially unbounded number of elements, which are
+ * published according to the demand of its {@link Subscriber}. The interface
+ * mirrors the Reactive Streams <tt>Publisher</tt>, so it may be adapted
+ * to any Reactive Streams implementation.
+ *
+ * @param <T> the type of the published elements
+ */
+public interface Publisher<T> {
+
+    /**
+     * Request the {@link Publisher} to start publishing the elements to the
+     * {@link Subscriber}, once the {@link Subscriber} requests them through
+     * its {@link Subscription}.
+     *
+     * @param subscriber the {@link Subscriber}, which consumes the elements
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.reactive;
+
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.ReadControl;
+import com.ning.http.client.ReadControlledAsyncHandler;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * An {@link com.ning.http.client.AsyncHandler}, which publishes the response
+ * body as read-only {@link ByteBuffer}s, according to the demand of its
+ * {@link Subscriber}. While there's no demand, the reading of the response
+ * is paused, if the provider supports the {@link ReadControl}, so the TCP
+ * flow control throttles the server. Only the body parts, which have already
+ * been read from the connection, are buffered.
+ * <p/>
+ * <pre>
+ *     ResponseBodyPublisher publisher = new ResponseBodyPublisher();
+ *     client.prepareGet("http://foo.com/aResource").execute(publisher);
+ *     publisher.subscribe(subscriber);
+ * </pre>
+ * The status and the headers may be inspected by overriding
+ * {@link #onStatusReceived(HttpResponseStatus)} and
+ * {@link #onHeadersReceived(HttpResponseHeaders)}. Cancelling the
+ * {@link Subscription} aborts the response processing, the rest of the body
+ * is discarded.
+ */
+public class ResponseBodyPublisher implements ReadControlledAsyncHandler<Void>,
+        Publisher<ByteBuffer> {
+
+    private final Object lock = new Object();
+    private final Queue<ByteBuffer> buffers = new ArrayDeque<>();
+
+    private ReadControl readControl;
+    private boolean subscribed;
+    private Subscriber<? super ByteBuffer> subscriber;
+    private long demand;
+    private boolean draining;
+    private boolean completed;
+    private Throwable error;
+    private boolean terminated;
+    private boolean cancelled;
+
+    // ------------------------------------------------- Methods from Publisher
+
+    @Override
+    public void subscribe(final Subscriber<? super ByteBuffer> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+
+        final boolean alreadySubscribed;
+        synchronized (lock) {
+            alreadySubscribed = subscribed;
+            subscribed = true;
+        }
+
+        if (alreadySubscribed) {
+            subscriber.onSubscribe(CANCELLED_SUBSCRIPTION);
+            subscriber.onError(new IllegalStateException(
+                    "The response body is already subscribed"));
+            return;
+        }
+
+        subscriber.onSubscribe(new BodySubscription());
+        // nothing is delivered before onSubscribe() returns
+        synchronized (lock) {
+            this.subscriber = subscriber;
+        }
+        // the response may be already complete or failed
+        drain();
+    }
+
+    // ---------------------------------------------- Methods from AsyncHandler
+
+    @Override
+    public void onReadControl(final ReadControl readControl) {
+        synchronized (lock) {
+            this.readControl = readControl;
+        }
+    }
+
+    @Override
+    public STATE onStatusReceived(final HttpResponseStatus responseStatus)
+            throws Exception {
+        return STATE.CONTINUE;
+    }
+
+    @Override
+    public STATE onHeadersReceived(final HttpResponseHeaders headers)
+            throws Exception {
+        return STATE.CONTINUE;
+    }
+
+    @Override
+    public STATE onBodyPartReceived(final HttpResponseBodyPart bodyPart)
+            throws Exception {
+        synchronized (lock) {
+            if (cancelled) {
+                return STATE.ABORT;
+            }
+            if (bodyPart.length() > 0) {
+                buffers.add(bodyPart.getReadOnlyBodyByteBuffer());
+            }
+        }
+
+        drain();
+
+        synchronized (lock) {
+            // paused under the lock, so it's not mixed up with a concurrent
+            // request(n) resuming the reading
+            if (demand == 0 && !bodyPart.isLast() && readControl != null) {
+                readControl.pause();
+            }
+        }
+        return STATE.CONTINUE;
+    }
+
+    @Override
+    public void onThrowable(final Throwable t) {
+        synchronized (lock) {
+            if (error == null && !completed) {
+                error = t;
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public Void onCompleted() throws Exception {
+        synchronized (lock) {
+            completed = true;
+        }
+        drain();
+        return null;
+    }
+
+    // --------------------------------------------------------- Private Methods
+
+    /**
+     * Delivers the requested buffers and the termination signal to the
+     * {@link Subscriber}. The thread, which finds the delivery in progress,
+     * leaves it to the delivering thread, so the signals are serialized.
+     */
+    private void drain() {
+        synchronized (lock) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+
+        for (;;) {
+            final Subscriber<? super ByteBuffer> s;
+            ByteBuffer next = null;
+            Throwable failure = null;
+            synchronized (lock) {
+                s = subscriber;
+                if (s == null || cancelled || terminated) {
+                    draining = false;
+                    return;
+                }
+                if (error != null) {
+                    buffers.clear();
+                    failure = error;
+                    terminated = true;
+                } else if (!buffers.isEmpty() && demand > 0) {
+                    next = buffers.poll();
+                    demand--;
+                } else if (buffers.isEmpty() && completed) {
+                    terminated = true;
+                } else {
+                    draining = false;
+                    return;
+                }
+            }
+
+            if (next != null) {
+                s.onNext(next);
+            } else if (failure != null) {
+                s.onError(failure);
+            } else {
+                s.onComplete();
+            }
+        }
+    }
+
+    private void request(final long n) {
+        if (n <= 0) {
+            synchronized (lock) {
+                if (error == null) {
+                    error = new IllegalArgumentException(
+                            "The number of requested buffers must be positive: " + n);
+                }
+            }
+            drain();
+            cancel();
+            return;
+        }
+
+        synchronized (lock) {
+            demand += n;
+            if (demand < 0) {
+                // effectively unbounded
+                demand = Long.MAX_VALUE;
+            }
+        }
+
+        drain();
+
+        synchronized (lock) {
+            if (demand > 0 && readControl != null) {
+                readControl.resume();
+            }
+        }
+    }
+
+    private void cancel() {
+        synchronized (lock) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            buffers.clear();
+            // the next body part aborts the response
+            if (readControl != null) {
+                readControl.resume();
+            }
+        }
+    }
+
+    private static final Subscription CANCELLED_SUBSCRIPTION = new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    // ---------------------------------------------------------- Nested Classes
+
+    private final class BodySubscription implements Subscription {
+
+        @Override
+        public void request(final long n) {
+            ResponseBodyPublisher.this.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            ResponseBodyPublisher.this.cancel();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.reactive;
+
+/**
+ * Receives the elements of a {@link Publisher} after it has requested
+ * them by {@link Subscription#request(long)}. The calls are never concurrent.
+ * The interface mirrors the Reactive Streams <tt>Subscriber</tt>.
+ *
+ * @param <T> the type of the received elements
+ */
+public interface Subscriber<T> {
+
+    /**
+     * Invoked once, when the {@link Subscriber} is subscribed. No element is
+     * received until it's requested by {@link Subscription#request(long)}.
+     *
+     * @param subscription the {@link Subscription} of the {@link Subscriber}
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Invoked for each requested element.
+     *
+     * @param element the element
+     */
+    void onNext(T element);
+
+    /**
+     * Invoked once, when the {@link Publisher} has failed. No other method
+     * is invoked afterwards.
+     *
+     * @param t the failure
+     */
+    void onError(Throwable t);
+
+    /**
+     * Invoked once, when all the elements have been received. No other
+     * method is invoked afterwards.
+     */
+    void onComplete();
+}
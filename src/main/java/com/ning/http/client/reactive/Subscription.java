@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.ning.http.client.reactive;
+
+/**
+ * The link between a {@link Publisher} and its {@link Subscriber}, which
+ * signals the {@link Subscriber}'s demand. The interface mirrors the
+ * Reactive Streams <tt>Subscription</tt>.
+ */
+public interface Subscription {
+
+    /**
+     * Request <tt>n</tt> more elements. The demand is cumulative.
+     *
+     * @param n the number of the requested elements, must be positive
+     */
+    void request(long n);
+
+    /**
+     * Stop receiving the elements. The {@link Publisher} may still send
+     * the elements, which were already in flight.
+     */
+    void cancel();
+}
@@ -163,7 +163,7 @@ public class ResumableAsyncHandler<T> implements AsyncHandler<T> {
     @Override
     public AsyncHandler.STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
         responseBuilder.accumulate(headers);
-        String contentLengthHeader = headers.getHeaders().getFirstValue("Content-Length");
+        String contentLengthHeader = headers.getFirstValue("Content-Length");
         if (contentLengthHeader != null) {
             if (Long.parseLong(contentLengthHeader) == -1L) {
                 return AsyncHandler.STATE.ABORT;
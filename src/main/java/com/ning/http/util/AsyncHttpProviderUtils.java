@@ -185,6 +185,10 @@ public class AsyncHttpProviderUtils {
         return request.getRequestTimeout() != 0 ? request.getRequestTimeout() : config.getRequestTimeout();
     }
 
+    public static long maxResponseBodySize(AsyncHttpClientConfig config, Request request) {
+        return request.getMaxResponseBodySize() != 0 ? request.getMaxResponseBodySize() : config.getMaxResponseBodySize();
+    }
+
     public static boolean followRedirect(AsyncHttpClientConfig config, Request request) {
         return request.getFollowRedirect() != null ? request.getFollowRedirect().booleanValue() : config.isFollowRedirect();
     }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.async.grizzly;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.providers.grizzly.ConnectionPoolStatistics;
+import com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProvider;
+import com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig;
+
+/**
+ * Runs the connection pool tests against the AHC connection pool.
+ */
+public class GrizzlyAhcConnectionPoolTest extends GrizzlyConnectionPoolTest {
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        final AsyncHttpClientConfig ahcPoolConfig = withAhcPool(config);
+        return new AsyncHttpClient(new GrizzlyAsyncHttpProvider(ahcPoolConfig),
+                ahcPoolConfig);
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testStatistics() throws Exception {
+        final AsyncHttpClientConfig config = withAhcPool(null);
+        final GrizzlyAsyncHttpProvider provider = new GrizzlyAsyncHttpProvider(config);
+        try (AsyncHttpClient client = new AsyncHttpClient(provider, config)) {
+            for (int i = 0; i < 3; i++) {
+                final Response response = client.prepareGet(getTargetUrl())
+                        .execute().get(TIMEOUT, TimeUnit.SECONDS);
+                assertEquals(response.getStatusCode(), 200);
+            }
+
+            Map<Object, ConnectionPoolStatistics> statistics =
+                    provider.getConnectionPoolStatistics();
+            assertEquals(statistics.size(), 1);
+
+            // the same connection has been reused
+            ConnectionPoolStatistics partitionStatistics =
+                    statistics.values().iterator().next();
+            assertEquals(partitionStatistics.getIdleConnections(), 1);
+            assertEquals(partitionStatistics.getBusyConnections(), 0);
+            assertEquals(partitionStatistics.getPendingConnects(), 0);
+            assertEquals(partitionStatistics.getConnectFailures(), 0);
+
+            final int closedPort = findFreePort();
+            try {
+                client.prepareGet("http://127.0.0.1:" + closedPort + "/")
+                        .execute().get(TIMEOUT, TimeUnit.SECONDS);
+                fail("Connection refused expected");
+            } catch (ExecutionException expected) {
+            }
+
+            statistics = provider.getConnectionPoolStatistics();
+            assertEquals(statistics.size(), 2);
+
+            for (ConnectionPoolStatistics s : statistics.values()) {
+                if (s.getIdleConnections() == 0) {
+                    assertEquals(s.getConnectFailures(), 1);
+                    assertEquals(s.getBusyConnections(), 0);
+                    assertEquals(s.getPendingConnects(), 0);
+                }
+            }
+        }
+    }
+
+    private static AsyncHttpClientConfig withAhcPool(final AsyncHttpClientConfig config) {
+        final GrizzlyAsyncHttpProviderConfig providerConfig =
+                new GrizzlyAsyncHttpProviderConfig();
+        providerConfig.addProperty(
+                GrizzlyAsyncHttpProviderConfig.Property.AHC_CONNECTION_POOL, true);
+
+        final AsyncHttpClientConfig.Builder builder = config != null
+                ? new AsyncHttpClientConfig.Builder(config)
+                : new AsyncHttpClientConfig.Builder();
+
+        return builder.setAsyncHttpClientProviderConfig(providerConfig).build();
+    }
+}
@@ -50,7 +50,7 @@ public class GrizzlyAsyncProviderBasicTest extends AsyncProvidersBasicTest {
 
     @Override
     protected String generatedAcceptEncodingHeader() {
-        return "gzip";
+        return "gzip, deflate";
     }
 
     @Test(enabled = false)
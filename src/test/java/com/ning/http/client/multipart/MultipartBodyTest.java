@@ -16,12 +16,15 @@ package com.ning.http.client.multipart;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.testng.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
@@ -86,6 +89,66 @@ public class MultipartBodyTest {
         }
     }
 
+    @Test
+    public void segments() throws Exception {
+        try (MultipartBody multipartBody = buildMultipart()) {
+            final List<MultipartBody.Segment> segments = multipartBody.getSegments();
+            assertNotNull(segments);
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long length = 0;
+            int files = 0;
+            for (MultipartBody.Segment segment : segments) {
+                length += segment.getLength();
+                if (segment.getFile() != null) {
+                    files++;
+                    out.write(Files.readAllBytes(segment.getFile().toPath()));
+                } else {
+                    out.write(segment.getBytes());
+                }
+            }
+
+            assertEquals(files, 1);
+            assertEquals(length, multipartBody.getContentLength());
+            assertEquals(out.toByteArray(), readAll(multipartBody));
+        }
+    }
+
+    @Test
+    public void readFailsIfFileIsTruncated() throws Exception {
+        final File file = File.createTempFile("multipart-", ".txt");
+        try {
+            Files.write(file.toPath(), new byte[10000]);
+            final List<Part> parts = new ArrayList<>();
+            parts.add(new StringPart("stringPart", "testString"));
+            parts.add(new FilePart("filePart", file));
+
+            try (MultipartBody multipartBody = MultipartUtils.newMultipartBody(parts, new FluentCaseInsensitiveStringsMap())) {
+                // the file shrinks in the middle of the transfer
+                assertTrue(multipartBody.read(ByteBuffer.allocate(1024)) > 0);
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(100);
+                }
+                readAll(multipartBody);
+                fail("truncated file is not detected");
+            } catch (IOException expected) {
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static byte[] readAll(MultipartBody multipartBody) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (multipartBody.read(buffer) >= 0) {
+            buffer.flip();
+            out.write(buffer.array(), 0, buffer.limit());
+            buffer.clear();
+        }
+        return out.toByteArray();
+    }
+
     private static long transferWithCopy(MultipartBody multipartBody, int bufferSize) throws IOException {
         final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
         long totalBytes = 0;
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import com.ning.http.client.NameResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.CompletionHandler;
+import org.glassfish.grizzly.utils.Futures;
+import org.glassfish.grizzly.impl.FutureImpl;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class AsyncNameResolverTest {
+
+    private AsyncNameResolver asyncResolver;
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (asyncResolver != null) {
+            asyncResolver.destroy();
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testConcurrentLookupsAreCoalesced() throws Exception {
+        final CountDownLatch lookupStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLookup = new CountDownLatch(1);
+        final CountingResolver resolver = new CountingResolver() {
+            @Override
+            InetAddress doResolve(String name) throws UnknownHostException {
+                lookupStarted.countDown();
+                await(releaseLookup);
+                return InetAddress.getByAddress(name, new byte[] {10, 0, 0, 1});
+            }
+        };
+
+        asyncResolver = new AsyncNameResolver(60000, 60000, 16, 2);
+
+        final FutureImpl<InetAddress> f1 = Futures.createSafeFuture();
+        final FutureImpl<InetAddress> f2 = Futures.createSafeFuture();
+        asyncResolver.resolve(resolver, "some.host", Futures.toCompletionHandler(f1));
+        assertTrue(lookupStarted.await(5, TimeUnit.SECONDS));
+        asyncResolver.resolve(resolver, "some.host", Futures.toCompletionHandler(f2));
+        assertNull(asyncResolver.getAllIfCached(resolver, "some.host"));
+
+        releaseLookup.countDown();
+
+        assertEquals(f1.get(5, TimeUnit.SECONDS), f2.get(5, TimeUnit.SECONDS));
+        assertEquals(resolver.count.get(), 1);
+
+        // served from the cache
+        assertNotNull(asyncResolver.getAllIfCached(resolver, "some.host"));
+        assertNotNull(resolveSync(resolver, "some.host"));
+        assertEquals(resolver.count.get(), 1);
+    }
+
+    @Test(groups = "standalone")
+    public void testFailuresAreCached() throws Exception {
+        final CountingResolver resolver = new CountingResolver() {
+            @Override
+            InetAddress doResolve(String name) throws UnknownHostException {
+                throw new UnknownHostException(name);
+            }
+        };
+
+        asyncResolver = new AsyncNameResolver(60000, 60000, 16, 1);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                resolveSync(resolver, "unknown.host");
+                fail("UnknownHostException expected");
+            } catch (UnknownHostException expected) {
+            }
+        }
+
+        assertEquals(resolver.count.get(), 1);
+    }
+
+    @Test(groups = "standalone")
+    public void testZeroTtlDisablesCaching() throws Exception {
+        final CountingResolver resolver = new CountingResolver();
+        asyncResolver = new AsyncNameResolver(0, 0, 16, 1);
+
+        resolveSync(resolver, "localhost");
+        resolveSync(resolver, "localhost");
+
+        assertEquals(resolver.count.get(), 2);
+        assertEquals(asyncResolver.size(), 0);
+    }
+
+    @Test(groups = "standalone")
+    public void testCacheSizeIsBounded() throws Exception {
+        final CountingResolver resolver = new CountingResolver() {
+            @Override
+            InetAddress doResolve(String name) throws UnknownHostException {
+                return InetAddress.getByAddress(name, new byte[] {10, 0, 0, 1});
+            }
+        };
+
+        asyncResolver = new AsyncNameResolver(60000, 60000, 4, 1);
+
+        for (int i = 0; i < 20; i++) {
+            resolveSync(resolver, "host" + i);
+        }
+
+        assertTrue(asyncResolver.size() <= 4, "Cache size: " + asyncResolver.size());
+    }
+
+    @Test(groups = "standalone")
+    public void testIpLiteralIsResolvedInline() throws Exception {
+        final CountingResolver resolver = new CountingResolver();
+        asyncResolver = new AsyncNameResolver(60000, 60000, 16, 1);
+
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger inline = new AtomicInteger();
+        asyncResolver.resolve(resolver, "127.0.0.1", new CompletionHandler<InetAddress>() {
+            @Override
+            public void completed(InetAddress result) {
+                if (Thread.currentThread() == caller) {
+                    inline.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void cancelled() {
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+            }
+
+            @Override
+            public void updated(InetAddress result) {
+            }
+        });
+
+        assertEquals(inline.get(), 1);
+        assertEquals(asyncResolver.size(), 0);
+    }
+
+    private InetAddress resolveSync(final NameResolver resolver, final String host)
+            throws Exception {
+        final FutureImpl<InetAddress> future = Futures.createSafeFuture();
+        asyncResolver.resolve(resolver, host, Futures.toCompletionHandler(future));
+        try {
+            return future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnknownHostException) {
+                throw (UnknownHostException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class CountingResolver implements NameResolver {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public InetAddress resolve(String name) throws UnknownHostException {
+            count.incrementAndGet();
+            return doResolve(name);
+        }
+
+        InetAddress doResolve(String name) throws UnknownHostException {
+            return InetAddress.getByName(name);
+        }
+
+        static void await(CountDownLatch latch) {
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
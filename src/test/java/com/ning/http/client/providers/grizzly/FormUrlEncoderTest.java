@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.glassfish.grizzly.memory.MemoryManager.DEFAULT_MEMORY_MANAGER;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.ning.http.client.Param;
+import com.ning.http.util.AsyncHttpProviderUtils;
+
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.glassfish.grizzly.Buffer;
+import org.testng.annotations.Test;
+
+public class FormUrlEncoderTest {
+
+    private static final List<Param> PARAMS = Arrays.asList(
+            new Param("name", "value"),
+            new Param("a b", "c+d&e=f"),
+            new Param("safe", "-._*"),
+            new Param("unsafe", "~!'()/?#%"),
+            new Param("latin", "café"),
+            new Param("cjk", "中文"),
+            new Param("emoji", "😀"),
+            new Param("empty", ""),
+            new Param("novalue", null));
+
+    @Test(groups = "standalone")
+    public void testUtf8MatchesUrlEncodeFormParams() {
+        final String expected = AsyncHttpProviderUtils.urlEncodeFormParams0(PARAMS).toString();
+
+        for (int chunkSize : new int[] {12, 13, 100, expected.length()}) {
+            final FormUrlEncoder encoder = new FormUrlEncoder(PARAMS, UTF_8);
+            assertEquals(encoder.getContentLength(), expected.length());
+            assertEquals(encodeAll(encoder, chunkSize, UTF_8), expected);
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testCharsetMatchesUrlEncoder() throws Exception {
+        final List<Param> params = PARAMS.subList(0, PARAMS.size() - 1);
+
+        for (Charset charset : new Charset[] {US_ASCII, ISO_8859_1, UTF_8}) {
+            final StringBuilder sb = new StringBuilder();
+            for (Param param : params) {
+                sb.append(URLEncoder.encode(param.getName(), charset.name()))
+                        .append('=')
+                        .append(URLEncoder.encode(param.getValue(), charset.name()))
+                        .append('&');
+            }
+            sb.setLength(sb.length() - 1);
+            final String expected = sb.toString();
+
+            final FormUrlEncoder encoder = new FormUrlEncoder(params, charset);
+            assertEquals(encoder.getContentLength(), expected.length());
+            assertEquals(encodeAll(encoder, 16, charset), expected);
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testChunksAndReset() {
+        final List<Param> params = new ArrayList<Param>();
+        for (int i = 0; i < 10000; i++) {
+            params.add(new Param("key" + i, "value " + i));
+        }
+        final String expected = AsyncHttpProviderUtils.urlEncodeFormParams0(params).toString();
+
+        final FormUrlEncoder encoder = new FormUrlEncoder(params, UTF_8);
+        final Buffer first = encoder.encode(DEFAULT_MEMORY_MANAGER, 1024);
+        assertEquals(first.remaining(), 1024);
+        assertTrue(encoder.hasRemaining());
+
+        encoder.reset();
+        assertEquals(encodeAll(encoder, 1024, UTF_8), expected);
+        assertFalse(encoder.hasRemaining());
+    }
+
+    private static String encodeAll(final FormUrlEncoder encoder,
+            final int chunkSize, final Charset charset) {
+        final StringBuilder sb = new StringBuilder();
+        while (encoder.hasRemaining()) {
+            final Buffer buffer = encoder.encode(DEFAULT_MEMORY_MANAGER, chunkSize);
+            assertTrue(buffer.remaining() <= chunkSize);
+            sb.append(buffer.toStringContent(charset));
+            buffer.dispose();
+        }
+        return sb.toString();
+    }
+}
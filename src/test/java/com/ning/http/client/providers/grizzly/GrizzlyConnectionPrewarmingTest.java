@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static org.testng.Assert.assertEquals;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.ListenableFuture;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.BasicHttpsTest;
+import com.ning.http.client.async.ProviderUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class GrizzlyConnectionPrewarmingTest extends AbstractBasicTest {
+
+    private final AtomicInteger openedConnections = new AtomicInteger();
+    private final AtomicInteger completedHandshakes = new AtomicInteger();
+
+    @BeforeClass(alwaysRun = true)
+    @Override
+    public void setUpGlobal() throws Exception {
+        server = new Server();
+        port1 = findFreePort();
+
+        final SslContextFactory sslContextFactory = new SslContextFactory();
+        final ClassLoader cl = getClass().getClassLoader();
+        sslContextFactory.setKeyStorePath(new File(
+                cl.getResource("ssltest-keystore.jks").toURI()).getAbsolutePath());
+        sslContextFactory.setKeyStorePassword("changeit");
+        sslContextFactory.setKeyStoreType("JKS");
+
+        final SslConnectionFactory sslConnectionFactory = new SslConnectionFactory(
+                sslContextFactory, HttpVersion.HTTP_1_1.asString());
+        sslConnectionFactory.addBean(new SslHandshakeListener() {
+            @Override
+            public void handshakeSucceeded(Event event) {
+                completedHandshakes.incrementAndGet();
+            }
+        });
+
+        final ServerConnector connector = new ServerConnector(server,
+                sslConnectionFactory, new HttpConnectionFactory(new HttpConfiguration()));
+        connector.addBean(new Connection.Listener.Adapter() {
+            @Override
+            public void onOpened(Connection connection) {
+                // the decrypted HTTP connection is reported as well
+                if (connection instanceof SslConnection) {
+                    openedConnections.incrementAndGet();
+                }
+            }
+        });
+        connector.setHost("127.0.0.1");
+        connector.setPort(port1);
+        server.addConnector(connector);
+
+        server.setHandler(configureHandler());
+        server.start();
+    }
+
+    @BeforeMethod
+    public void resetCounters() {
+        openedConnections.set(0);
+        completedHandshakes.set(0);
+    }
+
+    @Override
+    protected String getTargetUrl() {
+        return String.format("https://127.0.0.1:%d/foo/test", port1);
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testPrewarmedConnectionsAreReused() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(sslConfig().build())) {
+            assertEquals(client.prewarm(getTargetUrl(), 2).get(TIMEOUT, TimeUnit.SECONDS),
+                    Integer.valueOf(2));
+            assertEquals(completedHandshakes.get(), 2);
+
+            final List<ListenableFuture<Response>> futures =
+                    new ArrayList<ListenableFuture<Response>>();
+            for (int i = 0; i < 2; i++) {
+                futures.add(client.prepareGet(getTargetUrl()).execute());
+            }
+
+            for (ListenableFuture<Response> f : futures) {
+                assertEquals(f.get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+            }
+
+            // no new connections, no new handshakes
+            assertEquals(openedConnections.get(), 2);
+            assertEquals(completedHandshakes.get(), 2);
+
+            // the idle connections are counted in, once they're back to the pool
+            Thread.sleep(200);
+            assertEquals(client.prewarm(getTargetUrl(), 2).get(TIMEOUT, TimeUnit.SECONDS),
+                    Integer.valueOf(0));
+            assertEquals(openedConnections.get(), 2);
+
+            // only the missing connection is opened
+            assertEquals(client.prewarm(getTargetUrl(), 3).get(TIMEOUT, TimeUnit.SECONDS),
+                    Integer.valueOf(1));
+            assertEquals(openedConnections.get(), 3);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testPrewarmingDoesNotTakePooledConnections() throws Exception {
+        final AsyncHttpClientConfig config = sslConfig()
+                .setMaxConnectionsPerHost(2)
+                .setMinIdleConnectionsPerHost(2)
+                .addPrewarmedHost("https://127.0.0.1:" + port1)
+                .build();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(config)) {
+            awaitHandshakes(2);
+
+            // the minimum is checked every second, while the requests
+            // use up all the connections the host may have
+            final long end = System.currentTimeMillis() + 2500;
+            while (System.currentTimeMillis() < end) {
+                final Response response = client.prepareGet(getTargetUrl())
+                        .execute().get(TIMEOUT, TimeUnit.SECONDS);
+                assertEquals(response.getStatusCode(), 200);
+                Thread.sleep(10);
+            }
+
+            assertEquals(openedConnections.get(), 2);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testMinIdleConnectionsAreOpenedOnStart() throws Exception {
+        final AsyncHttpClientConfig config = sslConfig()
+                .setMinIdleConnectionsPerHost(3)
+                .addPrewarmedHost("https://127.0.0.1:" + port1)
+                .build();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(config)) {
+            awaitHandshakes(3);
+
+            final Response response = client.prepareGet(getTargetUrl())
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(completedHandshakes.get(), 3);
+        }
+    }
+
+    private void awaitHandshakes(final int handshakes) throws Exception {
+        final long deadline = System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(TIMEOUT);
+        while (completedHandshakes.get() < handshakes
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(completedHandshakes.get(), handshakes);
+    }
+
+    private static AsyncHttpClientConfig.Builder sslConfig() {
+        return new AsyncHttpClientConfig.Builder()
+                .setSSLContext(BasicHttpsTest.createSSLContext(new AtomicBoolean(true)));
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+}
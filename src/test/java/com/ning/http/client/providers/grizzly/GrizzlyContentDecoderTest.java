@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.DECOMPRESS_BUFFER_SIZE;
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.DECOMPRESS_RESPONSE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.ning.http.client.AsyncCompletionHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.memory.MemoryManager;
+import org.testng.annotations.Test;
+
+public class GrizzlyContentDecoderTest extends AbstractBasicTest {
+
+    private static final byte[] BODY = createBody();
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                final String coding = request.getParameter("coding");
+                final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                final Deflater deflater = new Deflater(
+                        Deflater.DEFAULT_COMPRESSION, "raw-deflate".equals(coding));
+                try (OutputStream out = "gzip".equals(coding)
+                        ? new GZIPOutputStream(encoded)
+                        : "xor".equals(coding)
+                                ? new XorOutputStream(encoded)
+                                : new DeflaterOutputStream(encoded, deflater)) {
+                    out.write(BODY);
+                } finally {
+                    deflater.end();
+                }
+
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setHeader("Content-Encoding",
+                        "raw-deflate".equals(coding) ? "deflate" : coding);
+                response.setHeader("X-Accept-Encoding",
+                        request.getHeader("Accept-Encoding"));
+                response.getOutputStream().write(encoded.toByteArray());
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testGzip() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(null)) {
+            assertDecoded(client, "gzip");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testDeflate() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(null)) {
+            assertDecoded(client, "deflate");
+            // some servers send the raw deflate stream
+            assertDecoded(client, "raw-deflate");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testBufferSize() throws Exception {
+        final GrizzlyAsyncHttpProviderConfig providerConfig =
+                new GrizzlyAsyncHttpProviderConfig();
+        providerConfig.addProperty(DECOMPRESS_BUFFER_SIZE, 64 * 1024);
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder()
+                        .setAsyncHttpClientProviderConfig(providerConfig)
+                        .build())) {
+            final AtomicInteger parts = new AtomicInteger();
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            client.prepareGet(getTargetUrl() + "?coding=gzip")
+                    .execute(new AsyncCompletionHandler<Response>() {
+                        @Override
+                        public STATE onBodyPartReceived(HttpResponseBodyPart part)
+                                throws Exception {
+                            parts.incrementAndGet();
+                            part.writeTo(body);
+                            return STATE.CONTINUE;
+                        }
+
+                        @Override
+                        public Response onCompleted(Response response) {
+                            return response;
+                        }
+                    }).get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(body.toByteArray(), BODY);
+            // a part per received chunk, not per few hundred decoded bytes
+            assertTrue(parts.get() < BODY.length / 4096,
+                    String.valueOf(parts.get()));
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testCustomDecoder() throws Exception {
+        final GrizzlyAsyncHttpProviderConfig providerConfig =
+                new GrizzlyAsyncHttpProviderConfig();
+        providerConfig.addContentDecoder(new XorDecoder());
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder()
+                        .setCompressionEnforced(true)
+                        .setAsyncHttpClientProviderConfig(providerConfig)
+                        .build())) {
+            final Response response = assertDecoded(client, "xor");
+            assertEquals(response.getHeader("X-Accept-Encoding"),
+                    "gzip, deflate, xor");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testDecompressionDisabled() throws Exception {
+        final GrizzlyAsyncHttpProviderConfig providerConfig =
+                new GrizzlyAsyncHttpProviderConfig();
+        providerConfig.addProperty(DECOMPRESS_RESPONSE, false);
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder()
+                        .setCompressionEnforced(true)
+                        .setAsyncHttpClientProviderConfig(providerConfig)
+                        .build())) {
+            final Response response = client.prepareGet(getTargetUrl() + "?coding=xor")
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Accept-Encoding"), "gzip");
+            assertEquals(response.getResponseBodyAsBytes(), xor(BODY));
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+
+    private Response assertDecoded(final AsyncHttpClient client,
+            final String coding) throws Exception {
+        final Response response = client.prepareGet(getTargetUrl() + "?coding=" + coding)
+                .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getResponseBodyAsBytes(), BODY);
+        return response;
+    }
+
+    private static byte[] createBody() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sb.append("{\"id\":").append(i).append(",\"value\":\"")
+                    .append(i * 31 % 1000).append("\"}\n");
+        }
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    private static byte[] xor(final byte[] data) {
+        final byte[] result = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            result[i] = (byte) (data[i] ^ 0x5a);
+        }
+        return result;
+    }
+
+    private static final class XorOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        private XorOutputStream(final OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b ^ 0x5a);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+    }
+
+    private static final class XorDecoder implements ContentDecoder {
+
+        @Override
+        public String getName() {
+            return "xor";
+        }
+
+        @Override
+        public String[] getAliases() {
+            return new String[0];
+        }
+
+        @Override
+        public Decompressor newDecompressor() {
+            return new Decompressor() {
+                @Override
+                public Buffer decompress(final MemoryManager memoryManager,
+                        final Buffer input) {
+                    final Buffer output = memoryManager.allocate(input.remaining());
+                    while (input.hasRemaining()) {
+                        output.put((byte) (input.get() ^ 0x5a));
+                    }
+                    return output.flip();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+}
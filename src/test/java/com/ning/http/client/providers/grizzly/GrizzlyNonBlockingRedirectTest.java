@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.ListenableFuture;
+import com.ning.http.client.NameResolver;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.glassfish.grizzly.filterchain.FilterChainBuilder;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.strategies.SameThreadIOStrategy;
+import org.testng.annotations.Test;
+
+/**
+ * Makes sure a slow redirect target doesn't stall the selector thread,
+ * so other connections keep making progress.
+ */
+public class GrizzlyNonBlockingRedirectTest extends AbstractBasicTest {
+
+    private static final String SLOW_HOST = "slow.redirect.target";
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                if (target.endsWith("/redirect")) {
+                    response.setStatus(302);
+                    response.setHeader("Location",
+                            "http://" + SLOW_HOST + ":" + port1 + "/ok");
+                } else {
+                    response.setStatus(200);
+                    response.getOutputStream().print("ok");
+                }
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider", "async" })
+    public void testSlowRedirectTargetDoesNotBlockOtherConnections() throws Exception {
+        final CountDownLatch lookupStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLookup = new CountDownLatch(1);
+
+        final NameResolver slowResolver = new NameResolver() {
+            @Override
+            public InetAddress resolve(String name) throws UnknownHostException {
+                if (SLOW_HOST.equals(name)) {
+                    lookupStarted.countDown();
+                    try {
+                        releaseLookup.await(TIMEOUT, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return InetAddress.getByAddress(name, new byte[] {127, 0, 0, 1});
+                }
+
+                return InetAddress.getByName(name);
+            }
+        };
+
+        // single selector thread, which also runs the response processing
+        final GrizzlyAsyncHttpProviderConfig providerConfig =
+                new GrizzlyAsyncHttpProviderConfig();
+        providerConfig.addProperty(GrizzlyAsyncHttpProviderConfig.Property.TRANSPORT_CUSTOMIZER,
+                new TransportCustomizer() {
+            @Override
+            public void customize(TCPNIOTransport transport, FilterChainBuilder filterChainBuilder) {
+                transport.setSelectorRunnersCount(1);
+                transport.setIOStrategy(SameThreadIOStrategy.getInstance());
+            }
+        });
+
+        final AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+                .setFollowRedirect(true)
+                .setAsyncHttpClientProviderConfig(providerConfig)
+                .build();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(config)) {
+            final ListenableFuture<Response> redirectFuture = client
+                    .prepareGet("http://127.0.0.1:" + port1 + "/redirect")
+                    .setNameResolver(slowResolver)
+                    .execute();
+
+            assertTrue(lookupStarted.await(TIMEOUT, TimeUnit.SECONDS),
+                    "Redirect target hasn't been looked up");
+
+            // the redirect is stuck - other requests must still make progress
+            final List<ListenableFuture<Response>> futures =
+                    new ArrayList<ListenableFuture<Response>>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(client.prepareGet("http://127.0.0.1:" + port1 + "/ok?i=" + i)
+                        .execute());
+            }
+
+            for (ListenableFuture<Response> f : futures) {
+                final Response response = f.get(5, TimeUnit.SECONDS);
+                assertEquals(response.getStatusCode(), 200);
+                assertEquals(response.getResponseBody(), "ok");
+            }
+
+            assertFalse(redirectFuture.isDone());
+            releaseLookup.countDown();
+
+            final Response response = redirectFuture.get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getUri().getHost(), SLOW_HOST);
+        } finally {
+            releaseLookup.countDown();
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.ListenableFuture;
+import com.ning.http.client.Request;
+import com.ning.http.client.RequestBuilder;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.generators.ByteArrayBodyGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class GrizzlyPipeliningTest extends AbstractBasicTest {
+
+    private static final int REQUESTS_COUNT = 8;
+
+    private final Set<Integer> remotePorts =
+            ConcurrentHashMap.<Integer>newKeySet();
+
+    private final ConcurrentHashMap<String, AtomicInteger> attempts =
+            new ConcurrentHashMap<String, AtomicInteger>();
+
+    @BeforeMethod
+    public void clearRemotePorts() {
+        remotePorts.clear();
+        attempts.clear();
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                remotePorts.add(request.getRemotePort());
+
+                final String id = request.getParameter("id");
+                if (request.getParameter("drop") != null) {
+                    final AtomicInteger count = attempts.get(id);
+                    if (count != null) {
+                        count.incrementAndGet();
+                    }
+                    // close the connection without answering
+                    baseRequest.getHttpChannel().getEndPoint().close();
+                    baseRequest.setHandled(true);
+                    return;
+                }
+
+                if ("0".equals(id)) {
+                    // give the client a chance to pipeline the other requests
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    if (request.getParameter("close") != null) {
+                        response.setHeader("Connection", "close");
+                    }
+                }
+
+                response.setStatus(200);
+                response.getOutputStream().print(id);
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider", "async" })
+    public void testResponsesAreMatchedInOrder() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(pipeliningConfig().build())) {
+            final List<ListenableFuture<Response>> futures = executeRequests(client, "");
+
+            for (int i = 0; i < REQUESTS_COUNT; i++) {
+                final Response response = futures.get(i).get(TIMEOUT, TimeUnit.SECONDS);
+                assertEquals(response.getStatusCode(), 200);
+                assertEquals(response.getResponseBody(), String.valueOf(i));
+            }
+
+            assertTrue(remotePorts.size() < REQUESTS_COUNT,
+                    "Requests were not pipelined, connections used: " + remotePorts.size());
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider", "async" })
+    public void testUnansweredRequestsAreReplayedOnClose() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(pipeliningConfig().build())) {
+            final List<ListenableFuture<Response>> futures = executeRequests(client, "&close=true");
+
+            for (int i = 0; i < REQUESTS_COUNT; i++) {
+                final Response response = futures.get(i).get(TIMEOUT, TimeUnit.SECONDS);
+                assertEquals(response.getStatusCode(), 200);
+                assertEquals(response.getResponseBody(), String.valueOf(i));
+            }
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider", "async" })
+    public void testReplaysOnCloseAreBounded() throws Exception {
+        final int maxRetries = 2;
+        for (int i = 0; i < REQUESTS_COUNT; i++) {
+            attempts.put(String.valueOf(i), new AtomicInteger());
+        }
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                pipeliningConfig().setMaxRequestRetry(maxRetries).build())) {
+            final List<ListenableFuture<Response>> futures = executeRequests(client, "&drop=true");
+
+            for (int i = 0; i < REQUESTS_COUNT; i++) {
+                try {
+                    futures.get(i).get(TIMEOUT, TimeUnit.SECONDS);
+                    fail("The request must fail, once the retries are exhausted");
+                } catch (ExecutionException expected) {
+                }
+                assertTrue(attempts.get(String.valueOf(i)).get() <= maxRetries + 1,
+                        "Request " + i + " sent " + attempts.get(String.valueOf(i)) + " times");
+            }
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider", "async" })
+    public void testTimeoutOfTheOldestRequestApplies() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(pipeliningConfig().build())) {
+            client.prepareGet(getTargetUrl() + "?id=warmup").execute().get(TIMEOUT, TimeUnit.SECONDS);
+            remotePorts.clear();
+
+            // the connection waits for the response to the first request,
+            // which is answered in 300ms, well within its own timeout
+            final ListenableFuture<Response> first = client.prepareGet(getTargetUrl() + "?id=0")
+                    .setRequestTimeout(TIMEOUT * 1000).execute();
+            final ListenableFuture<Response> second = client.prepareGet(getTargetUrl() + "?id=1")
+                    .setRequestTimeout(100).execute();
+
+            assertEquals(first.get(TIMEOUT, TimeUnit.SECONDS).getResponseBody(), "0");
+            assertEquals(second.get(TIMEOUT, TimeUnit.SECONDS).getResponseBody(), "1");
+            assertEquals(remotePorts.size(), 1, "The requests were not pipelined");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider", "async" })
+    public void testRequestsWithBodyAreNotPipelined() throws Exception {
+        final Request get = new RequestBuilder("GET").setUrl(getTargetUrl())
+                .setBody(new ByteArrayInputStream(new byte[1])).build();
+        assertFalse(ConnectionManager.isPipelinable(get));
+
+        final Request head = new RequestBuilder("HEAD").setUrl(getTargetUrl())
+                .setBody(new ByteArrayBodyGenerator(new byte[1])).build();
+        assertFalse(ConnectionManager.isPipelinable(head));
+
+        assertTrue(ConnectionManager.isPipelinable(
+                new RequestBuilder("GET").setUrl(getTargetUrl()).build()));
+    }
+
+    private List<ListenableFuture<Response>> executeRequests(
+            final AsyncHttpClient client, final String query) throws Exception {
+        // warm up the connection the requests are going to be pipelined on
+        client.prepareGet(getTargetUrl() + "?id=warmup").execute().get(TIMEOUT, TimeUnit.SECONDS);
+        remotePorts.clear();
+
+        final List<ListenableFuture<Response>> futures =
+                new ArrayList<ListenableFuture<Response>>();
+        for (int i = 0; i < REQUESTS_COUNT; i++) {
+            futures.add(client.prepareGet(getTargetUrl() + "?id=" + i + query).execute());
+        }
+
+        return futures;
+    }
+
+    private static AsyncHttpClientConfig.Builder pipeliningConfig() {
+        final GrizzlyAsyncHttpProviderConfig providerConfig =
+                new GrizzlyAsyncHttpProviderConfig();
+        providerConfig.addProperty(
+                GrizzlyAsyncHttpProviderConfig.Property.MAX_PIPELINED_REQUESTS,
+                REQUESTS_COUNT);
+
+        return new AsyncHttpClientConfig.Builder()
+                .setAsyncHttpClientProviderConfig(providerConfig);
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.RequestBuilder;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.cookie.Cookie;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+public class GrizzlyPreparedRequestTest extends AbstractBasicTest {
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                final InputStream in = request.getInputStream();
+                final byte[] buf = new byte[8192];
+                int read;
+                while ((read = in.read(buf)) != -1) {
+                    body.write(buf, 0, read);
+                }
+
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setHeader("X-Method", request.getMethod());
+                response.setHeader("X-Uri", request.getRequestURI());
+                response.setHeader("X-Query", request.getQueryString());
+                final Enumeration<String> names = request.getHeaderNames();
+                while (names.hasMoreElements()) {
+                    final String name = names.nextElement();
+                    final StringBuilder values = new StringBuilder();
+                    final Enumeration<String> e = request.getHeaders(name);
+                    while (e.hasMoreElements()) {
+                        if (values.length() > 0) {
+                            values.append(',');
+                        }
+                        values.append(e.nextElement());
+                    }
+                    response.setHeader("X-Echo-" + name, values.toString());
+                }
+                response.getOutputStream().write(body.toByteArray());
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testPreparedRequestIsSentRepeatedly() throws Exception {
+        final PreparedRequest prepared = PreparedRequest.prepare(
+                new RequestBuilder("GET")
+                        .setUrl(getTargetUrl() + "/poll")
+                        .addQueryParam("since", "a b")
+                        .addHeader("X-Static", "static")
+                        .addHeader("X-Multi", "1")
+                        .addHeader("X-Multi", "2")
+                        .addCookie(Cookie.newValidCookie("session", "abc",
+                                false, null, null, Long.MIN_VALUE, false, false))
+                        .build());
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder().setUserAgent("poller").build())) {
+            for (int i = 0; i < 3; i++) {
+                final Response response = client.executeRequest(
+                        prepared.withHeader("X-Request-Id", String.valueOf(i)))
+                        .get(TIMEOUT, TimeUnit.SECONDS);
+
+                assertEquals(response.getStatusCode(), 200);
+                assertEquals(response.getHeader("X-Method"), "GET");
+                assertEquals(response.getHeader("X-Uri"), "/foo/test/poll");
+                assertEquals(response.getHeader("X-Query"), "since=a%20b");
+                assertEquals(response.getHeader("X-Echo-Host"),
+                        "127.0.0.1:" + port1);
+                assertEquals(response.getHeader("X-Echo-User-Agent"), "poller");
+                assertEquals(response.getHeader("X-Echo-Accept"), "*/*");
+                assertEquals(response.getHeader("X-Echo-X-Static"), "static");
+                assertEquals(response.getHeader("X-Echo-X-Multi"), "1,2");
+                assertEquals(response.getHeader("X-Echo-Cookie"), "session=abc");
+                assertEquals(response.getHeader("X-Echo-X-Request-Id"),
+                        String.valueOf(i));
+            }
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testPerCallBody() throws Exception {
+        final PreparedRequest prepared = PreparedRequest.prepare(
+                new RequestBuilder("POST")
+                        .setUrl(getTargetUrl())
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("{}")
+                        .build());
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder().build())) {
+            Response response = client.executeRequest(prepared)
+                    .get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getResponseBody(), "{}");
+            assertEquals(response.getHeader("X-Echo-Content-Type"),
+                    "application/json");
+
+            for (int i = 0; i < 3; i++) {
+                final String body = "{\"i\":" + i + "}";
+                response = client.executeRequest(
+                        prepared.withBody(body.getBytes(UTF_8)))
+                        .get(TIMEOUT, TimeUnit.SECONDS);
+
+                assertEquals(response.getStatusCode(), 200);
+                assertEquals(response.getResponseBody(), body);
+                assertEquals(response.getHeader("X-Echo-Content-Length"),
+                        String.valueOf(body.length()));
+                assertEquals(response.getHeader("X-Echo-Content-Type"),
+                        "application/json");
+            }
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testPreparedRequestIsSnapshot() throws Exception {
+        final RequestBuilder builder = new RequestBuilder("GET")
+                .setUrl(getTargetUrl())
+                .addHeader("X-Static", "before");
+        final PreparedRequest prepared = PreparedRequest.prepare(builder.build());
+        builder.setHeader("X-Static", "after").setUrl(getTargetUrl() + "/other");
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder().build())) {
+            final Response response = client.executeRequest(prepared)
+                    .get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getHeader("X-Uri"), "/foo/test");
+            assertNull(response.getHeader("X-Query"));
+            assertEquals(response.getHeader("X-Echo-X-Static"), "before");
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+public class GrizzlyReadTimeoutTest extends AbstractBasicTest {
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                final int chunks = Integer.parseInt(request.getHeader("X-Chunks"));
+                final long pause = Long.parseLong(request.getHeader("X-Pause"));
+
+                response.setStatus(HttpServletResponse.SC_OK);
+                final OutputStream out = response.getOutputStream();
+                for (int i = 0; i < chunks; i++) {
+                    out.write('a');
+                    out.flush();
+                    try {
+                        Thread.sleep(pause);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testReadTimeout() throws Exception {
+        final AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+                .setReadTimeout(100)
+                .setRequestTimeout(10000)
+                .build();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(config)) {
+            final long start = System.currentTimeMillis();
+            try {
+                client.prepareGet(getTargetUrl())
+                        .addHeader("X-Chunks", "2")
+                        .addHeader("X-Pause", "2000")
+                        .execute().get(TIMEOUT, TimeUnit.SECONDS);
+                fail("Read timeout expected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException, e.toString());
+                assertEquals(e.getCause().getMessage(), "Read timeout exceeded");
+            }
+
+            final long elapsed = System.currentTimeMillis() - start;
+            assertTrue(elapsed < 1000, "Timed out after " + elapsed + "ms");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testReadTimeoutIsPerRead() throws Exception {
+        final AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+                .setReadTimeout(500)
+                .setRequestTimeout(10000)
+                .build();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(config)) {
+            // the response takes longer than the read timeout, but the
+            // connection is never idle for that long
+            final Response response = client.prepareGet(getTargetUrl())
+                    .addHeader("X-Chunks", "10")
+                    .addHeader("X-Pause", "100")
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getResponseBody(), "aaaaaaaaaa");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testRequestTimeoutIsShorter() throws Exception {
+        final AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+                .setReadTimeout(10000)
+                .build();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(config)) {
+            try {
+                client.prepareGet(getTargetUrl())
+                        .setRequestTimeout(100)
+                        .addHeader("X-Chunks", "2")
+                        .addHeader("X-Pause", "2000")
+                        .execute().get(TIMEOUT, TimeUnit.SECONDS);
+                fail("Request timeout expected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException, e.toString());
+                assertEquals(e.getCause().getMessage(), "Timeout exceeded");
+            }
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+}
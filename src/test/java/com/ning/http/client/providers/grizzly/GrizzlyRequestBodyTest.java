@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Param;
+import com.ning.http.client.RequestBuilder;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.util.AsyncHttpProviderUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+public class GrizzlyRequestBodyTest extends AbstractBasicTest {
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                final InputStream in = request.getInputStream();
+                final byte[] buf = new byte[8192];
+                int read;
+                while ((read = in.read(buf)) != -1) {
+                    body.write(buf, 0, read);
+                }
+
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setHeader("X-Content-Length",
+                        String.valueOf(request.getContentLength()));
+                response.getOutputStream().write(body.toByteArray());
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testCompositeByteArrayBody() throws Exception {
+        final byte[] large = new byte[256 * 1024];
+        Arrays.fill(large, (byte) 'x');
+        final List<byte[]> body = Arrays.asList(
+                "first,".getBytes(UTF_8),
+                new byte[0],
+                large,
+                ",last".getBytes(UTF_8));
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder().build())) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .setBody(body)
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Content-Length"),
+                    String.valueOf(6 + large.length + 5));
+            assertEquals(response.getResponseBodyAsBytes(), concat(body));
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testEmptyCompositeByteArrayBody() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder().build())) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .setBody(Arrays.<byte[]>asList())
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Content-Length"), "0");
+            assertEquals(response.getResponseBody(), "");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testDirectByteBufferBody() throws Exception {
+        final byte[] bytes = new byte[128 * 1024];
+        Arrays.fill(bytes, (byte) 'y');
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 10);
+        direct.position(10);
+        direct.put(bytes);
+        direct.position(10);
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder().build())) {
+            final com.ning.http.client.Request request =
+                    new RequestBuilder("POST").setUrl(getTargetUrl())
+                            .setBody(direct)
+                            .build();
+
+            // the request's buffer is left intact, so it may be sent again
+            for (int i = 0; i < 2; i++) {
+                final Response response = client.executeRequest(request)
+                        .get(TIMEOUT, TimeUnit.SECONDS);
+
+                assertEquals(response.getStatusCode(), 200);
+                assertEquals(response.getHeader("X-Content-Length"),
+                        String.valueOf(bytes.length));
+                assertEquals(response.getResponseBodyAsBytes(), bytes);
+            }
+            assertEquals(direct.position(), 10);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testReadOnlyByteBufferArrayBody() throws Exception {
+        final ByteBuffer[] body = new ByteBuffer[] {
+                ByteBuffer.wrap("first,".getBytes(UTF_8)).asReadOnlyBuffer(),
+                ByteBuffer.allocate(0),
+                ByteBuffer.wrap("second,".getBytes(UTF_8)),
+                ByteBuffer.allocateDirect(5).put("last!".getBytes(UTF_8))
+        };
+        body[3].flip();
+        body[3] = body[3].asReadOnlyBuffer();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder().build())) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .setBody(body)
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Content-Length"), "18");
+            assertEquals(response.getResponseBody(), "first,second,last!");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testLargeFormBody() throws Exception {
+        final List<Param> params = new ArrayList<Param>();
+        for (int i = 0; i < 50000; i++) {
+            params.add(new Param("id[" + i + "]", "value " + i + " é"));
+        }
+        final String expected =
+                AsyncHttpProviderUtils.urlEncodeFormParams0(params).toString();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder().build())) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .setFormParams(params)
+                    .setBodyEncoding("UTF-8")
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Content-Length"),
+                    String.valueOf(expected.length()));
+            assertEquals(response.getResponseBody(), expected);
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+
+    private static byte[] concat(final List<byte[]> arrays) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.write(array);
+        }
+        return out.toByteArray();
+    }
+}
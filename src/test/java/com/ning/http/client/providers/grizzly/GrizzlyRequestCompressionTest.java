@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.REQUEST_COMPRESSION;
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.REQUEST_COMPRESSION_LEVEL;
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.REQUEST_COMPRESSION_THRESHOLD;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.glassfish.grizzly.memory.MemoryManager.DEFAULT_MEMORY_MANAGER;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.glassfish.grizzly.memory.Buffers;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class GrizzlyRequestCompressionTest extends AbstractBasicTest {
+
+    private byte[] body;
+
+    @BeforeClass(alwaysRun = true)
+    public void createBody() {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 10000; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"item ")
+                    .append(i % 97).append("\"},");
+        }
+        sb.setCharAt(sb.length() - 1, ']');
+        body = sb.toString().getBytes(UTF_8);
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                final byte[] raw = readAll(request.getInputStream());
+                final String encoding = request.getHeader("Content-Encoding");
+                final InputStream decoded =
+                        "gzip".equals(encoding)
+                                ? new GZIPInputStream(new ByteArrayInputStream(raw))
+                                : "deflate".equals(encoding)
+                                        ? new InflaterInputStream(new ByteArrayInputStream(raw))
+                                        : new ByteArrayInputStream(raw);
+
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setHeader("X-Content-Encoding", encoding);
+                response.setHeader("X-Transfer-Encoding",
+                        request.getHeader("Transfer-Encoding"));
+                response.setHeader("X-Content-Length",
+                        String.valueOf(request.getContentLength()));
+                response.setHeader("X-Raw-Length", String.valueOf(raw.length));
+                response.getOutputStream().write(readAll(decoded));
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testGzipByteArrayBody() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(compressionConfig("gzip"))) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .setBody(body)
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertCompressed(response, "gzip");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testDeflateStringBody() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(compressionConfig("deflate"))) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .setBody(new String(body, UTF_8))
+                    .setBodyEncoding("UTF-8")
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertCompressed(response, "deflate");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testFileBodyIsNotSentWithSendFile() throws Exception {
+        final File file = File.createTempFile("compression-", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), body);
+
+        try (AsyncHttpClient client = getAsyncHttpClient(compressionConfig("gzip"))) {
+            final Response response = client.preparePut(getTargetUrl())
+                    .setBody(file)
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertCompressed(response, "gzip");
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testStreamBody() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(compressionConfig("gzip"))) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .setBody(new ByteArrayInputStream(body))
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertCompressed(response, "gzip");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testFeedableBody() throws Exception {
+        final FeedableBodyGenerator generator = new FeedableBodyGenerator();
+        generator.setFeeder(new FeedableBodyGenerator.SimpleFeeder(generator) {
+            @Override
+            public void flush() throws IOException {
+                for (int off = 0; off < body.length; off += 1000) {
+                    final byte[] chunk = Arrays.copyOfRange(body, off,
+                            Math.min(off + 1000, body.length));
+                    feed(Buffers.wrap(DEFAULT_MEMORY_MANAGER, chunk), false);
+                }
+                feed(Buffers.EMPTY_BUFFER, true);
+            }
+        });
+
+        try (AsyncHttpClient client = getAsyncHttpClient(compressionConfig("gzip"))) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .setBody(generator)
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertCompressed(response, "gzip");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testSmallBodyIsNotCompressed() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(compressionConfig("gzip"))) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .setBody("{\"small\":true}")
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertNull(response.getHeader("X-Content-Encoding"));
+            assertEquals(response.getHeader("X-Content-Length"), "14");
+            assertEquals(response.getResponseBody(), "{\"small\":true}");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testEncodedBodyIsSentAsIs() throws Exception {
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(body);
+        }
+
+        try (AsyncHttpClient client = getAsyncHttpClient(compressionConfig("deflate"))) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .setHeader("Content-Encoding", "gzip")
+                    .setBody(gzipped.toByteArray())
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Content-Encoding"), "gzip");
+            assertEquals(response.getHeader("X-Content-Length"),
+                    String.valueOf(gzipped.size()));
+            assertEquals(response.getResponseBodyAsBytes(), body);
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+
+    private void assertCompressed(final Response response,
+            final String encoding) throws IOException {
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getHeader("X-Content-Encoding"), encoding);
+        assertEquals(response.getHeader("X-Transfer-Encoding"), "chunked");
+        assertTrue(Integer.parseInt(response.getHeader("X-Raw-Length")) < body.length / 4,
+                response.getHeader("X-Raw-Length"));
+        assertEquals(response.getResponseBodyAsBytes(), body);
+    }
+
+    private static AsyncHttpClientConfig compressionConfig(final String encoding) {
+        final GrizzlyAsyncHttpProviderConfig providerConfig =
+                new GrizzlyAsyncHttpProviderConfig();
+        providerConfig.addProperty(REQUEST_COMPRESSION, encoding);
+        providerConfig.addProperty(REQUEST_COMPRESSION_THRESHOLD, 1024);
+        providerConfig.addProperty(REQUEST_COMPRESSION_LEVEL, 6);
+        return new AsyncHttpClientConfig.Builder()
+                .setAsyncHttpClientProviderConfig(providerConfig)
+                .build();
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[8192];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
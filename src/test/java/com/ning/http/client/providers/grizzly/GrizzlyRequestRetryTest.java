@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.ListenableFuture;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.filter.FilterContext;
+import com.ning.http.client.filter.FilterException;
+import com.ning.http.client.filter.IOExceptionFilter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class GrizzlyRequestRetryTest extends AbstractBasicTest {
+
+    private final AtomicInteger hits = new AtomicInteger();
+    // the ids of the requests, which connection has been dropped once
+    private final Set<String> dropped =
+            ConcurrentHashMap.<String>newKeySet();
+    // lets the requests with the X-Wait header be answered
+    private volatile CountDownLatch released = new CountDownLatch(0);
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                hits.incrementAndGet();
+
+                if (request.getHeader("X-Wait") != null) {
+                    try {
+                        released.await(TIMEOUT, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+
+                final String id = request.getHeader("X-Drop");
+                if (id != null && dropped.add(id)) {
+                    // close the connection without any response, like a
+                    // server closing a stale keep-alive connection
+                    baseRequest.getHttpChannel().getEndPoint().close();
+                    baseRequest.setHandled(true);
+                    return;
+                }
+
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.getOutputStream().print("OK");
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @BeforeMethod
+    public void resetCounters() {
+        hits.set(0);
+        dropped.clear();
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testIdempotentRequestIsRetried() throws Exception {
+        final AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+                .setMaxRequestRetry(1)
+                .build();
+        final GrizzlyAsyncHttpProvider provider = new GrizzlyAsyncHttpProvider(config);
+
+        try (AsyncHttpClient client = new AsyncHttpClient(provider, config)) {
+            final Response response = client.prepareGet(getTargetUrl())
+                    .addHeader("X-Drop", "get")
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getResponseBody(), "OK");
+            assertEquals(hits.get(), 2);
+            assertEquals(provider.getRetriedRequestCount(), 1);
+            assertEquals(provider.getExhaustedRetryCount(), 0);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testNonIdempotentRequestIsNotRetried() throws Exception {
+        final AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+                .setMaxRequestRetry(1)
+                .build();
+        final GrizzlyAsyncHttpProvider provider = new GrizzlyAsyncHttpProvider(config);
+
+        try (AsyncHttpClient client = new AsyncHttpClient(provider, config)) {
+            try {
+                client.preparePost(getTargetUrl())
+                        .addHeader("X-Drop", "post")
+                        .setBody("body")
+                        .execute().get(TIMEOUT, TimeUnit.SECONDS);
+                fail("IOException expected");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof IOException,
+                        String.valueOf(expected.getCause()));
+            }
+
+            assertEquals(hits.get(), 1);
+            assertEquals(provider.getRetriedRequestCount(), 0);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testAbortedRequestIsNotRetried() throws Exception {
+        final AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+                .setMaxRequestRetry(1)
+                .build();
+        final GrizzlyAsyncHttpProvider provider = new GrizzlyAsyncHttpProvider(config);
+
+        released = new CountDownLatch(1);
+        try (AsyncHttpClient client = new AsyncHttpClient(provider, config)) {
+            final ListenableFuture<Response> future = client.prepareGet(getTargetUrl())
+                    .addHeader("X-Wait", "true")
+                    .execute();
+            while (hits.get() == 0) {
+                Thread.sleep(10);
+            }
+
+            final IOException abort = new IOException("Stopped by the caller");
+            future.abort(abort);
+            try {
+                future.get(TIMEOUT, TimeUnit.SECONDS);
+                fail("IOException expected");
+            } catch (ExecutionException expected) {
+                assertSame(expected.getCause(), abort);
+            }
+
+            assertEquals(hits.get(), 1);
+            assertEquals(provider.getRetriedRequestCount(), 0);
+        } finally {
+            released.countDown();
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testRetriesAreBounded() throws Exception {
+        final AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+                .setMaxRequestRetry(0)
+                .build();
+        final GrizzlyAsyncHttpProvider provider = new GrizzlyAsyncHttpProvider(config);
+
+        try (AsyncHttpClient client = new AsyncHttpClient(provider, config)) {
+            try {
+                client.prepareGet(getTargetUrl())
+                        .addHeader("X-Drop", "get")
+                        .execute().get(TIMEOUT, TimeUnit.SECONDS);
+                fail("IOException expected");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof IOException,
+                        String.valueOf(expected.getCause()));
+            }
+
+            assertEquals(hits.get(), 1);
+            assertEquals(provider.getRetriedRequestCount(), 0);
+            assertEquals(provider.getExhaustedRetryCount(), 1);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testIOExceptionFilterReplaysRequest() throws Exception {
+        final AtomicInteger filterCalls = new AtomicInteger();
+        final AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+                .setMaxRequestRetry(1)
+                .addIOExceptionFilter(new IOExceptionFilter() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public FilterContext filter(FilterContext ctx)
+                            throws FilterException {
+                        filterCalls.incrementAndGet();
+                        // replay the POST, which isn't retried otherwise
+                        return new FilterContext.FilterContextBuilder(ctx)
+                                .replayRequest(true).build();
+                    }
+                })
+                .build();
+        final GrizzlyAsyncHttpProvider provider = new GrizzlyAsyncHttpProvider(config);
+
+        try (AsyncHttpClient client = new AsyncHttpClient(provider, config)) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .addHeader("X-Drop", "post")
+                    .setBody("body")
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(filterCalls.get(), 1);
+            assertEquals(hits.get(), 2);
+            assertEquals(provider.getRetriedRequestCount(), 1);
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.glassfish.grizzly.memory.MemoryManager.DEFAULT_MEMORY_MANAGER;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.HttpResponsePacket;
+import org.glassfish.grizzly.memory.Buffers;
+import org.testng.annotations.Test;
+
+public class GrizzlyResponseBodyPartTest {
+
+    private static final byte[] RECEIVED = "HTTP/1.1 200 OK\r\n\r\nbody bytes".getBytes(US_ASCII);
+    // the body is a part of the received bytes
+    private static final int OFFSET = 19;
+
+    @Test(groups = "standalone")
+    public void testBodyByteBufferIsACopy() {
+        final GrizzlyResponseBodyPart part = bodyPart(heapContent());
+
+        final ByteBuffer buffer = part.getBodyByteBuffer();
+        assertNotSame(buffer.array(), RECEIVED);
+        assertEquals(buffer.capacity(), part.length());
+        assertEquals(toString(buffer), "body bytes");
+
+        // the received content is not modified through the copy
+        buffer.put(0, (byte) 'B');
+        assertEquals(toString(part.getReadOnlyBodyByteBuffer()), "body bytes");
+        assertEquals(part.getBodyBuffer().toStringContent(US_ASCII), "body bytes");
+    }
+
+    @Test(groups = "standalone")
+    public void testReadOnlyBodyByteBuffer() {
+        final ByteBuffer direct = ByteBuffer.allocateDirect(10);
+        direct.put("body bytes".getBytes(US_ASCII)).flip();
+        final GrizzlyResponseBodyPart part = bodyPart(
+                Buffers.wrap(DEFAULT_MEMORY_MANAGER, direct));
+
+        final ByteBuffer view = part.getReadOnlyBodyByteBuffer();
+        assertTrue(view.isReadOnly());
+        assertTrue(view.isDirect());
+        assertEquals(toString(view), "body bytes");
+        try {
+            view.put(0, (byte) 'B');
+            fail("the view is writable");
+        } catch (ReadOnlyBufferException expected) {
+        }
+
+        // the bytes of a direct buffer are copied only if the array is needed
+        assertEquals(toString(part.getBodyByteBuffer()), "body bytes");
+    }
+
+    @Test(groups = "standalone")
+    public void testWriteTo() throws Exception {
+        final Buffer composite = Buffers.appendBuffers(DEFAULT_MEMORY_MANAGER,
+                heapContent(),
+                Buffers.wrap(DEFAULT_MEMORY_MANAGER, ", more bytes".getBytes(US_ASCII)));
+
+        for (Buffer content : new Buffer[] {heapContent(), composite}) {
+            final GrizzlyResponseBodyPart part = bodyPart(content);
+            final String expected = content.toStringContent(US_ASCII);
+
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            assertEquals(part.writeTo(stream), expected.length());
+            assertEquals(stream.toString("US-ASCII"), expected);
+
+            final ByteArrayOutputStream channel = new ByteArrayOutputStream();
+            assertEquals(part.writeTo(Channels.newChannel(channel)), expected.length());
+            assertEquals(channel.toString("US-ASCII"), expected);
+
+            final PartialGatheringChannel gathering = new PartialGatheringChannel();
+            assertEquals(part.writeTo(gathering), expected.length());
+            assertEquals(gathering.written.toString("US-ASCII"), expected);
+            if (content.isComposite()) {
+                // the buffers of the composite are written together
+                assertEquals(gathering.singleWrites, 0);
+            }
+
+            // the content is left intact
+            assertEquals(part.length(), expected.length());
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testLeaseAndRelease() {
+        final Buffer content = DEFAULT_MEMORY_MANAGER.allocate(10);
+        content.put("body bytes".getBytes(US_ASCII)).flip();
+        content.allowBufferDispose(true);
+        final GrizzlyResponseBodyPart part = bodyPart(content);
+
+        assertSame(part.lease(), part);
+        assertFalse(part.release());
+        assertEquals(toString(part.getBodyByteBuffer()), "body bytes");
+        assertTrue(part.release());
+
+        try {
+            part.getBodyPartBytes();
+            fail("released part is accessible");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            part.lease();
+            fail("released part is leased");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            part.release();
+            fail("released part is released again");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    private static Buffer heapContent() {
+        return Buffers.wrap(DEFAULT_MEMORY_MANAGER, RECEIVED, OFFSET,
+                RECEIVED.length - OFFSET);
+    }
+
+    private static GrizzlyResponseBodyPart bodyPart(final Buffer buffer) {
+        final HttpRequestPacket request = HttpRequestPacket.builder()
+                .method("GET").uri("/").protocol("HTTP/1.1").build();
+        final HttpResponsePacket response = HttpResponsePacket.builder(request)
+                .status(200).build();
+        final HttpContent content = HttpContent.builder(response)
+                .content(buffer).last(true).build();
+        return new GrizzlyResponseBodyPart(content, null);
+    }
+
+    private static String toString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, US_ASCII);
+    }
+
+    /**
+     * Writes only a few bytes per invocation, as a channel with full socket
+     * buffers would.
+     */
+    private static final class PartialGatheringChannel implements GatheringByteChannel {
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        int singleWrites;
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long total = 0;
+            for (int i = offset; i < offset + length && total < 3; i++) {
+                while (srcs[i].hasRemaining() && total < 3) {
+                    written.write(srcs[i].get());
+                    total++;
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            singleWrites++;
+            return (int) write(new ByteBuffer[] {src});
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    } // END PartialGatheringChannel
+}
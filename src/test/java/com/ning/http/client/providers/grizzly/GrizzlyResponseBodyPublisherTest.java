@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.TRANSPORT_CUSTOMIZER;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.ListenableFuture;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.reactive.ResponseBodyPublisher;
+import com.ning.http.client.reactive.Subscriber;
+import com.ning.http.client.reactive.Subscription;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.glassfish.grizzly.filterchain.FilterChainBuilder;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.strategies.SameThreadIOStrategy;
+import org.testng.annotations.Test;
+
+public class GrizzlyResponseBodyPublisherTest extends AbstractBasicTest {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // much more than the socket buffers may hold
+    private static final long BODY_SIZE = 64L * 1024 * 1024;
+
+    private final AtomicLong written = new AtomicLong();
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                final long size = Long.parseLong(request.getParameter("size"));
+                written.set(0);
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setHeader("Content-Length", String.valueOf(size));
+                final OutputStream out = response.getOutputStream();
+                final byte[] chunk = new byte[CHUNK_SIZE];
+                for (long i = 0; i < size; i += chunk.length) {
+                    final int len = (int) Math.min(chunk.length, size - i);
+                    for (int j = 0; j < len; j++) {
+                        chunk[j] = (byte) (i + j);
+                    }
+                    // blocks, once the client doesn't read
+                    out.write(chunk, 0, len);
+                    written.addAndGet(len);
+                }
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testSlowSubscriberThrottlesServer() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(null)) {
+            verifyThrottling(client);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testSlowSubscriberThrottlesServerSameThread() throws Exception {
+        final GrizzlyAsyncHttpProviderConfig providerConfig =
+                new GrizzlyAsyncHttpProviderConfig();
+        providerConfig.addProperty(TRANSPORT_CUSTOMIZER, new TransportCustomizer() {
+            @Override
+            public void customize(TCPNIOTransport transport, FilterChainBuilder builder) {
+                transport.setIOStrategy(SameThreadIOStrategy.getInstance());
+            }
+        });
+        try (AsyncHttpClient client = getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setAsyncHttpClientProviderConfig(providerConfig).build())) {
+            verifyThrottling(client);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testBufferByBuffer() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(null)) {
+            final ResponseBodyPublisher publisher = new ResponseBodyPublisher();
+            final ListenableFuture<Void> future = client.prepareGet(url(4 * CHUNK_SIZE + 1))
+                    .execute(publisher);
+            // subscribes late, so the body parts are queued first
+            Thread.sleep(100);
+            final VerifyingSubscriber subscriber = new VerifyingSubscriber() {
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    super.onSubscribe(subscription);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(ByteBuffer buffer) {
+                    super.onNext(buffer);
+                    subscription.get().request(1);
+                }
+            };
+            publisher.subscribe(subscriber);
+
+            assertTrue(subscriber.completed.await(TIMEOUT, TimeUnit.SECONDS));
+            assertNull(subscriber.error.get());
+            assertEquals(subscriber.received.get(), 4 * CHUNK_SIZE + 1);
+            assertNull(future.get(TIMEOUT, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testCancel() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(null)) {
+            final ResponseBodyPublisher publisher = new ResponseBodyPublisher();
+            final ListenableFuture<Void> future = client.prepareGet(url(BODY_SIZE / 8))
+                    .execute(publisher);
+            final VerifyingSubscriber subscriber = new VerifyingSubscriber() {
+                @Override
+                public void onNext(ByteBuffer buffer) {
+                    super.onNext(buffer);
+                    subscription.get().cancel();
+                }
+            };
+            publisher.subscribe(subscriber);
+            subscriber.subscription.get().request(10);
+
+            // the rest of the body is discarded
+            assertNull(future.get(TIMEOUT, TimeUnit.SECONDS));
+            assertTrue(subscriber.received.get() > 0);
+            assertTrue(subscriber.received.get() < BODY_SIZE / 8);
+            assertEquals(subscriber.completed.getCount(), 1);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testSingleSubscriber() throws Exception {
+        try (AsyncHttpClient client = getAsyncHttpClient(null)) {
+            final ResponseBodyPublisher publisher = new ResponseBodyPublisher();
+            client.prepareGet(url(10)).execute(publisher);
+            final VerifyingSubscriber first = new VerifyingSubscriber();
+            final VerifyingSubscriber second = new VerifyingSubscriber();
+            publisher.subscribe(first);
+            publisher.subscribe(second);
+
+            assertTrue(second.error.get() instanceof IllegalStateException);
+            first.subscription.get().request(Long.MAX_VALUE);
+            assertTrue(first.completed.await(TIMEOUT, TimeUnit.SECONDS));
+            assertEquals(first.received.get(), 10);
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+
+    private void verifyThrottling(final AsyncHttpClient client) throws Exception {
+        final ResponseBodyPublisher publisher = new ResponseBodyPublisher();
+        final ListenableFuture<Void> future = client.prepareGet(url(BODY_SIZE))
+                .execute(publisher);
+        final VerifyingSubscriber subscriber = new VerifyingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.get().request(1);
+        // the response is not read, while the subscriber doesn't request
+        // the body
+        Thread.sleep(1000);
+        final long writtenWhilePaused = written.get();
+        Thread.sleep(500);
+        assertEquals(written.get(), writtenWhilePaused, "the server keeps writing");
+        assertTrue(writtenWhilePaused < BODY_SIZE / 2,
+                "the server has written " + writtenWhilePaused + " bytes");
+
+        subscriber.subscription.get().request(Long.MAX_VALUE);
+        assertTrue(subscriber.completed.await(TIMEOUT, TimeUnit.SECONDS));
+        assertNull(subscriber.error.get());
+        assertEquals(subscriber.received.get(), BODY_SIZE);
+        assertNull(future.get(TIMEOUT, TimeUnit.SECONDS));
+
+        // the connection is read again once it's reused
+        assertEquals(client.prepareGet(url(10)).execute()
+                .get(TIMEOUT, TimeUnit.SECONDS).getResponseBodyAsBytes().length, 10);
+    }
+
+    private String url(final long size) {
+        return getTargetUrl() + "?size=" + size;
+    }
+
+    private static class VerifyingSubscriber implements Subscriber<ByteBuffer> {
+        final AtomicReference<Subscription> subscription = new AtomicReference<>();
+        final AtomicLong received = new AtomicLong();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription.set(subscription);
+        }
+
+        @Override
+        public void onNext(ByteBuffer buffer) {
+            // the bytes are received in order
+            long position = received.get();
+            while (buffer.hasRemaining()) {
+                if (buffer.get() != (byte) position++) {
+                    error.compareAndSet(null,
+                            new AssertionError("unexpected byte at " + (position - 1)));
+                }
+            }
+            received.set(position);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error.compareAndSet(null, t);
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
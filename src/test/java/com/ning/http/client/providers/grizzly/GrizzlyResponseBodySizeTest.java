@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Response;
+import com.ning.http.client.ResponseBodyTooLargeException;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+public class GrizzlyResponseBodySizeTest extends AbstractBasicTest {
+
+    private static final int LIMIT = 16 * 1024;
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                final int size = Integer.parseInt(request.getParameter("size"));
+                final boolean chunked = Boolean.parseBoolean(request.getParameter("chunked"));
+                response.setStatus(HttpServletResponse.SC_OK);
+                if (!chunked) {
+                    response.setContentLength(size);
+                }
+                final OutputStream out = response.getOutputStream();
+                final byte[] chunk = new byte[1024];
+                Arrays.fill(chunk, (byte) 'a');
+                for (int written = 0; written < size; written += chunk.length) {
+                    out.write(chunk, 0, Math.min(chunk.length, size - written));
+                    if (chunked) {
+                        out.flush();
+                    }
+                }
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testBodyWithinLimit() throws Exception {
+        try (AsyncHttpClient client = limitedClient()) {
+            assertEquals(get(client, LIMIT, false).getResponseBodyAsBytes().length, LIMIT);
+            assertEquals(get(client, LIMIT, true).getResponseBodyAsBytes().length, LIMIT);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testContentLengthExceedsLimit() throws Exception {
+        try (AsyncHttpClient client = limitedClient()) {
+            assertTooLarge(client, LIMIT + 1, false);
+
+            // the client keeps working
+            assertEquals(get(client, 10, false).getResponseBody(), "aaaaaaaaaa");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testReceivedBodyExceedsLimit() throws Exception {
+        try (AsyncHttpClient client = limitedClient()) {
+            assertTooLarge(client, 64 * LIMIT, true);
+
+            assertEquals(get(client, 10, true).getResponseBody(), "aaaaaaaaaa");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testRequestOverridesLimit() throws Exception {
+        try (AsyncHttpClient client = limitedClient()) {
+            final Response response = client.prepareGet(url(2 * LIMIT, true))
+                    .setMaxResponseBodySize(2 * LIMIT)
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getResponseBodyAsBytes().length, 2 * LIMIT);
+
+            final Response unlimited = client.prepareGet(url(2 * LIMIT, false))
+                    .setMaxResponseBodySize(-1)
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(unlimited.getResponseBodyAsBytes().length, 2 * LIMIT);
+        }
+
+        try (AsyncHttpClient client = getAsyncHttpClient(null)) {
+            try {
+                client.prepareGet(url(LIMIT + 1, false))
+                        .setMaxResponseBodySize(LIMIT)
+                        .execute().get(TIMEOUT, TimeUnit.SECONDS);
+                fail("the body exceeds the request's limit");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof ResponseBodyTooLargeException,
+                        String.valueOf(e.getCause()));
+            }
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testStreamingHandlerIsNotLimited() throws Exception {
+        try (AsyncHttpClient client = limitedClient()) {
+            final AtomicLong received = new AtomicLong();
+            final Integer status = client.prepareGet(url(4 * LIMIT, true))
+                    .execute(new AsyncHandler<Integer>() {
+                        private int status;
+
+                        @Override
+                        public void onThrowable(Throwable t) {
+                        }
+
+                        @Override
+                        public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) {
+                            received.addAndGet(bodyPart.length());
+                            return STATE.CONTINUE;
+                        }
+
+                        @Override
+                        public STATE onStatusReceived(HttpResponseStatus responseStatus) {
+                            status = responseStatus.getStatusCode();
+                            return STATE.CONTINUE;
+                        }
+
+                        @Override
+                        public STATE onHeadersReceived(HttpResponseHeaders headers) {
+                            return STATE.CONTINUE;
+                        }
+
+                        @Override
+                        public Integer onCompleted() {
+                            return status;
+                        }
+                    }).get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(status.intValue(), 200);
+            assertEquals(received.get(), 4 * LIMIT);
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+
+    private AsyncHttpClient limitedClient() {
+        return getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setMaxResponseBodySize(LIMIT)
+                .build());
+    }
+
+    private String url(final int size, final boolean chunked) {
+        return getTargetUrl() + "?size=" + size + "&chunked=" + chunked;
+    }
+
+    private Response get(final AsyncHttpClient client, final int size,
+            final boolean chunked) throws Exception {
+        return client.prepareGet(url(size, chunked)).execute()
+                .get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    private void assertTooLarge(final AsyncHttpClient client, final int size,
+            final boolean chunked) throws Exception {
+        try {
+            get(client, size, chunked);
+            fail("the body exceeds the limit");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ResponseBodyTooLargeException,
+                    String.valueOf(e.getCause()));
+            assertEquals(((ResponseBodyTooLargeException) e.getCause())
+                    .getMaxResponseBodySize(), LIMIT);
+        }
+    }
+}
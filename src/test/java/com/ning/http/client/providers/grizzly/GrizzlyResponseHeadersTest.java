@@ -16,7 +16,12 @@ package com.ning.http.client.providers.grizzly;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.concurrent.CountDownLatch;
 
 import org.glassfish.grizzly.http.HttpResponsePacket;
@@ -64,6 +69,54 @@ public class GrizzlyResponseHeadersTest
 
     }
 
+    @Test
+    public void testHeaderLookupWithoutMap() throws Exception
+    {
+        final GrizzlyResponseHeaders grizzlyHeaders = new GrizzlyResponseHeaders(responseWithHeaders());
+
+        assertFalse(grizzlyHeaders.isEmpty());
+        assertEquals(grizzlyHeaders.getFirstValue("content-type"), "text/plain");
+        assertEquals(grizzlyHeaders.getFirstValue("SET-COOKIE"), "a=1");
+        assertEquals(grizzlyHeaders.getValues("Set-Cookie"), Arrays.asList("a=1", "b=2"));
+        assertEquals(grizzlyHeaders.getFirstValue("X-Empty"), "");
+        assertNull(grizzlyHeaders.getFirstValue("X-Missing"));
+        assertEquals(grizzlyHeaders.getValues("X-Missing"), Collections.emptyList());
+        assertNull(grizzlyHeaders.getFirstValue(null));
+    }
+
+    @Test
+    public void testHeaderLookupMatchesMap() throws Exception
+    {
+        final GrizzlyResponseHeaders lazyHeaders = new GrizzlyResponseHeaders(responseWithHeaders());
+        final GrizzlyResponseHeaders mapHeaders = new GrizzlyResponseHeaders(responseWithHeaders());
+        mapHeaders.getHeaders();
+
+        for (String name : Arrays.asList("Content-Type", "set-cookie", "X-Empty", "X-Missing"))
+        {
+            assertEquals(lazyHeaders.getFirstValue(name), mapHeaders.getFirstValue(name));
+            assertEquals(lazyHeaders.getValues(name), mapHeaders.getValues(name));
+            assertEquals(lazyHeaders.getValues(name), mapHeaders.getHeaders().get(name));
+        }
+        assertEquals(lazyHeaders.isEmpty(), mapHeaders.isEmpty());
+
+        HttpResponsePacket response = mock(HttpResponsePacket.class);
+        when(response.getHeaders()).thenReturn(new MimeHeaders());
+        assertTrue(new GrizzlyResponseHeaders(response).isEmpty());
+    }
+
+    private static HttpResponsePacket responseWithHeaders()
+    {
+        HttpResponsePacket response = mock(HttpResponsePacket.class);
+        MimeHeaders headers = new MimeHeaders();
+        headers.addValue("Content-Type").setString("text/plain");
+        headers.addValue("Set-Cookie").setString("a=1");
+        headers.addValue("Content-Length").setString("10");
+        headers.addValue("set-cookie").setString("b=2");
+        headers.addValue("X-Empty").setString("");
+        when(response.getHeaders()).thenReturn(headers);
+        return response;
+    }
+
     private Thread getThread(final ConcurrencyTestResult concurrencyTestResult, final CountDownLatch latch, final GrizzlyResponseHeaders grizzlyHeaders)
     {
         return new Thread()
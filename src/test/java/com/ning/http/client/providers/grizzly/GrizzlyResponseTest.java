@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.ning.http.client.AsyncCompletionHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+public class GrizzlyResponseTest extends AbstractBasicTest {
+
+    private static final int CHUNKS = 64;
+    private static final String CHUNK = "chunk \u00e9\u00e8 ";
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setContentType("text/plain; charset=UTF-8");
+                final OutputStream out = response.getOutputStream();
+                // each chunk is flushed, so the body is received in parts
+                for (int i = 0; i < CHUNKS; i++) {
+                    out.write((CHUNK + i).getBytes(UTF_8));
+                    out.flush();
+                }
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testBodyOfManyParts() throws Exception {
+        final String expected = expectedBody();
+        final List<Integer> partLengths = new ArrayList<>();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(null)) {
+            final Response response = client.prepareGet(getTargetUrl())
+                    .execute(new AsyncCompletionHandler<Response>() {
+                        @Override
+                        public STATE onBodyPartReceived(HttpResponseBodyPart part)
+                                throws Exception {
+                            partLengths.add(part.length());
+                            return super.onBodyPartReceived(part);
+                        }
+
+                        @Override
+                        public Response onCompleted(Response response) {
+                            return response;
+                        }
+                    }).get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertTrue(partLengths.size() > 1, "the body is received in one part");
+            assertEquals(response.getResponseBody(), expected);
+            assertEquals(response.getResponseBody("UTF-8"), expected);
+            assertEquals(response.getResponseBodyAsBytes(), expected.getBytes(UTF_8));
+            assertEquals(response.getResponseBodyAsByteBuffer().remaining(),
+                    expected.getBytes(UTF_8).length);
+
+            final int excerpt = CHUNK.getBytes(UTF_8).length + 1;
+            assertEquals(response.getResponseBodyExcerpt(excerpt),
+                    expected.substring(0, CHUNK.length() + 1));
+
+            // the body may be read more than once
+            assertEquals(read(response.getResponseBodyAsStream()), expected);
+            assertEquals(read(response.getResponseBodyAsStream()), expected);
+            assertEquals(response.getResponseBody(), expected);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testBodyPartsAreLeftIntact() throws Exception {
+        final List<HttpResponseBodyPart> parts = new ArrayList<>();
+        final List<Integer> partLengths = new ArrayList<>();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(null)) {
+            final Response response = client.prepareGet(getTargetUrl())
+                    .execute(new AsyncCompletionHandler<Response>() {
+                        @Override
+                        public STATE onBodyPartReceived(HttpResponseBodyPart part)
+                                throws Exception {
+                            parts.add(part);
+                            partLengths.add(part.length());
+                            return super.onBodyPartReceived(part);
+                        }
+
+                        @Override
+                        public Response onCompleted(Response response) {
+                            return response;
+                        }
+                    }).get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getResponseBody(), expectedBody());
+
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            for (int i = 0; i < parts.size(); i++) {
+                assertEquals(parts.get(i).length(), (int) partLengths.get(i));
+                parts.get(i).writeTo(body);
+            }
+            assertEquals(body.toString("UTF-8"), expectedBody());
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+
+    private static String expectedBody() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < CHUNKS; i++) {
+            sb.append(CHUNK).append(i);
+        }
+        return sb.toString();
+    }
+
+    private static String read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[512];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static com.ning.http.client.providers.grizzly.GrizzlyAsyncHttpProviderConfig.Property.SEND_FILE_SUPPORT;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import com.ning.http.client.ListenableFuture;
+import com.ning.http.client.RequestBuilder;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.listener.TransferCompletionHandler;
+import com.ning.http.client.listener.TransferListener;
+import com.ning.http.client.multipart.ByteArrayPart;
+import com.ning.http.client.multipart.FilePart;
+import com.ning.http.client.multipart.MultipartUtils;
+import com.ning.http.client.multipart.Part;
+import com.ning.http.client.multipart.StringPart;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class GrizzlySendFileTest extends AbstractBasicTest {
+
+    private static final int FILE_SIZE = 3 * 1024 * 1024 + 17;
+
+    private final AtomicReference<byte[]> lastBody = new AtomicReference<byte[]>();
+    private volatile CountDownLatch readAllowed = new CountDownLatch(0);
+    private File file;
+    private byte[] fileBytes;
+
+    @BeforeClass(alwaysRun = true)
+    public void createFile() throws IOException {
+        fileBytes = new byte[FILE_SIZE];
+        new Random(7).nextBytes(fileBytes);
+        file = File.createTempFile("sendfile-", ".data");
+        file.deleteOnExit();
+        Files.write(file.toPath(), fileBytes);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void deleteFile() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                try {
+                    readAllowed.await(TIMEOUT, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+
+                final boolean countOnly = request.getHeader("X-Count-Only") != null;
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                final InputStream in = request.getInputStream();
+                final byte[] buf = new byte[8192];
+                long received = 0;
+                int read;
+                while ((read = in.read(buf)) != -1) {
+                    received += read;
+                    if (!countOnly) {
+                        body.write(buf, 0, read);
+                    }
+                }
+                lastBody.set(body.toByteArray());
+
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setHeader("X-Received", String.valueOf(received));
+                response.setHeader("X-Content-Length",
+                        String.valueOf(request.getContentLength()));
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testFileIsSentWithSendFile() throws Exception {
+        final List<Long> progress = new CopyOnWriteArrayList<Long>();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(sendFileConfig(true))) {
+            final Response response = client.preparePut(getTargetUrl())
+                    .setBody(file)
+                    .execute(progressHandler(progress))
+                    .get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(lastBody.get(), fileBytes);
+        }
+
+        // the file is written in the send file slices, not the copy chunks
+        assertEquals(progress.size(), 4, progress.toString());
+        assertEquals(progress.get(0).longValue(), 1024 * 1024);
+        assertEquals(sum(progress), FILE_SIZE);
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testFileIsCopiedIfSendFileIsDisabled() throws Exception {
+        final List<Long> progress = new CopyOnWriteArrayList<Long>();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(sendFileConfig(false))) {
+            final Response response = client.preparePut(getTargetUrl())
+                    .setBody(file)
+                    .execute(progressHandler(progress))
+                    .get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(lastBody.get(), fileBytes);
+        }
+
+        assertTrue(progress.size() > 4, progress.toString());
+        assertEquals(sum(progress), FILE_SIZE);
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testCopiedFileIsReadAsWritten() throws Exception {
+        final long size = 256L * 1024 * 1024;
+        final File bigFile = File.createTempFile("sendfile-big-", ".data");
+        bigFile.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(bigFile, "rw")) {
+            raf.setLength(size);
+        }
+
+        final List<Long> progress = new CopyOnWriteArrayList<Long>();
+        readAllowed = new CountDownLatch(1);
+        try (AsyncHttpClient client = getAsyncHttpClient(sendFileConfig(false))) {
+            final ListenableFuture<Response> f = client.preparePut(getTargetUrl())
+                    .addHeader("X-Count-Only", "true")
+                    .setBody(bigFile)
+                    .execute(progressHandler(progress));
+
+            // the server doesn't read anything, so only as much as the
+            // socket buffers and the write queue hold may be taken from
+            // the file
+            Thread.sleep(1000);
+            assertTrue(sum(progress) < size / 4, String.valueOf(sum(progress)));
+
+            readAllowed.countDown();
+            final Response response = f.get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Received"), String.valueOf(size));
+            assertEquals(sum(progress), size);
+        } finally {
+            readAllowed.countDown();
+            bigFile.delete();
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testGrowingFileIsSentWithItsInitialLength() throws Exception {
+        final long size = 64L * 1024 * 1024;
+        final File growingFile = File.createTempFile("sendfile-growing-", ".data");
+        growingFile.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(growingFile, "rw")) {
+            raf.setLength(size);
+        }
+
+        readAllowed = new CountDownLatch(1);
+        try (AsyncHttpClient client = getAsyncHttpClient(sendFileConfig(true))) {
+            final ListenableFuture<Response> f = client.preparePut(getTargetUrl())
+                    .addHeader("X-Count-Only", "true")
+                    .setBody(growingFile)
+                    .execute();
+
+            // the file grows, while the body is still being sent
+            Thread.sleep(500);
+            try (RandomAccessFile raf = new RandomAccessFile(growingFile, "rw")) {
+                raf.setLength(size + 1024 * 1024);
+            }
+
+            readAllowed.countDown();
+            final Response response = f.get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Received"), String.valueOf(size));
+
+            // no extra bytes are left on the connection to break the next request
+            final Response next = client.preparePut(getTargetUrl())
+                    .setBody(file)
+                    .execute()
+                    .get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(next.getStatusCode(), 200);
+            assertEquals(lastBody.get(), fileBytes);
+        } finally {
+            readAllowed.countDown();
+            growingFile.delete();
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testMultipartFilePartIsSentWithSendFile() throws Exception {
+        final List<Long> progress = new CopyOnWriteArrayList<Long>();
+
+        try (AsyncHttpClient client = getAsyncHttpClient(sendFileConfig(true))) {
+            final Response response = client.preparePost(getTargetUrl())
+                    .addBodyPart(new StringPart("name", "testString"))
+                    .addBodyPart(new FilePart("file", file))
+                    .execute(progressHandler(progress))
+                    .get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+
+            final byte[] body = lastBody.get();
+            assertEquals(response.getHeader("X-Content-Length"),
+                    String.valueOf(body.length));
+
+            final String bodyString = new String(body, ISO_8859_1);
+            assertTrue(bodyString.contains("testString"));
+            assertTrue(bodyString.contains(new String(fileBytes, ISO_8859_1)));
+            assertTrue(bodyString.endsWith("--\r\n"));
+            assertEquals(sum(progress), body.length);
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testManyMultipartFilePartsAreSentWithSendFile() throws Exception {
+        final File smallFile = File.createTempFile("sendfile-small-", ".data");
+        smallFile.deleteOnExit();
+        Files.write(smallFile.toPath(), new byte[] {'x'});
+
+        // every file and every boundary in between is a separate write,
+        // so the writer continues after thousands of small writes
+        final List<Long> progress = new CopyOnWriteArrayList<Long>();
+        final RequestBuilder builder = new RequestBuilder("POST")
+                .setUrl(getTargetUrl());
+        for (int i = 0; i < 10000; i++) {
+            builder.addBodyPart(new FilePart("file" + i, smallFile));
+        }
+
+        try (AsyncHttpClient client = getAsyncHttpClient(sendFileConfig(true))) {
+            final Response response = client.executeRequest(builder.build(),
+                    progressHandler(progress)).get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Received"),
+                    response.getHeader("X-Content-Length"));
+            assertEquals(sum(progress), lastBody.get().length);
+        } finally {
+            smallFile.delete();
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testMultipartIsSentWithAndWithoutSendFile() throws Exception {
+        final List<Part> parts = new ArrayList<Part>();
+        for (int i = 0; i < 1000; i++) {
+            parts.add(new StringPart("name" + i, "value" + i));
+        }
+        parts.add(new FilePart("file", file));
+        final byte[] bytes = new byte[100 * 1024];
+        new Random(11).nextBytes(bytes);
+        parts.add(new ByteArrayPart("bytes", bytes, "application/octet-stream",
+                null, "bytes.data"));
+        parts.add(new StringPart("last", "value"));
+
+        final byte[] boundary = "AHC-multipart-boundary".getBytes(ISO_8859_1);
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (Part part : parts) {
+            part.write(expected, boundary);
+        }
+        expected.write(MultipartUtils.getMessageEnd(boundary));
+
+        for (boolean sendFile : new boolean[] {true, false}) {
+            final List<Long> progress = new CopyOnWriteArrayList<Long>();
+            try (AsyncHttpClient client = getAsyncHttpClient(sendFileConfig(sendFile))) {
+                final RequestBuilder builder = new RequestBuilder("POST")
+                        .setUrl(getTargetUrl())
+                        .setHeader("Content-Type",
+                                "multipart/form-data; boundary=AHC-multipart-boundary");
+                for (Part part : parts) {
+                    builder.addBodyPart(part);
+                }
+                final Response response = client.executeRequest(builder.build(),
+                        progressHandler(progress)).get(TIMEOUT, TimeUnit.SECONDS);
+
+                assertEquals(response.getStatusCode(), 200);
+                assertEquals(response.getHeader("X-Content-Length"),
+                        String.valueOf(expected.size()));
+                assertEquals(lastBody.get(), expected.toByteArray());
+                assertEquals(sum(progress), expected.size());
+                // the small parts are gathered, not written one by one
+                assertTrue(progress.size() < 100, progress.toString());
+            }
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testCopiedMultipartFileIsReadAsWritten() throws Exception {
+        final long size = 256L * 1024 * 1024;
+        final File bigFile = File.createTempFile("sendfile-big-", ".data");
+        bigFile.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(bigFile, "rw")) {
+            raf.setLength(size);
+        }
+
+        final List<Long> progress = new CopyOnWriteArrayList<Long>();
+        readAllowed = new CountDownLatch(1);
+        try (AsyncHttpClient client = getAsyncHttpClient(sendFileConfig(false))) {
+            final ListenableFuture<Response> f = client.preparePost(getTargetUrl())
+                    .addHeader("X-Count-Only", "true")
+                    .addBodyPart(new StringPart("name", "testString"))
+                    .addBodyPart(new FilePart("file", bigFile))
+                    .execute(progressHandler(progress));
+
+            Thread.sleep(1000);
+            assertTrue(sum(progress) < size / 4, String.valueOf(sum(progress)));
+
+            readAllowed.countDown();
+            final Response response = f.get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Received"),
+                    response.getHeader("X-Content-Length"));
+            assertTrue(Long.parseLong(response.getHeader("X-Received")) > size);
+        } finally {
+            readAllowed.countDown();
+            bigFile.delete();
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+
+    private static AsyncHttpClientConfig sendFileConfig(final boolean enabled) {
+        final GrizzlyAsyncHttpProviderConfig providerConfig =
+                new GrizzlyAsyncHttpProviderConfig();
+        providerConfig.addProperty(SEND_FILE_SUPPORT, enabled);
+        return new AsyncHttpClientConfig.Builder()
+                .setAsyncHttpClientProviderConfig(providerConfig)
+                .build();
+    }
+
+    private static TransferCompletionHandler progressHandler(final List<Long> progress) {
+        final TransferCompletionHandler handler = new TransferCompletionHandler();
+        handler.addTransferListener(new TransferListener() {
+            @Override
+            public void onRequestHeadersSent(FluentCaseInsensitiveStringsMap headers) {
+            }
+
+            @Override
+            public void onResponseHeadersReceived(FluentCaseInsensitiveStringsMap headers) {
+            }
+
+            @Override
+            public void onBytesReceived(byte[] b) throws IOException {
+            }
+
+            @Override
+            public void onBytesSent(long amount, long current, long total) {
+                progress.add(amount);
+            }
+
+            @Override
+            public void onRequestResponseCompleted() {
+            }
+
+            @Override
+            public void onThrowable(Throwable t) {
+            }
+        });
+        return handler;
+    }
+
+    private static long sum(final List<Long> values) {
+        long sum = 0;
+        for (Long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static org.testng.Assert.assertEquals;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+public class GrizzlyStreamingUploadTest extends AbstractBasicTest {
+
+    private static final int CHUNK = 16 * 1024;
+
+    private volatile CountDownLatch firstBytesReceived;
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                final InputStream in = request.getInputStream();
+                final byte[] buf = new byte[8192];
+                long received = 0;
+                int read;
+                while ((read = in.read(buf)) != -1) {
+                    received += read;
+                    firstBytesReceived.countDown();
+                }
+
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setHeader("X-Received", String.valueOf(received));
+                response.setHeader("X-Chunked", String.valueOf(
+                        "chunked".equalsIgnoreCase(request.getHeader("Transfer-Encoding"))));
+                baseRequest.setHandled(true);
+            }
+        };
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testStreamIsSentWhileRead() throws Exception {
+        firstBytesReceived = new CountDownLatch(1);
+        final long size = 64L * 1024 * 1024;
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder().build())) {
+            // the stream doesn't go beyond the first chunk until the server
+            // gets some data, so buffering the whole stream first would hang
+            final Response response = client.preparePut(getTargetUrl())
+                    .setBody(new GeneratingInputStream(size, firstBytesReceived))
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Received"), String.valueOf(size));
+            assertEquals(response.getHeader("X-Chunked"), "true");
+        }
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testKnownContentLength() throws Exception {
+        firstBytesReceived = new CountDownLatch(1);
+        final long size = 1024 * 1024;
+
+        try (AsyncHttpClient client = getAsyncHttpClient(
+                new AsyncHttpClientConfig.Builder().build())) {
+            final Response response = client.preparePut(getTargetUrl())
+                    .setBody(new GeneratingInputStream(size, null))
+                    .setContentLength((int) size)
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Received"), String.valueOf(size));
+            assertEquals(response.getHeader("X-Chunked"), "false");
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.grizzlyProvider(config);
+    }
+
+    private static final class GeneratingInputStream extends InputStream {
+        private final long size;
+        private final CountDownLatch gate;
+        private long position;
+
+        private GeneratingInputStream(final long size, final CountDownLatch gate) {
+            this.size = size;
+            this.gate = gate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException {
+            if (position >= size) {
+                return -1;
+            }
+
+            if (gate != null && position >= CHUNK) {
+                try {
+                    if (!gate.await(TIMEOUT, TimeUnit.SECONDS)) {
+                        throw new IOException("No data received by the server");
+                    }
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            final int n = (int) Math.min(len, size - position);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) (position + i);
+            }
+            position += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.grizzly.CompletionHandler;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.EmptyCompletionHandler;
+import org.glassfish.grizzly.impl.FutureImpl;
+import org.glassfish.grizzly.nio.transport.TCPNIOConnectorHandler;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransportBuilder;
+import org.glassfish.grizzly.utils.Futures;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class HappyEyeballsConnectorTest {
+
+    private TCPNIOTransport transport;
+    private ServerSocket serverSocket;
+    private TimeoutWheel timer;
+    private HappyEyeballsConnector connector;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        transport = TCPNIOTransportBuilder.newInstance().build();
+        transport.start();
+        timer = new TimeoutWheel(10, 64, "test-timer");
+
+        serverSocket = new ServerSocket(0, 50, address(127, 0, 0, 1));
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        if (connector != null) {
+            connector.close();
+        }
+        serverSocket.close();
+        transport.shutdownNow();
+        timer.stop();
+    }
+
+    @Test(groups = "standalone")
+    public void testAddressFamiliesAreInterleaved() throws Exception {
+        connector = new HappyEyeballsConnector(
+                new RecordingConnectorHandler(transport), timer, 250, 10000);
+
+        final InetAddress v6a = InetAddress.getByName("::1");
+        final InetAddress v6b = InetAddress.getByName("::2");
+        final InetAddress v4a = address(10, 0, 0, 1);
+        final InetAddress v4b = address(10, 0, 0, 2);
+
+        assertEquals(connector.order(new InetAddress[] {v6a, v6b, v4a, v4b}),
+                new InetAddress[] {v6a, v4a, v6b, v4b});
+        assertEquals(connector.order(new InetAddress[] {v4a, v4b, v6a}),
+                new InetAddress[] {v4a, v6a, v4b});
+    }
+
+    @Test(groups = "standalone")
+    public void testFailedAddressIsCooledDown() throws Exception {
+        final RecordingConnectorHandler handler = new RecordingConnectorHandler(transport);
+        connector = new HappyEyeballsConnector(handler, timer, 250, 10000);
+
+        // nothing is listening on the port on 127.0.0.2
+        final InetAddress unreachable = address(127, 0, 0, 2);
+        final InetAddress reachable = address(127, 0, 0, 1);
+
+        final Connection connection = connect(unreachable, reachable);
+        try {
+            assertEquals(((InetSocketAddress) connection.getPeerAddress()).getAddress(),
+                    reachable);
+        } finally {
+            connection.closeSilently();
+        }
+
+        assertTrue(connector.isCoolingDown(unreachable));
+        assertFalse(connector.isCoolingDown(reachable));
+
+        // the failed address goes last now
+        handler.attempts.clear();
+        connect(unreachable, reachable).closeSilently();
+        assertEquals(handler.attempts.get(0), reachable);
+    }
+
+    @Test(groups = "standalone")
+    public void testNextAddressIsTriedAfterDelay() throws Exception {
+        final InetAddress blackhole = address(127, 0, 0, 3);
+        final RecordingConnectorHandler handler = new RecordingConnectorHandler(transport);
+        handler.blackhole = blackhole;
+        connector = new HappyEyeballsConnector(handler, timer, 200, 10000);
+
+        final long start = System.currentTimeMillis();
+        connect(blackhole, address(127, 0, 0, 1)).closeSilently();
+
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertEquals(handler.attempts.size(), 2);
+        assertEquals(handler.attempts.get(0), blackhole);
+    }
+
+    @Test(groups = "standalone")
+    public void testAllAddressesFail() throws Exception {
+        connector = new HappyEyeballsConnector(
+                new RecordingConnectorHandler(transport), timer, 250, 10000);
+
+        try {
+            connect(address(127, 0, 0, 2), address(127, 0, 0, 4));
+            fail("Connect failure expected");
+        } catch (ExecutionException expected) {
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testCancelStopsPendingAttempts() throws Exception {
+        final InetAddress blackhole = address(127, 0, 0, 3);
+        final RecordingConnectorHandler handler = new RecordingConnectorHandler(transport);
+        handler.blackhole = blackhole;
+        connector = new HappyEyeballsConnector(handler, timer, 100, 10000);
+
+        final FutureImpl<Connection> future = Futures.createSafeFuture();
+        connector.connect(new InetAddress[] {blackhole, address(127, 0, 0, 1)},
+                serverSocket.getLocalPort(), null,
+                Futures.toCompletionHandler(future)).cancel();
+
+        Thread.sleep(300);
+        assertEquals(handler.attempts.size(), 1);
+        assertFalse(future.isDone());
+    }
+
+    @Test(groups = "standalone")
+    public void testCancelClosesLateConnection() throws Exception {
+        final RecordingConnectorHandler handler = new RecordingConnectorHandler(transport);
+        handler.gate = new CountDownLatch(1);
+        connector = new HappyEyeballsConnector(handler, timer, 250, 10000);
+
+        final FutureImpl<Connection> future = Futures.createSafeFuture();
+        final HappyEyeballsConnector.ConnectAttempt attempt = connector.connect(
+                new InetAddress[] {address(127, 0, 0, 1), address(127, 0, 0, 2)},
+                serverSocket.getLocalPort(), null,
+                Futures.toCompletionHandler(future));
+        attempt.cancel();
+        handler.gate.countDown();
+
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (handler.connections.isEmpty()
+                || handler.connections.get(0).isOpen()) {
+            assertTrue(System.currentTimeMillis() < deadline,
+                    "the late connection is not closed");
+            Thread.sleep(10);
+        }
+        assertFalse(future.isDone());
+    }
+
+    private Connection connect(final InetAddress... addresses) throws Exception {
+        final FutureImpl<Connection> future = Futures.createSafeFuture();
+        connector.connect(addresses, serverSocket.getLocalPort(), null,
+                Futures.toCompletionHandler(future));
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    private static InetAddress address(final int... bytes) throws Exception {
+        final byte[] b = new byte[bytes.length];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) bytes[i];
+        }
+        return InetAddress.getByAddress(b);
+    }
+
+    private static class RecordingConnectorHandler extends TCPNIOConnectorHandler {
+        final List<InetAddress> attempts = new CopyOnWriteArrayList<InetAddress>();
+        final List<Connection> connections = new CopyOnWriteArrayList<Connection>();
+        volatile InetAddress blackhole;
+        // holds the established connections back, until opened
+        volatile CountDownLatch gate;
+
+        RecordingConnectorHandler(final TCPNIOTransport transport) {
+            super(transport);
+        }
+
+        @Override
+        public void connect(final SocketAddress remoteAddress,
+                final SocketAddress localAddress,
+                final CompletionHandler<Connection> completionHandler) {
+            final InetAddress address = ((InetSocketAddress) remoteAddress).getAddress();
+            attempts.add(address);
+            if (!address.equals(blackhole)) {
+                super.connect(remoteAddress, localAddress,
+                        new EmptyCompletionHandler<Connection>() {
+                    @Override
+                    public void completed(final Connection connection) {
+                        connections.add(connection);
+                        final CountDownLatch latch = gate;
+                        if (latch != null) {
+                            try {
+                                latch.await(10, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        completionHandler.completed(connection);
+                    }
+
+                    @Override
+                    public void failed(final Throwable throwable) {
+                        completionHandler.failed(throwable);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        completionHandler.cancelled();
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.glassfish.grizzly.memory.MemoryManager.DEFAULT_MEMORY_MANAGER;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.memory.Buffers;
+import org.testng.annotations.Test;
+
+public class InflaterDecoderTest {
+
+    private static final byte[] BODY = createBody();
+
+    @Test(groups = "standalone")
+    public void testGzip() throws Exception {
+        final byte[] gzipped = gzip(BODY);
+
+        for (int chunkSize : new int[] {1, 7, 1024, gzipped.length}) {
+            assertEquals(decode(InflaterDecoder.GZIP, gzipped, chunkSize, 512), BODY);
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testGzipOptionalHeaderFields() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // FHCRC | FEXTRA | FNAME | FCOMMENT
+        out.write(new byte[] {0x1f, (byte) 0x8b, 8, 2 | 4 | 8 | 16, 0, 0, 0, 0, 0, (byte) 0xff});
+        out.write(new byte[] {3, 0, 'a', 'b', 'c'});
+        out.write("body.json\0".getBytes(UTF_8));
+        out.write("comment\0".getBytes(UTF_8));
+        out.write(new byte[] {0x12, 0x34});
+        out.write(deflate(BODY, true));
+        final CRC32 crc = new CRC32();
+        crc.update(BODY);
+        writeIntLE(out, (int) crc.getValue());
+        writeIntLE(out, BODY.length);
+
+        for (int chunkSize : new int[] {1, 3, 8192}) {
+            assertEquals(decode(InflaterDecoder.GZIP, out.toByteArray(), chunkSize, 8192), BODY);
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testGzipMultipleMembers() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(gzip(Arrays.copyOfRange(BODY, 0, 1000)));
+        out.write(gzip(Arrays.copyOfRange(BODY, 1000, BODY.length)));
+
+        for (int chunkSize : new int[] {1, 100, 100000}) {
+            assertEquals(decode(InflaterDecoder.GZIP, out.toByteArray(), chunkSize, 4096), BODY);
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testGzipCorruptTrailer() throws Exception {
+        final byte[] gzipped = gzip(BODY);
+        gzipped[gzipped.length - 8] ^= 1;
+
+        try {
+            decode(InflaterDecoder.GZIP, gzipped, 1024, 8192);
+            fail("corrupt trailer is not detected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testNotGzip() {
+        try {
+            decode(InflaterDecoder.GZIP, BODY, 1024, 8192);
+            fail("not gzip data is decoded");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testZlibDeflate() throws Exception {
+        final byte[] deflated = deflate(BODY, false);
+
+        for (int chunkSize : new int[] {1, 1024, deflated.length}) {
+            assertEquals(decode(InflaterDecoder.DEFLATE, deflated, chunkSize, 512), BODY);
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testRawDeflate() throws Exception {
+        final byte[] deflated = deflate(BODY, true);
+
+        for (int chunkSize : new int[] {1, 1024, deflated.length}) {
+            assertEquals(decode(InflaterDecoder.DEFLATE, deflated, chunkSize, 512), BODY);
+        }
+    }
+
+    @Test(groups = "standalone")
+    public void testDecompressorsAreIndependent() throws Exception {
+        final InflaterDecoder decoder = new InflaterDecoder(InflaterDecoder.GZIP, 8192);
+        final byte[] gzipped = gzip(BODY);
+        final int half = gzipped.length / 2;
+
+        final ContentDecoder.Decompressor first = decoder.newDecompressor();
+        final ContentDecoder.Decompressor second = decoder.newDecompressor();
+        final ByteArrayOutputStream firstOut = new ByteArrayOutputStream();
+        final ByteArrayOutputStream secondOut = new ByteArrayOutputStream();
+        append(firstOut, first.decompress(DEFAULT_MEMORY_MANAGER,
+                Buffers.wrap(DEFAULT_MEMORY_MANAGER, gzipped, 0, half)));
+        append(secondOut, second.decompress(DEFAULT_MEMORY_MANAGER,
+                Buffers.wrap(DEFAULT_MEMORY_MANAGER, gzipped)));
+        second.close();
+
+        // the inflater returned to the pool must not affect the first stream
+        final ContentDecoder.Decompressor third = decoder.newDecompressor();
+        append(firstOut, first.decompress(DEFAULT_MEMORY_MANAGER,
+                Buffers.wrap(DEFAULT_MEMORY_MANAGER, gzipped, half, gzipped.length - half)));
+        first.close();
+        third.close();
+
+        assertEquals(firstOut.toByteArray(), BODY);
+        assertEquals(secondOut.toByteArray(), BODY);
+    }
+
+    private static byte[] decode(final String name, final byte[] data,
+            final int chunkSize, final int bufferSize) throws IOException {
+        final ContentDecoder.Decompressor decompressor =
+                new InflaterDecoder(name, bufferSize).newDecompressor();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            for (int off = 0, i = 0; off < data.length; off += chunkSize, i++) {
+                final int len = Math.min(chunkSize, data.length - off);
+                // every other chunk is a direct buffer, which is copied
+                // instead of being inflated in place
+                final Buffer input;
+                if (i % 2 == 0) {
+                    input = Buffers.wrap(DEFAULT_MEMORY_MANAGER, data, off, len);
+                } else {
+                    final ByteBuffer direct = ByteBuffer.allocateDirect(len);
+                    direct.put(data, off, len).flip();
+                    input = Buffers.wrap(DEFAULT_MEMORY_MANAGER, direct);
+                }
+                append(out, decompressor.decompress(DEFAULT_MEMORY_MANAGER, input));
+            }
+        } finally {
+            decompressor.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static void append(final ByteArrayOutputStream out,
+            final Buffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] gzip(final byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(final byte[] data, final boolean nowrap)
+            throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+            deflate.write(data);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeIntLE(final ByteArrayOutputStream out,
+            final int value) {
+        out.write(value);
+        out.write(value >> 8);
+        out.write(value >> 16);
+        out.write(value >> 24);
+    }
+
+    private static byte[] createBody() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("line ").append(i).append(": ").append(i * 31 % 1000).append('\n');
+        }
+        return sb.toString().getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+
+import com.ning.http.client.ConnectionPoolPartitioning;
+import com.ning.http.client.ProxyServer;
+import com.ning.http.client.Realm;
+import com.ning.http.client.Request;
+import com.ning.http.client.RequestBuilder;
+import com.ning.http.client.uri.Uri;
+
+import java.net.InetAddress;
+
+import org.testng.annotations.Test;
+
+public class PartitionKeyTest {
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testSameHostSamePartition() {
+        final PartitionKey key1 = PartitionKey.of(get("http://localhost/a?x=1"), null);
+        final PartitionKey key2 = PartitionKey.of(get("http://localhost:80/b"), null);
+
+        assertEquals(key1, key2);
+        assertEquals(key1.hashCode(), key2.hashCode());
+
+        assertNotEquals(PartitionKey.of(get("https://localhost/a"), null), key1);
+        assertNotEquals(PartitionKey.of(get("http://localhost:8080/a"), null), key1);
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testProxyAndAddresses() throws Exception {
+        final Request request = get("http://localhost/");
+        final PartitionKey key = PartitionKey.of(request, null);
+
+        assertNotEquals(PartitionKey.of(request,
+                new ProxyServer("127.0.0.1", 3128)), key);
+
+        final InetAddress address = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+        assertNotEquals(PartitionKey.of(new RequestBuilder(request)
+                .setInetAddress(address).build(), null), key);
+        assertNotEquals(PartitionKey.of(new RequestBuilder(request)
+                .setLocalInetAddress(address).build(), null), key);
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testNtlmCredentials() {
+        final Realm user1 = ntlmRealm("user1");
+        final Realm user2 = ntlmRealm("user2");
+
+        final PartitionKey key1 = PartitionKey.of(get("http://localhost/", user1), null);
+        assertEquals(PartitionKey.of(get("http://localhost/", ntlmRealm("user1")), null), key1);
+        assertNotEquals(PartitionKey.of(get("http://localhost/", user2), null), key1);
+
+        // the hash is computed once per realm
+        assertSame(user1.getCredentialsHash(), user1.getCredentialsHash());
+    }
+
+    @Test(groups = { "standalone", "default_provider" })
+    public void testCustomPartitioning() {
+        final ConnectionPoolPartitioning partitioning = new ConnectionPoolPartitioning() {
+            @Override
+            public Object getPartitionKey(Uri uri, ProxyServer proxyServer) {
+                return uri.getPath();
+            }
+        };
+
+        final PartitionKey key = PartitionKey.of(new RequestBuilder("GET")
+                .setUrl("http://localhost/a")
+                .setConnectionPoolKeyStrategy(partitioning)
+                .build(), null);
+
+        assertEquals(PartitionKey.of(new RequestBuilder("GET")
+                .setUrl("http://otherhost/a")
+                .setConnectionPoolKeyStrategy(partitioning)
+                .build(), null), key);
+    }
+
+    private static Request get(final String url) {
+        return new RequestBuilder("GET").setUrl(url).build();
+    }
+
+    private static Request get(final String url, final Realm realm) {
+        return new RequestBuilder("GET").setUrl(url).setRealm(realm).build();
+    }
+
+    private static Realm ntlmRealm(final String principal) {
+        return new Realm.RealmBuilder()
+                .setScheme(Realm.AuthScheme.NTLM)
+                .setPrincipal(principal)
+                .setPassword("secret")
+                .build();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package com.ning.http.client.providers.grizzly;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TimeoutWheelTest {
+
+    private TimeoutWheel wheel;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        // small wheel, so the longer timeouts take several rounds
+        wheel = new TimeoutWheel(5, 8, "test-timeout-wheel");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    @Test(groups = "standalone")
+    public void testTimeoutIsNeverEarly() throws Exception {
+        final long[] delays = {0, 1, 20, 50, 120};
+        final CountDownLatch latch = new CountDownLatch(delays.length);
+        final AtomicInteger early = new AtomicInteger();
+
+        for (final long delay : delays) {
+            final long start = System.nanoTime();
+            wheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                        early.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(early.get(), 0);
+    }
+
+    @Test(groups = "standalone")
+    public void testSubHundredMillisAccuracy() throws Exception {
+        final AtomicLong firedAfter = new AtomicLong();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                firedAfter.set(System.nanoTime() - start);
+                latch.countDown();
+            }
+        }, 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        final long millis = TimeUnit.NANOSECONDS.toMillis(firedAfter.get());
+        assertTrue(millis >= 30 && millis < 80, "Fired after " + millis + "ms");
+    }
+
+    @Test(groups = "standalone")
+    public void testCancelledTimeoutDoesNotFire() throws Exception {
+        final AtomicInteger fired = new AtomicInteger();
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                fired.incrementAndGet();
+            }
+        };
+
+        final TimeoutWheel.Timeout cancelledBeforeTransfer =
+                wheel.schedule(task, 30, TimeUnit.MILLISECONDS);
+        assertTrue(cancelledBeforeTransfer.cancel());
+
+        final TimeoutWheel.Timeout cancelledInBucket =
+                wheel.schedule(task, 60, TimeUnit.MILLISECONDS);
+        Thread.sleep(20);
+        assertTrue(cancelledInBucket.cancel());
+
+        final TimeoutWheel.Timeout expired =
+                wheel.schedule(task, 10, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(200);
+        assertEquals(fired.get(), 1);
+        assertTrue(expired.isExpired());
+        assertFalse(expired.cancel());
+        assertTrue(cancelledInBucket.isCancelled());
+    }
+
+    @Test(groups = "standalone")
+    public void testThreadIsStartedByTheFirstTimeout() throws Exception {
+        // the wheel was created a while ago, the ticks passed meanwhile
+        // don't make the timeout fire early
+        Thread.sleep(50);
+        assertFalse(wheel.isStarted());
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(wheel.isStarted());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+}